@@ -2,8 +2,10 @@
 set -e
 
 #build
+#-XDignore.symbol.file compiles against rt.jar instead of ct.sym: the shared memory ring uses sun.misc.Unsafe, whose
+#"internal proprietary API" warnings can't be suppressed otherwise (-nowarn and @SuppressWarnings don't apply)
 echo -e "\033[31m Building...\033[0m"
-javac -d src -cp src/mpi.jar:src/bouncycastleprov-jdk15on-154.jar:src/gson-2.6.2.jar:src/sqlite-jdbc-3.8.11.2.jar:src/ormlite-core-4.49-SNAPSHOT.jar:src/ormlite-jdbc-4.49-SNAPSHOT.jar -sourcepath src src/com/vehiclerental/Main.java
+javac -XDignore.symbol.file -d src -cp src/mpi.jar:src/bouncycastleprov-jdk15on-154.jar:src/gson-2.6.2.jar:src/sqlite-jdbc-3.8.11.2.jar:src/ormlite-core-4.49-SNAPSHOT.jar:src/ormlite-jdbc-4.49-SNAPSHOT.jar -sourcepath src src/com/vehiclerental/Main.java src/com/vehiclerental/ClusterNode.java
 
 #deploy classes
 echo -e "\033[31m Deploying...\033[0m"
@@ -0,0 +1,166 @@
+/**
+ * CarRental
+ *
+ * This file is an alternative entry point running a node of the distributed system without MPI, over TCP or over
+ * shared memory when all the nodes run on the same host
+ * Each node is started as its own process, with its cluster ID and the addresses of all the cluster nodes (TCP) or the
+ * number of nodes (shared memory). Over TCP, the nodes authenticate their connections with a secret shared by the cluster:
+ *
+ * java -Dcarrental.cluster.nodes=host0:port0,host1:port1,... -Dcarrental.cluster.secret=secret -Dcarrental.cluster.nodeId=id com.vehiclerental.ClusterNode port
+ * java -Dcarrental.cluster.transport=sharedMemory -Dcarrental.cluster.size=n -Dcarrental.cluster.nodeId=id com.vehiclerental.ClusterNode port
+ *
+ * The node 0 is the head office, it initializes the database and notifies the branches that they can load it (the MPI
+ * barrier of MpiNodeManager)
+ */
+
+package com.vehiclerental;
+
+import com.j256.ormlite.logger.LocalLog;
+import com.vehiclerental.clusterCommunicator.AbstractClusterCommunicator;
+import com.vehiclerental.clusterCommunicator.ClusterCommunicator;
+import com.vehiclerental.clusterCommunicator.SharedMemoryClusterCommunicatorImpl;
+import com.vehiclerental.clusterCommunicator.TcpClusterCommunicatorImpl;
+import com.vehiclerental.dataLayer.DaoFactory;
+import com.vehiclerental.dataLayer.sqliteImplementation.OrmLiteConnectionSingleton;
+import com.vehiclerental.presentationLayer.branch.BranchOfficeManager;
+import com.vehiclerental.presentationLayer.headOffice.HeadOfficeManager;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ClusterNode {
+
+    /**
+     * Main method, connects the node to the cluster and starts it as head office or branch
+     * It returns once the node is stopped (system shutdown request)
+     *
+     * @param args command line arguments
+     * @throws Exception if any exception occurs
+     */
+    public static void main(String args[]) throws Exception {
+        //Reduce SQLite ORM verbosity
+        System.setProperty(LocalLog.LOCAL_LOG_LEVEL_PROPERTY, "ERROR");
+
+        //Adding bouncy castle as encryption provider
+        Security.addProvider(new BouncyCastleProvider());
+
+        NodeConfiguration configuration = NodeConfiguration.getCurrent();
+        int clusterId = configuration.clusterNodeId;
+        int clusterSize;
+
+        if ("sharedMemory".equals(configuration.clusterTransport)) {
+            if (configuration.clusterSize <= 0) {
+                System.out.println("[ERROR] - The number of cluster nodes is missing (carrental.cluster.size)");
+                return;
+            }
+
+            clusterSize = configuration.clusterSize;
+            configuration.clusterCommunicator = new SharedMemoryClusterCommunicatorImpl(clusterId, clusterSize,
+                    new File(configuration.clusterDirectory), configuration.clusterRingBufferSize, configuration.clusterConnectTimeout);
+        } else {
+            if (configuration.clusterNodes == null) {
+                System.out.println("[ERROR] - The cluster node addresses are missing (carrental.cluster.nodes)");
+                return;
+            }
+            if (configuration.clusterSecret == null || configuration.clusterSecret.isEmpty()) {
+                System.out.println("[ERROR] - The cluster secret is missing (carrental.cluster.secret)");
+                return;
+            }
+
+            List<InetSocketAddress> nodeAddresses = parseNodeAddresses(configuration.clusterNodes);
+            clusterSize = nodeAddresses.size();
+            configuration.clusterCommunicator = new TcpClusterCommunicatorImpl(clusterId, nodeAddresses,
+                    configuration.clusterConnectionsPerNode, configuration.clusterSocketBufferSize, configuration.clusterConnectTimeout,
+                    configuration.clusterSecret);
+        }
+
+        configuration.clusterCommunicator.setCodec(AbstractClusterCommunicator.createCodec(configuration.clusterCodec));
+        configuration.clusterCommunicator.setResponseTimeout(configuration.clusterResponseTimeout);
+
+        try {
+            if (clusterId == NodeConfiguration.HEAD_OFFICE_CLUSTER_ID) {
+                configuration.port = Integer.parseInt(args[0]);
+                runHeadOfficeNode(clusterSize);
+            } else {
+                runBranchNode(clusterId);
+            }
+        } finally {
+            configuration.clusterCommunicator.close();
+            OrmLiteConnectionSingleton.close();
+        }
+    }
+
+    /**
+     * Initializes the database, notifies the branches and runs the head office with the Socket server
+     *
+     * @param clusterSize the number of cluster nodes
+     * @throws Exception if any exception occurs
+     */
+    private static void runHeadOfficeNode(int clusterSize) throws Exception {
+        /* DB Initialisation */
+        DaoFactory.getDatabaseHelper().ensureInitialized();
+
+        // DB ready, the branches can continue
+        ClusterCommunicator clusterCommunicator = NodeConfiguration.getCurrent().clusterCommunicator;
+        for (int clusterId = 0; clusterId < clusterSize; clusterId++) {
+            if (clusterId != NodeConfiguration.HEAD_OFFICE_CLUSTER_ID) {
+                clusterCommunicator.sendObject(clusterId, OperationCodes.CLUSTER_NODE_READY, Boolean.TRUE);
+            }
+        }
+
+        MpiNodeManager.loadBranchesFromDatabase(NodeConfiguration.HEAD_OFFICE_CLUSTER_ID);
+
+        System.out.println(">>> Head office started on cluster node " + NodeConfiguration.HEAD_OFFICE_CLUSTER_ID);
+        NodeConfiguration.getCurrent().systemAvailable = true;
+        NodeConfiguration.getCurrent().headOfficeManager = new HeadOfficeManager();
+        NodeConfiguration.getCurrent().headOfficeManager.start();
+
+        System.out.println(">>> Head office stopped on cluster node " + NodeConfiguration.HEAD_OFFICE_CLUSTER_ID);
+    }
+
+    /**
+     * Waits for the database and runs a branch with the cluster communication listener
+     *
+     * @param clusterId the cluster ID of the node
+     * @throws Exception if any exception occurs
+     */
+    private static void runBranchNode(int clusterId) throws Exception {
+        // Wait for head office(DB init)
+        NodeConfiguration.getCurrent().clusterCommunicator.receiveObject(NodeConfiguration.HEAD_OFFICE_CLUSTER_ID, OperationCodes.CLUSTER_NODE_READY, Boolean.class);
+
+        MpiNodeManager.loadBranchesFromDatabase(clusterId);
+
+        if (NodeConfiguration.getCurrent().nodeBranch == null) {
+            System.out.println("Node with rank " + clusterId + " has no branch to host. Exiting.");
+            return;
+        }
+
+        NodeConfiguration.getCurrent().systemAvailable = true;
+        System.out.println(">>> Branch " + NodeConfiguration.getCurrent().nodeBranch.getName() + " started on cluster node " + clusterId);
+        NodeConfiguration.getCurrent().branchOfficeManager = new BranchOfficeManager();
+        NodeConfiguration.getCurrent().branchOfficeManager.start();
+
+        System.out.println(">>> Branch " + NodeConfiguration.getCurrent().nodeBranch.getName() + " stopped on cluster node " + clusterId);
+    }
+
+    /**
+     * Parses the comma separated host:port addresses of the cluster nodes
+     *
+     * @param clusterNodes the addresses, by cluster ID
+     * @return the node addresses
+     */
+    private static List<InetSocketAddress> parseNodeAddresses(String clusterNodes) {
+        List<InetSocketAddress> nodeAddresses = new ArrayList<InetSocketAddress>();
+        for (String node : clusterNodes.split(",")) {
+            String address = node.trim();
+            int separator = address.lastIndexOf(':');
+            nodeAddresses.add(new InetSocketAddress(address.substring(0, separator), Integer.parseInt(address.substring(separator + 1))));
+        }
+
+        return nodeAddresses;
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * CarRental
+ *
+ * This file is an alternative entry point running the whole distributed system in a single JVM, without MPI
+ * The head office and each branch run on their own thread with their own node configuration, and communicate through
+ * the in-memory cluster communicator. It allows profiling and load testing without an MPI installation
+ *
+ * Usage: java com.vehiclerental.InProcessClusterLauncher port [number of branch nodes]
+ * By default, a branch node is started for each branch of the database
+ */
+
+package com.vehiclerental;
+
+import com.j256.ormlite.logger.LocalLog;
+import com.vehiclerental.clusterCommunicator.AbstractClusterCommunicator;
+import com.vehiclerental.clusterCommunicator.ClusterCommunicator;
+import com.vehiclerental.clusterCommunicator.InMemoryClusterCommunicatorImpl;
+import com.vehiclerental.dataLayer.DaoFactory;
+import com.vehiclerental.dataLayer.sqliteImplementation.OrmLiteConnectionSingleton;
+import com.vehiclerental.logicLayer.ServiceFactory;
+import com.vehiclerental.presentationLayer.branch.BranchOfficeManager;
+import com.vehiclerental.presentationLayer.headOffice.HeadOfficeManager;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class InProcessClusterLauncher {
+
+    /**
+     * Main method, initializes the database and starts every node on its own thread
+     * It returns once all the nodes are stopped (system shutdown request)
+     *
+     * @param args command line arguments
+     * @throws Exception if any exception occurs
+     */
+    public static void main(String args[]) throws Exception {
+        //Reduce SQLite ORM verbosity
+        System.setProperty(LocalLog.LOCAL_LOG_LEVEL_PROPERTY, "ERROR");
+
+        //Adding bouncy castle as encryption provider
+        Security.addProvider(new BouncyCastleProvider());
+
+        int port = Integer.parseInt(args[0]);
+
+        /* DB Initialisation, shared by all the nodes of the process */
+        DaoFactory.getDatabaseHelper().ensureInitialized();
+
+        int branchNodes = args.length > 1 ? Integer.parseInt(args[1]) : ServiceFactory.getBranchService().getAllBranches().size();
+        Map<Integer, InMemoryClusterCommunicatorImpl> communicators = InMemoryClusterCommunicatorImpl.createCluster(branchNodes + 1);
+
+        List<Thread> nodeThreads = new ArrayList<Thread>();
+        for (int clusterId = 0; clusterId <= branchNodes; clusterId++) {
+            nodeThreads.add(startNode(clusterId, port, communicators.get(clusterId)));
+        }
+
+        for (Thread nodeThread : nodeThreads) {
+            nodeThread.join();
+        }
+
+        OrmLiteConnectionSingleton.close();
+    }
+
+    /**
+     * Starts a node on its own thread, with its own node configuration
+     *
+     * @param clusterId the cluster ID of the node
+     * @param port the head office port
+     * @param clusterCommunicator the communicator of the node
+     * @return the node thread
+     */
+    private static Thread startNode(final int clusterId, final int port, final ClusterCommunicator clusterCommunicator) {
+        Thread nodeThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                NodeConfiguration configuration = new NodeConfiguration();
+                configuration.clusterCommunicator = clusterCommunicator;
+                configuration.clusterCommunicator.setCodec(AbstractClusterCommunicator.createCodec(configuration.clusterCodec));
+                configuration.clusterCommunicator.setResponseTimeout(configuration.clusterResponseTimeout);
+                NodeConfiguration.setCurrent(configuration);
+
+                try {
+                    if (clusterId == NodeConfiguration.HEAD_OFFICE_CLUSTER_ID) {
+                        runHeadOfficeNode(port);
+                    } else {
+                        runBranchNode(clusterId);
+                    }
+                } catch (Exception e) {
+                    System.out.println("[ERROR] - Node " + clusterId + " failed: " + e.getMessage());
+                    e.printStackTrace();
+                } finally {
+                    clusterCommunicator.close();
+                }
+            }
+        }, clusterId == NodeConfiguration.HEAD_OFFICE_CLUSTER_ID ? "head-office" : "branch-" + clusterId);
+
+        nodeThread.start();
+        return nodeThread;
+    }
+
+    /**
+     * Runs the head office node with the Socket server, on the current thread
+     *
+     * @param port the head office port
+     * @throws Exception if any exception occurs
+     */
+    private static void runHeadOfficeNode(int port) throws Exception {
+        NodeConfiguration.getCurrent().port = port;
+        MpiNodeManager.loadBranchesFromDatabase(NodeConfiguration.HEAD_OFFICE_CLUSTER_ID);
+
+        System.out.println(">>> Head office started in process");
+        NodeConfiguration.getCurrent().systemAvailable = true;
+        NodeConfiguration.getCurrent().headOfficeManager = new HeadOfficeManager();
+        NodeConfiguration.getCurrent().headOfficeManager.start();
+
+        System.out.println(">>> Head office stopped in process");
+    }
+
+    /**
+     * Runs a branch node with the cluster communication listener, on the current thread
+     *
+     * @param clusterId the cluster ID of the node
+     * @throws Exception if any exception occurs
+     */
+    private static void runBranchNode(int clusterId) throws Exception {
+        MpiNodeManager.loadBranchesFromDatabase(clusterId);
+
+        if (NodeConfiguration.getCurrent().nodeBranch == null) {
+            System.out.println("Node with rank " + clusterId + " has no branch to host. Exiting.");
+            return;
+        }
+
+        NodeConfiguration.getCurrent().systemAvailable = true;
+        System.out.println(">>> Branch " + NodeConfiguration.getCurrent().nodeBranch.getName() + " started in process");
+        NodeConfiguration.getCurrent().branchOfficeManager = new BranchOfficeManager();
+        NodeConfiguration.getCurrent().branchOfficeManager.start();
+
+        System.out.println(">>> Branch " + NodeConfiguration.getCurrent().nodeBranch.getName() + " stopped in process");
+    }
+}
@@ -33,19 +33,19 @@ public class Main {
         //Adding bouncy castle as encryption provider
         Security.addProvider(new BouncyCastleProvider());
 
-        //NodeConfiguration is a global static element holding all the node properties, it can be changed for testing reasons by updating the value of NodeConfiguration.Current
-        NodeConfiguration.Current.mpiNodeManager = new MpiNodeManager(args);
+        //NodeConfiguration is a global static element holding all the node properties, it can be changed for testing reasons with NodeConfiguration.setCurrent
+        NodeConfiguration.getCurrent().mpiNodeManager = new MpiNodeManager(args);
 
-        switch (NodeConfiguration.Current.mpiNodeManager.getNodeType()) {
+        switch (NodeConfiguration.getCurrent().mpiNodeManager.getNodeType()) {
             case HEAD_OFFICE: { //Head office
                 System.out.println(">>> Head office started on " + MPI.getProcessorName());
-                NodeConfiguration.Current.systemAvailable = true;
+                NodeConfiguration.getCurrent().systemAvailable = true;
                 handleSocketServerNode();
                 break;
             }
             default: { // Branch office
-                NodeConfiguration.Current.systemAvailable = true;
-                System.out.println(">>> Branch " + NodeConfiguration.Current.nodeBranch.getName() + " started on " + MPI.getProcessorName());
+                NodeConfiguration.getCurrent().systemAvailable = true;
+                System.out.println(">>> Branch " + NodeConfiguration.getCurrent().nodeBranch.getName() + " started on " + MPI.getProcessorName());
                 handleBranchNode();
             }
         }
@@ -58,12 +58,12 @@ public class Main {
      * @throws SQLException if the database can't be used correctly
      */
     private static void handleSocketServerNode() throws MPIException, SQLException {
-        NodeConfiguration.Current.headOfficeManager = new HeadOfficeManager();
-        NodeConfiguration.Current.headOfficeManager.start();
+        NodeConfiguration.getCurrent().headOfficeManager = new HeadOfficeManager();
+        NodeConfiguration.getCurrent().headOfficeManager.start();
 
         //This will be called when the server is stopped
         String processorName = MPI.getProcessorName();
-        NodeConfiguration.Current.mpiNodeManager.finalizeNode();
+        NodeConfiguration.getCurrent().mpiNodeManager.finalizeNode();
         System.out.println(">>> Head office stopped on " + processorName);
     }
 
@@ -72,12 +72,12 @@ public class Main {
      * @throws Exception
      */
     private static void handleBranchNode() throws Exception {
-        NodeConfiguration.Current.branchOfficeManager = new BranchOfficeManager();
-        NodeConfiguration.Current.branchOfficeManager.start();
+        NodeConfiguration.getCurrent().branchOfficeManager = new BranchOfficeManager();
+        NodeConfiguration.getCurrent().branchOfficeManager.start();
 
         //This will be called when the server is stopped
         String processorName = MPI.getProcessorName();
-        NodeConfiguration.Current.mpiNodeManager.finalizeNode();
-        System.out.println(">>> Branch " + NodeConfiguration.Current.nodeBranch.getName() + " stopped on " + processorName);
+        NodeConfiguration.getCurrent().mpiNodeManager.finalizeNode();
+        System.out.println(">>> Branch " + NodeConfiguration.getCurrent().nodeBranch.getName() + " stopped on " + processorName);
     }
 }
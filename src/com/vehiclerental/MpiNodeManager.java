@@ -8,6 +8,7 @@
 
 package com.vehiclerental;
 
+import com.vehiclerental.clusterCommunicator.AbstractClusterCommunicator;
 import com.vehiclerental.clusterCommunicator.MpiClusterCommunicatorImpl;
 import com.vehiclerental.dataLayer.DaoFactory;
 import com.vehiclerental.dataLayer.interfaces.DatabaseHelper;
@@ -38,14 +39,20 @@ public class MpiNodeManager {
      * @throws DatabaseAccessFailedException if the database can't be used
      */
     public MpiNodeManager(String[] args) throws MPIException, DatabaseAccessFailedException {
-        MPI.Init(args);
+        //Head office workers and branch requests use the cluster communicator from several threads at the same time
+        int threadLevel = MPI.InitThread(args, MPI.THREAD_MULTIPLE);
+        if (threadLevel != MPI.THREAD_MULTIPLE) {
+            System.out.println("[WARNING] - The MPI library does not support concurrent calls from multiple threads");
+        }
 
-        NodeConfiguration.Current.clusterCommunicator = new MpiClusterCommunicatorImpl();
+        NodeConfiguration.getCurrent().clusterCommunicator = new MpiClusterCommunicatorImpl();
+        NodeConfiguration.getCurrent().clusterCommunicator.setCodec(AbstractClusterCommunicator.createCodec(NodeConfiguration.getCurrent().clusterCodec));
+        NodeConfiguration.getCurrent().clusterCommunicator.setResponseTimeout(NodeConfiguration.getCurrent().clusterResponseTimeout);
 
         int rank = MPI.COMM_WORLD.getRank();
 
-        if (rank == 0) {
-            NodeConfiguration.Current.port = Integer.parseInt(args[0]);
+        if (rank == NodeConfiguration.HEAD_OFFICE_CLUSTER_ID) {
+            NodeConfiguration.getCurrent().port = Integer.parseInt(args[0]);
             nodeType = NodeType.HEAD_OFFICE;
 
             /* DB Initialisation */
@@ -65,7 +72,7 @@ public class MpiNodeManager {
 
             loadBranchesFromDatabase(rank);
 
-            if (NodeConfiguration.Current.nodeBranch == null) {
+            if (NodeConfiguration.getCurrent().nodeBranch == null) {
                 System.out.println("Node with rank " + rank + " has no branch to host. Exiting.");
                 finalizeNode();
                 System.exit(0);
@@ -75,27 +82,31 @@ public class MpiNodeManager {
 
     /**
      * Load available branches from the database and define the current branch based on the current node cluster ID
+     * Also used by the in-process launcher
+     *
      * @param rank current node cluster ID
      * @throws DatabaseAccessFailedException if the database can't be used
      */
-    private void loadBranchesFromDatabase(int rank) throws DatabaseAccessFailedException {
+    static void loadBranchesFromDatabase(int rank) throws DatabaseAccessFailedException {
         BranchService branchService = ServiceFactory.getBranchService();
         for (Branch branch: branchService.getAllBranches()) {
-            NodeConfiguration.Current.branches.put(branch.getId(), branch);
+            NodeConfiguration.getCurrent().branches.put(branch.getId(), branch);
             if (rank == branch.getClusterId()) {
-                NodeConfiguration.Current.nodeBranch = branch;
+                NodeConfiguration.getCurrent().nodeBranch = branch;
             }
         }
     }
 
     /**
-     * Terminates a node by closing its database access and finalizing its MPI communication
+     * Terminates a node by closing its cluster communicator and database access and finalizing its MPI communication
      *
      * It will wait for all the other nodes to call MPI.Finalize before exiting
      *
      * @throws MPIException if the MPI system fails
      */
     public void finalizeNode() throws MPIException {
+        NodeConfiguration.getCurrent().clusterCommunicator.close();
+
         try {
             OrmLiteConnectionSingleton.close();
         } catch (Exception e) {
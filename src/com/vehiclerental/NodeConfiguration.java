@@ -4,13 +4,16 @@
  * This file provides a simple node configuration object, statically accessible from everywhere in the running node
  * It contains all the important part of the node
  *
- * A static class is not a good idea, because it causes a lot of problems for unit testing purposes, I decided to use a single static field instead, which is easily modifiable
+ * A static class is not a good idea, because it causes a lot of problems for unit testing purposes, I decided to use a single static accessor instead, which is easily modifiable
+ * The configuration is the same for the whole process by default, several nodes running in the same process (see
+ * InProcessClusterLauncher) each set their own configuration on their main thread, their workers inherit it
  */
 
 package com.vehiclerental;
 
 import com.vehiclerental.clusterCommunicator.ClusterCommunicator;
 import com.vehiclerental.dataLayer.entities.Branch;
+import com.vehiclerental.logicLayer.AuthenticationCache;
 import com.vehiclerental.presentationLayer.branch.BranchOfficeManager;
 import com.vehiclerental.presentationLayer.headOffice.HeadOfficeManager;
 
@@ -18,8 +21,18 @@ import java.util.HashMap;
 import java.util.Map;
 
 public class NodeConfiguration {
-    //Current node configuration
-    public static NodeConfiguration Current = new NodeConfiguration();
+    //Configuration of the process, used by every thread of an MPI node
+    private static final NodeConfiguration processConfiguration = new NodeConfiguration();
+    //Node configuration of the current thread, inherited by the threads it creates (node workers)
+    private static final InheritableThreadLocal<NodeConfiguration> current = new InheritableThreadLocal<NodeConfiguration>() {
+        @Override
+        protected NodeConfiguration initialValue() {
+            return processConfiguration;
+        }
+    };
+
+    //Cluster ID of the head office node
+    public static final int HEAD_OFFICE_CLUSTER_ID = 0;
 
     //Current node manager
     public MpiNodeManager mpiNodeManager;
@@ -38,6 +51,100 @@ public class NodeConfiguration {
     public Branch nodeBranch;
     //Current port
     public int port;
-    //true if the system is available, false if the system is in soft close
-    public boolean systemAvailable;
+    //true if the system is available, false if the system is in soft close (read by every head office worker)
+    public volatile boolean systemAvailable;
+
+    //Number of head office threads handling the accepted client connections
+    public int headOfficeWorkerThreads = Integer.getInteger("carrental.headOffice.workerThreads", Runtime.getRuntime().availableProcessors() * 4);
+    //Number of accepted client connections allowed to wait for a free worker before the head office answers 503
+    public int headOfficeAcceptQueueLimit = Integer.getInteger("carrental.headOffice.acceptQueueLimit", 256);
+    //true to use the non-blocking (Selector and SSLEngine) front end instead of the blocking server socket
+    public boolean headOfficeNonBlocking = Boolean.getBoolean("carrental.headOffice.nonBlocking");
+    //Number of event loop threads of the non-blocking front end
+    public int headOfficeEventLoops = Integer.getInteger("carrental.headOffice.eventLoops", Runtime.getRuntime().availableProcessors());
+    //Time in milliseconds after which a client connection without any traffic is closed
+    public int headOfficeIdleTimeout = Integer.getInteger("carrental.headOffice.idleTimeout", 30000);
+    //Number of requests a framed (keep-alive) client connection can send before being closed by the head office
+    public int headOfficeMaxRequestsPerConnection = Integer.getInteger("carrental.headOffice.maxRequestsPerConnection", 1000);
+    //Number of requests a framed client connection can have in flight, the next requests are read once a response is sent
+    public int headOfficeMaxPipelinedRequests = Integer.getInteger("carrental.headOffice.maxPipelinedRequests", 16);
+    //Size in bytes of the chunks of the framed responses, a larger response is sent in several chunks
+    public int headOfficeResponseChunkSize = Integer.getInteger("carrental.headOffice.responseChunkSize", 64 * 1024);
+
+    //Keystore containing the head office certificate and key
+    public String tlsKeystorePath = System.getProperty("carrental.tls.keystore", "carrental.keystore");
+    //Keystore type
+    public String tlsKeystoreType = System.getProperty("carrental.tls.keystoreType", "BKS");
+    //Keystore and key password
+    public String tlsKeystorePassword = System.getProperty("carrental.tls.keystorePassword", "carrental");
+    //Maximum number of TLS sessions kept by the head office for resumption
+    public int tlsSessionCacheSize = Integer.getInteger("carrental.tls.sessionCacheSize", 20000);
+    //Lifetime in seconds of a cached TLS session
+    public int tlsSessionTimeout = Integer.getInteger("carrental.tls.sessionTimeout", 86400);
+    //Comma separated cipher suites, by order of preference, replacing the default preference list (null to keep it)
+    public String tlsCipherSuites = System.getProperty("carrental.tls.cipherSuites");
+
+    //Secret signing the session tokens (null to generate one at startup, the tokens are then invalidated by a restart)
+    public String authTokenSecret = System.getProperty("carrental.auth.tokenSecret");
+    //Lifetime in seconds of a session token
+    public int authTokenLifetime = Integer.getInteger("carrental.auth.tokenLifetime", 3600);
+    //Number of workers of a branch handling the requests from the head office
+    public int branchWorkerThreads = Integer.getInteger("carrental.branch.workerThreads", Runtime.getRuntime().availableProcessors() * 2);
+    //Number of workers of a branch handling the requests from the other branches
+    public int branchClusterWorkerThreads = Integer.getInteger("carrental.branch.clusterWorkerThreads", 4);
+    //Interval in milliseconds between two status lines of a branch (busy workers, queue depth, utilization), 0 to disable
+    public int branchStatusInterval = Integer.getInteger("carrental.branch.statusInterval", 60000);
+    //Maximum number of results of a branch result page, the branch lists are sent to the head office page by page
+    public int branchResultPageSize = Integer.getInteger("carrental.branch.resultPageSize", 200);
+    //Maximum number of results of a head office result page (user search)
+    public int headOfficeResultPageSize = Integer.getInteger("carrental.headOffice.resultPageSize", 200);
+    //Deadline in milliseconds of the branches contacted by an available vehicle search
+    public int clusterSearchTimeout = Integer.getInteger("carrental.cluster.searchTimeout", 2000);
+    //Codec of the cluster message payloads, the same on every node: binary, or json to read the traffic when debugging
+    public String clusterCodec = System.getProperty("carrental.cluster.codec", "binary");
+    //Time in milliseconds given to a cluster node to answer a request before the request fails
+    public int clusterResponseTimeout = Integer.getInteger("carrental.cluster.responseTimeout", 30000);
+    //Transport of the nodes started by ClusterNode: tcp, or sharedMemory for the nodes of a single host
+    public String clusterTransport = System.getProperty("carrental.cluster.transport", "tcp");
+    //Comma separated host:port addresses of the cluster nodes by cluster ID, used by the TCP transport
+    public String clusterNodes = System.getProperty("carrental.cluster.nodes");
+    //Secret shared by the cluster nodes, authenticating their TCP connections
+    public String clusterSecret = System.getProperty("carrental.cluster.secret");
+    //Cluster ID of this node
+    public int clusterNodeId = Integer.getInteger("carrental.cluster.nodeId", HEAD_OFFICE_CLUSTER_ID);
+    //Number of cluster nodes, used by the shared memory transport
+    public int clusterSize = Integer.getInteger("carrental.cluster.size", 0);
+    //Directory of the ring files of the shared memory transport, preferably on a memory file system (/dev/shm)
+    public String clusterDirectory = System.getProperty("carrental.cluster.directory", System.getProperty("java.io.tmpdir") + "/carrental-cluster");
+    //Size in bytes of each ring of the shared memory transport (a power of two), the largest message it can carry
+    public int clusterRingBufferSize = Integer.getInteger("carrental.cluster.ringBufferSize", 4 * 1024 * 1024);
+    //Number of TCP connections opened by a node to each other node
+    public int clusterConnectionsPerNode = Integer.getInteger("carrental.cluster.connectionsPerNode", 2);
+    //Send and receive buffer sizes in bytes of the cluster TCP sockets
+    public int clusterSocketBufferSize = Integer.getInteger("carrental.cluster.socketBufferSize", 262144);
+    //Time in milliseconds given to a cluster node to start listening (or to create its rings) before its connection fails
+    public int clusterConnectTimeout = Integer.getInteger("carrental.cluster.connectTimeout", 30000);
+
+    //Cache of the authenticated basic auth strings (size and lifetime in seconds of the entries)
+    public AuthenticationCache authenticationCache = new AuthenticationCache(
+            Integer.getInteger("carrental.auth.cacheSize", 10000),
+            Integer.getInteger("carrental.auth.cacheTimeToLive", 300));
+
+    /**
+     * Returns the configuration of the node running the current thread
+     *
+     * @return the node configuration
+     */
+    public static NodeConfiguration getCurrent() {
+        return current.get();
+    }
+
+    /**
+     * Sets the configuration of the node running the current thread, and of the threads it will create
+     *
+     * @param configuration the node configuration
+     */
+    public static void setCurrent(NodeConfiguration configuration) {
+        current.set(configuration);
+    }
 }
@@ -17,6 +17,7 @@ public class OperationCodes {
     public final static int BOOK_VEHICLE                    = 3;
     public final static int GET_USER_BOOKINGS               = 4;
     public final static int GET_ACCOUNT_DETAILS             = 5;
+    public final static int LOGIN                           = 14;
 
     //Staff methods
     public final static int CREATE_USER                     = 6;
@@ -28,6 +29,12 @@ public class OperationCodes {
     public final static int SHUTDOWN_SYSTEM                 = 12;
     public final static int GET_VEHICLE_MOVES               = 13;
 
+    //Staff methods answering a single result page, with a continuation token for the next one
+    public final static int GET_BRANCH_BOOKINGS_PAGE        = 15;
+    public final static int SEARCH_ALL_VEHICLES_PAGE        = 16;
+    public final static int SEARCH_USER_PAGE                = 17;
+
     //Cluster (Those codes are only used internally)
     public final static int CLUSTER_SEARCH_AVAIL_VEHICLES_BROADCAST = 1000;
+    public final static int CLUSTER_NODE_READY                      = 1001;
 }
@@ -0,0 +1,306 @@
+/**
+ * CarRental
+ *
+ * This file provides a micro benchmark of the cluster message codecs: the encoding and decoding time and the payload
+ * size of the json (gson) and binary codecs, for the messages of the busiest cluster exchanges (available vehicle
+ * search broadcast, booking and vehicle lists). Every message is checked to decode to the same json before the measures
+ *
+ * Usage: java com.vehiclerental.benchmarks.CodecBenchmark [duration in seconds per measure] [vehicles per list]
+ */
+
+package com.vehiclerental.benchmarks;
+
+import com.google.gson.reflect.TypeToken;
+import com.vehiclerental.OperationCodes;
+import com.vehiclerental.clusterCommunicator.BinaryMessageCodec;
+import com.vehiclerental.clusterCommunicator.JsonMessageCodec;
+import com.vehiclerental.clusterCommunicator.MessageCodec;
+import com.vehiclerental.contracts.*;
+import com.vehiclerental.presentationLayer.branch.protocolContracts.BranchRequestMessage;
+import com.vehiclerental.presentationLayer.branch.protocolContracts.BranchResponseMessage;
+import com.vehiclerental.utils.SerializationUtils;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CodecBenchmark {
+    //Default duration of a measure, in seconds
+    private static final int DEFAULT_DURATION = 3;
+    //Default number of vehicles of the list messages
+    private static final int DEFAULT_VEHICLES = 50;
+
+    /**
+     * Main method, measures each message with each codec after a warm up of the same duration
+     *
+     * @param args command line arguments
+     * @throws Exception if any exception occurs
+     */
+    public static void main(String args[]) throws Exception {
+        long duration = (args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_DURATION) * 1000L;
+        int vehicles = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_VEHICLES;
+
+        MessageCodec[] codecs = {new JsonMessageCodec(), new BinaryMessageCodec()};
+
+        List<Message> messages = new ArrayList<Message>();
+        messages.add(new Message("search request", createSearchRequest(),
+                new TypeToken<BranchRequestMessage<SearchAvailableVehiclesRequestContract>>() {}.getType()));
+        messages.add(new Message("booking request", createBookingRequest(),
+                new TypeToken<BranchRequestMessage<CreateBookingContract>>() {}.getType()));
+        messages.add(new Message("search response", createSearchResponse(vehicles),
+                new TypeToken<BranchResponseMessage<List<BookingSearchResultContract>>>() {}.getType()));
+        messages.add(new Message("bookings response", createBookingsResponse(vehicles),
+                new TypeToken<BranchResponseMessage<List<BookingContract>>>() {}.getType()));
+
+        for (Message message : messages) {
+            for (MessageCodec codec : codecs) {
+                checkRoundTrip(message, codec);
+            }
+        }
+
+        System.out.println(String.format("%-18s %-7s %10s %14s %14s", "message", "codec", "bytes", "encode ops/s", "decode ops/s"));
+        for (Message message : messages) {
+            for (MessageCodec codec : codecs) {
+                byte[] payload = codec.encode(message.object);
+
+                double encodeRate = measure(new Encoding(codec, message.object), duration);
+                double decodeRate = measure(new Decoding(codec, payload, message.type), duration);
+
+                System.out.println(String.format("%-18s %-7s %10d %14.0f %14.0f", message.name,
+                        codec.isJson() ? JsonMessageCodec.NAME : BinaryMessageCodec.NAME, payload.length, encodeRate, decodeRate));
+            }
+        }
+    }
+
+    /**
+     * Checks that a message decodes to an object serialized to the same json as the original
+     *
+     * @param message the message
+     * @param codec the codec
+     */
+    private static void checkRoundTrip(Message message, MessageCodec codec) {
+        Object decoded = codec.decode(codec.encode(message.object), message.type);
+
+        if (!SerializationUtils.serialize(decoded).equals(SerializationUtils.serialize(message.object))) {
+            throw new IllegalStateException(message.name + " is altered by the " + codec.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * Runs an operation for the given duration after a warm up, and returns its throughput
+     *
+     * @param operation the operation
+     * @param duration the duration of the measure (milliseconds)
+     * @return the number of operations per second
+     */
+    private static double measure(Runnable operation, long duration) {
+        run(operation, duration);
+        long operations = run(operation, duration);
+
+        return operations * 1000.0 / duration;
+    }
+
+    /**
+     * Runs an operation in a loop for the given duration
+     *
+     * @param operation the operation
+     * @param duration the duration (milliseconds)
+     * @return the number of operations done
+     */
+    private static long run(Runnable operation, long duration) {
+        long operations = 0;
+        long end = System.currentTimeMillis() + duration;
+
+        while (System.currentTimeMillis() < end) {
+            for (int i = 0; i < 100; i++) {
+                operation.run();
+            }
+            operations += 100;
+        }
+
+        return operations;
+    }
+
+    /**
+     * Creates an available vehicle search broadcast request
+     *
+     * @return the request message
+     */
+    private static BranchRequestMessage<SearchAvailableVehiclesRequestContract> createSearchRequest() {
+        SearchAvailableVehiclesRequestContract search = new SearchAvailableVehiclesRequestContract();
+        search.vehicleType = 0;
+        search.pickupDate = "2026-11-02T00:00+0000";
+        search.returnDate = "2026-11-04T10:00+0000";
+
+        BranchRequestMessage<SearchAvailableVehiclesRequestContract> message = new BranchRequestMessage<SearchAvailableVehiclesRequestContract>();
+        message.operationCode = OperationCodes.CLUSTER_SEARCH_AVAIL_VEHICLES_BROADCAST;
+        message.userId = 1;
+        message.object = search;
+
+        return message;
+    }
+
+    /**
+     * Creates a booking request forwarded to the branch of the vehicle
+     *
+     * @return the request message
+     */
+    private static BranchRequestMessage<CreateBookingContract> createBookingRequest() {
+        CreateBookingContract booking = new CreateBookingContract();
+        booking.vehicleId = 12;
+        booking.vehicleBranchId = 2;
+        booking.bookingBranchId = 1;
+        booking.pickupDate = "2026-11-02T00:00+0000";
+        booking.returnDate = "2026-11-04T00:00+0000";
+        booking.creditCardNumber = "4556737586899855";
+        booking.creditCardExpirationMonth = "08";
+        booking.creditCardExpirationYear = "2028";
+        booking.creditCardCvcCode = "123";
+
+        BranchRequestMessage<CreateBookingContract> message = new BranchRequestMessage<CreateBookingContract>();
+        message.operationCode = OperationCodes.BOOK_VEHICLE;
+        message.userId = 1;
+        message.object = booking;
+
+        return message;
+    }
+
+    /**
+     * Creates the response of a branch to an available vehicle search
+     *
+     * @param vehicles the number of vehicles
+     * @return the response message
+     */
+    private static BranchResponseMessage<List<BookingSearchResultContract>> createSearchResponse(int vehicles) {
+        List<BookingSearchResultContract> results = new ArrayList<BookingSearchResultContract>();
+
+        for (int i = 0; i < vehicles; i++) {
+            BookingSearchResultContract result = new BookingSearchResultContract();
+            result.requireVehicleMove = i % 3 == 0;
+            result.vehicle = createVehicle(i);
+            result.pickupDate = "2026-11-02T00:00+0000";
+            result.returnDate = "2026-11-04T10:00+0000";
+            result.daysCount = 3;
+            result.price = result.vehicle.poundsPerDay * 3;
+            results.add(result);
+        }
+
+        BranchResponseMessage<List<BookingSearchResultContract>> message = new BranchResponseMessage<List<BookingSearchResultContract>>();
+        message.OperationCode = OperationCodes.CLUSTER_SEARCH_AVAIL_VEHICLES_BROADCAST;
+        message.Status = 200;
+        message.Object = results;
+
+        return message;
+    }
+
+    /**
+     * Creates the response of a branch to a branch bookings request
+     *
+     * @param bookings the number of bookings
+     * @return the response message
+     */
+    private static BranchResponseMessage<List<BookingContract>> createBookingsResponse(int bookings) {
+        List<BookingContract> results = new ArrayList<BookingContract>();
+
+        for (int i = 0; i < bookings; i++) {
+            BookingContract booking = new BookingContract();
+            booking.id = i + 1;
+            booking.branch = "London";
+            booking.vehicle = createVehicle(i);
+            booking.pickupDate = "2026-11-02T00:00+0000";
+            booking.returnDate = "2026-11-04T00:00+0000";
+            booking.daysCount = 3;
+            booking.price = booking.vehicle.poundsPerDay * 3;
+            booking.bookingValidated = i % 2 == 0;
+            results.add(booking);
+        }
+
+        BranchResponseMessage<List<BookingContract>> message = new BranchResponseMessage<List<BookingContract>>();
+        message.OperationCode = OperationCodes.GET_BRANCH_BOOKINGS;
+        message.Status = 200;
+        message.Object = results;
+
+        return message;
+    }
+
+    /**
+     * Creates a vehicle of the London branch
+     *
+     * @param index the index of the vehicle
+     * @return the vehicle
+     */
+    private static VehicleContract createVehicle(int index) {
+        BranchContract branch = new BranchContract();
+        branch.id = 1;
+        branch.name = "London";
+        branch.latitude = 51.507351;
+        branch.longitude = -0.127758;
+
+        VehicleContract vehicle = new VehicleContract();
+        vehicle.id = index + 1;
+        vehicle.branch = branch;
+        vehicle.type = index % 4;
+        vehicle.status = 0;
+        vehicle.registrationNumber = "LONDON-" + (index + 1);
+        vehicle.doors = 4;
+        vehicle.seats = 5;
+        vehicle.automaticTransmission = index % 2 == 0;
+        vehicle.poundsPerDay = 5 + (index % 1000) / 100.0;
+        vehicle.name = "Dodge Viper";
+
+        return vehicle;
+    }
+
+    /**
+     * A measured message, with the type it is decoded into
+     */
+    private static class Message {
+        private final String name;
+        private final Object object;
+        private final Type type;
+
+        Message(String name, Object object, Type type) {
+            this.name = name;
+            this.object = object;
+            this.type = type;
+        }
+    }
+
+    /**
+     * Encodes a message
+     */
+    private static class Encoding implements Runnable {
+        private final MessageCodec codec;
+        private final Object object;
+
+        Encoding(MessageCodec codec, Object object) {
+            this.codec = codec;
+            this.object = object;
+        }
+
+        @Override
+        public void run() {
+            codec.encode(object);
+        }
+    }
+
+    /**
+     * Decodes a message payload
+     */
+    private static class Decoding implements Runnable {
+        private final MessageCodec codec;
+        private final byte[] payload;
+        private final Type type;
+
+        Decoding(MessageCodec codec, byte[] payload, Type type) {
+            this.codec = codec;
+            this.payload = payload;
+            this.type = type;
+        }
+
+        @Override
+        public void run() {
+            codec.decode(payload, type);
+        }
+    }
+}
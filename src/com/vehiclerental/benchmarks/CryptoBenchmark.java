@@ -0,0 +1,144 @@
+/**
+ * CarRental
+ *
+ * This file provides a micro benchmark of the encryption hot paths: the decryption of a database user (every property,
+ * or only the password hash as done by the authentication) and the encoding of an inter-branch message (serialization
+ * and encryption, as done by AbstractClusterCommunicator.sendObject before the MPI send, which can't be run outside of
+ * an MPI job)
+ *
+ * Usage: java com.vehiclerental.benchmarks.CryptoBenchmark [duration in seconds per measure]
+ */
+
+package com.vehiclerental.benchmarks;
+
+import com.vehiclerental.OperationCodes;
+import com.vehiclerental.clusterCommunicator.AbstractClusterCommunicator;
+import com.vehiclerental.contracts.UserContract;
+import com.vehiclerental.dataLayer.entities.User;
+import com.vehiclerental.presentationLayer.branch.protocolContracts.BranchRequestMessage;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+
+import java.security.Security;
+
+public class CryptoBenchmark {
+    //Default duration of a measure, in seconds
+    private static final int DEFAULT_DURATION = 5;
+
+    /**
+     * Main method, runs each measure after a warm up of the same duration
+     *
+     * @param args command line arguments
+     * @throws Exception if any exception occurs
+     */
+    public static void main(String args[]) throws Exception {
+        Security.addProvider(new BouncyCastleProvider());
+
+        long duration = (args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_DURATION) * 1000L;
+
+        User encryptedUser = createUser();
+        encryptedUser.encrypt();
+
+        BranchRequestMessage<UserContract> message = new BranchRequestMessage<UserContract>();
+        message.operationCode = OperationCodes.GET_ACCOUNT_DETAILS;
+        message.userId = 1;
+        message.object = new UserContract(createUser());
+
+        measure("User.decrypt()", new UserDecryption(encryptedUser, false), duration);
+        measure("User password hash", new UserDecryption(encryptedUser, true), duration);
+        measure("sendObject encoding", new MessageEncoding(message), duration);
+    }
+
+    /**
+     * Runs an operation for the given duration after a warm up, and prints its throughput
+     *
+     * @param name the operation name
+     * @param operation the operation
+     * @param duration the duration of the measure (milliseconds)
+     */
+    private static void measure(String name, Runnable operation, long duration) {
+        run(operation, duration);
+        long operations = run(operation, duration);
+
+        System.out.println(String.format("%-24s %12.0f ops/s", name, operations * 1000.0 / duration));
+    }
+
+    /**
+     * Runs an operation in a loop for the given duration
+     *
+     * @param operation the operation
+     * @param duration the duration (milliseconds)
+     * @return the number of operations done
+     */
+    private static long run(Runnable operation, long duration) {
+        long operations = 0;
+        long end = System.currentTimeMillis() + duration;
+
+        while (System.currentTimeMillis() < end) {
+            for (int i = 0; i < 100; i++) {
+                operation.run();
+            }
+            operations += 100;
+        }
+
+        return operations;
+    }
+
+    /**
+     * Creates a plain text user, with every encrypted field filled
+     *
+     * @return the user
+     */
+    private static User createUser() {
+        User user = new User(false, "John Smith", "john.smith@example.com", "+44 20 7946 0958",
+                "5e884898da28047151d0e56f8dc6292773603d0d6aabbdd62a11ef721d1542d8",
+                "221B Baker Street", "London", "NW1 6XE", "United Kingdom");
+        user.setId(1);
+        return user;
+    }
+
+    /**
+     * Decrypts a copy of an encrypted database user, and reads its encrypted properties
+     */
+    private static class UserDecryption implements Runnable {
+        private final User encryptedUser;
+        private final boolean passwordHashOnly;
+
+        UserDecryption(User encryptedUser, boolean passwordHashOnly) {
+            this.encryptedUser = encryptedUser;
+            this.passwordHashOnly = passwordHashOnly;
+        }
+
+        @Override
+        public void run() {
+            User user = new User(encryptedUser.getIsStaff(), encryptedUser.getFullName(), encryptedUser.getEmailAddress(),
+                    encryptedUser.getPhoneNumber(), encryptedUser.getHashedPassword(), encryptedUser.getAddress_street(),
+                    encryptedUser.getAddress_city(), encryptedUser.getAddress_postalCode(), encryptedUser.getAddress_country());
+            user.decrypt();
+
+            user.getHashedPassword();
+            if (!passwordHashOnly) {
+                user.getPhoneNumber();
+                user.getAddress_street();
+                user.getAddress_city();
+                user.getAddress_postalCode();
+                user.getAddress_country();
+            }
+        }
+    }
+
+    /**
+     * Serializes and encrypts an inter-branch message
+     */
+    private static class MessageEncoding implements Runnable {
+        private final BranchRequestMessage<UserContract> message;
+
+        MessageEncoding(BranchRequestMessage<UserContract> message) {
+            this.message = message;
+        }
+
+        @Override
+        public void run() {
+            AbstractClusterCommunicator.encodeObject(message);
+        }
+    }
+}
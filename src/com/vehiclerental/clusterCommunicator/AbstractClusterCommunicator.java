@@ -0,0 +1,679 @@
+/**
+ * CarRental
+ *
+ * This file provides the common part of the cluster communicator implementations: the message envelope, the request
+ * IDs and the matching of the responses
+ *
+ * The envelope starts with the request ID (8 bytes, 0 for a one-way message) followed by the payload (encoded by the
+ * message codec of the communicator, then encrypted unless the transport never leaves the host, see isEncryptedWith). Requests are sent without waiting for the
+ * transport, and a single progress thread polls the transport for the completion of the sends and for the responses,
+ * then completes the future of each outstanding request.
+ * The progress thread only runs while requests are outstanding
+ * Every request has a deadline (setResponseTimeout): a request still unanswered at its deadline fails and stops being
+ * outstanding, even if its response is never awaited
+ */
+
+package com.vehiclerental.clusterCommunicator;
+
+import com.vehiclerental.exceptions.ClusterCommunicatorException;
+import com.vehiclerental.utils.CryptoUtils;
+
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+public abstract class AbstractClusterCommunicator implements ClusterCommunicator {
+    //Size of the request ID at the start of every message
+    private static final int ENVELOPE_HEADER_SIZE = 8;
+    //Pause of the progress thread when the transport had nothing to progress (nanoseconds)
+    private static final long PROGRESS_IDLE_PAUSE = 50000;
+    //Interval between two searches of the expired requests by the progress thread (nanoseconds)
+    private static final long EXPIRY_CHECK_INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+
+    //Last request ID generated by this node
+    private final AtomicLong lastRequestId = new AtomicLong();
+    //Futures of the outstanding requests, by request ID
+    private final Map<Long, PendingRequest> pendingResponses = new ConcurrentHashMap<Long, PendingRequest>();
+    //Time in milliseconds given to a node to answer a request
+    private volatile long responseTimeout = 30000;
+
+    //Codec of the payloads, json until the node sets the one of its configuration
+    private volatile MessageCodec codec = new JsonMessageCodec();
+
+    //Progress thread, started with the first request
+    private Thread progressThread;
+    //True once the communicator is closed
+    private volatile boolean closed;
+
+    /**
+     * Sends an envelope, blocks until the transport has taken it (responses and one-way messages)
+     *
+     * @param response true for a response, false for a one-way message
+     * @param destinator the cluster ID of the targeted node
+     * @param tag the tag ID of the message
+     * @param message the envelope
+     * @throws ClusterCommunicatorException - In case of a communication error
+     */
+    protected abstract void sendMessage(boolean response, int destinator, int tag, byte[] message) throws ClusterCommunicatorException;
+
+    /**
+     * Starts the send of a request envelope without waiting for the transport
+     * The implementation reports a send failure with failRequest, from its progress method
+     *
+     * @param destinator the cluster ID of the targeted node
+     * @param tag the tag ID of the message
+     * @param requestId the ID of the request
+     * @param message the envelope
+     * @throws ClusterCommunicatorException - In case of a communication error
+     */
+    protected abstract void startRequest(int destinator, int tag, long requestId, byte[] message) throws ClusterCommunicatorException;
+
+    /**
+     * Receives a request or one-way envelope, blocks until a matching one arrives
+     *
+     * @param source expected source node cluster ID, or ANY_SOURCE
+     * @param tag expected message tag ID, or ANY_TAG
+     * @return The communication wrapper with the envelope
+     * @throws ClusterCommunicatorException - In case of a communication error
+     */
+    protected abstract ClusterCommunicationObject<byte[]> receiveMessage(int source, int tag) throws ClusterCommunicatorException;
+
+    /**
+     * Progresses the outstanding sends and receives available responses without blocking, every received response
+     * envelope is passed to responseReceived
+     * Only called by the progress thread
+     *
+     * @return true if something progressed, false if there was nothing to do
+     * @throws ClusterCommunicatorException - In case of a communication error
+     */
+    protected abstract boolean progress() throws ClusterCommunicatorException;
+
+    /**
+     * Tells if the payloads exchanged with a node are encrypted, both nodes must give the same answer
+     * A transport which never leaves the host can skip the encryption
+     *
+     * @param node the cluster ID of the other node
+     * @return true if the payloads are encrypted
+     */
+    protected boolean isEncryptedWith(int node) {
+        return true;
+    }
+
+    /**
+     * Creates the message codec of the given name
+     *
+     * @param name the codec name (node configuration): binary or json
+     * @return the codec
+     * @throws IllegalArgumentException if the codec is unknown
+     */
+    public static MessageCodec createCodec(String name) {
+        if (BinaryMessageCodec.NAME.equals(name)) {
+            return new BinaryMessageCodec();
+        } else if (JsonMessageCodec.NAME.equals(name)) {
+            return new JsonMessageCodec();
+        }
+
+        throw new IllegalArgumentException("Unknown cluster message codec " + name);
+    }
+
+    /**
+     * Returns the codec of the payloads
+     *
+     * @return the message codec
+     */
+    public MessageCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Sets the codec of the payloads, before the first message
+     *
+     * @param codec the message codec
+     */
+    public void setCodec(MessageCodec codec) {
+        this.codec = codec;
+    }
+
+    /**
+     * Returns the time given to a node to answer a request
+     *
+     * @return the response timeout in milliseconds
+     */
+    public long getResponseTimeout() {
+        return responseTimeout;
+    }
+
+    /**
+     * Sets the time given to a node to answer a request, applies to the requests sent afterwards
+     *
+     * @param responseTimeout the response timeout in milliseconds
+     */
+    public void setResponseTimeout(long responseTimeout) {
+        this.responseTimeout = responseTimeout;
+    }
+
+    /**
+     * Sends an object to a specific cluster node
+     *
+     * @param destinator the cluster ID of the targeted node
+     * @param tag the tag ID of the message
+     * @param object the object to send
+     * @param <T> the generic type of the object
+     * @throws ClusterCommunicatorException
+     */
+    public <T> void sendObject(int destinator, int tag, T object) throws ClusterCommunicatorException {
+        sendMessage(false, destinator, tag, createEnvelope(0, object, isEncryptedWith(destinator)));
+    }
+
+    /**
+     * Receives and deserialize a request or one-way object from a specific cluster node
+     *
+     * @param source expected source node cluster ID
+     * @param tag expected message tag ID
+     * @param type expected message object type
+     * @param <T> the generic type of the expected object
+     * @return The communication wrapper with the deserialized object
+     * @throws ClusterCommunicatorException
+     */
+    public <T> ClusterCommunicationObject<T> receiveObject(int source, int tag, Type type) throws ClusterCommunicatorException {
+        ClusterCommunicationObject<byte[]> message = receiveMessage(source, tag);
+        return decodeMessage(openEnvelope(message), type, isEncryptedWith(message.source));
+    }
+
+    /**
+     * Receives a request or one-way object from a specific cluster node, decrypted but not deserialized
+     *
+     * @param source expected source node cluster ID
+     * @param tag expected message tag ID
+     * @return The communication wrapper with the serialized object
+     * @throws ClusterCommunicatorException
+     */
+    public ClusterCommunicationObject<byte[]> receiveSerializedObject(int source, int tag) throws ClusterCommunicatorException {
+        ClusterCommunicationObject<byte[]> message = openEnvelope(receiveMessage(source, tag));
+        if (isEncryptedWith(message.source)) {
+            message.object = decryptPayload(message.object);
+        }
+
+        return message;
+    }
+
+    /**
+     * Sends a request to a specific cluster node, its response must be obtained with awaitResponse
+     *
+     * @param destinator the cluster ID of the targeted node
+     * @param tag the tag ID of the message
+     * @param object the request object
+     * @param <T> the generic type of the object
+     * @return the ID of the request
+     * @throws ClusterCommunicatorException
+     */
+    public <T> long sendRequest(int destinator, int tag, T object) throws ClusterCommunicatorException {
+        long requestId = lastRequestId.incrementAndGet();
+        registerRequest(destinator, tag, requestId, object);
+
+        return requestId;
+    }
+
+    /**
+     * Waits for the response of a request sent with sendRequest, and deserialize it
+     *
+     * @param source cluster ID of the node the request was sent to
+     * @param requestId the ID of the request
+     * @param type expected response object type
+     * @param <T> the generic type of the expected object
+     * @return The communication wrapper with the deserialized response
+     * @throws ClusterCommunicatorException
+     */
+    public <T> ClusterCommunicationObject<T> awaitResponse(int source, long requestId, Type type) throws ClusterCommunicatorException {
+        return decodeMessage(awaitEnvelope(requestId), type, isEncryptedWith(source));
+    }
+
+    /**
+     * Waits for the response of a request sent with sendRequest, decrypted but not deserialized
+     *
+     * @param source cluster ID of the node the request was sent to
+     * @param requestId the ID of the request
+     * @return The communication wrapper with the serialized response
+     * @throws ClusterCommunicatorException
+     */
+    public ClusterCommunicationObject<byte[]> awaitSerializedResponse(int source, long requestId) throws ClusterCommunicatorException {
+        ClusterCommunicationObject<byte[]> message = awaitEnvelope(requestId);
+        if (isEncryptedWith(source)) {
+            message.object = decryptPayload(message.object);
+        }
+
+        return message;
+    }
+
+    /**
+     * Waits for the opened response envelope of a request sent with sendRequest, until the deadline of the request
+     *
+     * @param requestId the ID of the request
+     * @return The communication wrapper with the encoded response
+     * @throws ClusterCommunicatorException - If the request is unknown or expired, or in case of a communication error
+     */
+    private ClusterCommunicationObject<byte[]> awaitEnvelope(long requestId) throws ClusterCommunicatorException {
+        PendingRequest response = pendingResponses.get(requestId);
+
+        if (response == null) {
+            throw new ClusterCommunicatorException("Unknown or expired cluster request " + requestId);
+        }
+
+        try {
+            return response.get(Math.max(0, response.deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new ClusterCommunicatorException("No response to the cluster request " + requestId + " before its deadline");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ClusterCommunicatorException("Interrupted while waiting for a cluster response");
+        } catch (ExecutionException e) {
+            throw new ClusterCommunicatorException(e.getCause().getMessage());
+        } finally {
+            pendingResponses.remove(requestId);
+        }
+    }
+
+    /**
+     * Sends the response of a request received with receiveObject
+     *
+     * @param destinator the cluster ID of the requesting node
+     * @param tag the tag ID of the request
+     * @param requestId the ID of the request
+     * @param object the response object
+     * @param <T> the generic type of the object
+     * @throws ClusterCommunicatorException
+     */
+    public <T> void sendResponse(int destinator, int tag, long requestId, T object) throws ClusterCommunicatorException {
+        sendMessage(true, destinator, tag, createEnvelope(requestId, object, isEncryptedWith(destinator)));
+    }
+
+    /**
+     * Sends a request to a specific cluster node without blocking
+     * If the returned future is cancelled, a later response of the request is dropped
+     *
+     * @param destinator the cluster ID of the targeted node
+     * @param tag the tag ID of the message
+     * @param object the request object
+     * @param type expected response object type
+     * @param <T> the generic type of the expected object
+     * @return the future of the communication wrapper with the deserialized response
+     */
+    public <T> CompletableFuture<ClusterCommunicationObject<T>> sendAsync(final int destinator, int tag, Object object, final Type type) {
+        final long requestId = lastRequestId.incrementAndGet();
+        CompletableFuture<ClusterCommunicationObject<byte[]>> response;
+
+        try {
+            response = registerRequest(destinator, tag, requestId, object);
+        } catch (ClusterCommunicatorException e) {
+            CompletableFuture<ClusterCommunicationObject<T>> failure = new CompletableFuture<ClusterCommunicationObject<T>>();
+            failure.completeExceptionally(e);
+            return failure;
+        }
+
+        CompletableFuture<ClusterCommunicationObject<T>> decodedResponse = response.thenApply(new Function<ClusterCommunicationObject<byte[]>, ClusterCommunicationObject<T>>() {
+            @Override
+            public ClusterCommunicationObject<T> apply(ClusterCommunicationObject<byte[]> message) {
+                return AbstractClusterCommunicator.this.<T>decodeMessage(message, type, isEncryptedWith(destinator));
+            }
+        });
+
+        //The request is not outstanding anymore once its response is consumed, failed or cancelled
+        decodedResponse.whenComplete(new BiConsumer<ClusterCommunicationObject<T>, Throwable>() {
+            @Override
+            public void accept(ClusterCommunicationObject<T> message, Throwable throwable) {
+                pendingResponses.remove(requestId);
+            }
+        });
+
+        return decodedResponse;
+    }
+
+    /**
+     * Stops the progress thread, the outstanding requests fail
+     */
+    public void close() {
+        closed = true;
+
+        synchronized (pendingResponses) {
+            pendingResponses.notifyAll();
+        }
+
+        for (PendingRequest response : pendingResponses.values()) {
+            response.completeExceptionally(new ClusterCommunicatorException("Cluster communicator closed"));
+        }
+    }
+
+    /**
+     * Called by the implementation when a response envelope is received, completes the future of its request
+     * The response of a request which is not outstanding anymore is dropped
+     *
+     * @param message the received envelope
+     */
+    protected void responseReceived(ClusterCommunicationObject<byte[]> message) {
+        ClusterCommunicationObject<byte[]> response = openEnvelope(message);
+        PendingRequest future = pendingResponses.get(response.requestId);
+
+        if (future != null) {
+            future.complete(response);
+        }
+    }
+
+    /**
+     * Called by the implementation when the send of a request failed, fails the future of the request
+     *
+     * @param requestId the ID of the request
+     * @param exception the failure
+     */
+    protected void failRequest(long requestId, ClusterCommunicatorException exception) {
+        PendingRequest future = pendingResponses.get(requestId);
+
+        if (future != null) {
+            future.completeExceptionally(exception);
+        }
+    }
+
+    /**
+     * Returns the ID of the last request sent by this node, the requests sent later have greater IDs
+     *
+     * @return the last request ID
+     */
+    protected long getLastRequestId() {
+        return lastRequestId.get();
+    }
+
+    /**
+     * Called by the implementation when a node is lost, fails the futures of the outstanding requests sent to it
+     * before the loss
+     *
+     * @param destinator the cluster ID of the lost node
+     * @param lastRequestId the last request ID when the node was lost (getLastRequestId)
+     * @param exception the failure
+     */
+    protected void failRequests(int destinator, long lastRequestId, ClusterCommunicatorException exception) {
+        for (Map.Entry<Long, PendingRequest> pendingResponse : pendingResponses.entrySet()) {
+            if (pendingResponse.getValue().destinator == destinator && pendingResponse.getKey() <= lastRequestId) {
+                pendingResponse.getValue().completeExceptionally(exception);
+            }
+        }
+    }
+
+    /**
+     * Registers an outstanding request and starts its send
+     *
+     * @param destinator the cluster ID of the targeted node
+     * @param tag the tag ID of the message
+     * @param requestId the ID of the request
+     * @param object the request object
+     * @return the future of the response envelope
+     * @throws ClusterCommunicatorException - In case of a communication error
+     */
+    private CompletableFuture<ClusterCommunicationObject<byte[]>> registerRequest(int destinator, int tag, long requestId, Object object) throws ClusterCommunicatorException {
+        if (closed) {
+            throw new ClusterCommunicatorException("Cluster communicator closed");
+        }
+
+        byte[] message = createEnvelope(requestId, object, isEncryptedWith(destinator));
+
+        //Registered before the send, the response can't arrive before its future
+        PendingRequest response = new PendingRequest(destinator, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(responseTimeout));
+        pendingResponses.put(requestId, response);
+
+        try {
+            startRequest(destinator, tag, requestId, message);
+        } catch (ClusterCommunicatorException e) {
+            pendingResponses.remove(requestId);
+            throw e;
+        }
+
+        startProgressThread();
+
+        return response;
+    }
+
+    /**
+     * Starts the progress thread if not running yet, and wakes it up
+     */
+    private void startProgressThread() {
+        synchronized (pendingResponses) {
+            if (progressThread == null) {
+                progressThread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        runProgressLoop();
+                    }
+                }, "cluster-communicator-progress");
+                progressThread.setDaemon(true);
+                progressThread.start();
+            }
+
+            pendingResponses.notifyAll();
+        }
+    }
+
+    /**
+     * Progress loop, polls the transport while requests are outstanding and sleeps otherwise
+     */
+    private void runProgressLoop() {
+        boolean progressed = false;
+        long nextExpiryCheck = System.nanoTime() + EXPIRY_CHECK_INTERVAL;
+
+        while (!closed) {
+            try {
+                if (!progressed) {
+                    synchronized (pendingResponses) {
+                        while (pendingResponses.isEmpty() && !closed) {
+                            pendingResponses.wait();
+                        }
+                    }
+                }
+
+                progressed = progress();
+
+                if (System.nanoTime() - nextExpiryCheck >= 0) {
+                    expireRequests();
+                    nextExpiryCheck = System.nanoTime() + EXPIRY_CHECK_INTERVAL;
+                }
+
+                if (!progressed) {
+                    LockSupport.parkNanos(PROGRESS_IDLE_PAUSE);
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (ClusterCommunicatorException e) {
+                //The transport failed, none of the outstanding requests can be answered anymore
+                System.out.println("[ERROR] - Cluster communicator progress failed: " + e.getMessage());
+                for (PendingRequest response : pendingResponses.values()) {
+                    response.completeExceptionally(e);
+                }
+                progressed = false;
+            }
+        }
+    }
+
+    /**
+     * Fails and forgets the outstanding requests whose deadline is over
+     * A request whose response is never awaited stops being outstanding this way, and the progress thread can sleep
+     */
+    private void expireRequests() {
+        long now = System.nanoTime();
+
+        for (Map.Entry<Long, PendingRequest> pendingResponse : pendingResponses.entrySet()) {
+            if (now - pendingResponse.getValue().deadline >= 0) {
+                pendingResponses.remove(pendingResponse.getKey());
+                pendingResponse.getValue().completeExceptionally(new ClusterCommunicatorException(
+                        "No response to the cluster request " + pendingResponse.getKey() + " before its deadline"));
+            }
+        }
+    }
+
+    /**
+     * Creates the envelope of an object
+     *
+     * @param requestId the request ID, 0 for a one-way message
+     * @param object the object to send
+     * @param encrypted true to encrypt the payload
+     * @return the envelope
+     */
+    private byte[] createEnvelope(long requestId, Object object, boolean encrypted) {
+        byte[] payload = encodeObject(codec, object, encrypted);
+
+        return ByteBuffer.allocate(ENVELOPE_HEADER_SIZE + payload.length)
+                .putLong(requestId)
+                .put(payload)
+                .array();
+    }
+
+    /**
+     * Reads the request ID of a received envelope, and extracts its payload
+     *
+     * @param message the received envelope
+     * @return The communication wrapper with the request ID and the encoded payload
+     */
+    private static ClusterCommunicationObject<byte[]> openEnvelope(ClusterCommunicationObject<byte[]> message) {
+        ByteBuffer envelope = ByteBuffer.wrap(message.object);
+
+        ClusterCommunicationObject<byte[]> opened = new ClusterCommunicationObject<byte[]>();
+        opened.source = message.source;
+        opened.tag = message.tag;
+        opened.requestId = envelope.getLong();
+        opened.object = new byte[envelope.remaining()];
+        envelope.get(opened.object);
+
+        return opened;
+    }
+
+    /**
+     * Decodes the payload of a received envelope
+     *
+     * @param message the received envelope, already opened
+     * @param type expected message object type
+     * @param encrypted true if the payload is encrypted
+     * @param <T> the generic type of the expected object
+     * @return The communication wrapper with the deserialized object
+     */
+    private <T> ClusterCommunicationObject<T> decodeMessage(ClusterCommunicationObject<byte[]> message, Type type, boolean encrypted) {
+        ClusterCommunicationObject<T> decoded = new ClusterCommunicationObject<T>();
+        decoded.source = message.source;
+        decoded.tag = message.tag;
+        decoded.requestId = message.requestId;
+        decoded.object = AbstractClusterCommunicator.<T>decodeObject(codec, message.object, type, encrypted);
+
+        return decoded;
+    }
+
+    /**
+     * Serializes to json and encrypts an object into a message payload
+     * The payload stays in bytes from the serializer to the transport, it is neither hex encoded nor converted to a string
+     *
+     * @param object the object to send
+     * @param <T> the generic type of the object
+     * @return the message payload
+     */
+    public static <T> byte[] encodeObject(T object) {
+        return encodeObject(new JsonMessageCodec(), object, true);
+    }
+
+    /**
+     * Encodes an object into a message payload with the given codec, encrypted or not
+     *
+     * @param codec the message codec
+     * @param object the object to send
+     * @param encrypted true to encrypt the payload
+     * @param <T> the generic type of the object
+     * @return the message payload
+     */
+    public static <T> byte[] encodeObject(MessageCodec codec, T object, boolean encrypted) {
+        //Serialize item
+        byte[] data = codec.encode(object);
+
+        if (!encrypted) {
+            return data;
+        }
+
+        //Encrypt data
+        try {
+            data = CryptoUtils.encryptBytes(data);
+        } catch (Exception e) {
+            //If it fails, continue with plain text data with a notification
+            System.out.println("[ERROR] - Inter-branch communication traffic cannot be encrypted");
+            e.printStackTrace();
+        }
+
+        return data;
+    }
+
+    /**
+     * Decrypts and deserializes a json message payload
+     *
+     * @param message the message payload
+     * @param type expected message object type
+     * @param <T> the generic type of the expected object
+     * @return the deserialized object
+     */
+    public static <T> T decodeObject(byte[] message, Type type) {
+        return decodeObject(new JsonMessageCodec(), message, type, true);
+    }
+
+    /**
+     * Decodes a message payload with the given codec, encrypted or not
+     *
+     * @param codec the message codec
+     * @param message the message payload
+     * @param type expected message object type
+     * @param encrypted true if the payload is encrypted
+     * @param <T> the generic type of the expected object
+     * @return the deserialized object
+     */
+    public static <T> T decodeObject(MessageCodec codec, byte[] message, Type type, boolean encrypted) {
+        //Deserialize serialized data
+        return codec.decode(encrypted ? decryptPayload(message) : message, type);
+    }
+
+    /**
+     * Decrypts a message payload
+     *
+     * @param message the message payload
+     * @return the serialized object
+     */
+    private static byte[] decryptPayload(byte[] message) {
+        //Decrypt serialzed encrypted data
+        try {
+            return CryptoUtils.decryptBytes(message);
+        } catch (Exception e) {
+            //If it fails, continue with plain text data
+            System.out.println("[ERROR] - Inter-branch communication traffic cannot be decrypted");
+            e.printStackTrace();
+            return message;
+        }
+    }
+
+    /**
+     * Future of the response envelope of an outstanding request, with the node and the deadline of the request
+     */
+    private static class PendingRequest extends CompletableFuture<ClusterCommunicationObject<byte[]>> {
+        //Cluster ID of the node the request was sent to
+        final int destinator;
+        //Time (System.nanoTime) after which the request fails
+        final long deadline;
+
+        /**
+         * Creates the future of a request
+         *
+         * @param destinator the cluster ID of the node the request is sent to
+         * @param deadline the time (System.nanoTime) after which the request fails
+         */
+        PendingRequest(int destinator, long deadline) {
+            this.destinator = destinator;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -0,0 +1,373 @@
+/**
+ * CarRental
+ *
+ * This file provides the hand written struct encoders of the binary message codec, for the cluster messages and the
+ * contracts they carry. The contracts without encoder (user and session contracts, which never cross the cluster) are
+ * still carried as json by the binary codec
+ *
+ * Once released, a struct ID is never reused and the fields are only appended at the end of a struct, see
+ * BinaryMessageCodec. The dates are written with writeDate (epoch days or minutes)
+ */
+
+package com.vehiclerental.clusterCommunicator;
+
+import com.google.gson.internal.$Gson$Types;
+import com.google.gson.reflect.TypeToken;
+import com.vehiclerental.clusterCommunicator.BinaryMessageCodec.Reader;
+import com.vehiclerental.clusterCommunicator.BinaryMessageCodec.StructCodec;
+import com.vehiclerental.clusterCommunicator.BinaryMessageCodec.Writer;
+import com.vehiclerental.contracts.*;
+import com.vehiclerental.presentationLayer.branch.protocolContracts.BranchRequestMessage;
+import com.vehiclerental.presentationLayer.branch.protocolContracts.BranchResponseMessage;
+
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.List;
+
+@SuppressWarnings({"rawtypes", "unchecked"})
+class BinaryContractCodecs {
+    //Struct IDs
+    private static final int BRANCH_REQUEST_MESSAGE = 1;
+    private static final int BRANCH_RESPONSE_MESSAGE = 2;
+    private static final int BRANCH = 3;
+    private static final int VEHICLE = 4;
+    private static final int VEHICLE_MOVE = 5;
+    private static final int BOOKING = 6;
+    private static final int BOOKING_SEARCH_RESULT = 7;
+    private static final int AVAILABLE_VEHICLES_SEARCH_RESULT = 8;
+    private static final int SEARCH_AVAILABLE_VEHICLES_REQUEST = 9;
+    private static final int CREATE_BOOKING = 10;
+    private static final int CREATE_UPDATE_VEHICLE = 11;
+    private static final int SEARCH_VEHICLE = 12;
+    private static final int CHANGE_BOOKING_STATUS = 13;
+    private static final int GET_BRANCH_VEHICLE_MOVES = 14;
+    private static final int RESULT_PAGE = 15;
+
+    //Types of the list fields
+    private static final Type BOOKING_SEARCH_RESULT_LIST_TYPE = new TypeToken<List<BookingSearchResultContract>>() {}.getType();
+    private static final Type INTEGER_LIST_TYPE = new TypeToken<List<Integer>>() {}.getType();
+
+    /**
+     * Returns the struct encoders
+     *
+     * @return the struct encoders
+     */
+    static List<StructCodec<?>> getCodecs() {
+        return Arrays.<StructCodec<?>>asList(
+                new StructCodec<BranchRequestMessage>(BRANCH_REQUEST_MESSAGE, BranchRequestMessage.class, 6) {
+                    @Override
+                    void write(Writer out, BranchRequestMessage value) {
+                        out.writeLong(value.operationCode);
+                        out.writeLong(value.userId);
+                        out.writeValue(value.object);
+                        out.writeString(value.continuationToken);
+                        out.writeLong(value.limit);
+                        out.writeBoolean(value.relayedResponse);
+                    }
+
+                    @Override
+                    BranchRequestMessage read(Reader in, Type[] typeArguments) {
+                        BranchRequestMessage value = new BranchRequestMessage();
+                        value.operationCode = in.readIntField();
+                        value.userId = in.readIntField();
+                        value.object = in.readField(typeArgument(typeArguments, 0));
+                        value.continuationToken = in.readStringField();
+                        value.limit = in.readIntField();
+                        value.relayedResponse = in.readBooleanField();
+                        return value;
+                    }
+                },
+                new StructCodec<BranchResponseMessage>(BRANCH_RESPONSE_MESSAGE, BranchResponseMessage.class, 4) {
+                    @Override
+                    void write(Writer out, BranchResponseMessage value) {
+                        out.writeLong(value.OperationCode);
+                        out.writeLong(value.Status);
+                        out.writeString(value.Error);
+                        out.writeValue(value.Object);
+                    }
+
+                    @Override
+                    BranchResponseMessage read(Reader in, Type[] typeArguments) {
+                        BranchResponseMessage value = new BranchResponseMessage();
+                        value.OperationCode = in.readIntField();
+                        value.Status = in.readIntField();
+                        value.Error = in.readStringField();
+                        value.Object = in.readField(typeArgument(typeArguments, 0));
+                        return value;
+                    }
+                },
+                new StructCodec<BranchContract>(BRANCH, BranchContract.class, 4) {
+                    @Override
+                    void write(Writer out, BranchContract value) {
+                        out.writeLong(value.id);
+                        out.writeString(value.name);
+                        out.writeDouble(value.latitude);
+                        out.writeDouble(value.longitude);
+                    }
+
+                    @Override
+                    BranchContract read(Reader in, Type[] typeArguments) {
+                        BranchContract value = new BranchContract();
+                        value.id = in.readIntField();
+                        value.name = in.readStringField();
+                        value.latitude = in.readDoubleField();
+                        value.longitude = in.readDoubleField();
+                        return value;
+                    }
+                },
+                new StructCodec<VehicleContract>(VEHICLE, VehicleContract.class, 10) {
+                    @Override
+                    void write(Writer out, VehicleContract value) {
+                        out.writeLong(value.id);
+                        out.writeValue(value.branch);
+                        out.writeLong(value.type);
+                        out.writeLong(value.status);
+                        out.writeString(value.registrationNumber);
+                        out.writeLong(value.doors);
+                        out.writeLong(value.seats);
+                        out.writeBoolean(value.automaticTransmission);
+                        out.writeDouble(value.poundsPerDay);
+                        out.writeString(value.name);
+                    }
+
+                    @Override
+                    VehicleContract read(Reader in, Type[] typeArguments) {
+                        VehicleContract value = new VehicleContract();
+                        value.id = in.readIntField();
+                        value.branch = in.readField(BranchContract.class);
+                        value.type = in.readIntField();
+                        value.status = in.readIntField();
+                        value.registrationNumber = in.readStringField();
+                        value.doors = in.readIntField();
+                        value.seats = in.readIntField();
+                        value.automaticTransmission = in.readBooleanField();
+                        value.poundsPerDay = in.readDoubleField();
+                        value.name = in.readStringField();
+                        return value;
+                    }
+                },
+                new StructCodec<VehicleMoveContract>(VEHICLE_MOVE, VehicleMoveContract.class, 3) {
+                    @Override
+                    void write(Writer out, VehicleMoveContract value) {
+                        out.writeLong(value.id);
+                        out.writeDate(value.vehicleMoveDate);
+                        out.writeDate(value.vehicleReturnDate);
+                    }
+
+                    @Override
+                    VehicleMoveContract read(Reader in, Type[] typeArguments) {
+                        VehicleMoveContract value = new VehicleMoveContract();
+                        value.id = in.readIntField();
+                        value.vehicleMoveDate = in.readStringField();
+                        value.vehicleReturnDate = in.readStringField();
+                        return value;
+                    }
+                },
+                new StructCodec<BookingContract>(BOOKING, BookingContract.class, 10) {
+                    @Override
+                    void write(Writer out, BookingContract value) {
+                        out.writeLong(value.id);
+                        out.writeString(value.branch);
+                        out.writeValue(value.vehicle);
+                        out.writeValue(value.vehicleMove);
+                        out.writeDate(value.pickupDate);
+                        out.writeDate(value.returnDate);
+                        out.writeLong(value.daysCount);
+                        out.writeDouble(value.price);
+                        out.writeBoolean(value.bookingValidated);
+                        out.writeBoolean(value.requireVehicleMove);
+                    }
+
+                    @Override
+                    BookingContract read(Reader in, Type[] typeArguments) {
+                        BookingContract value = new BookingContract();
+                        value.id = in.readIntField();
+                        value.branch = in.readStringField();
+                        value.vehicle = in.readField(VehicleContract.class);
+                        value.vehicleMove = in.readField(VehicleMoveContract.class);
+                        value.pickupDate = in.readStringField();
+                        value.returnDate = in.readStringField();
+                        value.daysCount = in.readLongField();
+                        value.price = in.readDoubleField();
+                        value.bookingValidated = in.readBooleanField();
+                        value.requireVehicleMove = in.readBooleanField();
+                        return value;
+                    }
+                },
+                new StructCodec<BookingSearchResultContract>(BOOKING_SEARCH_RESULT, BookingSearchResultContract.class, 6) {
+                    @Override
+                    void write(Writer out, BookingSearchResultContract value) {
+                        out.writeBoolean(value.requireVehicleMove);
+                        out.writeValue(value.vehicle);
+                        out.writeDate(value.pickupDate);
+                        out.writeDate(value.returnDate);
+                        out.writeLong(value.daysCount);
+                        out.writeDouble(value.price);
+                    }
+
+                    @Override
+                    BookingSearchResultContract read(Reader in, Type[] typeArguments) {
+                        BookingSearchResultContract value = new BookingSearchResultContract();
+                        value.requireVehicleMove = in.readBooleanField();
+                        value.vehicle = in.readField(VehicleContract.class);
+                        value.pickupDate = in.readStringField();
+                        value.returnDate = in.readStringField();
+                        value.daysCount = in.readLongField();
+                        value.price = in.readDoubleField();
+                        return value;
+                    }
+                },
+                new StructCodec<AvailableVehiclesSearchResultContract>(AVAILABLE_VEHICLES_SEARCH_RESULT, AvailableVehiclesSearchResultContract.class, 2) {
+                    @Override
+                    void write(Writer out, AvailableVehiclesSearchResultContract value) {
+                        out.writeList(value.vehicles);
+                        out.writeList(value.respondingBranchIds);
+                    }
+
+                    @Override
+                    AvailableVehiclesSearchResultContract read(Reader in, Type[] typeArguments) {
+                        AvailableVehiclesSearchResultContract value = new AvailableVehiclesSearchResultContract();
+                        value.vehicles = in.readField(BOOKING_SEARCH_RESULT_LIST_TYPE);
+                        value.respondingBranchIds = in.readField(INTEGER_LIST_TYPE);
+                        return value;
+                    }
+                },
+                new StructCodec<SearchAvailableVehiclesRequestContract>(SEARCH_AVAILABLE_VEHICLES_REQUEST, SearchAvailableVehiclesRequestContract.class, 3) {
+                    @Override
+                    void write(Writer out, SearchAvailableVehiclesRequestContract value) {
+                        out.writeLong(value.vehicleType);
+                        out.writeDate(value.pickupDate);
+                        out.writeDate(value.returnDate);
+                    }
+
+                    @Override
+                    SearchAvailableVehiclesRequestContract read(Reader in, Type[] typeArguments) {
+                        SearchAvailableVehiclesRequestContract value = new SearchAvailableVehiclesRequestContract();
+                        value.vehicleType = in.readIntField();
+                        value.pickupDate = in.readStringField();
+                        value.returnDate = in.readStringField();
+                        return value;
+                    }
+                },
+                new StructCodec<CreateBookingContract>(CREATE_BOOKING, CreateBookingContract.class, 10) {
+                    @Override
+                    void write(Writer out, CreateBookingContract value) {
+                        out.writeLong(value.vehicleId);
+                        out.writeLong(value.vehicleBranchId);
+                        out.writeLong(value.bookingBranchId);
+                        out.writeDate(value.pickupDate);
+                        out.writeDate(value.returnDate);
+                        out.writeString(value.creditCardNumber);
+                        out.writeString(value.creditCardExpirationMonth);
+                        out.writeString(value.creditCardExpirationYear);
+                        out.writeString(value.creditCardCvcCode);
+                        out.writeInteger(value.bookingOwnerUserId);
+                    }
+
+                    @Override
+                    CreateBookingContract read(Reader in, Type[] typeArguments) {
+                        CreateBookingContract value = new CreateBookingContract();
+                        value.vehicleId = in.readIntField();
+                        value.vehicleBranchId = in.readIntField();
+                        value.bookingBranchId = in.readIntField();
+                        value.pickupDate = in.readStringField();
+                        value.returnDate = in.readStringField();
+                        value.creditCardNumber = in.readStringField();
+                        value.creditCardExpirationMonth = in.readStringField();
+                        value.creditCardExpirationYear = in.readStringField();
+                        value.creditCardCvcCode = in.readStringField();
+                        value.bookingOwnerUserId = in.readIntegerField();
+                        return value;
+                    }
+                },
+                new StructCodec<CreateUpdateVehicleContract>(CREATE_UPDATE_VEHICLE, CreateUpdateVehicleContract.class, 10) {
+                    @Override
+                    void write(Writer out, CreateUpdateVehicleContract value) {
+                        out.writeLong(value.type);
+                        out.writeString(value.registrationNumber);
+                        out.writeLong(value.doors);
+                        out.writeLong(value.seats);
+                        out.writeBoolean(value.automaticTransmission);
+                        out.writeDouble(value.poundsPerDay);
+                        out.writeString(value.name);
+                        out.writeBoolean(value.isUpdateOperation);
+                        out.writeLong(value.id);
+                        out.writeLong(value.newStatusId);
+                    }
+
+                    @Override
+                    CreateUpdateVehicleContract read(Reader in, Type[] typeArguments) {
+                        CreateUpdateVehicleContract value = new CreateUpdateVehicleContract();
+                        value.type = in.readIntField();
+                        value.registrationNumber = in.readStringField();
+                        value.doors = in.readIntField();
+                        value.seats = in.readIntField();
+                        value.automaticTransmission = in.readBooleanField();
+                        value.poundsPerDay = in.readDoubleField();
+                        value.name = in.readStringField();
+                        value.isUpdateOperation = in.readBooleanField();
+                        value.id = in.readIntField();
+                        value.newStatusId = in.readIntField();
+                        return value;
+                    }
+                },
+                new StructCodec<SearchVehicleContract>(SEARCH_VEHICLE, SearchVehicleContract.class, 2) {
+                    @Override
+                    void write(Writer out, SearchVehicleContract value) {
+                        out.writeString(value.registrationNumber);
+                        out.writeLong(value.vehicleTypeId);
+                    }
+
+                    @Override
+                    SearchVehicleContract read(Reader in, Type[] typeArguments) {
+                        SearchVehicleContract value = new SearchVehicleContract();
+                        value.registrationNumber = in.readStringField();
+                        value.vehicleTypeId = in.readIntField();
+                        return value;
+                    }
+                },
+                new StructCodec<ChangeBookingStatusContract>(CHANGE_BOOKING_STATUS, ChangeBookingStatusContract.class, 2) {
+                    @Override
+                    void write(Writer out, ChangeBookingStatusContract value) {
+                        out.writeLong(value.bookingId);
+                        out.writeBoolean(value.bookingValidated);
+                    }
+
+                    @Override
+                    ChangeBookingStatusContract read(Reader in, Type[] typeArguments) {
+                        ChangeBookingStatusContract value = new ChangeBookingStatusContract();
+                        value.bookingId = in.readIntField();
+                        value.bookingValidated = in.readBooleanField();
+                        return value;
+                    }
+                },
+                new StructCodec<GetBranchVehicleMovesContract>(GET_BRANCH_VEHICLE_MOVES, GetBranchVehicleMovesContract.class, 1) {
+                    @Override
+                    void write(Writer out, GetBranchVehicleMovesContract value) {
+                        out.writeBoolean(value.outgoing);
+                    }
+
+                    @Override
+                    GetBranchVehicleMovesContract read(Reader in, Type[] typeArguments) {
+                        GetBranchVehicleMovesContract value = new GetBranchVehicleMovesContract();
+                        value.outgoing = in.readBooleanField();
+                        return value;
+                    }
+                },
+                new StructCodec<ResultPageContract>(RESULT_PAGE, ResultPageContract.class, 2) {
+                    @Override
+                    void write(Writer out, ResultPageContract value) {
+                        out.writeList(value.items);
+                        out.writeString(value.continuationToken);
+                    }
+
+                    @Override
+                    ResultPageContract read(Reader in, Type[] typeArguments) {
+                        ResultPageContract value = new ResultPageContract();
+                        value.items = in.readField($Gson$Types.newParameterizedTypeWithOwner(null, List.class, typeArgument(typeArguments, 0)));
+                        value.continuationToken = in.readStringField();
+                        return value;
+                    }
+                });
+    }
+}
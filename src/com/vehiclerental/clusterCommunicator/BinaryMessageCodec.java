@@ -0,0 +1,850 @@
+/**
+ * CarRental
+ *
+ * This file provides the binary implementation of the message codec, the default codec of the cluster nodes
+ *
+ * A payload starts with the format version (1 byte) followed by a single tagged value:
+ *  - null, false, true: the tag only
+ *  - integer (byte to long): zig-zag varint
+ *  - double: 8 bytes, big endian
+ *  - string: varint length and UTF-8 bytes
+ *  - date (ISO8601 string of DateUtils): varint epoch days, or varint epoch minutes when not at midnight
+ *  - list: varint size and the tagged elements
+ *  - struct: varint struct ID, varint field count and the tagged fields, in the order of the struct version
+ *  - json: a string holding the gson serialization of an object without struct encoder (or a RawJson), read back as
+ *    is into a RawJson when one is expected
+ *
+ * The structs are encoded by hand (BinaryContractCodecs), without reflection. A struct ID is never reused, the fields
+ * of a struct are only ever appended: a reader skips the fields it doesn't know and leaves the missing ones to their
+ * default value, so the nodes of two versions of the struct can still exchange it
+ */
+
+package com.vehiclerental.clusterCommunicator;
+
+import com.vehiclerental.utils.RawJson;
+import com.vehiclerental.utils.SerializationUtils;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class BinaryMessageCodec implements MessageCodec {
+    //Name of the codec in the node configuration
+    public static final String NAME = "binary";
+    //Version of the payload format, first byte of every payload
+    static final int FORMAT_VERSION = 1;
+
+    //Value tags
+    static final int TAG_NULL = 0;
+    static final int TAG_FALSE = 1;
+    static final int TAG_TRUE = 2;
+    static final int TAG_INTEGER = 3;
+    static final int TAG_DOUBLE = 4;
+    static final int TAG_STRING = 5;
+    static final int TAG_DATE_DAYS = 6;
+    static final int TAG_DATE_MINUTES = 7;
+    static final int TAG_LIST = 8;
+    static final int TAG_STRUCT = 9;
+    static final int TAG_JSON = 10;
+
+    //Minutes in a day, dates at midnight are encoded in days
+    private static final int MINUTES_PER_DAY = 24 * 60;
+    //Length of an ISO8601 date string of DateUtils (yyyy-MM-ddTHH:mm+0000)
+    private static final int DATE_LENGTH = 21;
+
+    //Struct encoders, by class and by struct ID
+    private static final Map<Class<?>, StructCodec<?>> codecsByClass = new HashMap<Class<?>, StructCodec<?>>();
+    private static final Map<Integer, StructCodec<?>> codecsById = new HashMap<Integer, StructCodec<?>>();
+
+    static {
+        for (StructCodec<?> codec : BinaryContractCodecs.getCodecs()) {
+            if (codecsById.put(codec.id, codec) != null) {
+                throw new IllegalStateException("Struct ID " + codec.id + " used twice");
+            }
+            codecsByClass.put(codec.type, codec);
+        }
+    }
+
+    /**
+     * Encodes an object into a binary payload
+     *
+     * @param object the object to encode, can be null
+     * @return the message payload
+     */
+    @Override
+    public byte[] encode(Object object) {
+        Writer writer = new Writer();
+        writer.writeByte(FORMAT_VERSION);
+        writer.writeValue(object);
+
+        return writer.toByteArray();
+    }
+
+    /**
+     * Decodes a binary payload into the expected type
+     *
+     * @param payload the message payload
+     * @param type the expected object type
+     * @param <T> the expected object type (Generic)
+     * @return the decoded object
+     * @throws IllegalArgumentException if the payload is not a binary payload of this version
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T decode(byte[] payload, Type type) {
+        Reader reader = new Reader(payload);
+
+        int version = reader.readByte();
+        if (version != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported binary message version " + version);
+        }
+
+        T object = (T) reader.readValue(type);
+        if (reader.position != payload.length) {
+            throw new IllegalArgumentException("Unexpected data after the binary message");
+        }
+
+        return object;
+    }
+
+    /**
+     * The payloads are binary
+     *
+     * @return false
+     */
+    @Override
+    public boolean isJson() {
+        return false;
+    }
+
+    /**
+     * Encoder of a struct: writes and reads its fields, in the order of its version
+     *
+     * @param <T> the struct class
+     */
+    abstract static class StructCodec<T> {
+        //ID of the struct in the payloads
+        final int id;
+        //Class of the struct
+        final Class<T> type;
+        //Number of fields written by this version
+        final int fieldCount;
+
+        /**
+         * Constructor
+         *
+         * @param id the ID of the struct, never reused
+         * @param type the class of the struct
+         * @param fieldCount the number of fields written
+         */
+        StructCodec(int id, Class<T> type, int fieldCount) {
+            this.id = id;
+            this.type = type;
+            this.fieldCount = fieldCount;
+        }
+
+        /**
+         * Writes the fields of a struct, exactly fieldCount tagged values
+         *
+         * @param out the writer
+         * @param value the struct
+         */
+        abstract void write(Writer out, T value);
+
+        /**
+         * Reads the fields of a struct, the missing fields are read as their default value
+         *
+         * @param in the reader
+         * @param typeArguments the type arguments of the expected struct type (empty if not generic)
+         * @return the struct
+         */
+        abstract T read(Reader in, Type[] typeArguments);
+
+        /**
+         * Returns a type argument of the expected struct type
+         *
+         * @param typeArguments the type arguments
+         * @param index the index of the argument
+         * @return the type argument, or Object if unknown
+         */
+        static Type typeArgument(Type[] typeArguments, int index) {
+            return index < typeArguments.length ? typeArguments[index] : Object.class;
+        }
+    }
+
+    /**
+     * Growing buffer of an encoded payload
+     */
+    static class Writer {
+        //Encoded bytes
+        private byte[] buffer = new byte[256];
+        //Number of encoded bytes
+        private int position;
+
+        /**
+         * Writes any value: null, boxed primitive, string, collection, struct, or else gson json
+         *
+         * @param value the value
+         */
+        @SuppressWarnings("unchecked")
+        void writeValue(Object value) {
+            if (value == null) {
+                writeByte(TAG_NULL);
+            } else if (value instanceof Boolean) {
+                writeBoolean((Boolean) value);
+            } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+                writeLong(((Number) value).longValue());
+            } else if (value instanceof Double || value instanceof Float) {
+                writeDouble(((Number) value).doubleValue());
+            } else if (value instanceof String) {
+                writeString((String) value);
+            } else if (value instanceof Collection) {
+                writeList((Collection<?>) value);
+            } else if (value instanceof RawJson) {
+                writeByte(TAG_JSON);
+                writeUtf8(((RawJson) value).getJson());
+            } else {
+                StructCodec<Object> codec = (StructCodec<Object>) codecsByClass.get(value.getClass());
+
+                if (codec != null) {
+                    writeByte(TAG_STRUCT);
+                    writeVarint(codec.id);
+                    writeVarint(codec.fieldCount);
+                    codec.write(this, value);
+                } else {
+                    //No struct encoder, the object is still carried as json
+                    writeByte(TAG_JSON);
+                    writeUtf8(SerializationUtils.serialize(value));
+                }
+            }
+        }
+
+        /**
+         * Writes a boolean
+         *
+         * @param value the value
+         */
+        void writeBoolean(boolean value) {
+            writeByte(value ? TAG_TRUE : TAG_FALSE);
+        }
+
+        /**
+         * Writes an integer, of any size
+         *
+         * @param value the value
+         */
+        void writeLong(long value) {
+            writeByte(TAG_INTEGER);
+            writeVarint(zigZag(value));
+        }
+
+        /**
+         * Writes a nullable integer
+         *
+         * @param value the value, or null
+         */
+        void writeInteger(Integer value) {
+            if (value == null) {
+                writeByte(TAG_NULL);
+            } else {
+                writeLong(value);
+            }
+        }
+
+        /**
+         * Writes a double
+         *
+         * @param value the value
+         */
+        void writeDouble(double value) {
+            writeByte(TAG_DOUBLE);
+            ensureCapacity(8);
+
+            long bits = Double.doubleToLongBits(value);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer[position++] = (byte) (bits >>> shift);
+            }
+        }
+
+        /**
+         * Writes a string
+         *
+         * @param value the value, or null
+         */
+        void writeString(String value) {
+            if (value == null) {
+                writeByte(TAG_NULL);
+            } else {
+                writeByte(TAG_STRING);
+                writeUtf8(value);
+            }
+        }
+
+        /**
+         * Writes an ISO8601 date string (DateUtils) as epoch days or minutes
+         * A string which isn't a date of DateUtils is written as is, the branches still validate it
+         *
+         * @param value the date string, or null
+         */
+        void writeDate(String value) {
+            long minutes = parseDateMinutes(value);
+
+            if (minutes == Long.MIN_VALUE) {
+                writeString(value);
+            } else if (minutes % MINUTES_PER_DAY == 0) {
+                writeByte(TAG_DATE_DAYS);
+                writeVarint(zigZag(minutes / MINUTES_PER_DAY));
+            } else {
+                writeByte(TAG_DATE_MINUTES);
+                writeVarint(zigZag(minutes));
+            }
+        }
+
+        /**
+         * Writes a list, its elements are written as any value
+         *
+         * @param values the list, or null
+         */
+        void writeList(Collection<?> values) {
+            if (values == null) {
+                writeByte(TAG_NULL);
+                return;
+            }
+
+            writeByte(TAG_LIST);
+            writeVarint(values.size());
+            for (Object value : values) {
+                writeValue(value);
+            }
+        }
+
+        /**
+         * Returns the encoded payload
+         *
+         * @return the encoded bytes
+         */
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, position);
+        }
+
+        /**
+         * Writes an unsigned varint, 7 bits per byte
+         *
+         * @param value the value
+         */
+        private void writeVarint(long value) {
+            ensureCapacity(10);
+
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        /**
+         * Writes the length and the UTF-8 bytes of a string
+         *
+         * @param value the string
+         */
+        private void writeUtf8(String value) {
+            int length = value.length();
+
+            //ASCII fast path, the usual case of the contracts
+            int i = 0;
+            while (i < length && value.charAt(i) < 0x80) {
+                i++;
+            }
+
+            if (i == length) {
+                writeVarint(length);
+                ensureCapacity(length);
+                for (i = 0; i < length; i++) {
+                    buffer[position++] = (byte) value.charAt(i);
+                }
+            } else {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                writeVarint(bytes.length);
+                ensureCapacity(bytes.length);
+                System.arraycopy(bytes, 0, buffer, position, bytes.length);
+                position += bytes.length;
+            }
+        }
+
+        /**
+         * Writes a single byte
+         *
+         * @param value the byte
+         */
+        private void writeByte(int value) {
+            ensureCapacity(1);
+            buffer[position++] = (byte) value;
+        }
+
+        /**
+         * Grows the buffer to hold the given number of additional bytes
+         *
+         * @param length the number of bytes to write
+         */
+        private void ensureCapacity(int length) {
+            if (position + length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + length));
+            }
+        }
+    }
+
+    /**
+     * Reader of an encoded payload
+     */
+    static class Reader {
+        //Encoded bytes
+        private final byte[] data;
+        //Current position
+        private int position;
+        //Number of fields of the struct being read which are not read yet
+        private int remainingFields;
+
+        /**
+         * Constructor
+         *
+         * @param data the encoded bytes
+         */
+        Reader(byte[] data) {
+            this.data = data;
+        }
+
+        /**
+         * Reads any value, converted to the expected type when it is a number
+         *
+         * @param type the expected type, Object if unknown
+         * @return the value
+         */
+        Object readValue(Type type) {
+            return readTaggedValue(readByte(), type);
+        }
+
+        /**
+         * Reads an int field of a struct
+         *
+         * @return the value, 0 if missing
+         */
+        int readIntField() {
+            return (int) readLongField();
+        }
+
+        /**
+         * Reads a long field of a struct
+         *
+         * @return the value, 0 if missing
+         */
+        long readLongField() {
+            if (!nextField()) {
+                return 0;
+            }
+
+            int tag = readByte();
+            if (tag == TAG_INTEGER) {
+                return unZigZag(readVarint());
+            }
+
+            return ((Number) defaultIfNull(readTaggedValue(tag, long.class), 0L)).longValue();
+        }
+
+        /**
+         * Reads a nullable int field of a struct
+         *
+         * @return the value, null if missing
+         */
+        Integer readIntegerField() {
+            return nextField() ? (Integer) readValue(Integer.class) : null;
+        }
+
+        /**
+         * Reads a double field of a struct
+         *
+         * @return the value, 0 if missing
+         */
+        double readDoubleField() {
+            if (!nextField()) {
+                return 0;
+            }
+
+            return ((Number) defaultIfNull(readValue(double.class), 0.0)).doubleValue();
+        }
+
+        /**
+         * Reads a boolean field of a struct
+         *
+         * @return the value, false if missing
+         */
+        boolean readBooleanField() {
+            if (!nextField()) {
+                return false;
+            }
+
+            int tag = readByte();
+            return tag == TAG_TRUE || (tag != TAG_FALSE && Boolean.TRUE.equals(readTaggedValue(tag, boolean.class)));
+        }
+
+        /**
+         * Reads a string or date field of a struct
+         *
+         * @return the value, null if missing
+         */
+        String readStringField() {
+            return nextField() ? (String) readValue(String.class) : null;
+        }
+
+        /**
+         * Reads a field of any type of a struct
+         *
+         * @param type the expected type
+         * @param <T> the expected type (Generic)
+         * @return the value, null if missing
+         */
+        @SuppressWarnings("unchecked")
+        <T> T readField(Type type) {
+            return nextField() ? (T) readValue(type) : null;
+        }
+
+        /**
+         * Reads a value, after its tag
+         *
+         * @param tag the value tag
+         * @param type the expected type
+         * @return the value
+         */
+        private Object readTaggedValue(int tag, Type type) {
+            switch (tag) {
+                case TAG_NULL:
+                    return null;
+                case TAG_FALSE:
+                    return Boolean.FALSE;
+                case TAG_TRUE:
+                    return Boolean.TRUE;
+                case TAG_INTEGER:
+                    return toNumber(unZigZag(readVarint()), type);
+                case TAG_DOUBLE:
+                    return toNumber(readDouble(), type);
+                case TAG_STRING:
+                    return readUtf8();
+                case TAG_DATE_DAYS:
+                    return formatDate(unZigZag(readVarint()) * MINUTES_PER_DAY);
+                case TAG_DATE_MINUTES:
+                    return formatDate(unZigZag(readVarint()));
+                case TAG_LIST:
+                    return readList(type);
+                case TAG_STRUCT:
+                    return readStruct(type);
+                case TAG_JSON:
+                    if (type == RawJson.class) {
+                        return new RawJson(readUtf8());
+                    }
+                    return SerializationUtils.deserialize(readUtf8(), type);
+                default:
+                    throw new IllegalArgumentException("Unknown binary value tag " + tag + " at " + (position - 1));
+            }
+        }
+
+        /**
+         * Reads the elements of a list
+         *
+         * @param type the expected list type
+         * @return the list
+         */
+        private List<Object> readList(Type type) {
+            Type elementType = type instanceof ParameterizedType ? ((ParameterizedType) type).getActualTypeArguments()[0] : Object.class;
+            int size = (int) readVarint();
+
+            if (size > data.length - position) {
+                throw new IllegalArgumentException("Invalid binary list size " + size);
+            }
+
+            List<Object> values = new ArrayList<Object>(size);
+            for (int i = 0; i < size; i++) {
+                values.add(readValue(elementType));
+            }
+
+            return values;
+        }
+
+        /**
+         * Reads a struct with its encoder, and skips the fields added by a later version
+         *
+         * @param type the expected struct type
+         * @return the struct
+         */
+        private Object readStruct(Type type) {
+            int id = (int) readVarint();
+            StructCodec<?> codec = codecsById.get(id);
+
+            if (codec == null) {
+                throw new IllegalArgumentException("Unknown binary struct " + id);
+            }
+
+            Type[] typeArguments = type instanceof ParameterizedType ? ((ParameterizedType) type).getActualTypeArguments() : new Type[0];
+
+            int parentRemainingFields = remainingFields;
+            remainingFields = (int) readVarint();
+
+            Object value = codec.read(this, typeArguments);
+            while (nextField()) {
+                readValue(Object.class);
+            }
+
+            remainingFields = parentRemainingFields;
+            return value;
+        }
+
+        /**
+         * Tells if the struct being read has a field left, and counts it as read
+         *
+         * @return true if the field is present
+         */
+        private boolean nextField() {
+            if (remainingFields == 0) {
+                return false;
+            }
+
+            remainingFields--;
+            return true;
+        }
+
+        /**
+         * Reads an unsigned varint
+         *
+         * @return the value
+         */
+        private long readVarint() {
+            long value = 0;
+
+            for (int shift = 0; shift < 64; shift += 7) {
+                int current = readByte();
+                value |= (long) (current & 0x7F) << shift;
+
+                if ((current & 0x80) == 0) {
+                    return value;
+                }
+            }
+
+            throw new IllegalArgumentException("Invalid binary varint at " + position);
+        }
+
+        /**
+         * Reads a big endian double
+         *
+         * @return the value
+         */
+        private double readDouble() {
+            checkAvailable(8);
+
+            long bits = 0;
+            for (int i = 0; i < 8; i++) {
+                bits = (bits << 8) | (data[position++] & 0xFF);
+            }
+
+            return Double.longBitsToDouble(bits);
+        }
+
+        /**
+         * Reads the length and the UTF-8 bytes of a string
+         *
+         * @return the string
+         */
+        private String readUtf8() {
+            int length = (int) readVarint();
+            checkAvailable(length);
+
+            String value = new String(data, position, length, StandardCharsets.UTF_8);
+            position += length;
+
+            return value;
+        }
+
+        /**
+         * Reads a single byte
+         *
+         * @return the byte, unsigned
+         */
+        private int readByte() {
+            checkAvailable(1);
+            return data[position++] & 0xFF;
+        }
+
+        /**
+         * Checks that the payload holds the given number of bytes after the current position
+         *
+         * @param length the number of bytes to read
+         */
+        private void checkAvailable(int length) {
+            if (length < 0 || length > data.length - position) {
+                throw new IllegalArgumentException("Truncated binary message");
+            }
+        }
+
+        /**
+         * Converts a decoded number to the expected type
+         *
+         * @param value the decoded number
+         * @param type the expected type
+         * @return the converted number
+         */
+        private static Object toNumber(long value, Type type) {
+            if (type == int.class || type == Integer.class) {
+                return (int) value;
+            } else if (type == double.class || type == Double.class) {
+                return (double) value;
+            } else if (type == short.class || type == Short.class) {
+                return (short) value;
+            } else if (type == byte.class || type == Byte.class) {
+                return (byte) value;
+            } else if (type == float.class || type == Float.class) {
+                return (float) value;
+            } else if (type == long.class || type == Long.class) {
+                return value;
+            }
+
+            //Unknown type, the smallest box holding the value
+            return value == (int) value ? Integer.valueOf((int) value) : Long.valueOf(value);
+        }
+
+        /**
+         * Converts a decoded double to the expected type
+         *
+         * @param value the decoded double
+         * @param type the expected type
+         * @return the converted number
+         */
+        private static Object toNumber(double value, Type type) {
+            return type == float.class || type == Float.class ? (Object) (float) value : (Object) value;
+        }
+
+        /**
+         * Replaces a null value
+         *
+         * @param value the value
+         * @param defaultValue the replacement of null
+         * @return the value, or the replacement
+         */
+        private static Object defaultIfNull(Object value, Object defaultValue) {
+            return value != null ? value : defaultValue;
+        }
+    }
+
+    /**
+     * Parses an ISO8601 date string of DateUtils (yyyy-MM-ddTHH:mm+0000) into epoch minutes, without a date format
+     * Any other string, including an equivalent date in another form, is refused so it is decoded to the same string
+     *
+     * @param value the date string
+     * @return the epoch minutes, or Long.MIN_VALUE if the string isn't a date of DateUtils
+     */
+    static long parseDateMinutes(String value) {
+        if (value == null || value.length() != DATE_LENGTH
+                || value.charAt(4) != '-' || value.charAt(7) != '-' || value.charAt(10) != 'T' || value.charAt(13) != ':'
+                || !value.endsWith("+0000")) {
+            return Long.MIN_VALUE;
+        }
+
+        int year = parseDigits(value, 0, 4);
+        int month = parseDigits(value, 5, 7);
+        int day = parseDigits(value, 8, 10);
+        int hours = parseDigits(value, 11, 13);
+        int minutes = parseDigits(value, 14, 16);
+
+        if (year < 1000 || month < 1 || month > 12 || day < 1 || day > 31 || hours < 0 || hours > 23 || minutes < 0 || minutes > 59) {
+            return Long.MIN_VALUE;
+        }
+        if (day > LocalDate.of(year, month, 1).lengthOfMonth()) {
+            return Long.MIN_VALUE;
+        }
+
+        return LocalDate.of(year, month, day).toEpochDay() * MINUTES_PER_DAY + hours * 60 + minutes;
+    }
+
+    /**
+     * Formats epoch minutes into an ISO8601 date string of DateUtils
+     *
+     * @param epochMinutes the epoch minutes
+     * @return the date string
+     */
+    static String formatDate(long epochMinutes) {
+        LocalDate date = LocalDate.ofEpochDay(Math.floorDiv(epochMinutes, MINUTES_PER_DAY));
+        int minutesOfDay = (int) Math.floorMod(epochMinutes, MINUTES_PER_DAY);
+
+        StringBuilder builder = new StringBuilder(DATE_LENGTH);
+        appendDigits(builder, date.getYear(), 4).append('-');
+        appendDigits(builder, date.getMonthValue(), 2).append('-');
+        appendDigits(builder, date.getDayOfMonth(), 2).append('T');
+        appendDigits(builder, minutesOfDay / 60, 2).append(':');
+        appendDigits(builder, minutesOfDay % 60, 2).append("+0000");
+
+        return builder.toString();
+    }
+
+    /**
+     * Parses the decimal digits of a part of a string
+     *
+     * @param value the string
+     * @param start the index of the first digit
+     * @param end the index after the last digit
+     * @return the number, or -1 if a character isn't a digit
+     */
+    private static int parseDigits(String value, int start, int end) {
+        int number = 0;
+
+        for (int i = start; i < end; i++) {
+            char digit = value.charAt(i);
+            if (digit < '0' || digit > '9') {
+                return -1;
+            }
+            number = number * 10 + (digit - '0');
+        }
+
+        return number;
+    }
+
+    /**
+     * Appends a number padded with zeros
+     *
+     * @param builder the builder
+     * @param number the positive number
+     * @param digits the minimal number of digits
+     * @return the builder
+     */
+    private static StringBuilder appendDigits(StringBuilder builder, int number, int digits) {
+        String string = Integer.toString(number);
+
+        for (int i = string.length(); i < digits; i++) {
+            builder.append('0');
+        }
+
+        return builder.append(string);
+    }
+
+    /**
+     * Zig-zag encodes a signed integer, the small negative values become small positive ones
+     *
+     * @param value the signed value
+     * @return the encoded value
+     */
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * Decodes a zig-zag encoded integer
+     *
+     * @param value the encoded value
+     * @return the signed value
+     */
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -2,7 +2,7 @@
  * CarRental
  *
  * This file is a simple communication wrapper for cluster-based communication, it includes a generic object, a source
- * cluster node ID and a tag ID
+ * cluster node ID, a tag ID and the ID of the request the message belongs to
  */
 
 package com.vehiclerental.clusterCommunicator;
@@ -11,4 +11,6 @@ public class ClusterCommunicationObject<T> {
     public T object;
     public int source;
     public int tag;
+    //ID of the request, set on requests and their responses, 0 for a one-way message
+    public long requestId;
 }
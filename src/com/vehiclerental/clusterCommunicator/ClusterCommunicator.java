@@ -2,13 +2,29 @@
  * CarRental
  *
  * This file provides a common interface to communicate between the cluster nodes
+ *
+ * A request is identified by a request ID carried in the message envelope, its response is sent back with the same ID
+ * and is matched by this ID only. Many requests, of the same tag and to the same node, can be in flight at the same time
+ *
+ * The objects are serialized once, into the message envelope, and deserialized once into their expected type, which
+ * can be a generic type (gson TypeToken). A request or response object is never serialized to a string beforehand
+ * The payloads are encoded by the message codec of the communicator, the same on every node (binary, or json for
+ * debugging)
  */
 
 package com.vehiclerental.clusterCommunicator;
 
 import com.vehiclerental.exceptions.ClusterCommunicatorException;
 
+import java.lang.reflect.Type;
+import java.util.concurrent.CompletableFuture;
+
 public interface ClusterCommunicator {
+    //Wildcard of the receive source, matches any node
+    int ANY_SOURCE = -1;
+    //Wildcard of the receive tag, matches any tag
+    int ANY_TAG = -1;
+
     /**
      * Sends an object to a specific cluster node
      *
@@ -30,5 +46,105 @@ public interface ClusterCommunicator {
      * @return The communication wrapper with the deserialized object
      * @throws ClusterCommunicatorException - In case of a communication error
      */
-    <T> ClusterCommunicationObject<T> receiveObject(int source, int tag, Class<T> type) throws ClusterCommunicatorException;
+    <T> ClusterCommunicationObject<T> receiveObject(int source, int tag, Type type) throws ClusterCommunicatorException;
+
+    /**
+     * Receives an object from a specific cluster node without deserializing it, for the receivers which know its type
+     * from its tag only. The payload is decoded by the receiver with the codec of the communicator (getCodec)
+     *
+     * @param source expected source node cluster ID
+     * @param tag expected message tag ID
+     * @return The communication wrapper with the serialized object
+     * @throws ClusterCommunicatorException - In case of a communication error
+     */
+    ClusterCommunicationObject<byte[]> receiveSerializedObject(int source, int tag) throws ClusterCommunicatorException;
+
+    /**
+     * Sends a request to a specific cluster node, its response must be obtained with awaitResponse
+     * The request is received by the node with receiveObject, like any other message
+     *
+     * @param destinator the cluster ID of the targeted node
+     * @param tag the tag ID of the message
+     * @param object the request object
+     * @param <T> the type of the object (Generic)
+     * @return the ID of the request
+     * @throws ClusterCommunicatorException - In case of a communication error
+     */
+    <T> long sendRequest(int destinator, int tag, T object) throws ClusterCommunicatorException;
+
+    /**
+     * Waits for the response of a request sent with sendRequest, and deserialize it
+     * The responses of the other requests received meanwhile are kept for their own callers
+     *
+     * @param source cluster ID of the node the request was sent to
+     * @param requestId the ID of the request
+     * @param type expected response object type
+     * @param <T> expected response object type (Generic)
+     * @return The communication wrapper with the deserialized response
+     * @throws ClusterCommunicatorException - In case of a communication error
+     */
+    <T> ClusterCommunicationObject<T> awaitResponse(int source, long requestId, Type type) throws ClusterCommunicatorException;
+
+    /**
+     * Waits for the response of a request sent with sendRequest without deserializing it, for the nodes relaying the
+     * response. The payload is encoded by the codec of the communicator (getCodec), UTF-8 json for the json codec
+     *
+     * @param source cluster ID of the node the request was sent to
+     * @param requestId the ID of the request
+     * @return The communication wrapper with the serialized response
+     * @throws ClusterCommunicatorException - In case of a communication error
+     */
+    ClusterCommunicationObject<byte[]> awaitSerializedResponse(int source, long requestId) throws ClusterCommunicatorException;
+
+    /**
+     * Sends the response of a request received with receiveObject or receiveSerializedObject
+     *
+     * @param destinator the cluster ID of the requesting node
+     * @param tag the tag ID of the request
+     * @param requestId the ID of the request
+     * @param object the response object
+     * @param <T> the type of the object (Generic)
+     * @throws ClusterCommunicatorException - In case of a communication error
+     */
+    <T> void sendResponse(int destinator, int tag, long requestId, T object) throws ClusterCommunicatorException;
+
+    /**
+     * Sends a request to a specific cluster node without blocking
+     * The returned future completes with the response, or exceptionally with a ClusterCommunicatorException. If it is
+     * cancelled, for example after a timeout, a later response of the request is dropped
+     *
+     * @param destinator the cluster ID of the targeted node
+     * @param tag the tag ID of the message
+     * @param object the request object
+     * @param type expected response object type
+     * @param <T> expected response object type (Generic)
+     * @return the future of the communication wrapper with the deserialized response
+     */
+    <T> CompletableFuture<ClusterCommunicationObject<T>> sendAsync(int destinator, int tag, Object object, Type type);
+
+    /**
+     * Returns the codec of the payloads
+     *
+     * @return the message codec
+     */
+    MessageCodec getCodec();
+
+    /**
+     * Sets the codec of the payloads, before the first message
+     *
+     * @param codec the message codec
+     */
+    void setCodec(MessageCodec codec);
+
+    /**
+     * Sets the time given to a node to answer a request, an unanswered request fails at its deadline
+     *
+     * @param responseTimeout the response timeout in milliseconds
+     */
+    void setResponseTimeout(long responseTimeout);
+
+    /**
+     * Releases the communicator, the outstanding requests fail
+     */
+    void close();
 }
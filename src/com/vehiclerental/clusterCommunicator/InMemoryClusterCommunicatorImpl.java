@@ -0,0 +1,157 @@
+/**
+ * CarRental
+ *
+ * This file provides an in-memory implementation of the cluster communication interface, for nodes running in the
+ * same process (tests and benchmarks without an MPI runtime)
+ *
+ * The envelopes are the same as the MPI implementation ones (encoded and encrypted), they are delivered directly to the
+ * queues of the targeted node: requests and one-way messages to its receive queue, responses to its response queue
+ * which is polled by its progress thread
+ */
+
+package com.vehiclerental.clusterCommunicator;
+
+import com.vehiclerental.exceptions.ClusterCommunicatorException;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+public class InMemoryClusterCommunicatorImpl extends AbstractClusterCommunicator {
+    //Cluster ID of this node
+    private final int nodeId;
+    //Communicators of the cluster nodes, by cluster ID
+    private final Map<Integer, InMemoryClusterCommunicatorImpl> nodes;
+
+    //Received requests and one-way messages, waiting for a matching receive
+    private final ReceivedMessageQueue receivedMessages = new ReceivedMessageQueue();
+    //Received responses, waiting for the progress thread
+    private final Queue<ClusterCommunicationObject<byte[]>> receivedResponses = new ConcurrentLinkedQueue<ClusterCommunicationObject<byte[]>>();
+
+    /**
+     * Constructor - the node joins the given cluster
+     *
+     * @param nodeId the cluster ID of this node
+     * @param nodes the communicators of the cluster nodes, shared by all of them
+     */
+    public InMemoryClusterCommunicatorImpl(int nodeId, Map<Integer, InMemoryClusterCommunicatorImpl> nodes) {
+        this.nodeId = nodeId;
+        this.nodes = nodes;
+        nodes.put(nodeId, this);
+    }
+
+    /**
+     * Creates the communicators of a cluster of the given size, with the cluster IDs 0 to size - 1
+     *
+     * @param size the number of nodes
+     * @return the communicators, by cluster ID
+     */
+    public static Map<Integer, InMemoryClusterCommunicatorImpl> createCluster(int size) {
+        Map<Integer, InMemoryClusterCommunicatorImpl> nodes = new ConcurrentHashMap<Integer, InMemoryClusterCommunicatorImpl>();
+        for (int i = 0; i < size; i++) {
+            new InMemoryClusterCommunicatorImpl(i, nodes);
+        }
+
+        return nodes;
+    }
+
+    /**
+     * In-memory implementation of the sendMessage method
+     *
+     * @param response true for a response, false for a one-way message
+     * @param destinator the cluster ID of the targeted node
+     * @param tag the tag ID of the message
+     * @param message the envelope
+     * @throws ClusterCommunicatorException
+     */
+    @Override
+    protected void sendMessage(boolean response, int destinator, int tag, byte[] message) throws ClusterCommunicatorException {
+        InMemoryClusterCommunicatorImpl destination = getNode(destinator);
+        ClusterCommunicationObject<byte[]> delivered = createMessage(tag, message);
+
+        if (response) {
+            destination.receivedResponses.add(delivered);
+        } else {
+            destination.receivedMessages.add(delivered);
+        }
+    }
+
+    /**
+     * In-memory implementation of the startRequest method, the request is delivered immediately
+     *
+     * @param destinator the cluster ID of the targeted node
+     * @param tag the tag ID of the message
+     * @param requestId the ID of the request
+     * @param message the envelope
+     * @throws ClusterCommunicatorException
+     */
+    @Override
+    protected void startRequest(int destinator, int tag, long requestId, byte[] message) throws ClusterCommunicatorException {
+        getNode(destinator).receivedMessages.add(createMessage(tag, message));
+    }
+
+    /**
+     * In-memory implementation of the receiveMessage method
+     *
+     * @param source expected source node cluster ID
+     * @param tag expected message tag ID
+     * @return The communication wrapper with the envelope
+     * @throws ClusterCommunicatorException
+     */
+    @Override
+    protected ClusterCommunicationObject<byte[]> receiveMessage(int source, int tag) throws ClusterCommunicatorException {
+        return receivedMessages.take(source, tag);
+    }
+
+    /**
+     * In-memory implementation of the progress method, hands over the received responses
+     *
+     * @return true if a response was received
+     */
+    @Override
+    protected boolean progress() {
+        boolean progressed = false;
+
+        ClusterCommunicationObject<byte[]> response;
+        while ((response = receivedResponses.poll()) != null) {
+            responseReceived(response);
+            progressed = true;
+        }
+
+        return progressed;
+    }
+
+    /**
+     * Returns the communicator of a cluster node
+     *
+     * @param nodeId the cluster ID of the node
+     * @return the communicator
+     * @throws ClusterCommunicatorException if the node is not in the cluster
+     */
+    private InMemoryClusterCommunicatorImpl getNode(int nodeId) throws ClusterCommunicatorException {
+        InMemoryClusterCommunicatorImpl node = nodes.get(nodeId);
+
+        if (node == null) {
+            throw new ClusterCommunicatorException("Unknown cluster node " + nodeId);
+        }
+
+        return node;
+    }
+
+    /**
+     * Creates a message sent by this node
+     *
+     * @param tag the tag ID of the message
+     * @param message the envelope
+     * @return The communication wrapper with the envelope
+     */
+    private ClusterCommunicationObject<byte[]> createMessage(int tag, byte[] message) {
+        ClusterCommunicationObject<byte[]> created = new ClusterCommunicationObject<byte[]>();
+        created.source = nodeId;
+        created.tag = tag;
+        created.object = message;
+
+        return created;
+    }
+}
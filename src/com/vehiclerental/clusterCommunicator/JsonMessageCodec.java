@@ -0,0 +1,56 @@
+/**
+ * CarRental
+ *
+ * This file provides the json implementation of the message codec, built on gson (SerializationUtils)
+ * It is slower and larger than the binary codec, but its payloads can be read as is when debugging the cluster traffic
+ */
+
+package com.vehiclerental.clusterCommunicator;
+
+import com.google.gson.JsonParseException;
+import com.vehiclerental.utils.SerializationUtils;
+
+import java.lang.reflect.Type;
+
+public class JsonMessageCodec implements MessageCodec {
+    //Name of the codec in the node configuration
+    public static final String NAME = "json";
+
+    /**
+     * Serializes an object to UTF-8 json
+     *
+     * @param object the object to encode, can be null
+     * @return the message payload
+     */
+    @Override
+    public byte[] encode(Object object) {
+        return SerializationUtils.serializeToBytes(object);
+    }
+
+    /**
+     * Deserializes UTF-8 json into the expected type
+     *
+     * @param payload the message payload
+     * @param type the expected object type
+     * @param <T> the expected object type (Generic)
+     * @return the decoded object
+     */
+    @Override
+    public <T> T decode(byte[] payload, Type type) {
+        try {
+            return SerializationUtils.deserialize(payload, type);
+        } catch (JsonParseException e) {
+            throw new IllegalArgumentException("Invalid json message: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * The payloads are UTF-8 json
+     *
+     * @return true
+     */
+    @Override
+    public boolean isJson() {
+        return true;
+    }
+}
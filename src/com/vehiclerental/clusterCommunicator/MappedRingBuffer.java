@@ -0,0 +1,312 @@
+/**
+ * CarRental
+ *
+ * This file provides a single producer, single consumer ring buffer in a memory mapped file, shared by two processes
+ * of the same host
+ *
+ * Layout: head (consumer position), run ID | tail (producer position) | data, the positions are on their own cache lines
+ * and only grow, they are reduced modulo the capacity (a power of two) to index the data
+ * Record: length (4 bytes) | tag (4 bytes) | kind (4 bytes) | padding (4 bytes) | message, padded to 16 bytes so that a
+ * record header never wraps around the end of the data
+ *
+ * The producer writes a record then publishes the new tail with an ordered write, the consumer reads the tail with a
+ * volatile read before reading the records, then releases their space the same way. Neither side takes a lock
+ *
+ * The consumer writes a random run ID in a ring it creates, and retires the ring (run ID 0) when it closes or when a
+ * new run replaces the file, a ring file left by a crashed consumer included. The producer keeps the run ID of the ring
+ * it mapped, a different run ID means the ring is no longer read and the file must be opened again
+ */
+
+package com.vehiclerental.clusterCommunicator;
+
+import sun.misc.Unsafe;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ThreadLocalRandom;
+
+class MappedRingBuffer {
+    //Offsets of the positions and of the data in the file
+    private static final int HEAD_OFFSET = 0;
+    private static final int RUN_ID_OFFSET = 8;
+    private static final int TAIL_OFFSET = 64;
+    private static final int DATA_OFFSET = 128;
+    //Size and alignment of a record header
+    private static final int RECORD_HEADER_SIZE = 16;
+    //Record kinds
+    static final int KIND_MESSAGE = 0;
+    static final int KIND_RESPONSE = 1;
+    //Run ID of a retired ring
+    private static final long RETIRED_RUN_ID = 0;
+
+    //Access to the mapped memory with explicit ordering, the buffer methods give no guarantee between processes and
+    //Java 8 has no other volatile or ordered access to memory outside the heap
+    private static final Unsafe UNSAFE = loadUnsafe();
+    private static final long BYTE_ARRAY_OFFSET = UNSAFE.arrayBaseOffset(byte[].class);
+
+    //Mapped file, kept referenced so that it stays mapped
+    private final MappedByteBuffer buffer;
+    //Address of the mapped file
+    private final long address;
+    //Size of the data, a power of two
+    private final int capacity;
+    //Run ID of the ring when it was mapped
+    private final long runId;
+
+    /**
+     * Record read from the ring
+     */
+    static class Record {
+        int tag;
+        int kind;
+        byte[] message;
+    }
+
+    /**
+     * Constructor
+     *
+     * @param buffer the mapped file
+     */
+    private MappedRingBuffer(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+        this.address = getAddress(buffer);
+        this.capacity = buffer.capacity() - DATA_OFFSET;
+        this.runId = UNSAFE.getLongVolatile(null, address + RUN_ID_OFFSET);
+    }
+
+    /**
+     * Creates an empty ring file with a new run ID, replacing and retiring an existing one, by the consumer
+     * The file is created under a temporary name and renamed, a producer never maps a file being created
+     *
+     * @param file the ring file
+     * @param capacity the size of the data, a power of two
+     * @return the ring
+     * @throws IOException if the file can't be created
+     */
+    static MappedRingBuffer create(File file, int capacity) throws IOException {
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        Files.deleteIfExists(temporaryFile.toPath());
+
+        MappedByteBuffer buffer = map(temporaryFile, DATA_OFFSET + capacity);
+        long runId;
+        do {
+            runId = ThreadLocalRandom.current().nextLong();
+        } while (runId == RETIRED_RUN_ID);
+        UNSAFE.putLongVolatile(null, getAddress(buffer) + RUN_ID_OFFSET, runId);
+
+        MappedRingBuffer ring = new MappedRingBuffer(buffer);
+        retire(file);
+        Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        return ring;
+    }
+
+    /**
+     * Maps an existing ring file, by the producer
+     *
+     * @param file the ring file
+     * @return the ring
+     * @throws IOException if the file can't be mapped
+     */
+    static MappedRingBuffer open(File file) throws IOException {
+        return new MappedRingBuffer(map(file, (int) file.length()));
+    }
+
+    /**
+     * Retires an existing ring file, by the consumer replacing it: its producer stops writing to it
+     *
+     * @param file the ring file
+     * @throws IOException if the file exists and can't be mapped
+     */
+    private static void retire(File file) throws IOException {
+        if (file.exists()) {
+            MappedByteBuffer header = map(file, DATA_OFFSET);
+            UNSAFE.putLongVolatile(null, getAddress(header) + RUN_ID_OFFSET, RETIRED_RUN_ID);
+        }
+    }
+
+    /**
+     * Retires the ring, by the consumer when it stops reading it
+     */
+    void retire() {
+        UNSAFE.putLongVolatile(null, address + RUN_ID_OFFSET, RETIRED_RUN_ID);
+    }
+
+    /**
+     * Tells if the ring is no longer read: retired, or replaced since it was mapped
+     *
+     * @return true if the producer must open the ring file again
+     */
+    boolean isRetired() {
+        return runId == RETIRED_RUN_ID || UNSAFE.getLongVolatile(null, address + RUN_ID_OFFSET) != runId;
+    }
+
+    /**
+     * Returns the size of the data
+     *
+     * @return the capacity in bytes
+     */
+    int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the space taken by a message in the ring
+     *
+     * @param messageLength the message length
+     * @return the record length
+     */
+    static int getRecordLength(int messageLength) {
+        return (RECORD_HEADER_SIZE + messageLength + RECORD_HEADER_SIZE - 1) & -RECORD_HEADER_SIZE;
+    }
+
+    /**
+     * Writes a record if the ring has room for it, only called by the producer
+     *
+     * @param tag the tag ID of the message
+     * @param kind the record kind
+     * @param message the message
+     * @return false if the ring is full
+     */
+    boolean offer(int tag, int kind, byte[] message) {
+        int recordLength = getRecordLength(message.length);
+        long tail = UNSAFE.getLong(address + TAIL_OFFSET);
+        long head = UNSAFE.getLongVolatile(null, address + HEAD_OFFSET);
+
+        if (tail + recordLength - head > capacity) {
+            return false;
+        }
+
+        long record = address + DATA_OFFSET + (tail & (capacity - 1));
+        UNSAFE.putInt(record, message.length);
+        UNSAFE.putInt(record + 4, tag);
+        UNSAFE.putInt(record + 8, kind);
+        copy(message, (tail + RECORD_HEADER_SIZE) & (capacity - 1), true);
+
+        //Publish the record
+        UNSAFE.putOrderedLong(null, address + TAIL_OFFSET, tail + recordLength);
+        return true;
+    }
+
+    /**
+     * Reads the next record, only called by the consumer
+     * The positions and the record length come from a file shared with another process, they are checked before the
+     * message is allocated and copied
+     *
+     * @return the record, or null if the ring is empty
+     * @throws IllegalStateException if the positions or the record are corrupt, the ring can't be read anymore
+     */
+    Record poll() {
+        long head = UNSAFE.getLong(address + HEAD_OFFSET);
+        long tail = UNSAFE.getLongVolatile(null, address + TAIL_OFFSET);
+
+        if (head == tail) {
+            return null;
+        }
+        if (tail - head < 0 || tail - head > capacity) {
+            throw new IllegalStateException("Corrupt ring positions: head " + head + ", tail " + tail);
+        }
+
+        long recordAddress = address + DATA_OFFSET + (head & (capacity - 1));
+        int length = UNSAFE.getInt(recordAddress);
+        if (length < 0 || length > capacity || getRecordLength(length) > tail - head) {
+            throw new IllegalStateException("Corrupt ring record at position " + head + ": message length " + length);
+        }
+
+        Record record = new Record();
+        record.message = new byte[length];
+        record.tag = UNSAFE.getInt(recordAddress + 4);
+        record.kind = UNSAFE.getInt(recordAddress + 8);
+        copy(record.message, (head + RECORD_HEADER_SIZE) & (capacity - 1), false);
+
+        //Release the space of the record
+        UNSAFE.putOrderedLong(null, address + HEAD_OFFSET, head + getRecordLength(record.message.length));
+        return record;
+    }
+
+    /**
+     * Copies a message to or from the data, in two parts if it wraps around the end
+     *
+     * @param message the message
+     * @param index the index of the message in the data
+     * @param write true to copy the message to the data, false to copy it from the data
+     */
+    private void copy(byte[] message, long index, boolean write) {
+        int firstPart = (int) Math.min(message.length, capacity - index);
+        copy(message, 0, address + DATA_OFFSET + index, firstPart, write);
+        copy(message, firstPart, address + DATA_OFFSET, message.length - firstPart, write);
+    }
+
+    /**
+     * Copies bytes between a message and the mapped memory
+     *
+     * @param message the message
+     * @param offset the offset in the message
+     * @param memory the memory address
+     * @param length the number of bytes
+     * @param write true to copy the message to the memory, false to copy it from the memory
+     */
+    private static void copy(byte[] message, int offset, long memory, int length, boolean write) {
+        if (write) {
+            UNSAFE.copyMemory(message, BYTE_ARRAY_OFFSET + offset, null, memory, length);
+        } else {
+            UNSAFE.copyMemory(null, memory, message, BYTE_ARRAY_OFFSET + offset, length);
+        }
+    }
+
+    /**
+     * Maps the given size of a file, extending the file if needed
+     *
+     * @param file the file
+     * @param size the mapped size
+     * @return the mapped file
+     * @throws IOException if the file can't be mapped
+     */
+    private static MappedByteBuffer map(File file, int size) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            //The mapping stays valid once the file is closed
+            return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Returns the address of a direct buffer
+     *
+     * @param buffer the direct buffer
+     * @return the address
+     */
+    private static long getAddress(Buffer buffer) {
+        try {
+            Field addressField = Buffer.class.getDeclaredField("address");
+            addressField.setAccessible(true);
+            return addressField.getLong(buffer);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Mapped memory address unavailable", e);
+        }
+    }
+
+    /**
+     * Returns the unsafe memory accessor
+     *
+     * @return the accessor
+     */
+    private static Unsafe loadUnsafe() {
+        try {
+            Field unsafeField = Unsafe.class.getDeclaredField("theUnsafe");
+            unsafeField.setAccessible(true);
+            return (Unsafe) unsafeField.get(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unsafe memory access unavailable", e);
+        }
+    }
+}
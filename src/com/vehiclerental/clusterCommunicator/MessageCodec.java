@@ -0,0 +1,41 @@
+/**
+ * CarRental
+ *
+ * This file provides a common interface to encode the objects exchanged between the cluster nodes into message
+ * payloads, before their encryption
+ *
+ * The codec is chosen per cluster communicator (setCodec), every node of a cluster must use the same one
+ */
+
+package com.vehiclerental.clusterCommunicator;
+
+import java.lang.reflect.Type;
+
+public interface MessageCodec {
+
+    /**
+     * Encodes an object into a message payload
+     *
+     * @param object the object to encode, can be null
+     * @return the message payload
+     */
+    byte[] encode(Object object);
+
+    /**
+     * Decodes a message payload into the expected type
+     *
+     * @param payload the message payload
+     * @param type the expected object type, can be a generic type (gson TypeToken)
+     * @param <T> the expected object type (Generic)
+     * @return the decoded object
+     * @throws IllegalArgumentException if the payload can't be decoded
+     */
+    <T> T decode(byte[] payload, Type type);
+
+    /**
+     * Tells if the payloads are UTF-8 json, which a node can relay to a client without decoding them
+     *
+     * @return true for a json codec
+     */
+    boolean isJson();
+}
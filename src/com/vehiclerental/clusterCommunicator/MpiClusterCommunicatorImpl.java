@@ -2,97 +2,218 @@
  * CarRental
  *
  * This file provides an implementation for MPI of the cluster communication interface
+ *
+ * Each envelope is sent as a single MPI message of bytes, the receiver sizes its buffer with a matched probe
+ * (MPI_Mprobe) before receiving it. The matched probe removes the message from the matching queue, so a message probed
+ * by a receiver listening on any source and any tag can't be received by another thread between the probe and the receive
+ *
+ * The responses are sent on a duplicate of the world communicator, so they never match a receive of requests on any
+ * tag. Requests are sent with MPI_Isend, the progress thread tests the outstanding sends and receives the responses
+ * with MPI_Improbe and MPI_Imrecv
  */
 
 package com.vehiclerental.clusterCommunicator;
 
 import com.vehiclerental.exceptions.ClusterCommunicatorException;
-import com.vehiclerental.utils.CryptoUtils;
-import com.vehiclerental.utils.SerializationUtils;
+import mpi.Intracomm;
 import mpi.MPI;
 import mpi.MPIException;
+import mpi.Message;
+import mpi.Request;
 import mpi.Status;
 
-public class MpiClusterCommunicatorImpl implements ClusterCommunicator {
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+public class MpiClusterCommunicatorImpl extends AbstractClusterCommunicator {
+    //Communicator of the responses, requests and one-way messages use the world communicator
+    private final Intracomm responseCommunicator;
+
+    //Requests being sent, added by the requesting threads and tested by the progress thread
+    private final Queue<OutstandingOperation> outstandingSends = new ConcurrentLinkedQueue<OutstandingOperation>();
+    //Responses being received, only used by the progress thread
+    private final List<OutstandingOperation> outstandingReceives = new ArrayList<OutstandingOperation>();
+
+    /**
+     * Non-blocking MPI operation, with the buffer which must stay alive until its completion
+     */
+    private static class OutstandingOperation {
+        private final Request request;
+        private final ByteBuffer buffer;
+        private final long requestId;
+        private final int source;
+        private final int tag;
+
+        /**
+         * Constructor
+         *
+         * @param request the MPI request
+         * @param buffer the direct buffer of the operation
+         * @param requestId the ID of the sent request, 0 for a receive
+         * @param source the source of the received message, 0 for a send
+         * @param tag the tag of the message
+         */
+        OutstandingOperation(Request request, ByteBuffer buffer, long requestId, int source, int tag) {
+            this.request = request;
+            this.buffer = buffer;
+            this.requestId = requestId;
+            this.source = source;
+            this.tag = tag;
+        }
+    }
+
+    /**
+     * Constructor - duplicates the world communicator for the responses
+     * It must be called by every node, in the same order as the other collective operations
+     *
+     * @throws MPIException if the MPI system fails
+     */
+    public MpiClusterCommunicatorImpl() throws MPIException {
+        responseCommunicator = MPI.COMM_WORLD.clone();
+    }
 
     /**
-     * Sends an object to a specific cluster node using MPI
+     * MPI implementation of the sendMessage method, blocking send
      *
+     * @param response true for a response, false for a one-way message
      * @param destinator the cluster ID of the targeted node
      * @param tag the tag ID of the message
-     * @param object the object to send
-     * @param <T> the generic type of the object
+     * @param message the envelope
      * @throws ClusterCommunicatorException
      */
-    public <T> void sendObject(int destinator, int tag, T object) throws ClusterCommunicatorException {
+    @Override
+    protected void sendMessage(boolean response, int destinator, int tag, byte[] message) throws ClusterCommunicatorException {
         try {
-            //Serialize item
-            String data = SerializationUtils.serialize(object);
+            Intracomm communicator = response ? responseCommunicator : MPI.COMM_WORLD;
 
-            //Encrypt data
-            try {
-                data = CryptoUtils.encrypt(data);
-            } catch (Exception e) {
-                //If it fails, continue with plain text data with a notification
-                System.out.println("[ERROR] - Inter-branch communication traffic cannot be encrypted");
-                e.printStackTrace();
-            }
+            //Send the envelope, the receiver obtains its length by probing the message
+            communicator.send(message, message.length, MPI.BYTE, destinator, tag);
+        } catch (MPIException e) {
+            throw new ClusterCommunicatorException(e.getMessage());
+        }
+    }
 
-            char[] serializedCharArray = data.toCharArray();
-            int size[] = new int[1];
-            size[0] = serializedCharArray.length;
+    /**
+     * MPI implementation of the startRequest method, non-blocking send from a direct buffer
+     *
+     * @param destinator the cluster ID of the targeted node
+     * @param tag the tag ID of the message
+     * @param requestId the ID of the request
+     * @param message the envelope
+     * @throws ClusterCommunicatorException
+     */
+    @Override
+    protected void startRequest(int destinator, int tag, long requestId, byte[] message) throws ClusterCommunicatorException {
+        try {
+            ByteBuffer buffer = MPI.newByteBuffer(message.length);
+            buffer.put(message);
+            buffer.rewind();
 
-            //Send serialized encrypted data length
-            MPI.COMM_WORLD.send(size, 1, MPI.INT, destinator, tag);
-            //Then send the serialized encrypted data
-            MPI.COMM_WORLD.send(serializedCharArray, serializedCharArray.length, MPI.CHAR, destinator, tag);
+            Request request = MPI.COMM_WORLD.iSend(buffer, message.length, MPI.BYTE, destinator, tag);
+            outstandingSends.add(new OutstandingOperation(request, buffer, requestId, 0, tag));
         } catch (MPIException e) {
             throw new ClusterCommunicatorException(e.getMessage());
         }
     }
 
     /**
-     * MPI implementation of the receiveObject method
+     * MPI implementation of the receiveMessage method
      *
      * @param source expected source node cluster ID
      * @param tag expected message tag ID
-     * @param type expected message object type
-     * @param <T> the generic type of the expected object
-     * @return The communication wrapper with the deserialized object
+     * @return The communication wrapper with the envelope
      * @throws ClusterCommunicatorException
      */
-    public <T> ClusterCommunicationObject<T> receiveObject(int source, int tag, Class<T> type) throws ClusterCommunicatorException {
+    @Override
+    protected ClusterCommunicationObject<byte[]> receiveMessage(int source, int tag) throws ClusterCommunicatorException {
         try {
-            ClusterCommunicationObject<T> response = new ClusterCommunicationObject<T>();
-            char message[];
-            int size[] = new int[1];
+            ClusterCommunicationObject<byte[]> response = new ClusterCommunicationObject<byte[]>();
+
+            //Wait for a matching message and obtain the size of the envelope
+            Message matchedMessage = new Message();
+            Status probeStatus = matchedMessage.mProbe(
+                    source == ANY_SOURCE ? MPI.ANY_SOURCE : source,
+                    tag == ANY_TAG ? MPI.ANY_TAG : tag,
+                    MPI.COMM_WORLD);
+            int size = probeStatus.getCount(MPI.BYTE);
+            byte message[] = new byte[size];
 
-            //Obtain size of serialized encrypted data
-            MPI.COMM_WORLD.recv(size, 1, MPI.INT, source, tag);
-            message = new char[size[0]];
+            //Obtain the envelope, the actual source and tag are known since the probe
+            matchedMessage.mRecv(message, size, MPI.BYTE);
+            response.source = probeStatus.getSource();
+            response.tag = probeStatus.getTag();
+            response.object = message;
 
-            //Obtain serialized encrypted data
-            Status mpiStatus = MPI.COMM_WORLD.recv(message, size[0], MPI.CHAR, source, tag);
-            response.source = mpiStatus.getSource();
-            response.tag = mpiStatus.getTag();
+            return response;
+        } catch (MPIException e) {
+            throw new ClusterCommunicatorException(e.getMessage());
+        }
+    }
 
-            String data = String.valueOf(message);
+    /**
+     * MPI implementation of the progress method
+     * Tests the outstanding sends, starts the receive of every arrived response and tests the outstanding receives
+     *
+     * @return true if an operation started or completed
+     * @throws ClusterCommunicatorException
+     */
+    @Override
+    protected boolean progress() throws ClusterCommunicatorException {
+        boolean progressed = false;
 
-            //Decrypt serialzed encrypted data
+        Iterator<OutstandingOperation> sends = outstandingSends.iterator();
+        while (sends.hasNext()) {
+            OutstandingOperation send = sends.next();
             try {
-                //Now MPI uses encrypted data
-                data = CryptoUtils.decrypt(data);
-            } catch (Exception e) {
-                //If it fails, continue with plain text data
-                System.out.println("[ERROR] - Inter-branch communication traffic cannot be decrypted");
-                e.printStackTrace();
+                if (send.request.test()) {
+                    sends.remove();
+                    progressed = true;
+                }
+            } catch (MPIException e) {
+                sends.remove();
+                failRequest(send.requestId, new ClusterCommunicatorException(e.getMessage()));
+                progressed = true;
             }
+        }
 
-            //Deserialize serialized data
-            response.object = SerializationUtils.deserialize(data, type);
-            return response;
+        try {
+            //Start the receive of every arrived response
+            Message matchedMessage = new Message();
+            Status probeStatus;
+            while ((probeStatus = matchedMessage.imProbe(MPI.ANY_SOURCE, MPI.ANY_TAG, responseCommunicator)) != null) {
+                int size = probeStatus.getCount(MPI.BYTE);
+                ByteBuffer buffer = MPI.newByteBuffer(size);
+                Request request = matchedMessage.imRecv(buffer, size, MPI.BYTE);
+
+                outstandingReceives.add(new OutstandingOperation(request, buffer, 0, probeStatus.getSource(), probeStatus.getTag()));
+                matchedMessage = new Message();
+                progressed = true;
+            }
+
+            Iterator<OutstandingOperation> receives = outstandingReceives.iterator();
+            while (receives.hasNext()) {
+                OutstandingOperation receive = receives.next();
+                if (receive.request.test()) {
+                    receives.remove();
+
+                    ClusterCommunicationObject<byte[]> response = new ClusterCommunicationObject<byte[]>();
+                    response.source = receive.source;
+                    response.tag = receive.tag;
+                    response.object = new byte[receive.buffer.capacity()];
+                    receive.buffer.get(response.object);
+
+                    responseReceived(response);
+                    progressed = true;
+                }
+            }
         } catch (MPIException e) {
             throw new ClusterCommunicatorException(e.getMessage());
         }
+
+        return progressed;
     }
 }
@@ -0,0 +1,60 @@
+/**
+ * CarRental
+ *
+ * This file provides the queue of the received requests and one-way messages of the transports without a matching
+ * engine (in-memory and TCP), a receive takes the oldest message matching its source and tag
+ */
+
+package com.vehiclerental.clusterCommunicator;
+
+import com.vehiclerental.exceptions.ClusterCommunicatorException;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+class ReceivedMessageQueue {
+    //Received messages, waiting for a matching receive
+    private final LinkedList<ClusterCommunicationObject<byte[]>> messages = new LinkedList<ClusterCommunicationObject<byte[]>>();
+
+    /**
+     * Adds a received message, and wakes up the waiting receivers
+     *
+     * @param message the message
+     */
+    void add(ClusterCommunicationObject<byte[]> message) {
+        synchronized (messages) {
+            messages.add(message);
+            messages.notifyAll();
+        }
+    }
+
+    /**
+     * Takes the oldest message matching a source and a tag, blocks until one is received
+     *
+     * @param source expected source node cluster ID, or ANY_SOURCE
+     * @param tag expected message tag ID, or ANY_TAG
+     * @return the message
+     * @throws ClusterCommunicatorException if interrupted
+     */
+    ClusterCommunicationObject<byte[]> take(int source, int tag) throws ClusterCommunicatorException {
+        synchronized (messages) {
+            while (true) {
+                Iterator<ClusterCommunicationObject<byte[]>> iterator = messages.iterator();
+                while (iterator.hasNext()) {
+                    ClusterCommunicationObject<byte[]> message = iterator.next();
+                    if ((source == ClusterCommunicator.ANY_SOURCE || source == message.source) && (tag == ClusterCommunicator.ANY_TAG || tag == message.tag)) {
+                        iterator.remove();
+                        return message;
+                    }
+                }
+
+                try {
+                    messages.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ClusterCommunicatorException("Interrupted while waiting for a cluster message");
+                }
+            }
+        }
+    }
+}
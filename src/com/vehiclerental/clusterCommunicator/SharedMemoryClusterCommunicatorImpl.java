@@ -0,0 +1,391 @@
+/**
+ * CarRental
+ *
+ * This file provides an implementation over shared memory of the cluster communication interface, for the nodes of a
+ * cluster running on the same host
+ *
+ * Each ordered pair of nodes has a ring buffer in a memory mapped file of the cluster directory, written by the sending
+ * node and read by the receiving one (ring-<source>-<destinator>). A node creates its inbound rings when it starts, and
+ * opens its outbound rings on the first message, waiting for the other node to create them. The cluster directory must
+ * only be used by one cluster at a time, ideally on a memory file system (/dev/shm)
+ *
+ * A node replacing its rings when it starts again, after a crash, retires the previous ones: the other nodes open the
+ * new rings on their next message. The messages written to a ring which was never read are lost, their requests fail
+ * on the response deadline
+ * A ring holding a corrupt record is replaced the same way by its reading node, the records left in it are lost
+ *
+ * The threads of a node sending to the same node take turns on its ring, a single thread per node polls the inbound
+ * rings. The payloads never leave the host, they are not encrypted
+ */
+
+package com.vehiclerental.clusterCommunicator;
+
+import com.vehiclerental.exceptions.ClusterCommunicatorException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+
+public class SharedMemoryClusterCommunicatorImpl extends AbstractClusterCommunicator {
+    //Number of empty polls of the inbound rings before the poller starts pausing
+    private static final int POLL_IDLE_SPINS = 10000;
+    //Pause of the poller, and of a sender waiting for room in a full ring (nanoseconds)
+    private static final long IDLE_PAUSE = 20000;
+    //Pause between two attempts to open a ring which is not created yet, or retired (milliseconds)
+    private static final long OPEN_RETRY_PAUSE = 200;
+
+    //Cluster ID of this node
+    private final int nodeId;
+    //Directory of the ring files
+    private final File directory;
+    //Time given to a node to create its rings, and to a full ring to get room (milliseconds)
+    private final int connectTimeout;
+
+    //Inbound rings, by source cluster ID (null for this node)
+    private final MappedRingBuffer[] inboundRings;
+    //Outbound rings, by destinator cluster ID, opened on the first message and opened again once retired
+    private final MappedRingBuffer[] outboundRings;
+
+    //Poller thread of the inbound rings
+    private final Thread pollerThread;
+    private volatile boolean running = true;
+
+    //Received requests and one-way messages, waiting for a matching receive
+    private final ReceivedMessageQueue receivedMessages = new ReceivedMessageQueue();
+
+    /**
+     * Constructor - creates the inbound rings of this node and starts polling them
+     *
+     * @param nodeId the cluster ID of this node
+     * @param clusterSize the number of cluster nodes
+     * @param directory the directory of the ring files
+     * @param ringCapacity the size of a ring in bytes, rounded up to a power of two
+     * @param connectTimeout the time given to a node to create its rings (milliseconds)
+     * @throws IOException if the rings can't be created
+     */
+    public SharedMemoryClusterCommunicatorImpl(int nodeId, int clusterSize, File directory, int ringCapacity, int connectTimeout) throws IOException {
+        this.nodeId = nodeId;
+        this.directory = directory;
+        this.connectTimeout = connectTimeout;
+        this.inboundRings = new MappedRingBuffer[clusterSize];
+        this.outboundRings = new MappedRingBuffer[clusterSize];
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cluster directory " + directory + " can't be created");
+        }
+
+        int capacity = Integer.highestOneBit(Math.max(ringCapacity, 4096) - 1) << 1;
+        for (int source = 0; source < clusterSize; source++) {
+            if (source != nodeId) {
+                inboundRings[source] = MappedRingBuffer.create(getRingFile(source, nodeId), capacity);
+            }
+        }
+
+        pollerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runPollLoop();
+            }
+        }, "cluster-shm-poller-" + nodeId);
+        pollerThread.setDaemon(true);
+        pollerThread.start();
+    }
+
+    /**
+     * Shared memory implementation of the sendMessage method, the message is written to the ring of the targeted node
+     *
+     * @param response true for a response, false for a one-way message
+     * @param destinator the cluster ID of the targeted node
+     * @param tag the tag ID of the message
+     * @param message the envelope
+     * @throws ClusterCommunicatorException
+     */
+    @Override
+    protected void sendMessage(boolean response, int destinator, int tag, byte[] message) throws ClusterCommunicatorException {
+        write(destinator, response ? MappedRingBuffer.KIND_RESPONSE : MappedRingBuffer.KIND_MESSAGE, tag, message);
+    }
+
+    /**
+     * Shared memory implementation of the startRequest method, the request is written to the ring of the targeted node
+     *
+     * @param destinator the cluster ID of the targeted node
+     * @param tag the tag ID of the message
+     * @param requestId the ID of the request
+     * @param message the envelope
+     * @throws ClusterCommunicatorException
+     */
+    @Override
+    protected void startRequest(int destinator, int tag, long requestId, byte[] message) throws ClusterCommunicatorException {
+        write(destinator, MappedRingBuffer.KIND_MESSAGE, tag, message);
+    }
+
+    /**
+     * Shared memory implementation of the receiveMessage method
+     *
+     * @param source expected source node cluster ID
+     * @param tag expected message tag ID
+     * @return The communication wrapper with the envelope
+     * @throws ClusterCommunicatorException
+     */
+    @Override
+    protected ClusterCommunicationObject<byte[]> receiveMessage(int source, int tag) throws ClusterCommunicatorException {
+        return receivedMessages.take(source, tag);
+    }
+
+    /**
+     * Shared memory implementation of the progress method
+     * The poller thread hands the responses over as soon as it reads them, there is nothing left to progress
+     *
+     * @return false
+     */
+    @Override
+    protected boolean progress() {
+        return false;
+    }
+
+    /**
+     * The payloads never leave the host, they are not encrypted
+     *
+     * @param node the cluster ID of the other node
+     * @return false
+     */
+    @Override
+    protected boolean isEncryptedWith(int node) {
+        return false;
+    }
+
+    /**
+     * Stops the poller thread, retires and removes the inbound rings, the outstanding requests fail
+     */
+    @Override
+    public void close() {
+        running = false;
+
+        try {
+            pollerThread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (int source = 0; source < inboundRings.length; source++) {
+            if (inboundRings[source] == null) {
+                continue;
+            }
+
+            inboundRings[source].retire();
+            if (!getRingFile(source, nodeId).delete()) {
+                System.out.println("[WARNING] - Cluster ring file " + getRingFile(source, nodeId) + " can't be removed");
+            }
+        }
+
+        super.close();
+    }
+
+    /**
+     * Writes a message to the ring of a node, opens the ring again if the node replaced it
+     *
+     * @param destinator the cluster ID of the targeted node
+     * @param kind the record kind
+     * @param tag the tag ID of the message
+     * @param message the envelope
+     * @throws ClusterCommunicatorException if the node can't be reached or doesn't read its ring
+     */
+    private void write(int destinator, int kind, int tag, byte[] message) throws ClusterCommunicatorException {
+        MappedRingBuffer ring = getOutboundRing(destinator);
+
+        //The node retired the ring, the next attempt opens the current one
+        while (!write(ring, destinator, kind, tag, message)) {
+            ring = getOutboundRing(destinator);
+        }
+    }
+
+    /**
+     * Writes a message to a ring, waits for room if the ring is full
+     *
+     * @param ring the ring of the targeted node
+     * @param destinator the cluster ID of the targeted node
+     * @param kind the record kind
+     * @param tag the tag ID of the message
+     * @param message the envelope
+     * @return false if the ring is retired, the message isn't written
+     * @throws ClusterCommunicatorException if the node doesn't read its ring
+     */
+    private boolean write(MappedRingBuffer ring, int destinator, int kind, int tag, byte[] message) throws ClusterCommunicatorException {
+        if (MappedRingBuffer.getRecordLength(message.length) > ring.getCapacity()) {
+            throw new ClusterCommunicatorException("Cluster message of " + message.length + " bytes larger than the ring of node " + destinator);
+        }
+
+        //Single producer: the threads of this node take turns
+        synchronized (ring) {
+            long deadline = 0;
+            while (!ring.offer(tag, kind, message)) {
+                if (ring.isRetired()) {
+                    return false;
+                }
+                if (!running) {
+                    throw new ClusterCommunicatorException("Cluster communicator closed");
+                }
+                if (deadline == 0) {
+                    deadline = System.currentTimeMillis() + connectTimeout;
+                } else if (System.currentTimeMillis() >= deadline) {
+                    throw new ClusterCommunicatorException("Cluster node " + destinator + " doesn't read its messages");
+                }
+
+                LockSupport.parkNanos(IDLE_PAUSE);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the ring to a node, opens it on the first message or once retired, waiting for the node to create it until
+     * the connect timeout
+     *
+     * @param destinator the cluster ID of the targeted node
+     * @return the ring
+     * @throws ClusterCommunicatorException if the ring isn't created before the connect timeout
+     */
+    private MappedRingBuffer getOutboundRing(int destinator) throws ClusterCommunicatorException {
+        if (destinator < 0 || destinator >= outboundRings.length || destinator == nodeId) {
+            throw new ClusterCommunicatorException("Unknown cluster node " + destinator);
+        }
+
+        synchronized (outboundRings) {
+            if (outboundRings[destinator] != null && !outboundRings[destinator].isRetired()) {
+                return outboundRings[destinator];
+            }
+
+            outboundRings[destinator] = null;
+            File ringFile = getRingFile(nodeId, destinator);
+            long deadline = System.currentTimeMillis() + connectTimeout;
+
+            while (true) {
+                if (ringFile.exists()) {
+                    try {
+                        MappedRingBuffer ring = MappedRingBuffer.open(ringFile);
+                        //A retired file is about to be replaced, or left by a node which stopped
+                        if (!ring.isRetired()) {
+                            outboundRings[destinator] = ring;
+                            return ring;
+                        }
+                    } catch (IOException e) {
+                        throw new ClusterCommunicatorException("Cluster node " + destinator + " unreachable: " + e.getMessage());
+                    }
+                }
+
+                if (System.currentTimeMillis() >= deadline) {
+                    throw new ClusterCommunicatorException("Cluster node " + destinator + " unreachable: " + ringFile + " not created");
+                }
+
+                try {
+                    Thread.sleep(OPEN_RETRY_PAUSE);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ClusterCommunicatorException("Interrupted while opening " + ringFile);
+                }
+            }
+        }
+    }
+
+    /**
+     * Poll loop, reads the inbound rings in turn, spins while the traffic is recent and pauses otherwise
+     * The responses are handed over directly, the requests and one-way messages are queued for the receivers
+     */
+    private void runPollLoop() {
+        int idlePolls = 0;
+
+        while (running) {
+            boolean received = false;
+
+            for (int source = 0; source < inboundRings.length; source++) {
+                if (inboundRings[source] != null) {
+                    received |= pollRing(source);
+                }
+            }
+
+            if (received) {
+                idlePolls = 0;
+            } else if (++idlePolls > POLL_IDLE_SPINS) {
+                LockSupport.parkNanos(IDLE_PAUSE);
+            } else {
+                //Let the threads of the node run if the cores are busy
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * Reads the records of an inbound ring until it is empty
+     * A failure never stops the poller: a message which can't be handed over is dropped, a corrupt ring is replaced
+     *
+     * @param source the cluster ID of the writing node
+     * @return true if a record has been read
+     */
+    private boolean pollRing(int source) {
+        boolean received = false;
+
+        while (true) {
+            MappedRingBuffer.Record record;
+            try {
+                record = inboundRings[source].poll();
+            } catch (IllegalStateException e) {
+                System.out.println("[WARNING] - Cluster ring " + getRingFile(source, nodeId) + " replaced: " + e.getMessage());
+                replaceInboundRing(source);
+                return true;
+            }
+
+            if (record == null) {
+                return received;
+            }
+            received = true;
+
+            ClusterCommunicationObject<byte[]> message = new ClusterCommunicationObject<byte[]>();
+            message.source = source;
+            message.tag = record.tag;
+            message.object = record.message;
+
+            try {
+                if (record.kind == MappedRingBuffer.KIND_RESPONSE) {
+                    responseReceived(message);
+                } else {
+                    receivedMessages.add(message);
+                }
+            } catch (RuntimeException e) {
+                System.out.println("[WARNING] - Cluster message from node " + source + " (tag " + record.tag + ") dropped");
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Replaces a corrupt inbound ring with an empty one, the writing node opens the new ring on its next message
+     * If the ring can't be replaced, it is retired and no longer read: the node fails to send to this node instead of
+     * filling the ring
+     *
+     * @param source the cluster ID of the writing node
+     */
+    private void replaceInboundRing(int source) {
+        MappedRingBuffer ring = inboundRings[source];
+
+        try {
+            //Retires the corrupt ring file before renaming the new one over it
+            inboundRings[source] = MappedRingBuffer.create(getRingFile(source, nodeId), ring.getCapacity());
+        } catch (IOException e) {
+            System.out.println("[WARNING] - Cluster ring " + getRingFile(source, nodeId) + " can't be replaced: " + e.getMessage());
+            ring.retire();
+            inboundRings[source] = null;
+        }
+    }
+
+    /**
+     * Returns the ring file between two nodes
+     *
+     * @param source the cluster ID of the writing node
+     * @param destinator the cluster ID of the reading node
+     * @return the ring file
+     */
+    private File getRingFile(int source, int destinator) {
+        return new File(directory, "ring-" + source + "-" + destinator);
+    }
+}
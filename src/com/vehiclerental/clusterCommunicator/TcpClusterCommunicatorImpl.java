@@ -0,0 +1,798 @@
+/**
+ * CarRental
+ *
+ * This file provides an implementation over TCP of the cluster communication interface, an alternative to MPI for
+ * nodes running on ordinary hosts. Every node listens on its address of the cluster node list (by cluster ID), only
+ * on the interface of this address
+ *
+ * Every connection is authenticated when it opens, with the secret shared by the cluster nodes: the accepting node
+ * sends a random challenge, the connecting node answers with its cluster ID, its own challenge and an HMAC of both
+ * challenges and both cluster IDs, and the accepting node proves it knows the secret the same way. A connection which
+ * fails the handshake or doesn't complete it in time is closed. The source of the messages received on a connection is
+ * the authenticated cluster ID of the connecting node, the frames don't carry it.
+ * Handshake: challenge (16 bytes) -> cluster ID (4 bytes) | challenge (16 bytes) | HMAC-SHA256 -> HMAC-SHA256
+ *
+ * A node keeps a small pool of outbound connections to each other node, opened on the first message, and sends its
+ * requests, responses and one-way messages over them. The connections are multiplexed: a frame carries its kind and
+ * tag, and many requests are in flight on a connection, matched by the request ID of their envelope.
+ * Frame: length (4 bytes, not included) | kind (1 byte) | tag (4 bytes) | envelope
+ *
+ * A single I/O thread runs a selector for all the connections: it accepts the inbound connections, reads their frames
+ * and writes the frames queued by the sending threads
+ * A lost outbound connection means a lost node: all the outstanding requests sent to the node fail, even the ones
+ * already written, their responses would never come. The responses already received from the node are handed over
+ * before the failure, a node answering and closing its connections right away (shutdown) is not mistaken for a failure
+ */
+
+package com.vehiclerental.clusterCommunicator;
+
+import com.vehiclerental.exceptions.ClusterCommunicatorException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TcpClusterCommunicatorImpl extends AbstractClusterCommunicator {
+    //Size of the frame fields before the envelope: kind and tag
+    private static final int FRAME_HEADER_SIZE = 5;
+    //Maximum size of a frame, a larger length means a corrupted stream
+    private static final int MAX_FRAME_SIZE = 64 * 1024 * 1024;
+    //Frame kinds
+    private static final byte FRAME_MESSAGE = 0;
+    private static final byte FRAME_RESPONSE = 1;
+    //Pause between two connection attempts to a node which is not listening yet (milliseconds)
+    private static final long CONNECT_RETRY_PAUSE = 200;
+    //Time given to the I/O thread to write the queued frames when the communicator is closed (milliseconds)
+    private static final long CLOSE_FLUSH_TIMEOUT = 2000;
+    //Sizes of the handshake challenges and proofs
+    private static final int CHALLENGE_SIZE = 16;
+    private static final int PROOF_SIZE = 32;
+    //Algorithm of the handshake proofs
+    private static final String PROOF_ALGORITHM = "HmacSHA256";
+    //Roles of the node proving it knows the secret, a proof can't be replayed for the other role
+    private static final byte PROOF_CONNECTING_NODE = 0;
+    private static final byte PROOF_ACCEPTING_NODE = 1;
+    //Time given to a new connection to complete the handshake (milliseconds)
+    private static final int HANDSHAKE_TIMEOUT = 10000;
+    //Interval between two searches of the inbound connections which didn't complete the handshake in time (milliseconds)
+    private static final long HANDSHAKE_CHECK_INTERVAL = 1000;
+
+    //Cluster ID of this node
+    private final int nodeId;
+    //Addresses of the cluster nodes, by cluster ID
+    private final List<InetSocketAddress> nodeAddresses;
+    //Number of outbound connections to each node
+    private final int connectionsPerNode;
+    //Send and receive buffer sizes of the sockets
+    private final int socketBufferSize;
+    //Time given to a node to start listening (milliseconds)
+    private final int connectTimeout;
+    //Key of the handshake proofs, the secret shared by the cluster nodes
+    private final SecretKeySpec clusterKey;
+    //Source of the handshake challenges
+    private final SecureRandom random = new SecureRandom();
+
+    //Selector of the I/O thread, and the listening socket
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final Thread ioThread;
+    private volatile boolean running = true;
+
+    //Outbound connections, by cluster ID then pool slot
+    private final Connection[][] outboundConnections;
+    //Next pool slot used to send
+    private final AtomicInteger nextConnection = new AtomicInteger();
+    //Connections waiting for the I/O thread: new ones to register, and the ones with frames to write
+    private final Queue<Connection> pendingRegistrations = new ConcurrentLinkedQueue<Connection>();
+    private final Queue<Connection> pendingWrites = new ConcurrentLinkedQueue<Connection>();
+
+    //Received requests and one-way messages, waiting for a matching receive
+    private final ReceivedMessageQueue receivedMessages = new ReceivedMessageQueue();
+    //Received responses, waiting for the progress thread, and the lost nodes (no envelope, the request ID is the last
+    //one sent before the loss) after the responses received before the loss
+    private final Queue<ClusterCommunicationObject<byte[]>> receivedResponses = new ConcurrentLinkedQueue<ClusterCommunicationObject<byte[]>>();
+
+    /**
+     * Connection to another node, inbound (read only once authenticated) or outbound (write only)
+     */
+    private class Connection {
+        private final SocketChannel channel;
+        //true for an outbound connection
+        private final boolean outbound;
+        //Cluster ID of the other node, -1 until an inbound connection is authenticated
+        private int node;
+        //Challenge sent on an inbound connection, null once the connection is authenticated
+        private byte[] challenge;
+        //Time before which an inbound connection must be authenticated
+        private long handshakeDeadline;
+        //Frames waiting to be written, written by the I/O thread only
+        private final Queue<ByteBuffer> writeQueue = new ConcurrentLinkedQueue<ByteBuffer>();
+        //Bytes read and not parsed yet
+        private ByteBuffer readBuffer;
+        private volatile boolean closed;
+
+        /**
+         * Constructor
+         *
+         * @param channel the connected channel
+         * @param outbound true for an outbound connection
+         * @param node the cluster ID of the other node, -1 until an inbound connection is authenticated
+         */
+        Connection(SocketChannel channel, boolean outbound, int node) {
+            this.channel = channel;
+            this.outbound = outbound;
+            this.node = node;
+            this.readBuffer = ByteBuffer.allocate(socketBufferSize);
+        }
+    }
+
+    /**
+     * Constructor - starts listening on the address of this node and starts the I/O thread
+     *
+     * @param nodeId the cluster ID of this node
+     * @param nodeAddresses the addresses of the cluster nodes, by cluster ID
+     * @param connectionsPerNode the number of outbound connections to each node
+     * @param socketBufferSize the send and receive buffer sizes of the sockets
+     * @param connectTimeout the time given to a node to start listening (milliseconds)
+     * @param clusterSecret the secret shared by the cluster nodes, authenticating their connections
+     * @throws IOException if the listening socket can't be opened
+     */
+    public TcpClusterCommunicatorImpl(int nodeId, List<InetSocketAddress> nodeAddresses, int connectionsPerNode, int socketBufferSize, int connectTimeout, String clusterSecret) throws IOException {
+        this.nodeId = nodeId;
+        this.nodeAddresses = nodeAddresses;
+        this.connectionsPerNode = connectionsPerNode;
+        this.socketBufferSize = socketBufferSize;
+        this.connectTimeout = connectTimeout;
+        this.clusterKey = new SecretKeySpec(clusterSecret.getBytes(StandardCharsets.UTF_8), PROOF_ALGORITHM);
+        this.outboundConnections = new Connection[nodeAddresses.size()][connectionsPerNode];
+
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        serverChannel.setOption(StandardSocketOptions.SO_RCVBUF, socketBufferSize);
+        serverChannel.bind(nodeAddresses.get(nodeId));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        ioThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runIoLoop();
+            }
+        }, "cluster-tcp-io-" + nodeId);
+        ioThread.setDaemon(true);
+        ioThread.start();
+    }
+
+    /**
+     * TCP implementation of the sendMessage method, the frame is queued on an outbound connection
+     *
+     * @param response true for a response, false for a one-way message
+     * @param destinator the cluster ID of the targeted node
+     * @param tag the tag ID of the message
+     * @param message the envelope
+     * @throws ClusterCommunicatorException
+     */
+    @Override
+    protected void sendMessage(boolean response, int destinator, int tag, byte[] message) throws ClusterCommunicatorException {
+        sendFrame(destinator, response ? FRAME_RESPONSE : FRAME_MESSAGE, tag, message);
+    }
+
+    /**
+     * TCP implementation of the startRequest method, the frame is queued on an outbound connection
+     *
+     * @param destinator the cluster ID of the targeted node
+     * @param tag the tag ID of the message
+     * @param requestId the ID of the request
+     * @param message the envelope
+     * @throws ClusterCommunicatorException
+     */
+    @Override
+    protected void startRequest(int destinator, int tag, long requestId, byte[] message) throws ClusterCommunicatorException {
+        sendFrame(destinator, FRAME_MESSAGE, tag, message);
+    }
+
+    /**
+     * TCP implementation of the receiveMessage method
+     *
+     * @param source expected source node cluster ID
+     * @param tag expected message tag ID
+     * @return The communication wrapper with the envelope
+     * @throws ClusterCommunicatorException
+     */
+    @Override
+    protected ClusterCommunicationObject<byte[]> receiveMessage(int source, int tag) throws ClusterCommunicatorException {
+        return receivedMessages.take(source, tag);
+    }
+
+    /**
+     * TCP implementation of the progress method, hands over the responses read by the I/O thread and fails the requests
+     * of the lost nodes, in their order
+     *
+     * @return true if a response was received or a node lost
+     */
+    @Override
+    protected boolean progress() {
+        boolean progressed = false;
+
+        ClusterCommunicationObject<byte[]> response;
+        while ((response = receivedResponses.poll()) != null) {
+            if (response.object == null) {
+                failRequests(response.source, response.requestId, new ClusterCommunicatorException("Connection to the cluster node " + response.source + " lost"));
+            } else {
+                responseReceived(response);
+            }
+            progressed = true;
+        }
+
+        return progressed;
+    }
+
+    /**
+     * Stops the I/O thread and closes the connections once the queued frames are written (the response of a shutdown
+     * request for instance), the outstanding requests fail
+     */
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+
+        try {
+            ioThread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        super.close();
+    }
+
+    /**
+     * Queues a frame on an outbound connection to a node, and wakes up the I/O thread to write it
+     *
+     * @param destinator the cluster ID of the targeted node
+     * @param kind the frame kind
+     * @param tag the tag ID of the message
+     * @param message the envelope
+     * @throws ClusterCommunicatorException if the node can't be reached
+     */
+    private void sendFrame(int destinator, byte kind, int tag, byte[] message) throws ClusterCommunicatorException {
+        ByteBuffer frame = ByteBuffer.allocate(4 + FRAME_HEADER_SIZE + message.length);
+        frame.putInt(FRAME_HEADER_SIZE + message.length)
+                .put(kind)
+                .putInt(tag)
+                .put(message)
+                .flip();
+
+        Connection connection = getOutboundConnection(destinator);
+        connection.writeQueue.add(frame);
+
+        //A connection closed meanwhile won't write the frame, it may even have dropped its frames before this one was queued
+        if (connection.closed) {
+            connection.writeQueue.remove(frame);
+            throw new ClusterCommunicatorException("Connection to the cluster node " + destinator + " lost");
+        }
+
+        pendingWrites.add(connection);
+        selector.wakeup();
+    }
+
+    /**
+     * Returns an outbound connection to a node, the connections of the pool are used in turn
+     * A missing or closed connection is opened again, waiting for the node to listen until the connect timeout
+     * The connection is opened without holding the pool, the other senders to the node keep using its open connections
+     *
+     * @param destinator the cluster ID of the targeted node
+     * @return the connection
+     * @throws ClusterCommunicatorException if the node can't be reached
+     */
+    private Connection getOutboundConnection(int destinator) throws ClusterCommunicatorException {
+        if (destinator < 0 || destinator >= nodeAddresses.size()) {
+            throw new ClusterCommunicatorException("Unknown cluster node " + destinator);
+        }
+        if (!running) {
+            throw new ClusterCommunicatorException("Cluster communicator closed");
+        }
+
+        Connection[] pool = outboundConnections[destinator];
+        int slot = (nextConnection.getAndIncrement() & Integer.MAX_VALUE) % connectionsPerNode;
+
+        synchronized (pool) {
+            if (pool[slot] != null && !pool[slot].closed) {
+                return pool[slot];
+            }
+        }
+
+        Connection connection = connect(destinator);
+
+        synchronized (pool) {
+            if (pool[slot] == null || pool[slot].closed) {
+                pool[slot] = connection;
+                pendingRegistrations.add(connection);
+                selector.wakeup();
+                return connection;
+            }
+
+            //Another sender opened the slot meanwhile
+            closeQuietly(connection.channel);
+            return pool[slot];
+        }
+    }
+
+    /**
+     * Opens and authenticates a connection to a node, the caller hands it to the I/O thread
+     *
+     * @param destinator the cluster ID of the node
+     * @return the connection
+     * @throws ClusterCommunicatorException if the node doesn't listen before the connect timeout, or fails the authentication
+     */
+    private Connection connect(int destinator) throws ClusterCommunicatorException {
+        InetSocketAddress address = nodeAddresses.get(destinator);
+        long deadline = System.currentTimeMillis() + connectTimeout;
+
+        while (true) {
+            SocketChannel channel = null;
+            try {
+                channel = SocketChannel.open();
+                configureSocket(channel);
+                channel.connect(address);
+            } catch (IOException e) {
+                closeQuietly(channel);
+
+                if (System.currentTimeMillis() >= deadline) {
+                    throw new ClusterCommunicatorException("Cluster node " + address + " unreachable: " + e.getMessage());
+                }
+
+                try {
+                    Thread.sleep(CONNECT_RETRY_PAUSE);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new ClusterCommunicatorException("Interrupted while connecting to " + address);
+                }
+                continue;
+            }
+
+            //The node listens, a failed handshake isn't retried
+            try {
+                authenticate(channel, destinator);
+                channel.configureBlocking(false);
+
+                return new Connection(channel, true, destinator);
+            } catch (EOFException e) {
+                closeQuietly(channel);
+                throw new ClusterCommunicatorException("Cluster node " + address + " closed the connection during the authentication (wrong cluster secret?)");
+            } catch (IOException e) {
+                closeQuietly(channel);
+                throw new ClusterCommunicatorException("Cluster node " + address + " failed the authentication: " + e.getMessage());
+            } catch (ClusterCommunicatorException e) {
+                closeQuietly(channel);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Authenticates a new outbound connection, still blocking: answers the challenge of the node with the proof of this
+     * node, then checks the proof of the node
+     *
+     * @param channel the connected channel
+     * @param destinator the cluster ID of the node
+     * @throws IOException if the node closes the connection or doesn't complete the handshake in time
+     * @throws ClusterCommunicatorException if the node doesn't prove it knows the cluster secret
+     */
+    private void authenticate(SocketChannel channel, int destinator) throws IOException, ClusterCommunicatorException {
+        channel.socket().setSoTimeout(HANDSHAKE_TIMEOUT);
+        DataInputStream input = new DataInputStream(channel.socket().getInputStream());
+
+        byte[] nodeChallenge = new byte[CHALLENGE_SIZE];
+        input.readFully(nodeChallenge);
+
+        byte[] challenge = new byte[CHALLENGE_SIZE];
+        random.nextBytes(challenge);
+
+        ByteBuffer answer = ByteBuffer.allocate(4 + CHALLENGE_SIZE + PROOF_SIZE);
+        answer.putInt(nodeId)
+                .put(challenge)
+                .put(computeProof(PROOF_CONNECTING_NODE, nodeChallenge, challenge, nodeId, destinator))
+                .flip();
+        while (answer.hasRemaining()) {
+            channel.write(answer);
+        }
+
+        byte[] proof = new byte[PROOF_SIZE];
+        input.readFully(proof);
+
+        if (!MessageDigest.isEqual(proof, computeProof(PROOF_ACCEPTING_NODE, nodeChallenge, challenge, nodeId, destinator))) {
+            throw new ClusterCommunicatorException("Cluster node " + nodeAddresses.get(destinator) + " failed the authentication");
+        }
+    }
+
+    /**
+     * Computes a handshake proof, the HMAC of the challenges and cluster IDs of both nodes with the cluster secret
+     *
+     * @param role the role of the proving node (connecting or accepting)
+     * @param acceptingChallenge the challenge of the accepting node
+     * @param connectingChallenge the challenge of the connecting node
+     * @param connectingNode the cluster ID of the connecting node
+     * @param acceptingNode the cluster ID of the accepting node
+     * @return the proof
+     */
+    private byte[] computeProof(byte role, byte[] acceptingChallenge, byte[] connectingChallenge, int connectingNode, int acceptingNode) {
+        try {
+            Mac mac = Mac.getInstance(PROOF_ALGORITHM);
+            mac.init(clusterKey);
+            mac.update(role);
+            mac.update(acceptingChallenge);
+            mac.update(connectingChallenge);
+            mac.update(ByteBuffer.allocate(8).putInt(connectingNode).putInt(acceptingNode).array());
+
+            return mac.doFinal();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cluster connections can't be authenticated: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Sets the options of a cluster socket
+     *
+     * @param channel the socket channel
+     * @throws IOException if an option can't be set
+     */
+    private void configureSocket(SocketChannel channel) throws IOException {
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+        channel.setOption(StandardSocketOptions.SO_SNDBUF, socketBufferSize);
+        channel.setOption(StandardSocketOptions.SO_RCVBUF, socketBufferSize);
+    }
+
+    /**
+     * I/O loop: accepts the inbound connections, reads the frames and writes the queued ones
+     */
+    private void runIoLoop() {
+        long nextHandshakeCheck = System.currentTimeMillis() + HANDSHAKE_CHECK_INTERVAL;
+
+        try {
+            while (running) {
+                selector.select(HANDSHAKE_CHECK_INTERVAL);
+
+                if (System.currentTimeMillis() >= nextHandshakeCheck) {
+                    closeExpiredHandshakes();
+                    nextHandshakeCheck = System.currentTimeMillis() + HANDSHAKE_CHECK_INTERVAL;
+                }
+
+                Connection connection;
+                while ((connection = pendingRegistrations.poll()) != null) {
+                    register(connection, SelectionKey.OP_READ);
+                    //Frames queued before the registration
+                    write(connection);
+                }
+                while ((connection = pendingWrites.poll()) != null) {
+                    write(connection);
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    if (!key.isValid()) {
+                        continue;
+                    }
+
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        Connection keyConnection = (Connection) key.attachment();
+                        if (key.isReadable()) {
+                            read(keyConnection);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            write(keyConnection);
+                        }
+                    }
+                }
+            }
+
+            flushWrites();
+        } catch (IOException e) {
+            System.out.println("[ERROR] - Cluster TCP transport failed: " + e.getMessage());
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                closeQuietly(key.channel());
+                if (key.attachment() != null) {
+                    ((Connection) key.attachment()).closed = true;
+                }
+            }
+            closeQuietly(selector);
+        }
+    }
+
+    /**
+     * Writes the frames still queued once the communicator is closed, until they are all written or the flush timeout
+     *
+     * @throws IOException if the selector fails
+     */
+    private void flushWrites() throws IOException {
+        long deadline = System.currentTimeMillis() + CLOSE_FLUSH_TIMEOUT;
+
+        while (true) {
+            Connection connection;
+            while ((connection = pendingRegistrations.poll()) != null) {
+                register(connection, SelectionKey.OP_READ);
+                write(connection);
+            }
+            while ((connection = pendingWrites.poll()) != null) {
+                write(connection);
+            }
+
+            boolean pending = false;
+            for (SelectionKey key : selector.keys()) {
+                if (key.isValid() && key.attachment() != null && !((Connection) key.attachment()).writeQueue.isEmpty()) {
+                    pending = true;
+                }
+            }
+
+            long remaining = deadline - System.currentTimeMillis();
+            if (!pending || remaining <= 0) {
+                return;
+            }
+
+            selector.select(remaining);
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+
+                if (key.isValid() && key.isWritable()) {
+                    write((Connection) key.attachment());
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes the inbound connections which didn't complete the handshake in time
+     */
+    private void closeExpiredHandshakes() {
+        long now = System.currentTimeMillis();
+
+        for (SelectionKey key : selector.keys()) {
+            Connection connection = (Connection) key.attachment();
+            if (connection != null && !connection.closed && connection.challenge != null && now >= connection.handshakeDeadline) {
+                System.out.println("[WARNING] - Cluster connection from " + connection.channel.socket().getRemoteSocketAddress() + " not authenticated in time, closed");
+                close(connection);
+            }
+        }
+    }
+
+    /**
+     * Accepts an inbound connection and sends its challenge
+     *
+     * @throws IOException if the listening socket fails
+     */
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+
+        try {
+            configureSocket(channel);
+            channel.configureBlocking(false);
+
+            Connection connection = new Connection(channel, false, -1);
+            connection.challenge = new byte[CHALLENGE_SIZE];
+            random.nextBytes(connection.challenge);
+            connection.handshakeDeadline = System.currentTimeMillis() + HANDSHAKE_TIMEOUT;
+            connection.writeQueue.add(ByteBuffer.wrap(connection.challenge));
+
+            register(connection, SelectionKey.OP_READ);
+            write(connection);
+        } catch (IOException e) {
+            closeQuietly(channel);
+        }
+    }
+
+    /**
+     * Checks the answer of the connecting node to the challenge of an inbound connection, then sends the proof of this
+     * node. The connection is closed if the answer is wrong
+     *
+     * @param connection the inbound connection
+     * @param buffer the bytes read and not parsed yet
+     * @return true once the connection is authenticated, false if the answer is incomplete or wrong
+     */
+    private boolean authenticate(Connection connection, ByteBuffer buffer) {
+        if (buffer.remaining() < 4 + CHALLENGE_SIZE + PROOF_SIZE) {
+            return false;
+        }
+
+        int source = buffer.getInt();
+        byte[] nodeChallenge = new byte[CHALLENGE_SIZE];
+        buffer.get(nodeChallenge);
+        byte[] proof = new byte[PROOF_SIZE];
+        buffer.get(proof);
+
+        if (source < 0 || source >= nodeAddresses.size()
+                || !MessageDigest.isEqual(proof, computeProof(PROOF_CONNECTING_NODE, connection.challenge, nodeChallenge, source, nodeId))) {
+            System.out.println("[WARNING] - Cluster connection from " + connection.channel.socket().getRemoteSocketAddress() + " failed the authentication, closed");
+            close(connection);
+            return false;
+        }
+
+        connection.writeQueue.add(ByteBuffer.wrap(computeProof(PROOF_ACCEPTING_NODE, connection.challenge, nodeChallenge, source, nodeId)));
+        connection.node = source;
+        connection.challenge = null;
+        write(connection);
+
+        return true;
+    }
+
+    /**
+     * Registers a connection with the selector
+     *
+     * @param connection the connection
+     * @param interestOps the initial interest set
+     */
+    private void register(Connection connection, int interestOps) {
+        try {
+            connection.channel.register(selector, interestOps, connection);
+        } catch (IOException e) {
+            close(connection);
+        }
+    }
+
+    /**
+     * Reads the available bytes of a connection and handles every complete frame
+     *
+     * @param connection the connection
+     */
+    private void read(Connection connection) {
+        try {
+            if (connection.channel.read(connection.readBuffer) < 0) {
+                close(connection);
+                return;
+            }
+        } catch (IOException e) {
+            close(connection);
+            return;
+        }
+
+        ByteBuffer buffer = connection.readBuffer;
+        buffer.flip();
+
+        if (connection.challenge != null && !authenticate(connection, buffer)) {
+            buffer.compact();
+            return;
+        }
+
+        while (buffer.remaining() >= 4) {
+            int length = buffer.getInt(buffer.position());
+
+            if (length < FRAME_HEADER_SIZE || length > MAX_FRAME_SIZE) {
+                System.out.println("[ERROR] - Invalid cluster frame length " + length + ", connection closed");
+                close(connection);
+                return;
+            }
+
+            if (buffer.remaining() < 4 + length) {
+                //Incomplete frame, the buffer must be able to hold it
+                if (buffer.capacity() < 4 + length) {
+                    ByteBuffer largerBuffer = ByteBuffer.allocate(4 + length);
+                    largerBuffer.put(buffer);
+                    connection.readBuffer = largerBuffer;
+                    return;
+                }
+                break;
+            }
+
+            buffer.getInt();
+            byte kind = buffer.get();
+
+            //The source is the authenticated node of the connection
+            ClusterCommunicationObject<byte[]> message = new ClusterCommunicationObject<byte[]>();
+            message.source = connection.node;
+            message.tag = buffer.getInt();
+            message.object = new byte[length - FRAME_HEADER_SIZE];
+            buffer.get(message.object);
+
+            if (kind == FRAME_RESPONSE) {
+                receivedResponses.add(message);
+            } else {
+                receivedMessages.add(message);
+            }
+        }
+
+        buffer.compact();
+    }
+
+    /**
+     * Writes the queued frames of a connection, until the socket buffer is full
+     *
+     * @param connection the connection
+     */
+    private void write(Connection connection) {
+        SelectionKey key = connection.channel.keyFor(selector);
+        if (key == null || !key.isValid()) {
+            //Not registered yet, written once registered
+            return;
+        }
+
+        try {
+            ByteBuffer frame;
+            while ((frame = connection.writeQueue.peek()) != null) {
+                connection.channel.write(frame);
+                if (frame.hasRemaining()) {
+                    //Socket buffer full, continue when writable
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+                connection.writeQueue.poll();
+            }
+
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        } catch (IOException e) {
+            close(connection);
+        }
+    }
+
+    /**
+     * Closes a connection, the frames which couldn't be written are dropped
+     * For an outbound connection, all the outstanding requests sent to its node fail, written or not, once the
+     * responses already sent by the node are read
+     *
+     * @param connection the connection
+     */
+    private void close(Connection connection) {
+        connection.closed = true;
+        closeQuietly(connection.channel);
+        connection.writeQueue.clear();
+
+        if (connection.outbound) {
+            ClusterCommunicationObject<byte[]> lostNode = new ClusterCommunicationObject<byte[]>();
+            lostNode.source = connection.node;
+            lostNode.requestId = getLastRequestId();
+
+            for (SelectionKey key : selector.keys()) {
+                Connection inbound = (Connection) key.attachment();
+                if (inbound != null && !inbound.outbound && !inbound.closed && inbound.node == connection.node) {
+                    read(inbound);
+                }
+            }
+
+            receivedResponses.add(lostNode);
+        }
+    }
+
+    /**
+     * Closes a resource, ignoring the failures
+     *
+     * @param closeable the resource, or null
+     */
+    private static void closeQuietly(java.io.Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                //Already closed
+            }
+        }
+    }
+}
@@ -0,0 +1,16 @@
+/**
+ * CarRental
+ *
+ * This file provides a light communication object representing the result of an available vehicle search across the
+ * branches, with the IDs of the branches which responded in time (a missing branch contributed no vehicle)
+ */
+
+package com.vehiclerental.contracts;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class AvailableVehiclesSearchResultContract {
+    public List<BookingSearchResultContract> vehicles = new ArrayList<BookingSearchResultContract>();
+    public List<Integer> respondingBranchIds = new ArrayList<Integer>();
+}
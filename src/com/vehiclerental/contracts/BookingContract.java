@@ -21,6 +21,12 @@ public class BookingContract {
     public boolean bookingValidated;
     public boolean requireVehicleMove;
 
+    /**
+     * Empty constructor, used by the binary message codec
+     */
+    public BookingContract() {
+    }
+
     /**
      * Transforms a server-side booking to a communication contract
      *
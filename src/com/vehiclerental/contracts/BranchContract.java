@@ -10,6 +10,12 @@ import com.vehiclerental.dataLayer.entities.Branch;
 
 public class BranchContract {
 
+    /**
+     * Empty constructor, used by the binary message codec
+     */
+    public BranchContract() {
+    }
+
     /**
      * Transforms a server side branch to a commmunication contract
      * @param branch the branch
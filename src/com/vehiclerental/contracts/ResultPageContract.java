@@ -0,0 +1,16 @@
+/**
+ * CarRental
+ *
+ * This file provides a light communication object representing a page of a result list
+ * The continuation token (opaque) gives the position of the next page, it is null on the last page
+ */
+
+package com.vehiclerental.contracts;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ResultPageContract<T> {
+    public List<T> items = new ArrayList<T>();
+    public String continuationToken;
+}
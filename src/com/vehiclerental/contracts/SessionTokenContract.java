@@ -0,0 +1,35 @@
+/**
+ * CarRental
+ *
+ * This file provides a light communication object representing a session token issued by the login method
+ * The token must be sent in the "token" field of the next requests instead of the basic auth string
+ */
+
+package com.vehiclerental.contracts;
+
+import com.vehiclerental.dataLayer.entities.User;
+
+public class SessionTokenContract {
+
+    /**
+     * Empty constructor, used by the gson adapter of the contract
+     */
+    public SessionTokenContract() {
+    }
+
+    /**
+     * Creates the contract of an issued token
+     * @param token the signed token
+     * @param expiresAt the expiry timestamp (milliseconds)
+     * @param user the authenticated user
+     */
+    public SessionTokenContract(String token, long expiresAt, User user) {
+        this.token = token;
+        this.expiresAt = expiresAt;
+        this.user = new UserContract(user);
+    }
+
+    public String token;
+    public long expiresAt;
+    public UserContract user;
+}
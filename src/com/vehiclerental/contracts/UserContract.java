@@ -10,6 +10,12 @@ import com.vehiclerental.dataLayer.entities.User;
 
 public class UserContract {
 
+    /**
+     * Empty constructor, used by the gson adapter of the contract
+     */
+    public UserContract() {
+    }
+
     /**
      * Transforms a server user into a contract object
      * @param user the user
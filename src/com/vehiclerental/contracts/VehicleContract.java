@@ -10,6 +10,12 @@ import com.vehiclerental.dataLayer.entities.Vehicle;
 
 public class VehicleContract {
 
+    /**
+     * Empty constructor, used by the binary message codec
+     */
+    public VehicleContract() {
+    }
+
     /**
      * Transforms a server vehicle into a contract object
      * @param vehicle the vehicle
@@ -12,6 +12,12 @@ import com.vehiclerental.utils.DateUtils;
 
 public class VehicleMoveContract {
 
+    /**
+     * Empty constructor, used by the binary message codec
+     */
+    public VehicleMoveContract() {
+    }
+
     /**
      * Transforms a server vehicle move into a contract object
      * @param move the vehicle move
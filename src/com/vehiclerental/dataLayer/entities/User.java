@@ -6,6 +6,10 @@
  *
  * Note: There is many implementation-specific code in order to define the behavior of the user in the database, it could be
  * a design error, and could have been avoided using inheritance
+ *
+ * The encrypted properties are decrypted lazily: once decrypt() is called, the database fields keep their encrypted value
+ * and each property is only decrypted on its first access, the plain text value is then kept in memory. Setting a
+ * property in this state encrypts the database field, so the entity can still be updated in the database
  */
 
 
@@ -23,6 +27,7 @@ import com.vehiclerental.utils.CryptoUtils;
 public class User {
 
     // Database field names
+    public static final String ID_FIELD_NAME = "id";
     public static final String IS_STAFF_FIELD_NAME = "is_staff";
     public static final String FULL_NAME_FIELD_NAME = "full_name";
     public static final String EMAIL_ADDRESS_FIELD_NAME = "email_address";
@@ -34,7 +39,7 @@ public class User {
     public static final String ADDRESS_COUNTRY_FIELD_NAME = "address_country";
 
     //Properties, with ORMlite annotations for the database
-    @DatabaseField(generatedId = true)
+    @DatabaseField(generatedId = true, columnName = ID_FIELD_NAME)
     private int id;
     @DatabaseField(canBeNull = false, columnName = IS_STAFF_FIELD_NAME)
     private boolean isStaff;
@@ -57,6 +62,16 @@ public class User {
     @ForeignCollectionField(eager = false)
     private ForeignCollection<Booking> bookings;
 
+    //true once decrypt() has been called, the encrypted properties are then decrypted on their first access
+    private transient boolean decryptOnAccess = false;
+    //Plain text values of the encrypted properties, null until decrypted
+    private transient String decryptedPhoneNumber;
+    private transient String decryptedHashedPassword;
+    private transient String decryptedAddress_street;
+    private transient String decryptedAddress_city;
+    private transient String decryptedAddress_postalCode;
+    private transient String decryptedAddress_country;
+
     //Constructors
     public User() {
     }
@@ -89,8 +104,22 @@ public class User {
     //Helper methods
     /**
      * Encrypts some properties of the entity
+     * The plain text values are kept, so a following decrypt() doesn't need to decrypt them again
      */
     public void encrypt() {
+        if (decryptOnAccess) {
+            //The database fields are still encrypted
+            decryptOnAccess = false;
+            return;
+        }
+
+        this.decryptedPhoneNumber = phoneNumber;
+        this.decryptedHashedPassword = hashedPassword;
+        this.decryptedAddress_street = address_street;
+        this.decryptedAddress_city = address_city;
+        this.decryptedAddress_postalCode = address_postalCode;
+        this.decryptedAddress_country = address_country;
+
         try {
             this.phoneNumber = CryptoUtils.encrypt(phoneNumber);
             this.hashedPassword = CryptoUtils.encrypt(hashedPassword);
@@ -106,18 +135,49 @@ public class User {
 
     /**
      * Decrypts the previously encrypted properties of the entity
+     * The properties are decrypted on their first access
      */
     public void decrypt() {
+        decryptOnAccess = true;
+    }
+
+    /**
+     * Decrypts the value of an encrypted database field
+     *
+     * @param encryptedValue the encrypted value
+     * @return the plain text value, or the given value if the decryption fails
+     */
+    private static String decryptField(String encryptedValue) {
+        if (encryptedValue == null) {
+            return null;
+        }
+
+        try {
+            return CryptoUtils.decrypt(encryptedValue);
+        } catch (Exception e) {
+            //Display error if encryption failed
+            e.printStackTrace();
+            return encryptedValue;
+        }
+    }
+
+    /**
+     * Encrypts a plain text value for an encrypted database field
+     *
+     * @param value the plain text value
+     * @return the encrypted value, or the given value if the encryption fails
+     */
+    private static String encryptField(String value) {
+        if (value == null) {
+            return null;
+        }
+
         try {
-            this.phoneNumber = CryptoUtils.decrypt(phoneNumber);
-            this.hashedPassword = CryptoUtils.decrypt(hashedPassword);
-            this.address_street = CryptoUtils.decrypt(address_street);
-            this.address_city = CryptoUtils.decrypt(address_city);
-            this.address_postalCode = CryptoUtils.decrypt(address_postalCode);
-            this.address_country = CryptoUtils.decrypt(address_country);
+            return CryptoUtils.encrypt(value);
         } catch (Exception e) {
             //Display error if encryption failed
             e.printStackTrace();
+            return value;
         }
     }
 
@@ -155,51 +215,93 @@ public class User {
     }
 
     public String getPhoneNumber() {
-        return phoneNumber;
+        if (!decryptOnAccess) {
+            return phoneNumber;
+        }
+        if (decryptedPhoneNumber == null) {
+            decryptedPhoneNumber = decryptField(phoneNumber);
+        }
+        return decryptedPhoneNumber;
     }
 
     public void setPhoneNumber(String phoneNumber) {
-        this.phoneNumber = phoneNumber;
+        this.phoneNumber = decryptOnAccess ? encryptField(phoneNumber) : phoneNumber;
+        this.decryptedPhoneNumber = decryptOnAccess ? phoneNumber : null;
     }
 
     public String getHashedPassword() {
-        return hashedPassword;
+        if (!decryptOnAccess) {
+            return hashedPassword;
+        }
+        if (decryptedHashedPassword == null) {
+            decryptedHashedPassword = decryptField(hashedPassword);
+        }
+        return decryptedHashedPassword;
     }
 
     public void setHashedPassword(String hashedPassword) {
-        this.hashedPassword = hashedPassword;
+        this.hashedPassword = decryptOnAccess ? encryptField(hashedPassword) : hashedPassword;
+        this.decryptedHashedPassword = decryptOnAccess ? hashedPassword : null;
     }
 
     public String getAddress_street() {
-        return address_street;
+        if (!decryptOnAccess) {
+            return address_street;
+        }
+        if (decryptedAddress_street == null) {
+            decryptedAddress_street = decryptField(address_street);
+        }
+        return decryptedAddress_street;
     }
 
     public void setAddress_street(String address_street) {
-        this.address_street = address_street;
+        this.address_street = decryptOnAccess ? encryptField(address_street) : address_street;
+        this.decryptedAddress_street = decryptOnAccess ? address_street : null;
     }
 
     public String getAddress_city() {
-        return address_city;
+        if (!decryptOnAccess) {
+            return address_city;
+        }
+        if (decryptedAddress_city == null) {
+            decryptedAddress_city = decryptField(address_city);
+        }
+        return decryptedAddress_city;
     }
 
     public void setAddress_city(String address_city) {
-        this.address_city = address_city;
+        this.address_city = decryptOnAccess ? encryptField(address_city) : address_city;
+        this.decryptedAddress_city = decryptOnAccess ? address_city : null;
     }
 
     public String getAddress_postalCode() {
-        return address_postalCode;
+        if (!decryptOnAccess) {
+            return address_postalCode;
+        }
+        if (decryptedAddress_postalCode == null) {
+            decryptedAddress_postalCode = decryptField(address_postalCode);
+        }
+        return decryptedAddress_postalCode;
     }
 
     public void setAddress_postalCode(String address_postalCode) {
-        this.address_postalCode = address_postalCode;
+        this.address_postalCode = decryptOnAccess ? encryptField(address_postalCode) : address_postalCode;
+        this.decryptedAddress_postalCode = decryptOnAccess ? address_postalCode : null;
     }
 
     public String getAddress_country() {
-        return address_country;
+        if (!decryptOnAccess) {
+            return address_country;
+        }
+        if (decryptedAddress_country == null) {
+            decryptedAddress_country = decryptField(address_country);
+        }
+        return decryptedAddress_country;
     }
 
     public void setAddress_country(String address_country) {
-        this.address_country = address_country;
+        this.address_country = decryptOnAccess ? encryptField(address_country) : address_country;
+        this.decryptedAddress_country = decryptOnAccess ? address_country : null;
     }
 
     public ForeignCollection<Booking> getBookings() {
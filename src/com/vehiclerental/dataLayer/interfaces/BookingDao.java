@@ -10,6 +10,7 @@ package com.vehiclerental.dataLayer.interfaces;
 import com.vehiclerental.dataLayer.entities.Booking;
 import com.vehiclerental.dataLayer.entities.Branch;
 import com.vehiclerental.dataLayer.entities.User;
+import com.vehiclerental.utils.ContinuationToken;
 
 import java.util.List;
 
@@ -24,19 +25,23 @@ public interface BookingDao extends BaseDao<Booking> {
     List<Booking> getBranchBookingsForUser(Branch branch, User user);
 
     /**
-     * Returns all the bookings for a given branch
+     * Returns a page of the bookings for a given branch, ordered by pickup date then ID
      *
      * @param currentBranch the specified branch
+     * @param after the position (pickup date and ID) of the last booking of the previous page, null for the first page
+     * @param limit the maximum number of bookings
      * @return a list of the matching bookings
      */
-    List<Booking> getBranchBookings(Branch currentBranch);
+    List<Booking> getBranchBookings(Branch currentBranch, ContinuationToken after, long limit);
 
     /**
-     * Returns all the bookings requiring a move (outgoing OR incoming) for a given branch
+     * Returns a page of the bookings requiring a move (outgoing OR incoming) for a given branch, ordered by ID
      *
      * @param nodeBranch the specified branch
      * @param outgoing if true, only the outgoing moves will be returned, if false, only the incoming ones
+     * @param after the position (ID) of the last booking of the previous page, null for the first page
+     * @param limit the maximum number of bookings
      * @return a list of the matching bookings
      */
-    List<Booking> getBookingsRequiringMovesForBranch(Branch nodeBranch, boolean outgoing);
+    List<Booking> getBookingsRequiringMovesForBranch(Branch nodeBranch, boolean outgoing, ContinuationToken after, long limit);
 }
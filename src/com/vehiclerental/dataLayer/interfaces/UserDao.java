@@ -8,6 +8,7 @@
 package com.vehiclerental.dataLayer.interfaces;
 
 import com.vehiclerental.dataLayer.entities.User;
+import com.vehiclerental.utils.ContinuationToken;
 
 import java.util.List;
 
@@ -21,10 +22,12 @@ public interface UserDao extends BaseDao<User> {
     User getUserByEmail(String email);
 
     /**
-     * Search for an user whose a part of email or full name match a the search term
+     * Returns a page of the users whose a part of email or full name match a the search term, ordered by ID
      *
      * @param searchTerm a string of minimum 3 characters
+     * @param after the position (ID) of the last user of the previous page, null for the first page
+     * @param limit the maximum number of users
      * @return A list of matching users
      */
-    List<User> searchUsers(String searchTerm);
+    List<User> searchUsers(String searchTerm, ContinuationToken after, long limit);
 }
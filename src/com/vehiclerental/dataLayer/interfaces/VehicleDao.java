@@ -9,6 +9,7 @@ package com.vehiclerental.dataLayer.interfaces;
 
 import com.vehiclerental.dataLayer.entities.Branch;
 import com.vehiclerental.dataLayer.entities.Vehicle;
+import com.vehiclerental.utils.ContinuationToken;
 
 import java.util.Calendar;
 import java.util.List;
@@ -38,13 +39,15 @@ public interface VehicleDao extends BaseDao<Vehicle> {
     List<Vehicle> getAvailableVehicles(Branch branch, Integer type, Calendar pickupDate, Calendar returnDate);
 
     /**
-     * Returns all the vehicles matching a type in the specified branch
+     * Returns a page of the vehicles matching a type in the specified branch, ordered by ID
      *
      * @param vehicleTypeId the type ID
      * @param nodeBranch the branch
+     * @param after the position (ID) of the last vehicle of the previous page, null for the first page
+     * @param limit the maximum number of vehicles
      * @return a list of the matched vehicles
      */
-    List<Vehicle> searchBranchVehiclesByType(int vehicleTypeId, Branch nodeBranch);
+    List<Vehicle> searchBranchVehiclesByType(int vehicleTypeId, Branch nodeBranch, ContinuationToken after, long limit);
 
     /**
      * Search for a vehicle with a specific registration number in a given branch
@@ -13,6 +13,7 @@ import com.j256.ormlite.stmt.Where;
 import com.vehiclerental.dataLayer.entities.*;
 import com.vehiclerental.dataLayer.interfaces.BookingDao;
 import com.vehiclerental.exceptions.DatabaseAccessFailedException;
+import com.vehiclerental.utils.ContinuationToken;
 import com.vehiclerental.utils.DateUtils;
 
 import java.io.IOException;
@@ -62,20 +63,38 @@ public class BookingDaoSqliteImpl  extends BaseDaoSqliteImpl<Booking> implements
     }
 
     /**
-     * Returns all the bookings for a given branch in the SQLite database
+     * Returns a page of the bookings for a given branch in the SQLite database, ordered by pickup date then ID
+     * The page starts right after the given position (keyset pagination): the query seeks the pickup date index instead
+     * of skipping the bookings of the previous pages
      *
      * @param currentBranch the specified branch
+     * @param after the position (pickup date and ID) of the last booking of the previous page, null for the first page
+     * @param limit the maximum number of bookings
      * @return a list of the matching bookings
      */
     @Override
-    public List<Booking> getBranchBookings(Branch currentBranch) {
+    public List<Booking> getBranchBookings(Branch currentBranch, ContinuationToken after, long limit) {
         try {
             QueryBuilder<Booking, Integer> statementBuilder = dao.queryBuilder();
-            Where whereClause = statementBuilder.where();
-
-            whereClause.eq(Booking.BRANCH_FIELD_NAME, currentBranch);
+            Where<Booking, Integer> whereClause = statementBuilder.where();
+
+            if (after == null) {
+                whereClause.eq(Booking.BRANCH_FIELD_NAME, currentBranch);
+            } else {
+                //(pickup date, ID) after the last booking of the previous page
+                whereClause
+                        .eq(Booking.BRANCH_FIELD_NAME, currentBranch)
+                            .gt(Booking.START_DAY_FIELD_NAME, after.getSortKey())
+                                .eq(Booking.START_DAY_FIELD_NAME, after.getSortKey())
+                                .gt(Booking.ID_FIELD_NAME, after.getId())
+                            .and(2)
+                        .or(2)
+                    .and(2);
+            }
 
             statementBuilder.orderBy(Booking.START_DAY_FIELD_NAME, true);
+            statementBuilder.orderBy(Booking.ID_FIELD_NAME, true);
+            statementBuilder.limit(limit);
 
             return dao.query(statementBuilder.prepare());
         } catch (SQLException e) {
@@ -85,19 +104,22 @@ public class BookingDaoSqliteImpl  extends BaseDaoSqliteImpl<Booking> implements
     }
 
     /**
-     * Returns all the bookings requiring a move (outgoing OR incoming) for a given branch
+     * Returns a page of the bookings requiring a move (outgoing OR incoming) for a given branch, ordered by ID
      *
      * @param nodeBranch the specified branch
      * @param outgoing if true, only the outgoing moves will be returned, if false, only the incoming ones
+     * @param after the position (ID) of the last booking of the previous page, null for the first page
+     * @param limit the maximum number of bookings
      * @return a list of the matching bookings
      */
     @Override
-    public List<Booking> getBookingsRequiringMovesForBranch(Branch nodeBranch, boolean outgoing) {
+    public List<Booking> getBookingsRequiringMovesForBranch(Branch nodeBranch, boolean outgoing, ContinuationToken after, long limit) {
 
         try {
             long todayTimestamp = DateUtils.getTodayCalendar().getTimeInMillis();
+            int afterId = after != null ? after.getId() : 0;
 
-            String rawQuery = String.format(getVehicleMoveQueryTemplate(outgoing), nodeBranch.getId(), todayTimestamp);
+            String rawQuery = String.format(getVehicleMoveQueryTemplate(outgoing), nodeBranch.getId(), todayTimestamp, afterId, limit);
 
             GenericRawResults<Booking> rawResults = dao.queryRaw(rawQuery, dao.getRawRowMapper());
 
@@ -152,7 +174,11 @@ public class BookingDaoSqliteImpl  extends BaseDaoSqliteImpl<Booking> implements
                                 " AND " +
                                 " `vm`.`" + VehicleMove.MOVE_DATE_FIELD_NAME + "` >= %2$d " + //Move date must be after or equal to today
                             " ) " +
-                        " ) ";
+                        " ) " +
+                        " AND " +
+                        " `bo`.`" + Booking.ID_FIELD_NAME + "` > %3$d " + //The page starts after the last booking of the previous one
+                    " ORDER BY `bo`.`" + Booking.ID_FIELD_NAME + "` " +
+                    " LIMIT %4$d ";
             }
 
             return outgoingVehicleSqlQueryTemplate;
@@ -181,7 +207,11 @@ public class BookingDaoSqliteImpl  extends BaseDaoSqliteImpl<Booking> implements
                                 " AND " +
                                 " `vm`.`" + VehicleMove.RETURN_DATE_FIELD_NAME + "` >= %2$d " + //Return date must be after or equal to today
                             " ) " +
-                        " ) ";
+                        " ) " +
+                        " AND " +
+                        " `bo`.`" + Booking.ID_FIELD_NAME + "` > %3$d " + //The page starts after the last booking of the previous one
+                    " ORDER BY `bo`.`" + Booking.ID_FIELD_NAME + "` " +
+                    " LIMIT %4$d ";
             }
 
             return incomingVehicleSqlQueryTemplate;
@@ -2,6 +2,7 @@
  * CarRental
  *
  * This file stores a single SQLite connection instance through for the node
+ * The connection is shared by all the threads of the process, one at a time (see SerializedConnectionSource)
  */
 
 package com.vehiclerental.dataLayer.sqliteImplementation;
@@ -18,14 +19,14 @@ public class OrmLiteConnectionSingleton {
 
     /**
      * Returns the existing connection handler for the program
-     * Also generates the connection handler if not existing
+     * Also generates the connection handler if not existing (synchronized, the head office workers share it)
      *
-     * @return ORMLite SQLite connection handler
+     * @return ORMLite SQLite connection handler, its connection is used by one thread at a time
      * @throws SQLException
      */
-    public static ConnectionSource getInstance() throws SQLException {
+    public static synchronized ConnectionSource getInstance() throws SQLException {
         if (dbConnectionSourceInstance == null) {
-            dbConnectionSourceInstance = new JdbcConnectionSource(DATABASE_URL);
+            dbConnectionSourceInstance = new SerializedConnectionSource(new JdbcConnectionSource(DATABASE_URL));
         }
         return dbConnectionSourceInstance;
     }
@@ -33,7 +34,7 @@ public class OrmLiteConnectionSingleton {
     /**
      * Closes the current connection handler
      */
-    public static void close() {
+    public static synchronized void close() {
         dbConnectionSourceInstance.closeQuietly();
         dbConnectionSourceInstance = null;
     }
@@ -0,0 +1,134 @@
+/**
+ * CarRental
+ *
+ * This file provides an ORMLite connection source giving its single SQLite connection to one thread at a time
+ *
+ * A JDBC connection source of ORMLite is not thread safe, and the head office and branch workers use the DAOs at the
+ * same time. A pool of connections doesn't fit SQLite either: the connections lock the whole database file against each
+ * other, and the concurrent writers fail with SQLITE_BUSY. A thread taking the connection (any DAO call) holds it until
+ * ORMLite releases it at the end of the call, the other threads wait. The lock is reentrant, ORMLite can take the
+ * connection again during a call (foreign objects refresh)
+ */
+
+package com.vehiclerental.dataLayer.sqliteImplementation;
+
+import com.j256.ormlite.db.DatabaseType;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.locks.ReentrantLock;
+
+class SerializedConnectionSource implements ConnectionSource {
+    //Connection source of the single connection
+    private final ConnectionSource connectionSource;
+    //Held by the thread using the connection, from its get to its release
+    private final ReentrantLock connectionLock = new ReentrantLock();
+
+    /**
+     * Constructor - serializes the use of a single connection source
+     *
+     * @param connectionSource the single connection source
+     */
+    SerializedConnectionSource(ConnectionSource connectionSource) {
+        this.connectionSource = connectionSource;
+    }
+
+    /**
+     * Waits for the connection and returns it for a read
+     *
+     * @return the database connection
+     * @throws SQLException if the connection can't be obtained
+     */
+    @Override
+    public DatabaseConnection getReadOnlyConnection() throws SQLException {
+        connectionLock.lock();
+        try {
+            return connectionSource.getReadOnlyConnection();
+        } catch (SQLException e) {
+            connectionLock.unlock();
+            throw e;
+        } catch (RuntimeException e) {
+            connectionLock.unlock();
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for the connection and returns it for a write
+     *
+     * @return the database connection
+     * @throws SQLException if the connection can't be obtained
+     */
+    @Override
+    public DatabaseConnection getReadWriteConnection() throws SQLException {
+        connectionLock.lock();
+        try {
+            return connectionSource.getReadWriteConnection();
+        } catch (SQLException e) {
+            connectionLock.unlock();
+            throw e;
+        } catch (RuntimeException e) {
+            connectionLock.unlock();
+            throw e;
+        }
+    }
+
+    /**
+     * Releases the connection, the next waiting thread can take it
+     *
+     * @param connection the database connection
+     * @throws SQLException if the release fails
+     */
+    @Override
+    public void releaseConnection(DatabaseConnection connection) throws SQLException {
+        try {
+            connectionSource.releaseConnection(connection);
+        } finally {
+            if (connectionLock.isHeldByCurrentThread()) {
+                connectionLock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public boolean saveSpecialConnection(DatabaseConnection connection) throws SQLException {
+        return connectionSource.saveSpecialConnection(connection);
+    }
+
+    @Override
+    public void clearSpecialConnection(DatabaseConnection connection) {
+        connectionSource.clearSpecialConnection(connection);
+    }
+
+    @Override
+    public DatabaseConnection getSpecialConnection() {
+        return connectionSource.getSpecialConnection();
+    }
+
+    @Override
+    public void close() throws IOException {
+        connectionSource.close();
+    }
+
+    @Override
+    public void closeQuietly() {
+        connectionSource.closeQuietly();
+    }
+
+    @Override
+    public DatabaseType getDatabaseType() {
+        return connectionSource.getDatabaseType();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return connectionSource.isOpen();
+    }
+
+    @Override
+    public boolean isSingleConnection() {
+        return connectionSource.isSingleConnection();
+    }
+}
@@ -11,6 +11,7 @@ import com.j256.ormlite.stmt.QueryBuilder;
 import com.j256.ormlite.stmt.Where;
 import com.vehiclerental.dataLayer.interfaces.UserDao;
 import com.vehiclerental.dataLayer.entities.User;
+import com.vehiclerental.utils.ContinuationToken;
 
 import java.sql.SQLException;
 import java.util.List;
@@ -56,13 +57,16 @@ public class UserDaoSqliteImpl extends BaseDaoSqliteImpl<User> implements UserDa
     }
 
     /**
-     * Search for an user whose a part of email or full name match a the search term in the SQLite database
+     * Returns a page of the users whose a part of email or full name match a the search term in the SQLite database,
+     * ordered by ID
      *
      * @param searchTerm a string of minimum 3 characters
+     * @param after the position (ID) of the last user of the previous page, null for the first page
+     * @param limit the maximum number of users
      * @return A list of matching users
      */
     @Override
-    public List<User> searchUsers(String searchTerm) {
+    public List<User> searchUsers(String searchTerm, ContinuationToken after, long limit) {
         try {
             QueryBuilder<User, Integer> statementBuilder = dao.queryBuilder();
 
@@ -75,7 +79,12 @@ public class UserDaoSqliteImpl extends BaseDaoSqliteImpl<User> implements UserDa
                 .or(2)
                 //The users must not be staff members
                 .eq(User.IS_STAFF_FIELD_NAME, false)
-            .and(2);
+                //The page starts after the last user of the previous one
+                .gt(User.ID_FIELD_NAME, after != null ? after.getId() : 0)
+            .and(3);
+
+            statementBuilder.orderBy(User.ID_FIELD_NAME, true);
+            statementBuilder.limit(limit);
 
             return dao.query(statementBuilder.prepare());
         } catch (SQLException e) {
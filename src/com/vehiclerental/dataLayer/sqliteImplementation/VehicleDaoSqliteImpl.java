@@ -15,6 +15,7 @@ import com.vehiclerental.dataLayer.entities.VehicleMove;
 import com.vehiclerental.dataLayer.interfaces.VehicleDao;
 import com.vehiclerental.dataLayer.entities.Branch;
 import com.vehiclerental.dataLayer.entities.Vehicle;
+import com.vehiclerental.utils.ContinuationToken;
 import com.vehiclerental.utils.DateUtils;
 
 import java.io.IOException;
@@ -109,14 +110,16 @@ public class VehicleDaoSqliteImpl extends BaseDaoSqliteImpl<Vehicle> implements
     }
 
     /**
-     * Returns all the vehicles matching a type in the specified branch in the SQLite database
+     * Returns a page of the vehicles matching a type in the specified branch in the SQLite database, ordered by ID
      *
      * @param vehicleTypeId the type ID
      * @param nodeBranch the branch
+     * @param after the position (ID) of the last vehicle of the previous page, null for the first page
+     * @param limit the maximum number of vehicles
      * @return a list of the matched vehicles
      */
     @Override
-    public List<Vehicle> searchBranchVehiclesByType(int vehicleTypeId, Branch nodeBranch) {
+    public List<Vehicle> searchBranchVehiclesByType(int vehicleTypeId, Branch nodeBranch, ContinuationToken after, long limit) {
         try {
             QueryBuilder<Vehicle, Integer> statementBuilder = dao.queryBuilder();
 
@@ -125,7 +128,12 @@ public class VehicleDaoSqliteImpl extends BaseDaoSqliteImpl<Vehicle> implements
             whereClause
                     .eq(Vehicle.TYPE_FIELD_NAME, vehicleTypeId)
                     .and()
-                    .eq(Vehicle.BRANCH_FIELD_NAME, nodeBranch);
+                    .eq(Vehicle.BRANCH_FIELD_NAME, nodeBranch)
+                    .and()
+                    .gt(Vehicle.ID_FIELD_NAME, after != null ? after.getId() : 0);
+
+            statementBuilder.orderBy(Vehicle.ID_FIELD_NAME, true);
+            statementBuilder.limit(limit);
 
             return dao.query(statementBuilder.prepare());
         } catch (SQLException e) {
@@ -0,0 +1,158 @@
+/**
+ * CarRental
+ *
+ * This file provides a bounded cache of the authenticated principals, keyed by the SHA256 hash of the basic auth string
+ * A client sends the same basic auth string with every request, a cached principal avoids the database access, the
+ * decryption of the user and the password hash of the following requests until the entry expires
+ *
+ * Only the successful authentications are cached, with the user ID and staff flag. An entry is only removed once expired
+ * or evicted: the users can't be changed once created, a service changing the password or the staff flag of a user
+ * would have to remove the entries of that user
+ */
+
+package com.vehiclerental.logicLayer;
+
+import com.vehiclerental.utils.CryptoUtils;
+
+import java.io.UnsupportedEncodingException;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class AuthenticationCache {
+    //Cached principals by basic auth hash, in access order so the least recently used entry is evicted first
+    private final LinkedHashMap<String, CachedPrincipal> principals;
+    //Maximum number of entries
+    private final int maxSize;
+    //Lifetime of an entry in milliseconds
+    private final long timeToLive;
+
+    //Statistics
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Identity of an authenticated basic auth string
+     */
+    public static class CachedPrincipal {
+        public final int userId;
+        public final boolean isStaff;
+        private final long expiry;
+
+        /**
+         * Constructor
+         *
+         * @param userId the user ID
+         * @param isStaff true if staff user
+         * @param expiry expiry timestamp (milliseconds)
+         */
+        CachedPrincipal(int userId, boolean isStaff, long expiry) {
+            this.userId = userId;
+            this.isStaff = isStaff;
+            this.expiry = expiry;
+        }
+    }
+
+    /**
+     * Constructor
+     *
+     * @param maxSize the maximum number of entries
+     * @param timeToLive the lifetime of an entry (seconds)
+     */
+    public AuthenticationCache(final int maxSize, int timeToLive) {
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive * 1000L;
+        this.principals = new LinkedHashMap<String, CachedPrincipal>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedPrincipal> eldest) {
+                return size() > AuthenticationCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Computes the cache key of a basic auth string, the credentials are never kept in memory
+     *
+     * @param basicAuth the basic auth string
+     * @return the key, or null if the string can't be cached
+     */
+    public String getKey(String basicAuth) {
+        if (basicAuth == null || maxSize <= 0) {
+            return null;
+        }
+
+        try {
+            return CryptoUtils.Sha256Hash(basicAuth);
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the cached principal of a key
+     *
+     * @param key the basic auth key
+     * @return the principal, or null if not cached or expired
+     */
+    public CachedPrincipal get(String key) {
+        if (key == null) {
+            return null;
+        }
+
+        CachedPrincipal principal;
+        synchronized (principals) {
+            principal = principals.get(key);
+
+            if (principal != null && principal.expiry < System.currentTimeMillis()) {
+                principals.remove(key);
+                principal = null;
+            }
+        }
+
+        if (principal == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+
+        return principal;
+    }
+
+    /**
+     * Caches a successful authentication
+     *
+     * @param key the basic auth key
+     * @param userId the user ID
+     * @param isStaff true if staff user
+     */
+    public void put(String key, int userId, boolean isStaff) {
+        if (key == null) {
+            return;
+        }
+
+        synchronized (principals) {
+            principals.put(key, new CachedPrincipal(userId, isStaff, System.currentTimeMillis() + timeToLive));
+        }
+    }
+
+    /**
+     * Returns the number of authentications served by the cache
+     *
+     * @return the number of hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of authentications which required the database
+     *
+     * @return the number of misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+}
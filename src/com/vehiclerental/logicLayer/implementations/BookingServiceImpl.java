@@ -6,7 +6,6 @@
 
 package com.vehiclerental.logicLayer.implementations;
 
-import com.google.gson.reflect.TypeToken;
 import com.vehiclerental.NodeConfiguration;
 import com.vehiclerental.OperationCodes;
 import com.vehiclerental.clusterCommunicator.ClusterCommunicationObject;
@@ -20,10 +19,11 @@ import com.vehiclerental.exceptions.*;
 import com.vehiclerental.logicLayer.ServiceFactory;
 import com.vehiclerental.logicLayer.interfaces.BookingService;
 import com.vehiclerental.logicLayer.interfaces.UserService;
+import com.vehiclerental.presentationLayer.branch.protocolContracts.BranchMessageTypes;
 import com.vehiclerental.presentationLayer.branch.protocolContracts.BranchRequestMessage;
 import com.vehiclerental.presentationLayer.branch.protocolContracts.BranchResponseMessage;
+import com.vehiclerental.utils.ContinuationToken;
 import com.vehiclerental.utils.DateUtils;
-import com.vehiclerental.utils.SerializationUtils;
 
 import java.lang.reflect.Type;
 import java.util.ArrayList;
@@ -31,6 +31,10 @@ import java.util.Calendar;
 import java.util.List;
 
 public class BookingServiceImpl implements BookingService {
+    //The branch requests are handled by several threads, a vehicle availability check and the booking write depending on it must be atomic
+    //The vehicles share a fixed set of locks, the writes of different vehicles rarely wait for each other
+    private static final Object[] vehicleLocks = createVehicleLocks(64);
+
     private VehicleMoveDao vehicleMoveDao;
     private BookingDao bookingDao;
     private VehicleDao vehicleDao;
@@ -69,22 +73,51 @@ public class BookingServiceImpl implements BookingService {
     }
 
     /**
-     * Returns all the bookings for a specific branch
+     * Returns a page of the bookings for a specific branch, ordered by pickup date
      *
      * @param currentBranch specified branch
-     * @return the list of bookings matching the criteria
+     * @param continuationToken continuation token of the previous page, null for the first page
+     * @param limit maximum number of bookings of the page
+     * @return the page of bookings matching the criteria
+     * @throws InvalidPropertyException if the continuation token is invalid
+     * @throws DatabaseAccessFailedException if the database access failed
      */
     @Override
-    public List<BookingContract> getBookingsForBranch(Branch currentBranch) {
-        List<BookingContract> results = new ArrayList<BookingContract>();
+    public ResultPageContract<BookingContract> getBookingsForBranch(Branch currentBranch, String continuationToken, int limit) throws InvalidPropertyException, DatabaseAccessFailedException {
+        ContinuationToken after = ContinuationToken.decode(continuationToken);
 
-        List<Booking> bookings = bookingDao.getBranchBookings(currentBranch);
+        //One more booking than the page size is queried to know if there is a next page
+        List<Booking> bookings = bookingDao.getBranchBookings(currentBranch, after, limit + 1);
 
-        for (Booking booking : bookings) {
-            results.add(new BookingContract(booking));
+        return createBookingPage(bookings, limit, true);
+    }
+
+    /**
+     * Creates a page of bookings from the bookings returned by the database
+     *
+     * @param bookings the bookings returned by the database, one more than the page size if there is a next page
+     * @param limit maximum number of bookings of the page
+     * @param sortedByPickupDate if true, the bookings are sorted by pickup date then ID, if false, by ID only
+     * @return the page of bookings
+     * @throws DatabaseAccessFailedException if the database access failed
+     */
+    private ResultPageContract<BookingContract> createBookingPage(List<Booking> bookings, int limit, boolean sortedByPickupDate) throws DatabaseAccessFailedException {
+        if (bookings == null) {
+            throw new DatabaseAccessFailedException();
         }
 
-        return results;
+        ResultPageContract<BookingContract> page = new ResultPageContract<BookingContract>();
+
+        for (int i = 0; i < bookings.size() && i < limit; i++) {
+            page.items.add(new BookingContract(bookings.get(i)));
+        }
+
+        if (bookings.size() > limit) {
+            Booking last = bookings.get(limit - 1);
+            page.continuationToken = new ContinuationToken(sortedByPickupDate ? last.getPickUpDate() : 0, last.getId()).encode();
+        }
+
+        return page;
     }
 
     /**
@@ -111,7 +144,7 @@ public class BookingServiceImpl implements BookingService {
 
         // If the booking concerns a vehicle on another branch, we need to forward the request to this branch
         if (contract.vehicleBranchId != currentBranch.getId()) {
-            Branch vehicleBranch = NodeConfiguration.Current.branches.get(contract.vehicleBranchId);
+            Branch vehicleBranch = NodeConfiguration.getCurrent().branches.get(contract.vehicleBranchId);
 
             if (vehicleBranch == null) {
                 throw new InvalidPropertyException("Invalid branch");
@@ -122,163 +155,175 @@ public class BookingServiceImpl implements BookingService {
             forwardedMpiRequest.object = contract;
             forwardedMpiRequest.operationCode = OperationCodes.BOOK_VEHICLE;
 
-            NodeConfiguration.Current.clusterCommunicator.sendObject(
+            long requestId = NodeConfiguration.getCurrent().clusterCommunicator.sendRequest(
                     vehicleBranch.getClusterId(),
                     OperationCodes.BOOK_VEHICLE,
-                    SerializationUtils.serialize(forwardedMpiRequest));
-            ClusterCommunicationObject<String> rawMpiResponse = NodeConfiguration.Current.clusterCommunicator.receiveObject(
-                    vehicleBranch.getClusterId(),
-                    OperationCodes.BOOK_VEHICLE,
-                    String.class);
+                    forwardedMpiRequest);
 
-            //Parse MPI response
-            Type jsonType = new TypeToken<BranchResponseMessage<BookingContract>>() {}.getType();
-            BranchResponseMessage<BookingContract> clusterBookingResponse = SerializationUtils.deserialize(rawMpiResponse.object, jsonType);
+            //The MPI response is parsed by the cluster communicator
+            Type jsonType = BranchMessageTypes.getResponseType(OperationCodes.BOOK_VEHICLE);
+            ClusterCommunicationObject<BranchResponseMessage<BookingContract>> clusterBookingResponse = NodeConfiguration.getCurrent().clusterCommunicator.awaitResponse(
+                    vehicleBranch.getClusterId(),
+                    requestId,
+                    jsonType);
 
-            return clusterBookingResponse.Object;
+            return clusterBookingResponse.object.Object;
 
         } else {
-            //We are now on the vehicle branch, we can create the booking
+            //We are now on the vehicle branch, the availability check and the creation must not interleave with another booking write of the vehicle
+            synchronized (getVehicleLock(contract.vehicleId)) {
+                return createBookingOnVehicleBranch(userId, currentBranch, contract);
+            }
+        }
+    }
 
-            //Contains the real start/end values for the database search
-            Calendar pickupDate = DateUtils.getCalendarFromIso8601String(contract.pickupDate);
-            Calendar returnDate = DateUtils.getCalendarFromIso8601String(contract.returnDate);
+    /**
+     * Creates a booking for a vehicle of the current branch, the caller holds the lock of the vehicle
+     *
+     * @param userId the ID of the user creating the booking (could be staff)
+     * @param currentBranch the current branch, owning the vehicle
+     * @param contract the booking properties
+     * @return the created booking, as a contract
+     * @throws InvalidPropertyException if a property is invalid
+     * @throws VehicleUnavailableException if the desired vehicle is unavailable
+     * @throws InvalidDateException if the booking dates are invalid
+     */
+    private BookingContract createBookingOnVehicleBranch(int userId, Branch currentBranch, CreateBookingContract contract) throws InvalidPropertyException, VehicleUnavailableException, InvalidDateException {
+        //Contains the real start/end values for the database search
+        Calendar pickupDate = DateUtils.getCalendarFromIso8601String(contract.pickupDate);
+        Calendar returnDate = DateUtils.getCalendarFromIso8601String(contract.returnDate);
 
-            if(DateUtils.getBookingDays(pickupDate, returnDate) > 7) {
-                throw new InvalidDateException("Bookings are only available for a maximum of 7 days");
-            }
+        if(DateUtils.getBookingDays(pickupDate, returnDate) > 7) {
+            throw new InvalidDateException("Bookings are only available for a maximum of 7 days");
+        }
 
-            Booking booking = new Booking();
-            Branch bookingBranch = NodeConfiguration.Current.branches.get(contract.bookingBranchId);
+        Booking booking = new Booking();
+        Branch bookingBranch = NodeConfiguration.getCurrent().branches.get(contract.bookingBranchId);
 
-            booking.setBranch(bookingBranch);
+        booking.setBranch(bookingBranch);
 
-            booking.setPickUpDate(pickupDate.getTimeInMillis());
+        booking.setPickUpDate(pickupDate.getTimeInMillis());
 
-            booking.setReturnDate(returnDate.getTimeInMillis());
+        booking.setReturnDate(returnDate.getTimeInMillis());
 
-            Calendar realStart = pickupDate;
-            Calendar realEnd = returnDate;
+        Calendar realStart = pickupDate;
+        Calendar realEnd = returnDate;
 
-            //Do we need a move ?
-            VehicleMove move = null;
-            if (bookingBranch.getId() != currentBranch.getId()) {
-                move = new VehicleMove();
+        //Do we need a move ?
+        VehicleMove move = null;
+        if (bookingBranch.getId() != currentBranch.getId()) {
+            move = new VehicleMove();
 
-                Calendar moveStartDate = DateUtils.getCalendarFromIso8601String(contract.pickupDate);
-                moveStartDate.add(Calendar.DAY_OF_YEAR, -1);
-                Calendar moveReturnDate = DateUtils.getCalendarFromIso8601String(contract.returnDate);
-                moveReturnDate.add(Calendar.DAY_OF_YEAR, 1);
+            Calendar moveStartDate = DateUtils.getCalendarFromIso8601String(contract.pickupDate);
+            moveStartDate.add(Calendar.DAY_OF_YEAR, -1);
+            Calendar moveReturnDate = DateUtils.getCalendarFromIso8601String(contract.returnDate);
+            moveReturnDate.add(Calendar.DAY_OF_YEAR, 1);
 
-                //The move start is one day before the user pickup
-                move.setVehicleMoveDate(moveStartDate.getTimeInMillis());
-                realStart = moveStartDate;
-                //The move return is one day after the user return
-                move.setVehicleReturnDate(moveReturnDate.getTimeInMillis());
-                realEnd = moveReturnDate;
+            //The move start is one day before the user pickup
+            move.setVehicleMoveDate(moveStartDate.getTimeInMillis());
+            realStart = moveStartDate;
+            //The move return is one day after the user return
+            move.setVehicleReturnDate(moveReturnDate.getTimeInMillis());
+            realEnd = moveReturnDate;
 
-                move.setBooking(booking);
-            }
+            move.setBooking(booking);
+        }
 
-            Calendar todayCalendar = DateUtils.getTodayCalendar();
+        Calendar todayCalendar = DateUtils.getTodayCalendar();
 
-            if (DateUtils.compareCalendar(todayCalendar, realStart) != DateUtils.DATE1_BEFORE_DATE2) {
-                if (move == null) {
-                    throw new InvalidDateException("Impossible to book a vehicle for the same day or before");
-                } else {
-                    throw new InvalidDateException("Impossible to book a vehicle on a distant branch for tomorrow or before");
-                }
+        if (DateUtils.compareCalendar(todayCalendar, realStart) != DateUtils.DATE1_BEFORE_DATE2) {
+            if (move == null) {
+                throw new InvalidDateException("Impossible to book a vehicle for the same day or before");
+            } else {
+                throw new InvalidDateException("Impossible to book a vehicle on a distant branch for tomorrow or before");
             }
+        }
 
-            if (DateUtils.compareCalendar(realStart, realEnd) != DateUtils.DATE1_BEFORE_DATE2) {
-                throw new InvalidDateException("The return date must be after the pick up date");
-            }
+        if (DateUtils.compareCalendar(realStart, realEnd) != DateUtils.DATE1_BEFORE_DATE2) {
+            throw new InvalidDateException("The return date must be after the pick up date");
+        }
 
-            //If the booking concerns this branch, we create it
-            Vehicle vehicle = vehicleDao.getVehicleIfAvailable(currentBranch, contract.vehicleId, realStart, realEnd);
+        //If the booking concerns this branch, we create it
+        Vehicle vehicle = vehicleDao.getVehicleIfAvailable(currentBranch, contract.vehicleId, realStart, realEnd);
 
-            if (vehicle == null) {
-                throw new VehicleUnavailableException();
-            }
-            booking.setCreditCardCvcCodeEncrypted(contract.creditCardCvcCode);
-            booking.setCreditCardExpirationMonthEncrypted(contract.creditCardExpirationMonth);
-            booking.setCreditCardExpirationYearEncrypted(contract.creditCardExpirationYear);
-            booking.setCreditCardNumberEncrypted(contract.creditCardNumber);
-            try {
-                booking.encrypt();
-            } catch (Exception e) {
-                e.printStackTrace();
-                System.out.println("ERROR: Encryption of payment informations failed");
-            }
-
-            User user = new User();
+        if (vehicle == null) {
+            throw new VehicleUnavailableException();
+        }
+        booking.setCreditCardCvcCodeEncrypted(contract.creditCardCvcCode);
+        booking.setCreditCardExpirationMonthEncrypted(contract.creditCardExpirationMonth);
+        booking.setCreditCardExpirationYearEncrypted(contract.creditCardExpirationYear);
+        booking.setCreditCardNumberEncrypted(contract.creditCardNumber);
+        try {
+            booking.encrypt();
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.out.println("ERROR: Encryption of payment informations failed");
+        }
 
-            if (contract.bookingOwnerUserId != null) {
-                //Making a booking for someone else
-                user = userService.getUser(contract.bookingOwnerUserId);
+        User user = new User();
 
-                if (user == null) {
-                    throw new InvalidPropertyException("Invalid user");
-                }
+        if (contract.bookingOwnerUserId != null) {
+            //Making a booking for someone else
+            user = userService.getUser(contract.bookingOwnerUserId);
 
-            } else {
-                user.setId(userId);
+            if (user == null) {
+                throw new InvalidPropertyException("Invalid user");
             }
 
-            booking.setUser(user);
-            booking.setBookingValidated(true);
-            booking.setVehicle(vehicle);
-            booking.setDaysCount(DateUtils.getBookingDays(pickupDate, returnDate));
-            booking.setPrice(Math.round(vehicle.getPoundsPerDay() * booking.getDaysCount() * 100.0) / 100.0);
+        } else {
+            user.setId(userId);
+        }
 
-            if (move != null) {
-                booking.setVehicleMove(move);
-                vehicleMoveDao.create(move);
-            }
+        booking.setUser(user);
+        booking.setBookingValidated(true);
+        booking.setVehicle(vehicle);
+        booking.setDaysCount(DateUtils.getBookingDays(pickupDate, returnDate));
+        booking.setPrice(Math.round(vehicle.getPoundsPerDay() * booking.getDaysCount() * 100.0) / 100.0);
 
-            booking = bookingDao.create(booking);
+        if (move != null) {
+            booking.setVehicleMove(move);
+            vehicleMoveDao.create(move);
+        }
 
-            if (move != null) {
-                try {
-                    //Update booking reference in vehiclemoves
-                    move.setBooking(booking);
-                    vehicleMoveDao.update(move);
-                } catch (DatabaseUpdateFailedException e) {
-                    e.printStackTrace();
-                }
-            }
+        booking = bookingDao.create(booking);
 
-            return new BookingContract(booking);
+        if (move != null) {
+            try {
+                //Update booking reference in vehiclemoves
+                move.setBooking(booking);
+                vehicleMoveDao.update(move);
+            } catch (DatabaseUpdateFailedException e) {
+                e.printStackTrace();
+            }
         }
-    }
 
+        return new BookingContract(booking);
+    }
 
     /**
-     * Returns the expected moves for the specified branch following the given criteria
+     * Returns a page of the expected moves for the specified branch following the given criteria
      *
      * @param criteria search criteria
      * @param nodeBranch specified branch
-     * @return a list of booking involving matches
-     * @throws InvalidPropertyException if one of the criteria properties is invalid
+     * @param continuationToken continuation token of the previous page, null for the first page
+     * @param limit maximum number of bookings of the page
+     * @return a page of booking involving matches
+     * @throws InvalidPropertyException if one of the criteria properties or the continuation token is invalid
+     * @throws DatabaseAccessFailedException if the database access failed
      */
     @Override
-    public List<BookingContract> getVehicleMoves(GetBranchVehicleMovesContract criteria, Branch nodeBranch) throws InvalidPropertyException {
+    public ResultPageContract<BookingContract> getVehicleMoves(GetBranchVehicleMovesContract criteria, Branch nodeBranch, String continuationToken, int limit) throws InvalidPropertyException, DatabaseAccessFailedException {
 
         if (nodeBranch == null) {
             throw new InvalidPropertyException("Invalid branch");
         }
 
-        List<Booking> bookingsRequiringMoves = bookingDao.getBookingsRequiringMovesForBranch(nodeBranch, criteria.outgoing);
-
-        List<BookingContract> bookingContractsWithMoves = new ArrayList<>();
+        ContinuationToken after = ContinuationToken.decode(continuationToken);
 
-        for (Booking booking : bookingsRequiringMoves) {
-            BookingContract contract = new BookingContract(booking);
-
-            bookingContractsWithMoves.add(contract);
-        }
+        //One more booking than the page size is queried to know if there is a next page
+        List<Booking> bookingsRequiringMoves = bookingDao.getBookingsRequiringMovesForBranch(nodeBranch, criteria.outgoing, after, limit + 1);
 
-        return bookingContractsWithMoves;
+        return createBookingPage(bookingsRequiringMoves, limit, false);
     }
 
     /**
@@ -299,31 +344,66 @@ public class BookingServiceImpl implements BookingService {
             throw new InvalidPropertyException("Invalid branch");
         }
 
+        //Only read to find the lock of the vehicle, the booking can change until the lock is held
         Booking booking = bookingDao.getById(updateProperties.bookingId);
 
         if (booking == null) {
             throw new InvalidPropertyException("Invalid booking");
         }
 
-        Calendar realStart = DateUtils.getCalendarFromTimestamp(booking.getPickUpDate());
-        Calendar realEnd = DateUtils.getCalendarFromTimestamp(booking.getReturnDate());
+        synchronized (getVehicleLock(booking.getVehicle().getId())) {
+            //Check and update the current state of the booking
+            booking = bookingDao.getById(updateProperties.bookingId);
 
-        if (booking.getVehicleMove() != null) {
-            realStart = DateUtils.getCalendarFromTimestamp(booking.getVehicleMove().getVehicleMoveDate());
-            realEnd = DateUtils.getCalendarFromTimestamp(booking.getVehicleMove().getVehicleReturnDate());
-        }
+            if (booking == null) {
+                throw new InvalidPropertyException("Invalid booking");
+            }
+
+            Calendar realStart = DateUtils.getCalendarFromTimestamp(booking.getPickUpDate());
+            Calendar realEnd = DateUtils.getCalendarFromTimestamp(booking.getReturnDate());
 
-        if (updateProperties.bookingValidated) {
-            Vehicle vehicleStillAvailable = vehicleDao.getVehicleIfAvailable(nodeBranch, booking.getVehicle().getId(), realStart, realEnd);
-            if (vehicleStillAvailable == null) {
-                throw new VehicleUnavailableException();
+            if (booking.getVehicleMove() != null) {
+                realStart = DateUtils.getCalendarFromTimestamp(booking.getVehicleMove().getVehicleMoveDate());
+                realEnd = DateUtils.getCalendarFromTimestamp(booking.getVehicleMove().getVehicleReturnDate());
+            }
+
+            if (updateProperties.bookingValidated) {
+                Vehicle vehicleStillAvailable = vehicleDao.getVehicleIfAvailable(nodeBranch, booking.getVehicle().getId(), realStart, realEnd);
+                if (vehicleStillAvailable == null) {
+                    throw new VehicleUnavailableException();
+                }
             }
-        }
 
-        booking.setBookingValidated(updateProperties.bookingValidated);
+            booking.setBookingValidated(updateProperties.bookingValidated);
 
-        bookingDao.update(booking);
+            bookingDao.update(booking);
+        }
 
         return new BookingContract(booking);
     }
+
+    /**
+     * Creates the locks shared by the vehicles
+     *
+     * @param count the number of locks
+     * @return the locks
+     */
+    private static Object[] createVehicleLocks(int count) {
+        Object[] locks = new Object[count];
+        for (int i = 0; i < count; i++) {
+            locks[i] = new Object();
+        }
+
+        return locks;
+    }
+
+    /**
+     * Returns the lock of the booking writes of a vehicle
+     *
+     * @param vehicleId the vehicle ID
+     * @return the lock
+     */
+    private static Object getVehicleLock(int vehicleId) {
+        return vehicleLocks[(vehicleId & Integer.MAX_VALUE) % vehicleLocks.length];
+    }
 }
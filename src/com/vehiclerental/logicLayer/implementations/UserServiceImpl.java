@@ -7,7 +7,9 @@
 package com.vehiclerental.logicLayer.implementations;
 
 import com.vehiclerental.contracts.CreateAccountRequestContract;
+import com.vehiclerental.contracts.ResultPageContract;
 import com.vehiclerental.contracts.SearchUserContract;
+import com.vehiclerental.contracts.UserContract;
 import com.vehiclerental.dataLayer.DaoFactory;
 import com.vehiclerental.dataLayer.entities.User;
 import com.vehiclerental.dataLayer.interfaces.UserDao;
@@ -15,6 +17,7 @@ import com.vehiclerental.exceptions.DatabaseAccessFailedException;
 import com.vehiclerental.exceptions.EmailAlreadyInUseException;
 import com.vehiclerental.exceptions.InvalidPropertyException;
 import com.vehiclerental.logicLayer.interfaces.UserService;
+import com.vehiclerental.utils.ContinuationToken;
 import com.vehiclerental.utils.CryptoUtils;
 
 import java.io.UnsupportedEncodingException;
@@ -177,25 +180,43 @@ public class UserServiceImpl implements UserService {
     }
 
     /**
-     * Search users given a specific criteria
+     * Returns a page of the users matching a specific criteria, ordered by ID
      *
      * @param searchUserContract the search criteria
-     * @return a list of user matching the criteria
-     * @throws InvalidPropertyException if one of the criteria properties is invalid
+     * @param continuationToken continuation token of the previous page, null for the first page
+     * @param limit maximum number of users of the page
+     * @return a page of users matching the criteria
+     * @throws InvalidPropertyException if one of the criteria properties or the continuation token is invalid
+     * @throws DatabaseAccessFailedException if the database access failed
      */
     @Override
-    public List<User> searchUser(SearchUserContract searchUserContract) throws InvalidPropertyException {
+    public ResultPageContract<UserContract> searchUser(SearchUserContract searchUserContract, String continuationToken, int limit) throws InvalidPropertyException, DatabaseAccessFailedException {
         if (searchUserContract.searchTerm.length() < 2) {
             throw new InvalidPropertyException("Search criteria must be at least two characters");
         }
 
-        List<User> users = userDao.searchUsers(searchUserContract.searchTerm);
+        ContinuationToken after = ContinuationToken.decode(continuationToken);
+
+        //One more user than the page size is queried to know if there is a next page
+        List<User> users = userDao.searchUsers(searchUserContract.searchTerm, after, limit + 1);
+
+        if (users == null) {
+            throw new DatabaseAccessFailedException();
+        }
+
+        ResultPageContract<UserContract> page = new ResultPageContract<UserContract>();
+        for (int i = 0; i < users.size() && i < limit; i++) {
+            User user = users.get(i);
 
-        for (User user : users) {
             //User are encrypted by default, we need to decrypt
             user.decrypt();
+            page.items.add(new UserContract(user));
+        }
+
+        if (users.size() > limit) {
+            page.continuationToken = new ContinuationToken(0, users.get(limit - 1).getId()).encode();
         }
 
-        return users;
+        return page;
     }
 }
@@ -6,7 +6,6 @@
 
 package com.vehiclerental.logicLayer.implementations;
 
-import com.google.gson.reflect.TypeToken;
 import com.vehiclerental.NodeConfiguration;
 import com.vehiclerental.OperationCodes;
 import com.vehiclerental.clusterCommunicator.ClusterCommunicationObject;
@@ -17,15 +16,22 @@ import com.vehiclerental.dataLayer.entities.Vehicle;
 import com.vehiclerental.dataLayer.interfaces.VehicleDao;
 import com.vehiclerental.exceptions.*;
 import com.vehiclerental.logicLayer.interfaces.VehicleService;
+import com.vehiclerental.presentationLayer.branch.protocolContracts.BranchMessageTypes;
 import com.vehiclerental.presentationLayer.branch.protocolContracts.BranchRequestMessage;
 import com.vehiclerental.presentationLayer.branch.protocolContracts.BranchResponseMessage;
+import com.vehiclerental.utils.ContinuationToken;
 import com.vehiclerental.utils.DateUtils;
-import com.vehiclerental.utils.SerializationUtils;
 
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class VehicleServiceImpl implements VehicleService {
     private VehicleDao vehicleDao;
@@ -108,84 +114,127 @@ public class VehicleServiceImpl implements VehicleService {
     }
 
     /**
-     * Broadcasts the available vehicle search to all the other branch nodes and returns the combined results
+     * Broadcasts the available vehicle search to all the other branch nodes and returns the combined results, starting
+     * with the vehicles of the current branch
+     * The request is sent to all the branches at once, the current branch is searched while they answer, then the
+     * responses are gathered as they arrive, until the search deadline. A branch which fails or doesn't respond in time
+     * contributes no vehicle
      *
      * @param searchCriteriaContract the search criteria details
+     * @param currentBranch the current branch, searched without vehicle move
      * @param currentUserId the ID of the requesting user
-     * @return the list of the combined available vehicles
-     * @throws ClusterCommunicatorException if one of the dates is invalid
+     * @return the combined available vehicles, with the IDs of the branches which responded
+     * @throws InvalidDateException if one of the dates is invalid
      */
     @Override
-    public List<BookingSearchResultContract> broadcastSearchAvailableVehicles(SearchAvailableVehiclesRequestContract searchCriteriaContract, int currentUserId) throws ClusterCommunicatorException {
-        List<BookingSearchResultContract> responseContracts = new ArrayList<BookingSearchResultContract>();
+    public AvailableVehiclesSearchResultContract broadcastSearchAvailableVehicles(SearchAvailableVehiclesRequestContract searchCriteriaContract, Branch currentBranch, int currentUserId) throws InvalidDateException {
+        AvailableVehiclesSearchResultContract result = new AvailableVehiclesSearchResultContract();
         BranchRequestMessage<SearchAvailableVehiclesRequestContract> branchRequestMessage = new BranchRequestMessage<SearchAvailableVehiclesRequestContract>();
         branchRequestMessage.object = searchCriteriaContract;
         branchRequestMessage.operationCode = OperationCodes.CLUSTER_SEARCH_AVAIL_VEHICLES_BROADCAST;
         branchRequestMessage.userId = currentUserId;
+        Type jsonType = BranchMessageTypes.getResponseType(OperationCodes.CLUSTER_SEARCH_AVAIL_VEHICLES_BROADCAST);
 
-        for (Branch branch:NodeConfiguration.Current.branches.values()) {
-            //Contact every other branch one by one
-            if (branch.getClusterId() != NodeConfiguration.Current.nodeBranch.getClusterId()) {
-
-                NodeConfiguration.Current.clusterCommunicator.sendObject(
-                        branch.getClusterId(),
-                        OperationCodes.CLUSTER_SEARCH_AVAIL_VEHICLES_BROADCAST,
-                        SerializationUtils.serialize(branchRequestMessage));
-                ClusterCommunicationObject<String> rawMpiResponse = NodeConfiguration.Current.clusterCommunicator.receiveObject(
+        //Scatter: contact every other branch at once, each response is parsed as soon as it arrives
+        Map<Branch, CompletableFuture<ClusterCommunicationObject<BranchResponseMessage<List<BookingSearchResultContract>>>>> pendingResponses = new LinkedHashMap<Branch, CompletableFuture<ClusterCommunicationObject<BranchResponseMessage<List<BookingSearchResultContract>>>>>();
+        for (Branch branch : NodeConfiguration.getCurrent().branches.values()) {
+            if (branch.getClusterId() != NodeConfiguration.getCurrent().nodeBranch.getClusterId()) {
+                pendingResponses.put(branch, NodeConfiguration.getCurrent().clusterCommunicator.sendAsync(
                         branch.getClusterId(),
                         OperationCodes.CLUSTER_SEARCH_AVAIL_VEHICLES_BROADCAST,
-                        String.class);
+                        branchRequestMessage,
+                        jsonType));
+            }
+        }
 
-                //Parse cluster response
-                Type jsonType = new TypeToken<BranchResponseMessage<List<BookingSearchResultContract>>>() {}.getType();
-                BranchResponseMessage<List<BookingSearchResultContract>> clusterVehiclesResponse = SerializationUtils.deserialize(rawMpiResponse.object, jsonType);
+        //Gather: every branch has the same deadline, counted from the scatter
+        long deadline = System.currentTimeMillis() + NodeConfiguration.getCurrent().clusterSearchTimeout;
+
+        //Search the current branch while the other branches answer (its vehicles will not require a move)
+        List<BookingSearchResultContract> currentBranchVehicles;
+        try {
+            currentBranchVehicles = searchAvailableVehicles(searchCriteriaContract, currentBranch, false);
+        } catch (InvalidDateException e) {
+            //The responses will be dropped
+            for (CompletableFuture<ClusterCommunicationObject<BranchResponseMessage<List<BookingSearchResultContract>>>> pendingResponse : pendingResponses.values()) {
+                pendingResponse.cancel(false);
+            }
+            throw e;
+        }
+
+        result.vehicles.addAll(currentBranchVehicles);
+        result.respondingBranchIds.add(currentBranch.getId());
+
+        for (Map.Entry<Branch, CompletableFuture<ClusterCommunicationObject<BranchResponseMessage<List<BookingSearchResultContract>>>>> pendingResponse : pendingResponses.entrySet()) {
+            Branch branch = pendingResponse.getKey();
+            try {
+                BranchResponseMessage<List<BookingSearchResultContract>> clusterVehiclesResponse = pendingResponse.getValue().get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS).object;
                 if (clusterVehiclesResponse.Status == 200) {
-                    responseContracts.addAll(clusterVehiclesResponse.Object);
+                    result.vehicles.addAll(clusterVehiclesResponse.Object);
+                    result.respondingBranchIds.add(branch.getId());
                 }
+            } catch (TimeoutException e) {
+                //The late response will be dropped
+                pendingResponse.getValue().cancel(false);
+                System.out.println("[WARNING] - Branch " + branch.getName() + " did not answer the vehicle search in time");
+            } catch (ExecutionException e) {
+                System.out.println("[WARNING] - Branch " + branch.getName() + " failed the vehicle search: " + e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                pendingResponse.getValue().cancel(false);
             }
         }
 
-        return responseContracts;
+        return result;
     }
 
     /**
-     * Returns all the vehicles matching a search criteria in the given branch
+     * Returns a page of the vehicles matching a search criteria in the given branch
      * This is not an available search, only a general vehicle search
      *
      * @param searchCriteria the search criteria
      * @param nodeBranch the given branch
-     * @return the list of vehicles matching the criteria in the branch
-     * @throws InvalidPropertyException if one of the search criteria properties is invalid
+     * @param continuationToken continuation token of the previous page, null for the first page
+     * @param limit maximum number of vehicles of the page
+     * @return the page of vehicles matching the criteria in the branch
+     * @throws InvalidPropertyException if one of the search criteria properties or the continuation token is invalid
+     * @throws DatabaseAccessFailedException if the database access failed
      */
     @Override
-    public List<VehicleContract> searchVehicles(SearchVehicleContract searchCriteria, Branch nodeBranch) throws InvalidPropertyException {
+    public ResultPageContract<VehicleContract> searchVehicles(SearchVehicleContract searchCriteria, Branch nodeBranch, String continuationToken, int limit) throws InvalidPropertyException, DatabaseAccessFailedException {
         List<Vehicle> vehicles;
          if (searchCriteria == null) {
             throw new InvalidPropertyException("Invalid criteria");
         }
 
+        ContinuationToken after = ContinuationToken.decode(continuationToken);
+
         if (!searchCriteria.registrationNumber.isEmpty()) {
-            //Search using registration number
+            //Search using registration number, a single page
             vehicles = new ArrayList<>();
             Vehicle vehicle = vehicleDao.getVehicleByRegistrationNumberAndBranch(searchCriteria.registrationNumber, nodeBranch);
-            if (vehicle != null) {
+            if (vehicle != null && after == null) {
                 vehicles.add(vehicle);
             }
         } else {
-            //Search using type
-            vehicles = vehicleDao.searchBranchVehiclesByType(searchCriteria.vehicleTypeId, nodeBranch);
+            //Search using type, one more vehicle than the page size is queried to know if there is a next page
+            vehicles = vehicleDao.searchBranchVehiclesByType(searchCriteria.vehicleTypeId, nodeBranch, after, limit + 1);
         }
 
         if (vehicles == null) {
-            return null;
+            throw new DatabaseAccessFailedException();
         }
 
-        List<VehicleContract> contracts = new ArrayList<VehicleContract>();
-        for (Vehicle vehicle : vehicles) {
-            contracts.add(new VehicleContract(vehicle));
+        ResultPageContract<VehicleContract> page = new ResultPageContract<VehicleContract>();
+        for (int i = 0; i < vehicles.size() && i < limit; i++) {
+            page.items.add(new VehicleContract(vehicles.get(i)));
+        }
+
+        if (vehicles.size() > limit) {
+            page.continuationToken = new ContinuationToken(0, vehicles.get(limit - 1).getId()).encode();
         }
 
-        return contracts;
+        return page;
     }
 
     /**
@@ -255,7 +304,7 @@ public class VehicleServiceImpl implements VehicleService {
             }
 
             //Feature removed due to a side effect on the vehicle moves, I explained by email that it took too much time to fix before the deadline
-            /*Branch newBranch = NodeConfiguration.Current.branches.get(createUpdateVehicleContract.newBranchId);
+            /*Branch newBranch = NodeConfiguration.getCurrent().branches.get(createUpdateVehicleContract.newBranchId);
 
             if (newBranch == null) {
                 throw new InvalidPropertyException("Invalid new branch");
@@ -25,12 +25,16 @@ public interface BookingService {
     List<BookingContract> getUserBookingsForBranch(User user, Branch currentBranch);
 
     /**
-     * Returns all the bookings for a specific branch
+     * Returns a page of the bookings for a specific branch, ordered by pickup date
      *
      * @param currentBranch specified branch
-     * @return the list of bookings matching the criteria
+     * @param continuationToken continuation token of the previous page, null for the first page
+     * @param limit maximum number of bookings of the page
+     * @return the page of bookings matching the criteria
+     * @throws InvalidPropertyException if the continuation token is invalid
+     * @throws DatabaseAccessFailedException if the database access failed
      */
-    List<BookingContract> getBookingsForBranch(Branch currentBranch);
+    ResultPageContract<BookingContract> getBookingsForBranch(Branch currentBranch, String continuationToken, int limit) throws InvalidPropertyException, DatabaseAccessFailedException;
 
     /**
      * Creates a booking according to the business rules
@@ -51,14 +55,17 @@ public interface BookingService {
     BookingContract createBooking(int user, Branch currentBranch, CreateBookingContract contract) throws InvalidPropertyException, NotAuthorizedException, VehicleUnavailableException, ClusterCommunicatorException, InvalidDateException;
 
     /**
-     * Returns the expected moves for the specified branch following the given criteria
+     * Returns a page of the expected moves for the specified branch following the given criteria
      *
      * @param criteria search criteria
      * @param nodeBranch specified branch
-     * @return a list of booking involving matches
-     * @throws InvalidPropertyException if one of the criteria properties is invalid
+     * @param continuationToken continuation token of the previous page, null for the first page
+     * @param limit maximum number of bookings of the page
+     * @return a page of booking involving matches
+     * @throws InvalidPropertyException if one of the criteria properties or the continuation token is invalid
+     * @throws DatabaseAccessFailedException if the database access failed
      */
-    List<BookingContract> getVehicleMoves(GetBranchVehicleMovesContract criteria, Branch nodeBranch) throws InvalidPropertyException;
+    ResultPageContract<BookingContract> getVehicleMoves(GetBranchVehicleMovesContract criteria, Branch nodeBranch, String continuationToken, int limit) throws InvalidPropertyException, DatabaseAccessFailedException;
 
     /**
      * Update the status of a given booking
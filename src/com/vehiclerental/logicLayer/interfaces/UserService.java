@@ -7,13 +7,14 @@
 package com.vehiclerental.logicLayer.interfaces;
 
 import com.vehiclerental.contracts.CreateAccountRequestContract;
+import com.vehiclerental.contracts.ResultPageContract;
 import com.vehiclerental.contracts.SearchUserContract;
+import com.vehiclerental.contracts.UserContract;
 import com.vehiclerental.dataLayer.entities.User;
+import com.vehiclerental.exceptions.DatabaseAccessFailedException;
 import com.vehiclerental.exceptions.EmailAlreadyInUseException;
 import com.vehiclerental.exceptions.InvalidPropertyException;
 
-import java.util.List;
-
 public interface UserService {
     /**
      * Creates a new user account with the given properties
@@ -60,11 +61,14 @@ public interface UserService {
     User getUser(int id);
 
     /**
-     * Search users given a specific criteria
+     * Returns a page of the users matching a specific criteria, ordered by ID
      *
      * @param searchUserContract the search criteria
-     * @return a list of user matching the criteria
-     * @throws InvalidPropertyException if one of the criteria properties is invalid
+     * @param continuationToken continuation token of the previous page, null for the first page
+     * @param limit maximum number of users of the page
+     * @return a page of users matching the criteria
+     * @throws InvalidPropertyException if one of the criteria properties or the continuation token is invalid
+     * @throws DatabaseAccessFailedException if the database access failed
      */
-    List<User> searchUser(SearchUserContract searchUserContract) throws InvalidPropertyException;
+    ResultPageContract<UserContract> searchUser(SearchUserContract searchUserContract, String continuationToken, int limit) throws InvalidPropertyException, DatabaseAccessFailedException;
 }
@@ -8,7 +8,7 @@ package com.vehiclerental.logicLayer.interfaces;
 
 import com.vehiclerental.contracts.*;
 import com.vehiclerental.dataLayer.entities.Branch;
-import com.vehiclerental.exceptions.ClusterCommunicatorException;
+import com.vehiclerental.exceptions.DatabaseAccessFailedException;
 import com.vehiclerental.exceptions.InvalidDateException;
 import com.vehiclerental.exceptions.InvalidPropertyException;
 import com.vehiclerental.exceptions.RegistrationNumberAlreadyInUseException;
@@ -29,25 +29,31 @@ public interface VehicleService {
     List<BookingSearchResultContract> searchAvailableVehicles(SearchAvailableVehiclesRequestContract searchCriteriaContract, Branch currentBranch, boolean requiresMove) throws InvalidDateException;
 
     /**
-     * Broadcasts the available vehicle search to all the other branch nodes and returns the combined results
+     * Broadcasts the available vehicle search to all the other branch nodes and returns the combined results, starting
+     * with the vehicles of the current branch, which is searched while the other branches answer
+     * A branch which fails or doesn't respond before the search deadline contributes no vehicle
      *
      * @param searchCriteriaContract the search criteria details
+     * @param currentBranch the current branch, searched without vehicle move
      * @param currentUserId the ID of the requesting user
-     * @return the list of the combined available vehicles
-     * @throws ClusterCommunicatorException if one of the dates is invalid
+     * @return the combined available vehicles, with the IDs of the branches which responded
+     * @throws InvalidDateException if one of the dates is invalid
      */
-    List<BookingSearchResultContract> broadcastSearchAvailableVehicles(SearchAvailableVehiclesRequestContract searchCriteriaContract, int currentUserId) throws ClusterCommunicatorException;
+    AvailableVehiclesSearchResultContract broadcastSearchAvailableVehicles(SearchAvailableVehiclesRequestContract searchCriteriaContract, Branch currentBranch, int currentUserId) throws InvalidDateException;
 
     /**
-     * Returns all the vehicles matching a search criteria in the given branch
+     * Returns a page of the vehicles matching a search criteria in the given branch
      * This is not an available search, only a general vehicle search
      *
      * @param searchCriteria the search criteria
      * @param nodeBranch the given branch
-     * @return the list of vehicles matching the criteria in the branch
-     * @throws InvalidPropertyException if one of the search criteria properties is invalid
+     * @param continuationToken continuation token of the previous page, null for the first page
+     * @param limit maximum number of vehicles of the page
+     * @return the page of vehicles matching the criteria in the branch
+     * @throws InvalidPropertyException if one of the search criteria properties or the continuation token is invalid
+     * @throws DatabaseAccessFailedException if the database access failed
      */
-    List<VehicleContract> searchVehicles(SearchVehicleContract searchCriteria, Branch nodeBranch) throws InvalidPropertyException;
+    ResultPageContract<VehicleContract> searchVehicles(SearchVehicleContract searchCriteria, Branch nodeBranch, String continuationToken, int limit) throws InvalidPropertyException, DatabaseAccessFailedException;
 
     /**
      * Creates or Update a vehicle in the given branch corresponding to the given properties
@@ -7,7 +7,11 @@
 
 package com.vehiclerental.presentationLayer.branch;
 
+import com.vehiclerental.NodeConfiguration;
+import com.vehiclerental.presentationLayer.branch.protocolContracts.BranchRequestMessage;
 import com.vehiclerental.presentationLayer.branch.protocolContracts.BranchResponseMessage;
+import com.vehiclerental.utils.RawJson;
+import com.vehiclerental.utils.SerializationUtils;
 
 public class BaseBranchController {
     /**
@@ -28,19 +32,41 @@ public class BaseBranchController {
     }
 
     /**
-     * Generates a success response with a given operation code and object
+     * Generates a success response to a given request with a given object
+     * The object of a response relayed as is by the head office is serialized to json here when the cluster codec is
+     * binary, the head office copies it into its client response without decoding it
      *
-     * @param operationCode given operation code
+     * @param request the answered request
      * @param object given object (optional)
      * @return the generated response
      */
-    protected static BranchResponseMessage generateSuccessfulResponse(int operationCode, Object object) {
+    protected static BranchResponseMessage generateSuccessfulResponse(BranchRequestMessage<?> request, Object object) {
         BranchResponseMessage responseMessage = new BranchResponseMessage();
 
-        responseMessage.OperationCode = operationCode;
+        responseMessage.OperationCode = request.operationCode;
         responseMessage.Status = 200;
         responseMessage.Object = object;
 
+        if (request.relayedResponse && object != null && !NodeConfiguration.getCurrent().clusterCommunicator.getCodec().isJson()) {
+            responseMessage.Object = new RawJson(SerializationUtils.serialize(object));
+        }
+
         return responseMessage;
     }
+
+    /**
+     * Returns the page size of a list request: the requested limit, at most the configured branch result page size
+     *
+     * @param request the list request
+     * @return the page size
+     */
+    protected static int getPageSize(BranchRequestMessage<?> request) {
+        int maximum = NodeConfiguration.getCurrent().branchResultPageSize;
+
+        if (request.limit <= 0 || request.limit > maximum) {
+            return maximum;
+        }
+
+        return request.limit;
+    }
 }
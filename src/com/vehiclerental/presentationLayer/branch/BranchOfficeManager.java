@@ -3,24 +3,44 @@
  *
  * This file provides the main handler for the branch cluster communication listener
  * It also includes a request router dispatching the received request to the correct method in a controller
+ *
+ * The requests from the head office and the requests from the other branches are handled by separate workers: a head
+ * office request can wait for other branches, which are then served by their own workers even if they are waiting
+ * for this branch at the same time. The requests are handled in parallel, the booking writes of a same vehicle are
+ * serialized by the booking service
  */
 
 package com.vehiclerental.presentationLayer.branch;
 
-import com.google.gson.reflect.TypeToken;
 import com.vehiclerental.NodeConfiguration;
 import com.vehiclerental.OperationCodes;
 import com.vehiclerental.clusterCommunicator.ClusterCommunicationObject;
+import com.vehiclerental.clusterCommunicator.ClusterCommunicator;
 import com.vehiclerental.contracts.*;
+import com.vehiclerental.exceptions.ClusterCommunicatorException;
+import com.vehiclerental.presentationLayer.branch.protocolContracts.BranchMessageTypes;
 import com.vehiclerental.presentationLayer.branch.protocolContracts.BranchRequestMessage;
 import com.vehiclerental.presentationLayer.branch.protocolContracts.BranchResponseMessage;
-import com.vehiclerental.utils.SerializationUtils;
-import mpi.MPI;
 
 import java.lang.reflect.Type;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class BranchOfficeManager {
-    private boolean stopped;
+    private volatile boolean stopped;
+
+    //Workers of the requests from the head office, they can wait for the other branches (broadcast, forwarded booking)
+    private ThreadPoolExecutor requestWorkerPool;
+    //Workers of the requests from the other branches, they never wait for another branch
+    private ThreadPoolExecutor clusterRequestWorkerPool;
+
+    //Statistics: start of the loop and time spent by the workers handling requests (nanoseconds)
+    private long startTime;
+    private final AtomicLong workerBusyTime = new AtomicLong();
+    //Prints the load of the workers at a regular interval while the branch runs
+    private Thread statusThread;
 
     /**
      * Sets the server to stop after the current request
@@ -31,102 +51,278 @@ public class BranchOfficeManager {
 
     /**
      * Start the cluster listener loop
+     * The loop only receives the requests and hands them to the workers, so the branch keeps serving the other
+     * branches while a request waits for the responses of its own cluster calls
      */
     public void start() throws Exception {
-        ClusterCommunicationObject<String> clusterCommunicationObject;
-        while (!stopped) {
-            //Receive
-            clusterCommunicationObject = NodeConfiguration.Current.clusterCommunicator.receiveObject(
-                    MPI.ANY_SOURCE,
-                    MPI.ANY_TAG,
-                    String.class);
-
-            //Handle
-            String response = SerializationUtils.serialize(handleRequest(clusterCommunicationObject));
-
-            //Respond
-            NodeConfiguration.Current.clusterCommunicator.sendObject(
+        requestWorkerPool = createWorkerPool(NodeConfiguration.getCurrent().branchWorkerThreads);
+        clusterRequestWorkerPool = createWorkerPool(NodeConfiguration.getCurrent().branchClusterWorkerThreads);
+        startTime = System.nanoTime();
+        startStatusThread();
+
+        try {
+            while (!stopped) {
+                //Receive, the request is parsed by the worker once its tag tells its type
+                final ClusterCommunicationObject<byte[]> clusterCommunicationObject = NodeConfiguration.getCurrent().clusterCommunicator.receiveSerializedObject(
+                        ClusterCommunicator.ANY_SOURCE,
+                        ClusterCommunicator.ANY_TAG);
+
+                if (clusterCommunicationObject.tag == OperationCodes.SHUTDOWN_SYSTEM) {
+                    //The shutdown is answered once the other requests are done
+                    closeWorkerPools();
+                    handleAndRespond(clusterCommunicationObject);
+                    continue;
+                }
+
+                //Handle and respond on a worker
+                ThreadPoolExecutor workerPool = clusterCommunicationObject.source == NodeConfiguration.HEAD_OFFICE_CLUSTER_ID
+                        ? requestWorkerPool
+                        : clusterRequestWorkerPool;
+                workerPool.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        long handleStart = System.nanoTime();
+                        try {
+                            handleAndRespond(clusterCommunicationObject);
+                        } finally {
+                            workerBusyTime.addAndGet(System.nanoTime() - handleStart);
+                        }
+                    }
+                });
+            }
+        } finally {
+            if (statusThread != null) {
+                statusThread.interrupt();
+            }
+            closeWorkerPools();
+            System.out.println(String.format(">>> Branch workers utilization: %.1f%%", getWorkerUtilization() * 100));
+        }
+    }
+
+    /**
+     * Returns the number of received requests waiting for a worker
+     *
+     * @return the queue depth
+     */
+    public int getQueueDepth() {
+        return requestWorkerPool.getQueue().size() + clusterRequestWorkerPool.getQueue().size();
+    }
+
+    /**
+     * Returns the number of workers currently handling a request
+     *
+     * @return the number of busy workers
+     */
+    public int getActiveWorkers() {
+        return requestWorkerPool.getActiveCount() + clusterRequestWorkerPool.getActiveCount();
+    }
+
+    /**
+     * Returns the share of the workers time spent handling requests since the start of the loop
+     *
+     * @return the utilization, between 0 and 1
+     */
+    public double getWorkerUtilization() {
+        return getWorkerUtilization(workerBusyTime.get(), System.nanoTime() - startTime);
+    }
+
+    /**
+     * Returns the share of the workers time spent handling requests over a period
+     *
+     * @param busyTime the time spent by the workers handling requests during the period (nanoseconds)
+     * @param elapsed the length of the period (nanoseconds)
+     * @return the utilization, between 0 and 1
+     */
+    private double getWorkerUtilization(long busyTime, long elapsed) {
+        int workers = requestWorkerPool.getMaximumPoolSize() + clusterRequestWorkerPool.getMaximumPoolSize();
+
+        if (elapsed <= 0) {
+            return 0;
+        }
+
+        return Math.min(1.0, busyTime / ((double) elapsed * workers));
+    }
+
+    /**
+     * Starts the status thread, printing the busy workers, the queue depth and the utilization since the previous line
+     * at a regular interval while the branch runs. Disabled with an interval of 0
+     */
+    private void startStatusThread() {
+        final int interval = NodeConfiguration.getCurrent().branchStatusInterval;
+        if (interval <= 0) {
+            return;
+        }
+
+        statusThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long previousTime = startTime;
+                long previousBusyTime = 0;
+
+                while (!stopped) {
+                    try {
+                        Thread.sleep(interval);
+                    } catch (InterruptedException e) {
+                        //The branch is stopping
+                        return;
+                    }
+
+                    long now = System.nanoTime();
+                    long busyTime = workerBusyTime.get();
+                    System.out.println(String.format(">>> Branch workers: %d busy, %d queued requests, %.1f%% utilization",
+                            getActiveWorkers(),
+                            getQueueDepth(),
+                            getWorkerUtilization(busyTime - previousBusyTime, now - previousTime) * 100));
+
+                    previousTime = now;
+                    previousBusyTime = busyTime;
+                }
+            }
+        }, "branch-status");
+        statusThread.setDaemon(true);
+        statusThread.start();
+    }
+
+    /**
+     * Handles a received request and sends its response
+     *
+     * @param clusterCommunicationObject the received request
+     */
+    private void handleAndRespond(ClusterCommunicationObject<byte[]> clusterCommunicationObject) {
+        //Handle, the response is serialized once by the cluster communicator
+        BranchResponseMessage response = handleRequest(clusterCommunicationObject);
+
+        //Respond with the request ID, the requesting node matches the response with it
+        try {
+            NodeConfiguration.getCurrent().clusterCommunicator.sendResponse(
                     clusterCommunicationObject.source,
                     clusterCommunicationObject.tag,
+                    clusterCommunicationObject.requestId,
                     response);
+        } catch (ClusterCommunicatorException e) {
+            System.out.println("[ERROR] - Response to node " + clusterCommunicationObject.source + " failed: " + e.getMessage());
         }
     }
 
+    /**
+     * Creates a pool of workers, the requests wait in the queue while every worker is busy
+     *
+     * @param workers the number of workers
+     * @return the pool
+     */
+    private ThreadPoolExecutor createWorkerPool(int workers) {
+        return new ThreadPoolExecutor(
+                workers,
+                workers,
+                60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>());
+    }
+
+    /**
+     * Waits for the received requests to be answered and stops the workers
+     */
+    private void closeWorkerPools() {
+        closeWorkerPool(requestWorkerPool);
+        closeWorkerPool(clusterRequestWorkerPool);
+    }
+
+    /**
+     * Waits for the tasks of a pool to be done and stops its workers
+     *
+     * @param pool the pool
+     */
+    private void closeWorkerPool(ThreadPoolExecutor pool) {
+        pool.shutdown();
+
+        try {
+            if (!pool.awaitTermination(30, TimeUnit.SECONDS)) {
+                pool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Decodes a received request with the codec of the cluster communicator, into the registered type of its tag
+     *
+     * @param communicationObject the received request
+     * @param <T> the request object type
+     * @return the request message
+     */
+    private static <T> BranchRequestMessage<T> parseRequest(ClusterCommunicationObject<byte[]> communicationObject) {
+        Type type = BranchMessageTypes.getRequestType(communicationObject.tag);
+        return NodeConfiguration.getCurrent().clusterCommunicator.getCodec().decode(communicationObject.object, type);
+    }
+
     /**
      * Handle and dispatch the received request
      *
      * @param communicationObject received and parsed
      * @return response object
      */
-    public BranchResponseMessage handleRequest(ClusterCommunicationObject<String> communicationObject){
+    public BranchResponseMessage handleRequest(ClusterCommunicationObject<byte[]> communicationObject){
         BranchResponseMessage response;
         try {
             switch (communicationObject.tag) {
                 //Guest methods
                 case OperationCodes.SEARCH_AVAIL_VEHICLES: {
-                    Type jsonType = new TypeToken<BranchRequestMessage<SearchAvailableVehiclesRequestContract>>() {}.getType();
-                    BranchRequestMessage<SearchAvailableVehiclesRequestContract> request = SerializationUtils.deserialize(communicationObject.object, jsonType);
+                    BranchRequestMessage<SearchAvailableVehiclesRequestContract> request = parseRequest(communicationObject);
                     response = GuestBranchController.handleSearchAvailableVehicles(request, true);
                     break;
                 }
                 case OperationCodes.CLUSTER_SEARCH_AVAIL_VEHICLES_BROADCAST: {
-                    Type jsonType = new TypeToken<BranchRequestMessage<SearchAvailableVehiclesRequestContract>>() {}.getType();
-                    BranchRequestMessage<SearchAvailableVehiclesRequestContract> request = SerializationUtils.deserialize(communicationObject.object, jsonType);
+                    BranchRequestMessage<SearchAvailableVehiclesRequestContract> request = parseRequest(communicationObject);
                     response = GuestBranchController.handleSearchAvailableVehicles(request, false);
                     break;
                 }
 
                 //User methods
                 case OperationCodes.BOOK_VEHICLE: {
-                    Type jsonType = new TypeToken<BranchRequestMessage<CreateBookingContract>>() {}.getType();
-                    BranchRequestMessage<CreateBookingContract> request = SerializationUtils.deserialize(communicationObject.object, jsonType);
+                    BranchRequestMessage<CreateBookingContract> request = parseRequest(communicationObject);
                     response = UserBranchController.handleCreateBooking(request);
                     break;
                 }
                 case OperationCodes.GET_USER_BOOKINGS: {
-                    Type jsonType = new TypeToken<BranchRequestMessage<Void>>() {}.getType();
-                    BranchRequestMessage<Void> request = SerializationUtils.deserialize(communicationObject.object, jsonType);
+                    BranchRequestMessage<Void> request = parseRequest(communicationObject);
                     response = UserBranchController.handleGetUserBookings(request);
                     break;
                 }
                 //Staff methods
                 case OperationCodes.SHUTDOWN_SYSTEM: {
-                    Type jsonType = new TypeToken<BranchRequestMessage<Void>>() {}.getType();
-                    BranchRequestMessage<Void> request = SerializationUtils.deserialize(communicationObject.object, jsonType);
+                    BranchRequestMessage<Void> request = parseRequest(communicationObject);
                     response = StaffBranchController.handleBranchShutdown(request);
                     break;
                 }
-                case OperationCodes.GET_BRANCH_BOOKINGS: {
-                    Type jsonType = new TypeToken<BranchRequestMessage<Void>>() {}.getType();
-                    BranchRequestMessage<Void> request = SerializationUtils.deserialize(communicationObject.object, jsonType);
+                case OperationCodes.GET_BRANCH_BOOKINGS:
+                case OperationCodes.GET_BRANCH_BOOKINGS_PAGE: {
+                    BranchRequestMessage<Void> request = parseRequest(communicationObject);
 
                     response = StaffBranchController.handleGetBranchBookings(request);
                     break;
                 }
                 case OperationCodes.UPDATE_OR_CREATE_VEHICLE: {
-                    Type jsonType = new TypeToken<BranchRequestMessage<CreateUpdateVehicleContract>>() {}.getType();
-                    BranchRequestMessage<CreateUpdateVehicleContract> request = SerializationUtils.deserialize(communicationObject.object, jsonType);
+                    BranchRequestMessage<CreateUpdateVehicleContract> request = parseRequest(communicationObject);
 
                     response = StaffBranchController.handleUpdateOrCreateVehicle(request);
                     break;
                 }
-                case OperationCodes.SEARCH_ALL_VEHICLES: {
-                    Type jsonType = new TypeToken<BranchRequestMessage<SearchVehicleContract>>() {}.getType();
-                    BranchRequestMessage<SearchVehicleContract> request = SerializationUtils.deserialize(communicationObject.object, jsonType);
+                case OperationCodes.SEARCH_ALL_VEHICLES:
+                case OperationCodes.SEARCH_ALL_VEHICLES_PAGE: {
+                    BranchRequestMessage<SearchVehicleContract> request = parseRequest(communicationObject);
 
                     response = StaffBranchController.handleSearchVehicles(request);
                     break;
                 }
                 case OperationCodes.CHANGE_BOOKING_STATUS: {
-                    Type jsonType = new TypeToken<BranchRequestMessage<ChangeBookingStatusContract>>() {}.getType();
-                    BranchRequestMessage<ChangeBookingStatusContract> request = SerializationUtils.deserialize(communicationObject.object, jsonType);
+                    BranchRequestMessage<ChangeBookingStatusContract> request = parseRequest(communicationObject);
 
                     response = StaffBranchController.handleChangeBookingStatus(request);
                     break;
                 }
                 case OperationCodes.GET_VEHICLE_MOVES: {
-                    Type jsonType = new TypeToken<BranchRequestMessage<GetBranchVehicleMovesContract>>() {}.getType();
-                    BranchRequestMessage<GetBranchVehicleMovesContract> request = SerializationUtils.deserialize(communicationObject.object, jsonType);
+                    BranchRequestMessage<GetBranchVehicleMovesContract> request = parseRequest(communicationObject);
 
                     response = StaffBranchController.handleGetVehicleMoves(request);
                     break;
@@ -7,9 +7,9 @@
 package com.vehiclerental.presentationLayer.branch;
 
 import com.vehiclerental.NodeConfiguration;
+import com.vehiclerental.contracts.AvailableVehiclesSearchResultContract;
 import com.vehiclerental.contracts.BookingSearchResultContract;
 import com.vehiclerental.contracts.SearchAvailableVehiclesRequestContract;
-import com.vehiclerental.exceptions.ClusterCommunicatorException;
 import com.vehiclerental.exceptions.DatabaseAccessFailedException;
 import com.vehiclerental.exceptions.InvalidDateException;
 import com.vehiclerental.logicLayer.ServiceFactory;
@@ -23,6 +23,8 @@ public class GuestBranchController extends BaseBranchController {
 
     /**
      * Search for the available vehicles in the current branch and optionally across the system and returns the results
+     * The results across the system also contain the IDs of the branches which responded, the results of the current
+     * branch only are the list of the available vehicles
      *
      * @param request request criteria
      * @param requireBroadcast true if should search in other branches
@@ -32,28 +34,25 @@ public class GuestBranchController extends BaseBranchController {
         try {
             /* Service calls */
             VehicleService vehicleService = ServiceFactory.getVehicleService();
-            List<BookingSearchResultContract> vehicleContracts;
-
-            //Search database for current branch (the vehicle found in the first branch (not broacasted) will not require a move)
-            vehicleContracts = vehicleService.searchAvailableVehicles(request.object, NodeConfiguration.Current.nodeBranch, !requireBroadcast);
 
             if (requireBroadcast) {
-                //Search other branches
-                vehicleContracts.addAll(vehicleService.broadcastSearchAvailableVehicles(request.object, request.userId));
+                //Search the other branches and the current branch at the same time (the vehicles found in the current branch will not require a move)
+                AvailableVehiclesSearchResultContract searchResult = vehicleService.broadcastSearchAvailableVehicles(request.object, NodeConfiguration.getCurrent().nodeBranch, request.userId);
+
+                return generateSuccessfulResponse(request, searchResult);
             }
 
+            //Search database for current branch (searched for another branch, its vehicles require a move)
+            List<BookingSearchResultContract> vehicleContracts = vehicleService.searchAvailableVehicles(request.object, NodeConfiguration.getCurrent().nodeBranch, true);
+
             /* Handle response */
-            return generateSuccessfulResponse(request.operationCode, vehicleContracts);
+            return generateSuccessfulResponse(request, vehicleContracts);
         } catch (InvalidDateException e) {
             return generateError(request.operationCode, 400, e.getMessage());
         } catch (DatabaseAccessFailedException e) {
             System.out.println(e.getMessage());
             e.printStackTrace();
             return generateError(request.operationCode, 500, "Branch error");
-        } catch (ClusterCommunicatorException e) {
-            System.out.println(e.getMessage());
-            e.printStackTrace();
-            return generateError(request.operationCode, 500, "Branch error");
         }
     }
 }
@@ -8,7 +8,6 @@ package com.vehiclerental.presentationLayer.branch;
 
 import com.vehiclerental.NodeConfiguration;
 import com.vehiclerental.contracts.*;
-import com.vehiclerental.dataLayer.entities.Booking;
 import com.vehiclerental.exceptions.InvalidPropertyException;
 import com.vehiclerental.exceptions.RegistrationNumberAlreadyInUseException;
 import com.vehiclerental.logicLayer.ServiceFactory;
@@ -18,8 +17,6 @@ import com.vehiclerental.presentationLayer.branch.protocolContracts.BranchReques
 import com.vehiclerental.presentationLayer.branch.protocolContracts.BranchResponseMessage;
 import com.vehiclerental.utils.SerializationUtils;
 
-import java.util.List;
-
 public class StaffBranchController extends BaseBranchController {
 
     /**
@@ -30,14 +27,14 @@ public class StaffBranchController extends BaseBranchController {
      */
     public static BranchResponseMessage handleBranchShutdown(BranchRequestMessage<Void> request) {
 
-        NodeConfiguration.Current.systemAvailable = false;
-        NodeConfiguration.Current.branchOfficeManager.stopAfterCurrentRequest();
+        NodeConfiguration.getCurrent().systemAvailable = false;
+        NodeConfiguration.getCurrent().branchOfficeManager.stopAfterCurrentRequest();
 
-        return generateSuccessfulResponse(request.operationCode, null);
+        return generateSuccessfulResponse(request, null);
     }
 
     /**
-     * Fetches all the bookings for a specified branch
+     * Fetches a page of the bookings for a specified branch
      *
      * @param request the request parameters
      * @return the result response
@@ -46,9 +43,11 @@ public class StaffBranchController extends BaseBranchController {
         try {
             BookingService bookingService = ServiceFactory.getBookingService();
 
-            List<BookingContract> bookingContracts = bookingService.getBookingsForBranch(NodeConfiguration.Current.nodeBranch);
+            ResultPageContract<BookingContract> bookingContracts = bookingService.getBookingsForBranch(NodeConfiguration.getCurrent().nodeBranch, request.continuationToken, getPageSize(request));
 
-            return generateSuccessfulResponse(request.operationCode, bookingContracts);
+            return generateSuccessfulResponse(request, bookingContracts);
+        } catch (InvalidPropertyException e) {
+            return generateError(request.operationCode, 400, e.getMessage());
         } catch (Exception e) {
             System.out.println(e.getMessage());
             e.printStackTrace();
@@ -66,9 +65,9 @@ public class StaffBranchController extends BaseBranchController {
         try {
             VehicleService vehicleService = ServiceFactory.getVehicleService();
 
-            VehicleContract vehicleContract = vehicleService.createOrUpdateVehicle(request.object, NodeConfiguration.Current.nodeBranch);
+            VehicleContract vehicleContract = vehicleService.createOrUpdateVehicle(request.object, NodeConfiguration.getCurrent().nodeBranch);
 
-            return generateSuccessfulResponse(request.operationCode, vehicleContract);
+            return generateSuccessfulResponse(request, vehicleContract);
         } catch (InvalidPropertyException e) {
             return generateError(request.operationCode, 400, e.getMessage());
         } catch (RegistrationNumberAlreadyInUseException e) {
@@ -81,7 +80,7 @@ public class StaffBranchController extends BaseBranchController {
     }
 
     /**
-     * Search for vehicles in the given branch according to the given parameters
+     * Search for a page of vehicles in the given branch according to the given parameters
      *
      * @param request the request parameters
      * @return the result response
@@ -90,9 +89,9 @@ public class StaffBranchController extends BaseBranchController {
         try {
             VehicleService vehicleService = ServiceFactory.getVehicleService();
 
-            List<VehicleContract> vehicleContracts = vehicleService.searchVehicles(request.object, NodeConfiguration.Current.nodeBranch);
+            ResultPageContract<VehicleContract> vehicleContracts = vehicleService.searchVehicles(request.object, NodeConfiguration.getCurrent().nodeBranch, request.continuationToken, getPageSize(request));
 
-            return generateSuccessfulResponse(request.operationCode, vehicleContracts);
+            return generateSuccessfulResponse(request, vehicleContracts);
         } catch (InvalidPropertyException e) {
             return generateError(request.operationCode, 400, e.getMessage());
         } catch (Exception e) {
@@ -103,7 +102,7 @@ public class StaffBranchController extends BaseBranchController {
     }
 
     /**
-     * Fetches all the future vehicle moves for the specified branch and parameters
+     * Fetches a page of the future vehicle moves for the specified branch and parameters
      *
      * @param request the request parameters
      * @return the result response
@@ -112,9 +111,9 @@ public class StaffBranchController extends BaseBranchController {
         try {
             BookingService bookingService = ServiceFactory.getBookingService();
 
-            List<BookingContract> moves = bookingService.getVehicleMoves(request.object, NodeConfiguration.Current.nodeBranch);
+            ResultPageContract<BookingContract> moves = bookingService.getVehicleMoves(request.object, NodeConfiguration.getCurrent().nodeBranch, request.continuationToken, getPageSize(request));
 
-            return generateSuccessfulResponse(request.operationCode, moves);
+            return generateSuccessfulResponse(request, moves);
         } catch (InvalidPropertyException e) {
             return generateError(request.operationCode, 400, e.getMessage());
         } catch (Exception e) {
@@ -134,9 +133,9 @@ public class StaffBranchController extends BaseBranchController {
         try {
             BookingService bookingService = ServiceFactory.getBookingService();
 
-            BookingContract bookingContract = bookingService.changeBookingStatus(request.object, NodeConfiguration.Current.nodeBranch);
+            BookingContract bookingContract = bookingService.changeBookingStatus(request.object, NodeConfiguration.getCurrent().nodeBranch);
 
-            return generateSuccessfulResponse(request.operationCode, bookingContract);
+            return generateSuccessfulResponse(request, bookingContract);
         } catch (InvalidPropertyException e) {
             return generateError(request.operationCode, 400, e.getMessage());
         } catch (Exception e) {
@@ -31,10 +31,10 @@ public class UserBranchController extends BaseBranchController {
             /* Service calls */
             BookingService bookingService = ServiceFactory.getBookingService();
 
-            BookingContract bookingContract = bookingService.createBooking(request.userId, NodeConfiguration.Current.nodeBranch, request.object);
+            BookingContract bookingContract = bookingService.createBooking(request.userId, NodeConfiguration.getCurrent().nodeBranch, request.object);
 
             /* Handle response */
-            return generateSuccessfulResponse(request.operationCode, bookingContract);
+            return generateSuccessfulResponse(request, bookingContract);
         } catch (InvalidPropertyException e) {
             return generateError(request.operationCode, 400, e.getMessage());
         } catch (NotAuthorizedException e) {
@@ -67,9 +67,9 @@ public class UserBranchController extends BaseBranchController {
             User userWrapper = new User();
             userWrapper.setId(request.userId);
 
-            List<BookingContract> bookingContracts = bookingService.getUserBookingsForBranch(userWrapper, NodeConfiguration.Current.nodeBranch);
+            List<BookingContract> bookingContracts = bookingService.getUserBookingsForBranch(userWrapper, NodeConfiguration.getCurrent().nodeBranch);
 
-            return generateSuccessfulResponse(request.operationCode, bookingContracts);
+            return generateSuccessfulResponse(request, bookingContracts);
         } catch (Exception e) {
             System.out.println(e.getMessage());
             e.printStackTrace();
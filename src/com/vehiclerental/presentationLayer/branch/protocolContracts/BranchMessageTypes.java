@@ -0,0 +1,88 @@
+/**
+ * CarRental
+ *
+ * This file provides the registry of the branch message types, keyed by operation code
+ * The types are built once: the request and response messages are decoded with the same Type objects, so the codecs
+ * find their adapters in their caches instead of resolving a new anonymous TypeToken on every message
+ */
+
+package com.vehiclerental.presentationLayer.branch.protocolContracts;
+
+import com.google.gson.reflect.TypeToken;
+import com.vehiclerental.OperationCodes;
+import com.vehiclerental.contracts.*;
+
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class BranchMessageTypes {
+    //Request message types by operation code
+    private static final Map<Integer, Type> requestTypes = new HashMap<Integer, Type>();
+    //Response message types by operation code
+    private static final Map<Integer, Type> responseTypes = new HashMap<Integer, Type>();
+
+    static {
+        Type searchRequest = new TypeToken<BranchRequestMessage<SearchAvailableVehiclesRequestContract>>() {}.getType();
+        Type emptyRequest = new TypeToken<BranchRequestMessage<Void>>() {}.getType();
+        Type bookingResponse = new TypeToken<BranchResponseMessage<BookingContract>>() {}.getType();
+        Type bookingListResponse = new TypeToken<BranchResponseMessage<List<BookingContract>>>() {}.getType();
+        Type bookingPageResponse = new TypeToken<BranchResponseMessage<ResultPageContract<BookingContract>>>() {}.getType();
+
+        register(OperationCodes.SEARCH_AVAIL_VEHICLES, searchRequest,
+                new TypeToken<BranchResponseMessage<AvailableVehiclesSearchResultContract>>() {}.getType());
+        register(OperationCodes.CLUSTER_SEARCH_AVAIL_VEHICLES_BROADCAST, searchRequest,
+                new TypeToken<BranchResponseMessage<List<BookingSearchResultContract>>>() {}.getType());
+        register(OperationCodes.BOOK_VEHICLE,
+                new TypeToken<BranchRequestMessage<CreateBookingContract>>() {}.getType(), bookingResponse);
+        register(OperationCodes.GET_USER_BOOKINGS, emptyRequest, bookingListResponse);
+        register(OperationCodes.SHUTDOWN_SYSTEM, emptyRequest,
+                new TypeToken<BranchResponseMessage<Void>>() {}.getType());
+        register(OperationCodes.GET_BRANCH_BOOKINGS, emptyRequest, bookingPageResponse);
+        register(OperationCodes.GET_BRANCH_BOOKINGS_PAGE, emptyRequest, bookingPageResponse);
+        register(OperationCodes.UPDATE_OR_CREATE_VEHICLE,
+                new TypeToken<BranchRequestMessage<CreateUpdateVehicleContract>>() {}.getType(),
+                new TypeToken<BranchResponseMessage<VehicleContract>>() {}.getType());
+        Type vehicleSearchRequest = new TypeToken<BranchRequestMessage<SearchVehicleContract>>() {}.getType();
+        Type vehiclePageResponse = new TypeToken<BranchResponseMessage<ResultPageContract<VehicleContract>>>() {}.getType();
+        register(OperationCodes.SEARCH_ALL_VEHICLES, vehicleSearchRequest, vehiclePageResponse);
+        register(OperationCodes.SEARCH_ALL_VEHICLES_PAGE, vehicleSearchRequest, vehiclePageResponse);
+        register(OperationCodes.CHANGE_BOOKING_STATUS,
+                new TypeToken<BranchRequestMessage<ChangeBookingStatusContract>>() {}.getType(), bookingResponse);
+        register(OperationCodes.GET_VEHICLE_MOVES,
+                new TypeToken<BranchRequestMessage<GetBranchVehicleMovesContract>>() {}.getType(), bookingPageResponse);
+    }
+
+    /**
+     * Registers the message types of an operation
+     *
+     * @param operationCode the operation code
+     * @param requestType the request message type
+     * @param responseType the response message type
+     */
+    private static void register(int operationCode, Type requestType, Type responseType) {
+        requestTypes.put(operationCode, requestType);
+        responseTypes.put(operationCode, responseType);
+    }
+
+    /**
+     * Returns the request message type of an operation
+     *
+     * @param operationCode the operation code
+     * @return the request message type, or null if the operation is not handled by the branches
+     */
+    public static Type getRequestType(int operationCode) {
+        return requestTypes.get(operationCode);
+    }
+
+    /**
+     * Returns the response message type of an operation
+     *
+     * @param operationCode the operation code
+     * @return the response message type, or null if the operation is not handled by the branches
+     */
+    public static Type getResponseType(int operationCode) {
+        return responseTypes.get(operationCode);
+    }
+}
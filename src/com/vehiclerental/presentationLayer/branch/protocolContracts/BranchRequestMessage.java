@@ -3,6 +3,8 @@
  *
  * This file provides the simple communication request object used between the cluster branches
  * It contains an operation code, a request user ID and an optional serialized object
+ * The list requests also contain the page size and the continuation token of the previous page
+ * A request relayed by the head office asks for the response object as json, which the head office copies as is
  */
 
 package com.vehiclerental.presentationLayer.branch.protocolContracts;
@@ -16,4 +18,10 @@ public class BranchRequestMessage<T> {
     public int userId;
     @SerializedName("serialized_object")
     public T object;
+    @SerializedName("continuation_token")
+    public String continuationToken;
+    @SerializedName("limit")
+    public int limit;
+    @SerializedName("relayed_response")
+    public boolean relayedResponse;
 }
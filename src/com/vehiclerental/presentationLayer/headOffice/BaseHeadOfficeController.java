@@ -7,21 +7,33 @@
 
 package com.vehiclerental.presentationLayer.headOffice;
 
+import com.google.gson.reflect.TypeToken;
 import com.vehiclerental.NodeConfiguration;
 import com.vehiclerental.clusterCommunicator.ClusterCommunicationObject;
+import com.vehiclerental.clusterCommunicator.MessageCodec;
+import com.vehiclerental.contracts.ResultPageContract;
 import com.vehiclerental.dataLayer.entities.Branch;
 import com.vehiclerental.dataLayer.entities.User;
 import com.vehiclerental.exceptions.ClusterCommunicatorException;
 import com.vehiclerental.exceptions.DatabaseAccessFailedException;
 import com.vehiclerental.exceptions.NotAuthorizedException;
+import com.vehiclerental.logicLayer.AuthenticationCache;
 import com.vehiclerental.logicLayer.ServiceFactory;
 import com.vehiclerental.logicLayer.interfaces.UserService;
+import com.vehiclerental.presentationLayer.branch.protocolContracts.BranchMessageTypes;
 import com.vehiclerental.presentationLayer.branch.protocolContracts.BranchRequestMessage;
+import com.vehiclerental.presentationLayer.branch.protocolContracts.BranchResponseMessage;
 import com.vehiclerental.presentationLayer.headOffice.protocolContracts.HeadOfficeRequestMessage;
 import com.vehiclerental.presentationLayer.headOffice.protocolContracts.HeadOfficeResponseMessage;
+import com.vehiclerental.utils.RawJson;
 import com.vehiclerental.utils.SerializationUtils;
+import com.vehiclerental.utils.SessionTokenUtils;
+
+import java.lang.reflect.Type;
 
 public class BaseHeadOfficeController {
+    //Type of a relayed branch response, its object is carried as json (binary message codec)
+    private static final Type RELAYED_RESPONSE_TYPE = new TypeToken<BranchResponseMessage<RawJson>>() {}.getType();
 
     /**
      * Generate an error response message with a given operation code, status code and message
@@ -47,7 +59,7 @@ public class BaseHeadOfficeController {
      * @return the branch object
      */
     protected static Branch getRequestBranch(HeadOfficeRequestMessage requestMessage) {
-        return NodeConfiguration.Current.branches.get(requestMessage.BranchId);
+        return NodeConfiguration.getCurrent().branches.get(requestMessage.BranchId);
     }
 
     /**
@@ -66,6 +78,64 @@ public class BaseHeadOfficeController {
         return headOfficeResponseMessage;
     }
 
+    /**
+     * Apply authentication process to the credentials of a request, a session token or a basic auth string
+     * If required, the user will also be required to be a staff user
+     *
+     * A session token or a cached basic auth string only carries the user ID and staff flag, the returned user only
+     * contains those two properties, the other ones must be loaded from the database if needed
+     *
+     * @param request the request
+     * @param requireStaffAccount true if requires a staff account
+     * @return the identified user
+     * @throws NotAuthorizedException if not authorized or authenticated
+     */
+    protected static User doAuthentication(HeadOfficeRequestMessage request, boolean requireStaffAccount) throws NotAuthorizedException {
+        if (request.SessionToken == null) {
+            AuthenticationCache authenticationCache = NodeConfiguration.getCurrent().authenticationCache;
+            String cacheKey = authenticationCache.getKey(request.BasicAuth);
+
+            AuthenticationCache.CachedPrincipal cachedPrincipal = authenticationCache.get(cacheKey);
+            if (cachedPrincipal != null) {
+                return createPrincipalUser(cachedPrincipal.userId, cachedPrincipal.isStaff, requireStaffAccount);
+            }
+
+            User user = doAuthentication(request.getAuthEmail(), request.getAuthPassword(), requireStaffAccount);
+            authenticationCache.put(cacheKey, user.getId(), user.getIsStaff());
+
+            return user;
+        }
+
+        SessionTokenUtils.SessionPrincipal principal = SessionTokenUtils.validateToken(request.SessionToken);
+
+        if (principal == null) {
+            throw new NotAuthorizedException();
+        }
+
+        return createPrincipalUser(principal.userId, principal.isStaff, requireStaffAccount);
+    }
+
+    /**
+     * Creates the user of an already authenticated principal, only containing its ID and staff flag
+     *
+     * @param userId the user ID
+     * @param isStaff true if staff user
+     * @param requireStaffAccount true if requires a staff account
+     * @return the identified user
+     * @throws NotAuthorizedException if a staff account is required
+     */
+    private static User createPrincipalUser(int userId, boolean isStaff, boolean requireStaffAccount) throws NotAuthorizedException {
+        if (requireStaffAccount && !isStaff) {
+            throw new NotAuthorizedException();
+        }
+
+        User user = new User();
+        user.setId(userId);
+        user.setIsStaff(isStaff);
+
+        return user;
+    }
+
     /**
      * Apply authentication process to given email and password
      * If required, the user will also be required to be a staff user
@@ -108,21 +178,16 @@ public class BaseHeadOfficeController {
      *
      * @param destination branch ID
      * @param operationCode request operation code
-     * @param serializedObject request serialized object
-     * @param serializedObjectClass request serialized object expected class
+     * @param serializedObject request serialized object, valid JSON (see RawJson.isValid) or null
      * @param user request user
-     * @param <T> serialized object generic type
-     * @return the response object
+     * @param responseType expected branch response type
+     * @param <R> branch response generic type
+     * @return the deserialized branch response
      * @throws ClusterCommunicatorException
      */
-    protected static <T> ClusterCommunicationObject<String> ForwardRequestToBranch(Branch destination, int operationCode, String serializedObject, Class<T> serializedObjectClass, User user) throws ClusterCommunicatorException {
-        if (serializedObject != null) {
-            //Deserialize the object before sending in order to serialize the whole communication object
-            T object = SerializationUtils.deserialize(serializedObject, serializedObjectClass);
-            return ForwardRequestToBranch(destination, operationCode, object, user);
-        } else {
-            return ForwardRequestToBranch(destination, operationCode, null, user);
-        }
+    protected static <R> R ForwardRequestToBranch(Branch destination, int operationCode, String serializedObject, User user, Type responseType) throws ClusterCommunicatorException {
+        //The serialized object is spliced as is into the communication object, it is deserialized by the branch only
+        return ForwardRequestToBranch(destination, operationCode, serializedObject != null ? new RawJson(serializedObject) : null, user, responseType);
     }
 
     /**
@@ -132,11 +197,190 @@ public class BaseHeadOfficeController {
      * @param operationCode request operation code
      * @param object deserialized object
      * @param user request user
+     * @param responseType expected branch response type
      * @param <T> object generic type
-     * @return the response object
+     * @param <R> branch response generic type
+     * @return the deserialized branch response
+     * @throws ClusterCommunicatorException
+     */
+    protected static <T, R> R ForwardRequestToBranch(Branch destination, int operationCode, T object, User user, Type responseType) throws ClusterCommunicatorException {
+        //The response is matched by its request ID, the other workers can exchange with the same branch meanwhile
+        //The request message is serialized once, by the cluster communicator, and so is the response
+        long requestId = NodeConfiguration.getCurrent().clusterCommunicator.sendRequest(destination.getClusterId(), operationCode, createBranchRequestMessage(operationCode, object, user));
+
+        ClusterCommunicationObject<R> response = NodeConfiguration.getCurrent().clusterCommunicator.awaitResponse(destination.getClusterId(), requestId, responseType);
+        return response.object;
+    }
+
+    /**
+     * Relay specific request to a cluster branch with a serialized object, and relay its response
+     * The serialized object is only checked to be valid JSON, it is deserialized by the branch only
+     *
+     * @param destination branch ID
+     * @param operationCode request operation code
+     * @param serializedObject request serialized object, or null
+     * @param user request user
+     * @return the socket response, with the serialized object of the branch response
      * @throws ClusterCommunicatorException
      */
-    protected static <T> ClusterCommunicationObject<String> ForwardRequestToBranch(Branch destination, int operationCode, T object, User user) throws ClusterCommunicatorException {
+    protected static HeadOfficeResponseMessage RelayRequestToBranch(Branch destination, int operationCode, String serializedObject, User user) throws ClusterCommunicatorException {
+        if (serializedObject == null) {
+            return RelayRequestToBranch(destination, operationCode, (RawJson) null, user);
+        }
+
+        if (!RawJson.isValid(serializedObject)) {
+            return generateError(operationCode, 400, "Bad request");
+        }
+
+        return RelayRequestToBranch(destination, operationCode, new RawJson(serializedObject), user);
+    }
+
+    /**
+     * Relay specific request to a cluster branch with a deserialized object, and relay its response
+     * Only the status and the error of the branch response are decoded, its serialized object is copied as is into the
+     * socket response. With the binary codec, the branch carries the response object as a json string for this copy
+     *
+     * @param destination branch ID
+     * @param operationCode request operation code
+     * @param object deserialized object
+     * @param user request user
+     * @param <T> object generic type
+     * @return the socket response, with the serialized object of the branch response
+     * @throws ClusterCommunicatorException
+     */
+    protected static <T> HeadOfficeResponseMessage RelayRequestToBranch(Branch destination, int operationCode, T object, User user) throws ClusterCommunicatorException {
+        return relayBranchRequestMessage(destination, createBranchRequestMessage(operationCode, object, user));
+    }
+
+    /**
+     * Relay a page request to a cluster branch with a serialized object, and relay the result page of its response
+     * The serialized object is only checked to be valid JSON, it is deserialized by the branch only
+     *
+     * @param destination branch ID
+     * @param operationCode request operation code, its branch response object must be a result page
+     * @param serializedObject request serialized object, or null
+     * @param user request user
+     * @param continuationToken continuation token of the previous page, null for the first page
+     * @param limit requested page size, the branch caps it (0 for the maximum page size)
+     * @return the socket response, with the serialized result page of the branch response
+     * @throws ClusterCommunicatorException
+     */
+    protected static HeadOfficeResponseMessage RelayPageRequestToBranch(Branch destination, int operationCode, String serializedObject, User user, String continuationToken, int limit) throws ClusterCommunicatorException {
+        if (serializedObject != null && !RawJson.isValid(serializedObject)) {
+            return generateError(operationCode, 400, "Bad request");
+        }
+
+        BranchRequestMessage<RawJson> branchRequestMessage = createBranchRequestMessage(operationCode, serializedObject != null ? new RawJson(serializedObject) : null, user);
+        branchRequestMessage.continuationToken = continuationToken;
+        branchRequestMessage.limit = limit;
+
+        return relayBranchRequestMessage(destination, branchRequestMessage);
+    }
+
+    /**
+     * Relay a request message to a cluster branch, and relay its response
+     *
+     * @param destination branch ID
+     * @param branchRequestMessage the request message
+     * @return the socket response, with the serialized object of the branch response
+     * @throws ClusterCommunicatorException
+     */
+    private static HeadOfficeResponseMessage relayBranchRequestMessage(Branch destination, BranchRequestMessage<?> branchRequestMessage) throws ClusterCommunicatorException {
+        int operationCode = branchRequestMessage.operationCode;
+        branchRequestMessage.relayedResponse = true;
+        long requestId = NodeConfiguration.getCurrent().clusterCommunicator.sendRequest(destination.getClusterId(), operationCode, branchRequestMessage);
+
+        MessageCodec codec = NodeConfiguration.getCurrent().clusterCommunicator.getCodec();
+        if (!codec.isJson()) {
+            //The envelope is decoded, the json of the response object is copied as is
+            BranchResponseMessage<Object> branchResponse = NodeConfiguration.getCurrent().clusterCommunicator.<BranchResponseMessage<Object>>awaitResponse(destination.getClusterId(), requestId, RELAYED_RESPONSE_TYPE).object;
+
+            if (branchResponse.Status != 200) {
+                return generateError(operationCode, branchResponse.Status, branchResponse.Error);
+            }
+            if (!(branchResponse.Object instanceof RawJson)) {
+                //Branch of a version sending the object as structs, or no object
+                return generateSuccessfulResponse(operationCode, branchResponse.Object);
+            }
+
+            HeadOfficeResponseMessage headOfficeResponseMessage = new HeadOfficeResponseMessage();
+            headOfficeResponseMessage.OperationCode = operationCode;
+            headOfficeResponseMessage.Status = 200;
+            headOfficeResponseMessage.SerializedObject = ((RawJson) branchResponse.Object).getJson();
+
+            return headOfficeResponseMessage;
+        }
+
+        ClusterCommunicationObject<byte[]> response = NodeConfiguration.getCurrent().clusterCommunicator.awaitSerializedResponse(destination.getClusterId(), requestId);
+
+        BranchResponseScanner branchResponse;
+        try {
+            branchResponse = BranchResponseScanner.scan(response.object);
+        } catch (IllegalArgumentException e) {
+            throw new ClusterCommunicatorException("Invalid response of branch " + destination.getId() + ": " + e.getMessage());
+        }
+
+        if (branchResponse.getStatus() != 200) {
+            return generateError(operationCode, branchResponse.getStatus(), branchResponse.getError());
+        }
+
+        //Form socket response
+        HeadOfficeResponseMessage headOfficeResponseMessage = new HeadOfficeResponseMessage();
+        headOfficeResponseMessage.OperationCode = operationCode;
+        headOfficeResponseMessage.Status = 200;
+        headOfficeResponseMessage.SerializedObject = branchResponse.getSerializedObject();
+
+        return headOfficeResponseMessage;
+    }
+
+    /**
+     * Stream the result list of a specific request to a cluster branch with a serialized object
+     * Only the first page is fetched here, to answer the branch errors. The other pages are fetched while the response
+     * is written (see BranchResultStream), the list is never held as a whole by the head office
+     *
+     * @param destination branch ID
+     * @param operationCode request operation code, its branch response object must be a result page
+     * @param serializedObject request serialized object, or null
+     * @param user request user
+     * @return the socket response, with the streamed list of the branch
+     * @throws ClusterCommunicatorException
+     */
+    protected static HeadOfficeResponseMessage StreamRequestToBranch(Branch destination, int operationCode, String serializedObject, User user) throws ClusterCommunicatorException {
+        if (serializedObject != null && !RawJson.isValid(serializedObject)) {
+            return generateError(operationCode, 400, "Bad request");
+        }
+
+        BranchRequestMessage<RawJson> branchRequestMessage = createBranchRequestMessage(operationCode, serializedObject != null ? new RawJson(serializedObject) : null, user);
+        branchRequestMessage.limit = NodeConfiguration.getCurrent().branchResultPageSize;
+
+        Type responseType = BranchMessageTypes.getResponseType(operationCode);
+
+        long requestId = NodeConfiguration.getCurrent().clusterCommunicator.sendRequest(destination.getClusterId(), operationCode, branchRequestMessage);
+        BranchResponseMessage<ResultPageContract<?>> branchResponse = NodeConfiguration.getCurrent().clusterCommunicator.<BranchResponseMessage<ResultPageContract<?>>>awaitResponse(destination.getClusterId(), requestId, responseType).object;
+
+        if (branchResponse.Status != 200) {
+            return generateError(operationCode, branchResponse.Status, branchResponse.Error);
+        }
+
+        //Form socket response
+        HeadOfficeResponseMessage headOfficeResponseMessage = new HeadOfficeResponseMessage();
+        headOfficeResponseMessage.OperationCode = operationCode;
+        headOfficeResponseMessage.Status = 200;
+        headOfficeResponseMessage.StreamedObject = new BranchResultStream(destination, branchRequestMessage, responseType, branchResponse.Object);
+
+        return headOfficeResponseMessage;
+    }
+
+    /**
+     * Creates the cluster request message of a client request
+     *
+     * @param operationCode request operation code
+     * @param object request object
+     * @param user request user
+     * @param <T> object generic type
+     * @return the branch request message
+     */
+    private static <T> BranchRequestMessage<T> createBranchRequestMessage(int operationCode, T object, User user) {
         BranchRequestMessage<T> branchRequestMessage = new BranchRequestMessage<T>();
 
         if (user != null) {
@@ -146,8 +390,6 @@ public class BaseHeadOfficeController {
         branchRequestMessage.operationCode = operationCode;
         branchRequestMessage.object = object;
 
-        NodeConfiguration.Current.clusterCommunicator.sendObject(destination.getClusterId(), operationCode, SerializationUtils.serialize(branchRequestMessage));
-
-        return NodeConfiguration.Current.clusterCommunicator.receiveObject(destination.getClusterId(), operationCode, String.class);
+        return branchRequestMessage;
     }
 }
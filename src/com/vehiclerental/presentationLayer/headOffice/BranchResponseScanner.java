@@ -0,0 +1,223 @@
+/**
+ * CarRental
+ *
+ * This file provides a scanner of the serialized branch responses (BranchResponseMessage) relayed by the head office
+ * Only the status and the error are decoded, the serialized object is extracted as is from the UTF-8 bytes and becomes
+ * the serialized object of the head office response, without being deserialized into its contract and serialized again
+ *
+ * Like JsonFrameScanner, only the structural characters are looked at to find the end of a value, they are all ASCII and
+ * can't be part of a multi-byte UTF-8 sequence
+ */
+
+package com.vehiclerental.presentationLayer.headOffice;
+
+import com.vehiclerental.utils.SerializationUtils;
+
+import java.nio.charset.StandardCharsets;
+
+public class BranchResponseScanner {
+    //Names of the scanned fields, see BranchResponseMessage
+    private static final String STATUS_FIELD = "status";
+    private static final String ERROR_FIELD = "error";
+    private static final String OBJECT_FIELD = "serialized_object";
+
+    //Scanned response
+    private final byte[] json;
+    //Current position in the response
+    private int position = 0;
+
+    //Response status
+    private int status;
+    //Serialized response error, null if absent
+    private String serializedError;
+    //Serialized response object, null if absent
+    private String serializedObject;
+
+    /**
+     * Constructor
+     *
+     * @param json the serialized branch response
+     */
+    private BranchResponseScanner(byte[] json) {
+        this.json = json;
+    }
+
+    /**
+     * Scans a serialized branch response
+     *
+     * @param json the serialized branch response, UTF-8 json
+     * @return the scanner holding the scanned fields
+     * @throws IllegalArgumentException if the response is not a JSON object
+     */
+    public static BranchResponseScanner scan(byte[] json) {
+        BranchResponseScanner scanner = new BranchResponseScanner(json);
+        scanner.scanObject();
+
+        return scanner;
+    }
+
+    /**
+     * Returns the response status
+     *
+     * @return the status code
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * Returns the response error, decoded from its JSON string
+     *
+     * @return the error message, or null
+     */
+    public String getError() {
+        if (serializedError == null) {
+            return null;
+        }
+
+        return SerializationUtils.deserialize(serializedError, String.class);
+    }
+
+    /**
+     * Returns the serialized response object, as sent by the branch
+     * A response without object is serialized as null, as gson does for a null object
+     *
+     * @return the serialized object
+     */
+    public String getSerializedObject() {
+        return serializedObject != null ? serializedObject : "null";
+    }
+
+    /**
+     * Scans the fields of the top level object, and keeps the ones of interest
+     */
+    private void scanObject() {
+        expect('{');
+        skipWhitespace();
+
+        if (peek() == '}') {
+            return;
+        }
+
+        while (true) {
+            skipWhitespace();
+            int nameStart = position;
+            skipString();
+            String name = new String(json, nameStart + 1, position - nameStart - 2, StandardCharsets.UTF_8);
+
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+
+            int valueStart = position;
+            skipValue();
+            String value = new String(json, valueStart, position - valueStart, StandardCharsets.UTF_8);
+
+            if (STATUS_FIELD.equals(name)) {
+                status = Integer.parseInt(value);
+            } else if (ERROR_FIELD.equals(name)) {
+                serializedError = value;
+            } else if (OBJECT_FIELD.equals(name)) {
+                serializedObject = value;
+            }
+
+            skipWhitespace();
+            if (peek() == ',') {
+                position++;
+            } else {
+                expect('}');
+                return;
+            }
+        }
+    }
+
+    /**
+     * Skips a value of any type: string, object, array, number or literal
+     */
+    private void skipValue() {
+        byte current = peek();
+
+        if (current == '"') {
+            skipString();
+        } else if (current == '{' || current == '[') {
+            int depth = 0;
+            do {
+                current = peek();
+                if (current == '"') {
+                    skipString();
+                    continue;
+                }
+                if (current == '{' || current == '[') {
+                    depth++;
+                } else if (current == '}' || current == ']') {
+                    depth--;
+                }
+                position++;
+            } while (depth > 0);
+        } else {
+            //Number or literal, until the next structural character
+            while (position < json.length && json[position] != ',' && json[position] != '}' && json[position] != ']'
+                    && json[position] != ' ' && json[position] != '\t' && json[position] != '\r' && json[position] != '\n') {
+                position++;
+            }
+        }
+    }
+
+    /**
+     * Skips a string, including its quotes
+     */
+    private void skipString() {
+        expect('"');
+
+        boolean escaped = false;
+        while (true) {
+            byte current = peek();
+            position++;
+
+            if (escaped) {
+                escaped = false;
+            } else if (current == '\\') {
+                escaped = true;
+            } else if (current == '"') {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Skips the whitespaces
+     */
+    private void skipWhitespace() {
+        while (position < json.length && (json[position] == ' ' || json[position] == '\t' || json[position] == '\r' || json[position] == '\n')) {
+            position++;
+        }
+    }
+
+    /**
+     * Returns the current character
+     *
+     * @return the current character
+     * @throws IllegalArgumentException at the end of the response
+     */
+    private byte peek() {
+        if (position >= json.length) {
+            throw new IllegalArgumentException("Truncated branch response");
+        }
+
+        return json[position];
+    }
+
+    /**
+     * Skips the expected current character
+     *
+     * @param expected the expected character
+     * @throws IllegalArgumentException if the current character is another one
+     */
+    private void expect(char expected) {
+        if (peek() != expected) {
+            throw new IllegalArgumentException("Invalid branch response at " + position);
+        }
+
+        position++;
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * CarRental
+ *
+ * This file provides the streamed serialized object of a branch result list, written to the client page by page
+ * The pages are fetched from the branch while the list is written: the next page is requested before the current one
+ * is written, so the head office only holds two pages of the list at a time, whatever its size
+ *
+ * The branch keeps no cursor between the pages, each page is a keyset query starting after the continuation token of
+ * the previous one
+ */
+
+package com.vehiclerental.presentationLayer.headOffice;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonWriter;
+import com.vehiclerental.NodeConfiguration;
+import com.vehiclerental.clusterCommunicator.ClusterCommunicationObject;
+import com.vehiclerental.contracts.ResultPageContract;
+import com.vehiclerental.dataLayer.entities.Branch;
+import com.vehiclerental.presentationLayer.branch.protocolContracts.BranchRequestMessage;
+import com.vehiclerental.presentationLayer.branch.protocolContracts.BranchResponseMessage;
+import com.vehiclerental.presentationLayer.headOffice.protocolContracts.HeadOfficeResponseMessage;
+import com.vehiclerental.utils.SerializationUtils;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+public class BranchResultStream implements HeadOfficeResponseMessage.ObjectWriter {
+    //Branch owning the list
+    private final Branch destination;
+    //Request of the list, sent again with the continuation token of each page
+    private final BranchRequestMessage<?> request;
+    //Type of the branch responses
+    private final Type responseType;
+    //First page of the list, already fetched to check the branch status, released once written
+    private ResultPageContract<?> firstPage;
+
+    /**
+     * Constructor
+     *
+     * @param destination the branch owning the list
+     * @param request the request of the first page
+     * @param responseType the type of the branch responses
+     * @param firstPage the first page of the list
+     */
+    public BranchResultStream(Branch destination, BranchRequestMessage<?> request, Type responseType, ResultPageContract<?> firstPage) {
+        this.destination = destination;
+        this.request = request;
+        this.responseType = responseType;
+        this.firstPage = firstPage;
+    }
+
+    /**
+     * Writes the items of every page of the list as a single array, as the list was serialized before being paged
+     *
+     * @param writer the writer of the serialized object
+     * @throws IOException if a page can't be fetched or written, the list is then truncated
+     */
+    @Override
+    public void writeTo(JsonWriter writer) throws IOException {
+        ResultPageContract<?> page = firstPage;
+        firstPage = null;
+
+        if (page == null) {
+            writer.nullValue();
+            return;
+        }
+
+        writer.beginArray();
+        while (page != null) {
+            CompletableFuture<ClusterCommunicationObject<BranchResponseMessage<ResultPageContract<?>>>> nextPage = null;
+
+            if (page.continuationToken != null) {
+                //The request is encoded when sent, it can be changed for the next one right after
+                request.continuationToken = page.continuationToken;
+                nextPage = NodeConfiguration.getCurrent().clusterCommunicator.sendAsync(destination.getClusterId(), request.operationCode, request, responseType);
+            }
+
+            try {
+                writeItems(writer, page);
+            } catch (IOException e) {
+                //The response of the next page will be dropped
+                if (nextPage != null) {
+                    nextPage.cancel(false);
+                }
+                throw e;
+            }
+
+            page = nextPage != null ? awaitPage(nextPage) : null;
+        }
+        writer.endArray();
+    }
+
+    /**
+     * Writes the items of a page
+     *
+     * @param writer the writer of the serialized object
+     * @param page the page
+     * @throws IOException if the writer fails
+     */
+    @SuppressWarnings("unchecked")
+    private static void writeItems(JsonWriter writer, ResultPageContract<?> page) throws IOException {
+        if (page.items == null) {
+            return;
+        }
+
+        Gson gson = SerializationUtils.getGson();
+
+        for (Object item : page.items) {
+            if (item == null) {
+                writer.nullValue();
+                continue;
+            }
+
+            TypeAdapter<Object> adapter = (TypeAdapter<Object>) gson.getAdapter(item.getClass());
+            adapter.write(writer, item);
+        }
+    }
+
+    /**
+     * Waits for a page of the list
+     *
+     * @param nextPage the response of the page request
+     * @return the page
+     * @throws IOException if the page can't be fetched
+     */
+    private ResultPageContract<?> awaitPage(CompletableFuture<ClusterCommunicationObject<BranchResponseMessage<ResultPageContract<?>>>> nextPage) throws IOException {
+        BranchResponseMessage<ResultPageContract<?>> response;
+
+        try {
+            response = nextPage.get().object;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            nextPage.cancel(false);
+            throw new IOException("Interrupted while waiting for a page of branch " + destination.getId());
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to get a page of branch " + destination.getId() + ": " + e.getCause().getMessage());
+        }
+
+        if (response.Status != 200) {
+            throw new IOException("Failed to get a page of branch " + destination.getId() + ": " + response.Error);
+        }
+
+        if (response.Object == null) {
+            throw new IOException("Empty page of branch " + destination.getId());
+        }
+
+        return response.Object;
+    }
+}
@@ -6,9 +6,8 @@
 
 package com.vehiclerental.presentationLayer.headOffice;
 
-import com.google.gson.reflect.TypeToken;
 import com.vehiclerental.NodeConfiguration;
-import com.vehiclerental.clusterCommunicator.ClusterCommunicationObject;
+import com.vehiclerental.OperationCodes;
 import com.vehiclerental.contracts.*;
 import com.vehiclerental.dataLayer.entities.Branch;
 import com.vehiclerental.dataLayer.entities.User;
@@ -18,9 +17,11 @@ import com.vehiclerental.exceptions.EmailAlreadyInUseException;
 import com.vehiclerental.exceptions.InvalidPropertyException;
 import com.vehiclerental.logicLayer.ServiceFactory;
 import com.vehiclerental.logicLayer.interfaces.UserService;
+import com.vehiclerental.presentationLayer.branch.protocolContracts.BranchMessageTypes;
 import com.vehiclerental.presentationLayer.branch.protocolContracts.BranchResponseMessage;
 import com.vehiclerental.presentationLayer.headOffice.protocolContracts.HeadOfficeRequestMessage;
 import com.vehiclerental.presentationLayer.headOffice.protocolContracts.HeadOfficeResponseMessage;
+import com.vehiclerental.utils.RawJson;
 import com.vehiclerental.utils.SerializationUtils;
 
 import java.lang.reflect.Type;
@@ -30,30 +31,36 @@ import java.util.List;
 public class GuestHeadOfficeController extends BaseHeadOfficeController {
     /**
      * Search available vehicle in the specified branch with the specified parameters (The search will be extended to all the branches in the system)
+     * The response lists the branches which responded in time, the other ones contributed no vehicle
      *
      * @param request the request parameters
      * @return the result response
      */
     public static HeadOfficeResponseMessage HandleSearchAvailableVehicles(HeadOfficeRequestMessage request) throws Exception {
-        Branch destBranch = NodeConfiguration.Current.branches.get(request.BranchId);
+        Branch destBranch = NodeConfiguration.getCurrent().branches.get(request.BranchId);
 
         if (destBranch == null) {
             return generateError(request.OperationCode, 404, "Branch not found");
         }
 
-        try {
-            ClusterCommunicationObject<String> rawClusterResponse = ForwardRequestToBranch(destBranch, request.OperationCode, request.SerializedObject, SearchAvailableVehiclesRequestContract.class, null);
+        if (request.SerializedObject != null && !RawJson.isValid(request.SerializedObject)) {
+            return generateError(request.OperationCode, 400, "Bad request");
+        }
 
-            //Parse MPI response
-            Type jsonType = new TypeToken<BranchResponseMessage<List<BookingSearchResultContract>>>() {}.getType();
-            BranchResponseMessage<List<BookingSearchResultContract>> clusterResponse = SerializationUtils.deserialize(rawClusterResponse.object, jsonType);
+        try {
+            //Forward to the branch, its response is parsed by the cluster communicator
+            Type jsonType = BranchMessageTypes.getResponseType(OperationCodes.SEARCH_AVAIL_VEHICLES);
+            BranchResponseMessage<AvailableVehiclesSearchResultContract> clusterResponse = ForwardRequestToBranch(destBranch, request.OperationCode, request.SerializedObject, null, jsonType);
 
             if (clusterResponse.Status != 200) {
                 return generateError(request.OperationCode, clusterResponse.Status, clusterResponse.Error);
             }
 
-            //Form socket response
-            return generateSuccessfulResponse(request.OperationCode, clusterResponse.Object);
+            //Form socket response, the vehicles stay the serialized object and the responding branches are added to the message
+            HeadOfficeResponseMessage response = generateSuccessfulResponse(request.OperationCode, clusterResponse.Object.vehicles);
+            response.RespondingBranchIds = clusterResponse.Object.respondingBranchIds;
+
+            return response;
         } catch (ClusterCommunicatorException e) {
             //e.printStackTrace();
             return generateError(request.OperationCode, 500, "Server error");
@@ -74,7 +81,7 @@ public class GuestHeadOfficeController extends BaseHeadOfficeController {
             Even if a branch have been added by an external user during the runtime of the system,
             The branch wouldn't be able to run on a node without a complete restart of the system.
         */
-        for (Branch branch : NodeConfiguration.Current.branches.values()) {
+        for (Branch branch : NodeConfiguration.getCurrent().branches.values()) {
             branchContracts.add(new BranchContract(branch));
         }
 
@@ -3,6 +3,16 @@
  *
  * This file provides the main handler for the head office socket communication listener
  * It also includes a request router dispatching the received request to the correct method in a controller
+ *
+ * Two client protocols are accepted on the same port, detected on the first byte sent by the client:
+ * - the legacy protocol, a single JSON request followed by a single JSON response, then the connection is closed
+ * - the framed protocol, each request is preceded by its length (4 bytes, big endian), the connection is kept alive for
+ *   the next requests until it is idle for too long or has reached the request limit
+ *   Each response is sent in one or more chunks of a bounded size, each chunk is preceded by its length (4 bytes, big
+ *   endian) with the high bit set when more chunks of the response follow. A response streamed from the branches is
+ *   sent while it is fetched, its chunks are never interleaved with the chunks of another response
+ *   Requests can be pipelined: the client sends a request ID with each request, the requests are handled concurrently
+ *   and each response carries the ID of its request, in completion order
  */
 
 package com.vehiclerental.presentationLayer.headOffice;
@@ -14,30 +24,94 @@ import com.vehiclerental.NodeConfiguration;
 import com.vehiclerental.OperationCodes;
 import com.vehiclerental.presentationLayer.headOffice.protocolContracts.HeadOfficeRequestMessage;
 import com.vehiclerental.presentationLayer.headOffice.protocolContracts.HeadOfficeResponseMessage;
+import com.vehiclerental.utils.SerializationUtils;
 
-import javax.net.ssl.KeyManagerFactory;
-import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLServerSocket;
-import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.SSLSocket;
 import java.io.*;
 import java.net.Socket;
-import java.security.*;
-import java.security.cert.CertificateException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class HeadOfficeManager {
-    private SSLContext sslContext = null;
+    //Read timeout applied to the connections rejected because the system is saturated
+    private static final int REJECTED_CONNECTION_TIMEOUT = 2000;
+    //Workers answering the rejected connections, and the rejected connections waiting for them
+    private static final int REJECTION_WORKERS = 2;
+    private static final int REJECTION_QUEUE_LIMIT = 64;
+    //Maximum size of a request, a client sending more is disconnected
+    static final int MAX_REQUEST_SIZE = 1024 * 1024;
+    //Size of the length prefix of the framed protocol
+    private static final int FRAME_HEADER_SIZE = 4;
+    //First byte of a framed connection (high byte of the first length prefix), a legacy request starts with a JSON character
+    static final byte FRAMED_PROTOCOL_MARKER = 0;
+
+    private TlsConfiguration tlsConfiguration = null;
     private SSLServerSocket serverSocket = null;
-    private boolean isStopped = false;
+    private ThreadPoolExecutor workerPool = null;
+    //Workers handling the pipelined requests of the blocking front end, the connection workers only read and write frames
+    private ThreadPoolExecutor pipelineWorkerPool = null;
+    //Workers answering the connections rejected by the blocking front end, off the listening thread
+    private ThreadPoolExecutor rejectionPool = null;
+    private NioHeadOfficeServer nioServer = null;
+    private volatile boolean isStopped = false;
 
     /**
      * Start the socket server
+     *
+     * The listening loop only accepts the connections, the parsing, dispatching and response of each request are done
+     * by a bounded pool of workers, so a slow client or a slow branch only holds its own worker
+     * The connections are either handled by the blocking front end (one worker per connection) or by the non-blocking
+     * front end (event loops handling the connections, workers only handling the requests)
      */
     public void start() {
+        setupSslTrustStore();
+        openWorkerPool();
+
+        if (NodeConfiguration.getCurrent().headOfficeNonBlocking) {
+            listenNonBlocking();
+        } else {
+            listenBlocking();
+        }
+
+        //End of the loop, waiting for the requests already accepted
+        closeWorkerPool();
+
+        System.out.println(">>> SOCKET SERVER TLS handshakes: " + Long.toString(tlsConfiguration.getFullHandshakes()) + " full, "
+                + Long.toString(tlsConfiguration.getResumedHandshakes()) + " resumed.") ;
+        System.out.println(">>> SOCKET SERVER authentication cache: " + Long.toString(NodeConfiguration.getCurrent().authenticationCache.getHits()) + " hits, "
+                + Long.toString(NodeConfiguration.getCurrent().authenticationCache.getMisses()) + " misses.") ;
+
+        //Closing the server
+        if (nioServer != null) {
+            nioServer.close();
+            System.out.println(">>> SOCKET SERVER stopped.") ;
+        } else {
+            try {
+                this.serverSocket.close();
+                System.out.println(">>> SOCKET SERVER stopped.") ;
+            } catch (IOException e) {
+                throw new RuntimeException(">>> SOCKET SERVER error closing server", e);
+            }
+        }
+    }
+
+    /**
+     * Blocking front end listening loop, each accepted connection is handed to a worker
+     */
+    private void listenBlocking() {
         openServerSocket();
 
         //Main listening loop
         while(!isStopped()) {
-            Socket clientSocket;
+            final Socket clientSocket;
             try {
                 clientSocket = this.serverSocket.accept();
             } catch (IOException e) {
@@ -47,42 +121,296 @@ public class HeadOfficeManager {
                 }
                 throw new RuntimeException(">>> SOCKET SERVER error accepting client connection", e);
             }
+            final long acceptTime = System.currentTimeMillis();
 
-            //Request parsing, dispatching and response
             try {
-                Gson gson = new Gson();
-                JsonReader reader = new JsonReader(new InputStreamReader(clientSocket.getInputStream(), "UTF-8"));
-                JsonWriter writer = new JsonWriter(new OutputStreamWriter(clientSocket.getOutputStream(), "UTF-8"));
+                workerPool.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        handleClientConnection(clientSocket, acceptTime);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                //Every worker is busy and the accept queue is full
+                rejectClientConnection(clientSocket);
+            }
+        }
+    }
 
-                HeadOfficeRequestMessage requestMessage = gson.fromJson(reader, HeadOfficeRequestMessage.class);
+    /**
+     * Non-blocking front end listening loop, the connections are handled by the event loops of the non-blocking server
+     */
+    private void listenNonBlocking() {
+        nioServer = new NioHeadOfficeServer(this, tlsConfiguration, workerPool, NodeConfiguration.getCurrent().headOfficeEventLoops);
 
-                HeadOfficeResponseMessage responseMessage = handleRequest(requestMessage);
+        try {
+            nioServer.listen(NodeConfiguration.getCurrent().port);
+            System.out.println(">>> SOCKET SERVER server stopped.") ;
+        } catch (IOException e) {
+            throw new RuntimeException(">>> SOCKET SERVER cannot open port" + Integer.toString(NodeConfiguration.getCurrent().port), e);
+        }
+    }
 
-                gson.toJson(responseMessage, HeadOfficeResponseMessage.class, writer);
+    /**
+     * Request parsing, dispatching and response for a single client connection
+     * The read timeout covers the TLS handshake and the request, so a client connecting and sending nothing (or sending
+     * too slowly) releases its worker
+     *
+     * @param clientSocket the accepted client connection
+     * @param acceptTime the time the connection has been accepted
+     */
+    private void handleClientConnection(Socket clientSocket, long acceptTime) {
+        try {
+            clientSocket.setSoTimeout(NodeConfiguration.getCurrent().headOfficeIdleTimeout);
 
-                writer.flush();
+            tlsConfiguration.startHandshake((SSLSocket) clientSocket, acceptTime);
 
-                writer.close();
+            BufferedInputStream inputStream = new BufferedInputStream(clientSocket.getInputStream());
+
+            //Protocol detection, the first byte is kept in the stream
+            inputStream.mark(1);
+            int firstByte = inputStream.read();
+            inputStream.reset();
+
+            if (firstByte == FRAMED_PROTOCOL_MARKER) {
+                handleFramedClientConnection(clientSocket, inputStream);
+                return;
+            }
+
+            Gson gson = SerializationUtils.getGson();
+            JsonReader reader = new JsonReader(new InputStreamReader(inputStream, "UTF-8"));
+            Writer writer = new OutputStreamWriter(clientSocket.getOutputStream(), "UTF-8");
+
+            HeadOfficeRequestMessage requestMessage = gson.fromJson(reader, HeadOfficeRequestMessage.class);
+
+            HeadOfficeResponseMessage responseMessage = handleRequest(requestMessage);
+
+            //A streamed list is written to the client while it is fetched from the branch
+            HeadOfficeResponseWriter.write(responseMessage, writer);
+
+            writer.close();
+
+            clientSocket.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+            closeClientSocket(clientSocket);
+        }
+    }
+
+    /**
+     * Keep-alive loop of a framed client connection, the requests are read until the client closes the connection, stays
+     * idle for too long or reaches the request limit of a connection
+     *
+     * The requests are handled by the pipeline workers, so the connection keeps reading while its previous requests are
+     * in flight, up to the pipelining limit. The responses are written by the pipeline workers as soon as they are ready
+     * The connection holds its worker for its whole life, the non-blocking front end should be preferred for many idle clients
+     * The idle timeout is the read timeout of the socket, set before the TLS handshake of the connection
+     *
+     * @param clientSocket the accepted client connection
+     * @param inputStream the buffered input stream of the connection
+     * @throws Exception if any error
+     */
+    private void handleFramedClientConnection(Socket clientSocket, InputStream inputStream) throws Exception {
+        Gson gson = SerializationUtils.getGson();
+        FrameReader reader = new FrameReader(inputStream);
+        OutputStream writer = new BufferedOutputStream(clientSocket.getOutputStream());
+        ReentrantLock writeLock = new ReentrantLock();
+        int maxPipelinedRequests = NodeConfiguration.getCurrent().headOfficeMaxPipelinedRequests;
+        Semaphore pipelineSlots = new Semaphore(maxPipelinedRequests);
+
+        try {
+            int receivedRequests = 0;
+            while (receivedRequests < NodeConfiguration.getCurrent().headOfficeMaxRequestsPerConnection) {
+                byte[] frame;
+                try {
+                    frame = reader.readFrame();
+                } catch (SocketTimeoutException e) {
+                    if (pipelineSlots.availablePermits() < maxPipelinedRequests) {
+                        //The client is waiting for its responses, the connection is not idle
+                        //The bytes of the frame already read are kept, the next read resumes after them
+                        continue;
+                    }
+                    //Idle for too long
+                    break;
+                } catch (EOFException e) {
+                    //Connection closed by the client
+                    break;
+                }
+
+                HeadOfficeRequestMessage requestMessage = gson.fromJson(new InputStreamReader(new ByteArrayInputStream(frame), "UTF-8"), HeadOfficeRequestMessage.class);
+                receivedRequests++;
+
+                //Stops reading while the pipelining limit is reached
+                pipelineSlots.acquire();
+                dispatchPipelinedRequest(clientSocket, requestMessage, writer, writeLock, pipelineSlots);
+            }
+        } finally {
+            //Waits for the responses of the requests in flight before closing the connection
+            pipelineSlots.acquireUninterruptibly(maxPipelinedRequests);
+        }
+
+        clientSocket.close();
+    }
+
+    /**
+     * Hands a request of a framed connection to a pipeline worker, which writes the response frame once it is ready
+     *
+     * @param clientSocket the client connection
+     * @param requestMessage the decoded request
+     * @param writer the output stream of the connection, shared by the pipeline workers
+     * @param writeLock the lock of the output stream, held by a pipeline worker from the first to the last chunk of its response
+     * @param pipelineSlots the pipelining slots of the connection, the slot of this request is released once answered
+     */
+    private void dispatchPipelinedRequest(final Socket clientSocket, final HeadOfficeRequestMessage requestMessage, final OutputStream writer, final ReentrantLock writeLock, final Semaphore pipelineSlots) {
+        try {
+            pipelineWorkerPool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    HeadOfficeResponseMessage responseMessage;
+                    try {
+                        responseMessage = handleRequest(requestMessage);
+                    } catch (Exception e) {
+                        //The other requests of the connection may still be in flight, only this one fails
+                        e.printStackTrace();
+                        responseMessage = HeadOfficeResponseMessage.GetServerErrorResponse();
+                        responseMessage.RequestId = requestMessage != null ? requestMessage.RequestId : null;
+                    }
 
-                clientSocket.close();
-            } catch (Exception e) {
-                e.printStackTrace();
-                if (!clientSocket.isClosed()) {
                     try {
-                        clientSocket.close();
-                    } catch (IOException inner) {
-                        inner.printStackTrace();
+                        writeResponseFrame(clientSocket, responseMessage, writer, writeLock);
+                    } finally {
+                        pipelineSlots.release();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            //Every pipeline worker is busy and the queue is full
+            HeadOfficeResponseMessage responseMessage = generateSystemUnavailableError();
+            responseMessage.RequestId = requestMessage != null ? requestMessage.RequestId : null;
+
+            try {
+                writeResponseFrame(clientSocket, responseMessage, writer, writeLock);
+            } finally {
+                pipelineSlots.release();
+            }
+        }
+    }
+
+    /**
+     * Writes the chunks of a response, the chunks of the concurrent responses of a connection are never interleaved: the
+     * lock of the connection is taken with the first chunk, once the response is ready to be sent, and released after the
+     * last one. The connection is closed if the response can't be written
+     *
+     * @param clientSocket the client connection
+     * @param responseMessage the response
+     * @param writer the output stream of the connection
+     * @param writeLock the lock of the output stream
+     */
+    private void writeResponseFrame(Socket clientSocket, HeadOfficeResponseMessage responseMessage, final OutputStream writer, final ReentrantLock writeLock) {
+        try {
+            writeResponse(responseMessage, new ResponseChunkOutputStream(NodeConfiguration.getCurrent().headOfficeResponseChunkSize, true) {
+                @Override
+                protected void writeChunk(byte[] chunk, int length, boolean last) throws IOException {
+                    if (!writeLock.isHeldByCurrentThread()) {
+                        writeLock.lock();
                     }
+                    writer.write(chunk, 0, length);
+                    writer.flush();
                 }
+            });
+        } catch (IOException e) {
+            closeClientSocket(clientSocket);
+        } finally {
+            if (writeLock.isHeldByCurrentThread()) {
+                writeLock.unlock();
             }
         }
+    }
 
-        //End of the loop, closing the server
+    /**
+     * Writes a response in chunks, a streamed list is sent while it is fetched from the branches. The response becomes a
+     * server error if the list can't be fetched before its first chunk is sent, the response is truncated otherwise
+     *
+     * @param responseMessage the response
+     * @param output the chunks of the response, closed once the response is written
+     * @throws IOException if the response can't be sent, or is truncated
+     */
+    static void writeResponse(HeadOfficeResponseMessage responseMessage, ResponseChunkOutputStream output) throws IOException {
         try {
-            this.serverSocket.close();
-            System.out.println(">>> SOCKET SERVER stopped.") ;
+            HeadOfficeResponseWriter.write(responseMessage, new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            if (output.isStarted()) {
+                throw e;
+            }
+            System.out.println("[WARNING] - Streamed response failed: " + e.getMessage());
+
+            HeadOfficeResponseMessage serverError = HeadOfficeResponseMessage.GetServerErrorResponse();
+            serverError.OperationCode = responseMessage.OperationCode;
+            serverError.RequestId = responseMessage.RequestId;
+
+            output.discard();
+            HeadOfficeResponseWriter.write(serverError, new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        }
+
+        output.close();
+    }
+
+    /**
+     * Answers a service unavailable response to a connection which can't be handled by a worker
+     * The TLS handshake and the response are done by the rejection workers, so a slow client never holds the listening
+     * thread. The connection is closed without a response if the rejection workers are saturated too
+     *
+     * @param clientSocket the rejected client connection
+     */
+    private void rejectClientConnection(final Socket clientSocket) {
+        try {
+            rejectionPool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    writeSystemUnavailableError(clientSocket);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            closeClientSocket(clientSocket);
+        }
+    }
+
+    /**
+     * Writes a service unavailable response to a rejected connection and closes it
+     * The socket timeout prevents a stalled client from holding the rejection worker
+     *
+     * @param clientSocket the rejected client connection
+     */
+    private void writeSystemUnavailableError(Socket clientSocket) {
+        try {
+            clientSocket.setSoTimeout(REJECTED_CONNECTION_TIMEOUT);
+
+            JsonWriter writer = new JsonWriter(new OutputStreamWriter(clientSocket.getOutputStream(), "UTF-8"));
+
+            SerializationUtils.getGson().toJson(generateSystemUnavailableError(), HeadOfficeResponseMessage.class, writer);
+
+            writer.flush();
+
+            writer.close();
+
+            clientSocket.close();
         } catch (IOException e) {
-            throw new RuntimeException(">>> SOCKET SERVER error closing server", e);
+            closeClientSocket(clientSocket);
+        }
+    }
+
+    /**
+     * Closes a client connection after a failure
+     *
+     * @param clientSocket the client connection
+     */
+    private void closeClientSocket(Socket clientSocket) {
+        if (!clientSocket.isClosed()) {
+            try {
+                clientSocket.close();
+            } catch (IOException inner) {
+                inner.printStackTrace();
+            }
         }
     }
 
@@ -97,9 +425,21 @@ public class HeadOfficeManager {
 
     /**
      * Sets the server to stop after the current request
+     * The server socket is closed to release the listening loop, the requests already accepted are still answered
      */
     public void stopAfterCurrentRequest(){
         this.isStopped = true;
+
+        if (nioServer != null) {
+            nioServer.stop();
+            return;
+        }
+
+        try {
+            this.serverSocket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
     /**
@@ -107,27 +447,116 @@ public class HeadOfficeManager {
      */
     private void openServerSocket() {
         try {
-            setupSslTrustStore();
-            this.serverSocket = (SSLServerSocket) sslContext.getServerSocketFactory().createServerSocket(NodeConfiguration.Current.port);
+            this.serverSocket = tlsConfiguration.createServerSocket(NodeConfiguration.getCurrent().port);
 
-            System.out.println(">>> SOCKET SERVER started on port " + Integer.toString(NodeConfiguration.Current.port) + ".") ;
+            System.out.println(">>> SOCKET SERVER started on port " + Integer.toString(NodeConfiguration.getCurrent().port) + ".") ;
         } catch (IOException e) {
-            throw new RuntimeException(">>> SOCKET SERVER cannot open port" + Integer.toString(NodeConfiguration.Current.port), e);
+            throw new RuntimeException(">>> SOCKET SERVER cannot open port" + Integer.toString(NodeConfiguration.getCurrent().port), e);
+        }
+    }
+
+    /**
+     * Initiates the bounded pool of workers handling the accepted connections
+     * The blocking front end also gets the pipeline workers, handling the requests of the framed connections, and the
+     * rejection workers, answering the connections rejected while every worker is busy
+     */
+    private void openWorkerPool() {
+        int workers = NodeConfiguration.getCurrent().headOfficeWorkerThreads;
+
+        this.workerPool = createWorkerPool(workers);
+
+        if (!NodeConfiguration.getCurrent().headOfficeNonBlocking) {
+            this.pipelineWorkerPool = createWorkerPool(workers);
+            this.rejectionPool = new ThreadPoolExecutor(
+                    REJECTION_WORKERS,
+                    REJECTION_WORKERS,
+                    60L, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(REJECTION_QUEUE_LIMIT),
+                    new ThreadPoolExecutor.AbortPolicy());
+        }
+
+        System.out.println(">>> SOCKET SERVER using " + Integer.toString(workers) + " workers.") ;
+    }
+
+    /**
+     * Creates a bounded pool of workers, rejecting the tasks once every worker is busy and the queue is full
+     *
+     * @param workers the number of workers
+     * @return the pool
+     */
+    private ThreadPoolExecutor createWorkerPool(int workers) {
+        return new ThreadPoolExecutor(
+                workers,
+                workers,
+                60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(NodeConfiguration.getCurrent().headOfficeAcceptQueueLimit),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Waits for the accepted requests to be answered and stops the workers
+     * The connection workers are stopped first, they wait for the responses of their pipelined requests
+     */
+    private void closeWorkerPool() {
+        closeWorkerPool(this.workerPool);
+
+        if (this.pipelineWorkerPool != null) {
+            closeWorkerPool(this.pipelineWorkerPool);
+        }
+
+        if (this.rejectionPool != null) {
+            closeWorkerPool(this.rejectionPool);
+        }
+    }
+
+    /**
+     * Waits for the tasks of a pool to be done and stops its workers
+     *
+     * @param pool the pool
+     */
+    private void closeWorkerPool(ThreadPoolExecutor pool) {
+        pool.shutdown();
+
+        try {
+            if (!pool.awaitTermination(30, TimeUnit.SECONDS)) {
+                pool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
         }
     }
 
     /**
      * Handle and dispatch the received request
+     * The request ID is copied in the response, so a pipelining client can match them
+     *
+     * @param request received and parsed request
+     * @return response object
+     * @throws Exception if any error
+     */
+    HeadOfficeResponseMessage handleRequest(HeadOfficeRequestMessage request) throws Exception {
+        HeadOfficeResponseMessage response = dispatchRequest(request);
+
+        if (request != null && response != null) {
+            response.RequestId = request.RequestId;
+        }
+
+        return response;
+    }
+
+    /**
+     * Dispatches the received request to the correct controller method
      *
      * @param request received and parsed request
      * @return response object
      * @throws Exception if any error
      */
-    private HeadOfficeResponseMessage handleRequest(HeadOfficeRequestMessage request) throws Exception {
+    private HeadOfficeResponseMessage dispatchRequest(HeadOfficeRequestMessage request) throws Exception {
         HeadOfficeResponseMessage response;
 
         //Not implemented yet, but the system can be switched to a fake shutdown mode which could allow soft close/start if needed
-        if (!NodeConfiguration.Current.systemAvailable) {
+        if (!NodeConfiguration.getCurrent().systemAvailable) {
             //System not running
             return generateSystemUnavailableError();
         }
@@ -157,6 +586,10 @@ public class HeadOfficeManager {
                 response = UserHeadOfficeController.HandleGetAccountDetails(request);
                 break;
             }
+            case OperationCodes.LOGIN: {
+                response = UserHeadOfficeController.HandleLogin(request);
+                break;
+            }
             case OperationCodes.BOOK_VEHICLE: {
                 //Also handles create a booking for someone else
                 response = UserHeadOfficeController.HandleBookVehicle(request);
@@ -200,6 +633,18 @@ public class HeadOfficeManager {
                 response = StaffHeadOfficeController.HandleGetVehicleMoves(request);
                 break;
             }
+            case OperationCodes.GET_BRANCH_BOOKINGS_PAGE: {
+                response = StaffHeadOfficeController.HandleGetBranchBookingsPage(request);
+                break;
+            }
+            case OperationCodes.SEARCH_ALL_VEHICLES_PAGE: {
+                response = StaffHeadOfficeController.HandleSearchVehiclesPage(request);
+                break;
+            }
+            case OperationCodes.SEARCH_USER_PAGE: {
+                response = StaffHeadOfficeController.HandleSearchUserPage(request);
+                break;
+            }
             default: {
                 response = HeadOfficeResponseMessage.GetInvalidRequestResponse();
                 break;
@@ -214,7 +659,7 @@ public class HeadOfficeManager {
      *
      * @return the generated message
      */
-    private HeadOfficeResponseMessage generateSystemUnavailableError() {
+    HeadOfficeResponseMessage generateSystemUnavailableError() {
         HeadOfficeResponseMessage resp = new HeadOfficeResponseMessage();
         resp.Status = 503;
         resp.Error = "Service unavailable";
@@ -224,27 +669,87 @@ public class HeadOfficeManager {
 
     /**
      * Sets up the SSL trust store, containing the encryption keys for encrypted socket communication
-     *
-     * The keystore was generated with this tool: http://www.keystore-explorer.org/downloads.php
+     * The SSL context is built once and shared by every connection, see TlsConfiguration
      */
     private void setupSslTrustStore() {
+        tlsConfiguration = new TlsConfiguration();
+
         try {
-            char[] password = "carrental".toCharArray();
+            tlsConfiguration.initialize();
+        } catch (GeneralSecurityException | IOException e) {
+            e.printStackTrace();
+        }
+    }
 
-            KeyStore keyStore = KeyStore.getInstance("BKS");
-            keyStore.load(new FileInputStream(new File("carrental.keystore").getAbsolutePath()), password);
+    /**
+     * Reader of the request frames of a framed connection
+     * A read timeout can happen in the middle of a frame, even in its length prefix: the bytes already read are kept, so
+     * the next read resumes where the previous one stopped instead of reading the rest of the frame as a new one
+     */
+    private static class FrameReader {
+        private final InputStream inputStream;
+        //Length prefix of the current frame
+        private final byte[] header = new byte[FRAME_HEADER_SIZE];
+        //Request of the current frame, null while its length prefix is read
+        private byte[] frame = null;
+        //Bytes of the length prefix or of the request already read
+        private int position = 0;
+
+        /**
+         * Constructor
+         *
+         * @param inputStream the input stream of the connection
+         */
+        FrameReader(InputStream inputStream) {
+            this.inputStream = inputStream;
+        }
 
-            TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
-            trustManagerFactory.init(keyStore);
+        /**
+         * Reads the next request frame
+         *
+         * @return the request bytes of the frame
+         * @throws SocketTimeoutException if the read timed out, the bytes already read are kept for the next call
+         * @throws EOFException if the connection is closed by the client
+         * @throws IOException if the frame length is invalid or the connection fails
+         */
+        byte[] readFrame() throws IOException {
+            if (frame == null) {
+                fill(header);
+
+                int frameLength = ((header[0] & 0xff) << 24) | ((header[1] & 0xff) << 16) | ((header[2] & 0xff) << 8) | (header[3] & 0xff);
+                if (frameLength < 0 || frameLength > MAX_REQUEST_SIZE) {
+                    throw new IOException("Invalid request frame length " + Integer.toString(frameLength));
+                }
 
-            KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
-            keyManagerFactory.init(keyStore, password);
+                frame = new byte[frameLength];
+                position = 0;
+            }
 
-            // Create a SSLContext with the certificate
-            sslContext = SSLContext.getInstance("TLS");
-            sslContext.init(keyManagerFactory.getKeyManagers(), trustManagerFactory.getTrustManagers(), new SecureRandom());
-        } catch (NoSuchAlgorithmException | KeyStoreException | IOException | KeyManagementException | CertificateException | UnrecoverableKeyException e) {
-            e.printStackTrace();
+            fill(frame);
+
+            byte[] request = frame;
+            frame = null;
+            position = 0;
+
+            return request;
+        }
+
+        /**
+         * Reads bytes until the buffer is full, from the current position
+         *
+         * @param buffer the buffer
+         * @throws SocketTimeoutException if the read timed out, the position is kept
+         * @throws EOFException if the connection is closed by the client
+         * @throws IOException if the connection fails
+         */
+        private void fill(byte[] buffer) throws IOException {
+            while (position < buffer.length) {
+                int read = inputStream.read(buffer, position, buffer.length - position);
+                if (read < 0) {
+                    throw new EOFException("Connection closed by the client");
+                }
+                position += read;
+            }
         }
     }
 }
@@ -0,0 +1,88 @@
+/**
+ * CarRental
+ *
+ * This file provides the writer of the head office responses
+ * A response with a streamed serialized object is written field by field: its serialized object is written by its
+ * ObjectWriter while the response is sent, escaped as a JSON string on the fly, so the response is never held as a whole
+ * The client receives exactly the response it would have received with the serialized object built as a string
+ */
+
+package com.vehiclerental.presentationLayer.headOffice;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonWriter;
+import com.vehiclerental.presentationLayer.headOffice.protocolContracts.HeadOfficeResponseMessage;
+import com.vehiclerental.utils.JsonStringWriter;
+import com.vehiclerental.utils.SerializationUtils;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.util.List;
+
+public class HeadOfficeResponseWriter {
+    //Type of the responding branches
+    private static final Type RESPONDING_BRANCHES_TYPE = new TypeToken<List<Integer>>() {}.getType();
+
+    /**
+     * Writes a response
+     *
+     * @param response the response
+     * @param writer the writer, flushed once the response is written
+     * @throws IOException if the writer fails or the streamed object can't be written, the response is then truncated
+     */
+    public static void write(HeadOfficeResponseMessage response, Writer writer) throws IOException {
+        Gson gson = SerializationUtils.getGson();
+        JsonWriter jsonWriter = gson.newJsonWriter(writer);
+
+        if (response.StreamedObject == null) {
+            gson.toJson(response, HeadOfficeResponseMessage.class, jsonWriter);
+            jsonWriter.flush();
+            return;
+        }
+
+        //Same fields, order and escapes as the adapter of the response (html safe like the shared gson object), the
+        //fields left null are omitted like the adapter does. The envelope is written by hand: only the serialized object
+        //is written by a json writer, into the string value
+        writer.write("{\"op_code\":");
+        writer.write(String.valueOf(response.OperationCode));
+        writer.write(",\"status\":");
+        writer.write(String.valueOf(response.Status));
+        if (response.Error != null) {
+            writer.write(",\"error\":");
+            writeString(response.Error, writer);
+        }
+
+        writer.write(",\"serialized_object\":\"");
+        JsonWriter objectWriter = gson.newJsonWriter(new JsonStringWriter(writer));
+        objectWriter.setHtmlSafe(true);
+        response.StreamedObject.writeTo(objectWriter);
+        objectWriter.flush();
+        writer.write('"');
+
+        if (response.RequestId != null) {
+            writer.write(",\"request_id\":");
+            writer.write(String.valueOf(response.RequestId));
+        }
+        if (response.RespondingBranchIds != null) {
+            writer.write(",\"responding_branches\":");
+            gson.toJson(response.RespondingBranchIds, RESPONDING_BRANCHES_TYPE, writer);
+        }
+        writer.write('}');
+        writer.flush();
+    }
+
+    /**
+     * Writes a JSON string value
+     *
+     * @param value the string
+     * @param writer the writer
+     * @throws IOException if the writer fails
+     */
+    private static void writeString(String value, Writer writer) throws IOException {
+        writer.write('"');
+        new JsonStringWriter(writer).write(value);
+        writer.write('"');
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * CarRental
+ *
+ * This file provides an incremental scanner finding the end of a JSON document in a stream of UTF-8 bytes
+ * The android application sends a single JSON object without any delimiter, so the non-blocking front end uses this
+ * scanner to know when a complete request has been received, without decoding the bytes read so far
+ *
+ * Only the structural characters are looked at, they are all ASCII and can't be part of a multi-byte UTF-8 sequence
+ */
+
+package com.vehiclerental.presentationLayer.headOffice;
+
+public class JsonFrameScanner {
+    //Current nesting level of objects and arrays
+    private int depth = 0;
+    //true while the scanner is inside a string value
+    private boolean inString = false;
+    //true if the previous string character was an escape character
+    private boolean escaped = false;
+    //true once the first character of the document has been found
+    private boolean started = false;
+    //Number of bytes already scanned in the current document
+    private int scanned = 0;
+
+    /**
+     * Scans the new bytes of the current document
+     *
+     * @param buffer the bytes received so far, starting with the current document
+     * @param length the number of valid bytes in the buffer
+     * @return the length of the complete document, or -1 if more bytes are needed
+     * @throws IllegalArgumentException if the document is not a JSON object or array
+     */
+    public int scan(byte[] buffer, int length) {
+        while (scanned < length) {
+            byte current = buffer[scanned++];
+
+            if (!started) {
+                if (current == ' ' || current == '\t' || current == '\r' || current == '\n') {
+                    continue;
+                }
+                if (current != '{' && current != '[') {
+                    throw new IllegalArgumentException("Invalid JSON document");
+                }
+                started = true;
+            }
+
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (current == '\\') {
+                    escaped = true;
+                } else if (current == '"') {
+                    inString = false;
+                }
+                continue;
+            }
+
+            switch (current) {
+                case '"':
+                    inString = true;
+                    break;
+                case '{':
+                case '[':
+                    depth++;
+                    break;
+                case '}':
+                case ']':
+                    depth--;
+                    if (depth == 0) {
+                        return scanned;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Resets the scanner for the next document
+     */
+    public void reset() {
+        depth = 0;
+        inString = false;
+        escaped = false;
+        started = false;
+        scanned = 0;
+    }
+}
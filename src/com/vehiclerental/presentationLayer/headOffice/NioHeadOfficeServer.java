@@ -0,0 +1,863 @@
+/**
+ * CarRental
+ *
+ * This file provides the non-blocking front end of the head office socket server
+ * It is an alternative to the blocking SSLServerSocket front end, built on a Selector and an SSLEngine per connection:
+ * one acceptor thread and one event loop per core handle the TLS handshakes, the framing and the request decoding of
+ * every connection, the requests themselves are dispatched to the head office workers
+ *
+ * Idle connections only cost their buffers, so thousands of mostly idle mobile clients don't require thousands of threads
+ * Both the legacy and the framed (keep-alive) protocols are supported, see HeadOfficeManager
+ * A framed connection keeps reading while its requests are handled, the responses are written in completion order
+ * A response is handed to the event loop in chunks by its worker, which waits once a few chunks of the response are not
+ * written yet: a large or slow client doesn't make the server hold whole responses
+ */
+
+package com.vehiclerental.presentationLayer.headOffice;
+
+import com.google.gson.Gson;
+import com.vehiclerental.NodeConfiguration;
+import com.vehiclerental.presentationLayer.headOffice.protocolContracts.HeadOfficeRequestMessage;
+import com.vehiclerental.presentationLayer.headOffice.protocolContracts.HeadOfficeResponseMessage;
+import com.vehiclerental.utils.SerializationUtils;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+public class NioHeadOfficeServer {
+    //Client protocols, detected on the first byte of the connection
+    private static final int PROTOCOL_UNKNOWN = 0;
+    private static final int PROTOCOL_LEGACY = 1;
+    private static final int PROTOCOL_FRAMED = 2;
+    //Size of the length prefix of the framed protocol
+    private static final int FRAME_HEADER_SIZE = 4;
+
+    //Maximum time given to the event loops to flush the pending responses when the server stops
+    private static final long SHUTDOWN_GRACE_PERIOD = 5000;
+    //Interval between two idle connection checks of an event loop
+    private static final long IDLE_CHECK_INTERVAL = 1000;
+    //Number of chunks of a response handed to the event loop and not written yet, the worker waits beyond it
+    private static final int MAX_QUEUED_RESPONSE_CHUNKS = 4;
+
+    private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0);
+
+    private final HeadOfficeManager manager;
+    private final TlsConfiguration tlsConfiguration;
+    private final ExecutorService workerPool;
+    private final EventLoop[] eventLoops;
+    private final Gson gson = SerializationUtils.getGson();
+
+    private ServerSocketChannel serverChannel;
+    private Selector acceptSelector;
+    private volatile boolean stopped = false;
+
+    /**
+     * Constructor
+     *
+     * @param manager the head office manager, dispatching the requests
+     * @param tlsConfiguration the initialized TLS configuration
+     * @param workerPool the head office workers
+     * @param eventLoopCount the number of event loop threads
+     */
+    public NioHeadOfficeServer(HeadOfficeManager manager, TlsConfiguration tlsConfiguration, ExecutorService workerPool, int eventLoopCount) {
+        this.manager = manager;
+        this.tlsConfiguration = tlsConfiguration;
+        this.workerPool = workerPool;
+        this.eventLoops = new EventLoop[eventLoopCount];
+    }
+
+    /**
+     * Opens the server channel, starts the event loops and runs the accept loop until the server is stopped
+     *
+     * @param port the listening port
+     * @throws IOException if the server channel can't be opened
+     */
+    public void listen(int port) throws IOException {
+        acceptSelector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.configureBlocking(false);
+        serverChannel.bind(new InetSocketAddress(port), NodeConfiguration.getCurrent().headOfficeAcceptQueueLimit);
+        serverChannel.register(acceptSelector, SelectionKey.OP_ACCEPT);
+
+        for (int i = 0; i < eventLoops.length; i++) {
+            eventLoops[i] = new EventLoop(i);
+            eventLoops[i].thread.start();
+        }
+
+        System.out.println(">>> SOCKET SERVER (non-blocking) started on port " + Integer.toString(port) + " with " + Integer.toString(eventLoops.length) + " event loops.");
+
+        int nextEventLoop = 0;
+        while (!stopped) {
+            acceptSelector.select();
+
+            Iterator<SelectionKey> selectedKeys = acceptSelector.selectedKeys().iterator();
+            while (selectedKeys.hasNext()) {
+                selectedKeys.next();
+                selectedKeys.remove();
+
+                SocketChannel clientChannel;
+                while ((clientChannel = serverChannel.accept()) != null) {
+                    clientChannel.configureBlocking(false);
+                    clientChannel.socket().setTcpNoDelay(true);
+
+                    //Connections are spread over the event loops, a connection stays on the same loop until it is closed
+                    eventLoops[nextEventLoop].register(clientChannel);
+                    nextEventLoop = (nextEventLoop + 1) % eventLoops.length;
+                }
+            }
+        }
+
+        serverChannel.close();
+        acceptSelector.close();
+    }
+
+    /**
+     * Stops accepting new connections, the accepted ones are still answered
+     */
+    public void stop() {
+        stopped = true;
+        if (acceptSelector != null) {
+            acceptSelector.wakeup();
+        }
+    }
+
+    /**
+     * Flushes the pending responses and stops the event loops
+     * Must be called once the workers are stopped
+     */
+    public void close() {
+        for (EventLoop eventLoop : eventLoops) {
+            if (eventLoop != null) {
+                eventLoop.shutdown();
+            }
+        }
+
+        for (EventLoop eventLoop : eventLoops) {
+            if (eventLoop != null) {
+                try {
+                    eventLoop.thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * Event loop, owning a selector and all the connections registered on it
+     * The connections are only used by their event loop thread, other threads post tasks to the loop
+     */
+    private class EventLoop implements Runnable {
+        private final Selector selector;
+        private final Thread thread;
+        private final Queue<Runnable> pendingTasks = new ConcurrentLinkedQueue<Runnable>();
+        private volatile boolean closing = false;
+
+        /**
+         * Constructor
+         *
+         * @param index the event loop index, used for the thread name
+         * @throws IOException if the selector can't be opened
+         */
+        EventLoop(int index) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this, "head-office-event-loop-" + index);
+        }
+
+        /**
+         * Registers a new connection on this loop
+         *
+         * @param clientChannel the accepted channel
+         */
+        void register(final SocketChannel clientChannel) {
+            execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        ClientConnection connection = new ClientConnection(EventLoop.this, clientChannel);
+                        connection.key = clientChannel.register(selector, SelectionKey.OP_READ, connection);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                        closeQuietly(clientChannel);
+                    }
+                }
+            });
+        }
+
+        /**
+         * Runs a task on the event loop thread
+         *
+         * @param task the task
+         */
+        void execute(Runnable task) {
+            pendingTasks.add(task);
+            selector.wakeup();
+        }
+
+        /**
+         * Asks the loop to stop once its pending responses are written
+         */
+        void shutdown() {
+            closing = true;
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            long closingDeadline = 0;
+            long nextIdleCheck = System.currentTimeMillis() + IDLE_CHECK_INTERVAL;
+
+            while (true) {
+                try {
+                    selector.select(IDLE_CHECK_INTERVAL);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    break;
+                }
+
+                Runnable task;
+                while ((task = pendingTasks.poll()) != null) {
+                    task.run();
+                }
+
+                Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+                while (selectedKeys.hasNext()) {
+                    SelectionKey key = selectedKeys.next();
+                    selectedKeys.remove();
+
+                    ClientConnection connection = (ClientConnection) key.attachment();
+                    if (key.isValid()) {
+                        connection.pump();
+                    }
+                }
+
+                long now = System.currentTimeMillis();
+                if (now >= nextIdleCheck) {
+                    for (SelectionKey key : selector.keys()) {
+                        ((ClientConnection) key.attachment()).closeIfIdle(now);
+                    }
+                    nextIdleCheck = now + IDLE_CHECK_INTERVAL;
+                }
+
+                if (closing) {
+                    if (closingDeadline == 0) {
+                        closingDeadline = now + SHUTDOWN_GRACE_PERIOD;
+                    }
+                    if (!hasPendingResponses() || now >= closingDeadline) {
+                        break;
+                    }
+                }
+            }
+
+            for (SelectionKey key : selector.keys()) {
+                ((ClientConnection) key.attachment()).close();
+            }
+
+            try {
+                selector.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        /**
+         * Returns true if a connection of this loop is still waiting for its response to be written
+         *
+         * @return true if a response is pending
+         */
+        private boolean hasPendingResponses() {
+            for (SelectionKey key : selector.keys()) {
+                if (((ClientConnection) key.attachment()).inFlightRequests > 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A single client connection, with its TLS engine and its buffers
+     * All the methods are called on the event loop thread
+     */
+    private class ClientConnection {
+        private final EventLoop eventLoop;
+        private final SocketChannel channel;
+        private final SSLEngine engine;
+        private final JsonFrameScanner frameScanner = new JsonFrameScanner();
+        private SelectionKey key;
+
+        //Encrypted bytes read from the channel, in write mode
+        private ByteBuffer netIn;
+        //Encrypted bytes waiting to be written to the channel, in write mode
+        private ByteBuffer netOut;
+        //Decrypted request bytes, in write mode
+        private ByteBuffer appIn;
+        //Response chunk bytes waiting to be encrypted, in read mode
+        private ByteBuffer appOut = null;
+        //Responses being written, the first one is written until its last chunk, then the next ones in completion order
+        private final Queue<ResponseStream> responseStreams = new ArrayDeque<ResponseStream>();
+
+        private int protocol = PROTOCOL_UNKNOWN;
+        //Number of requests decoded on this connection
+        private int receivedRequests = 0;
+        //Number of decoded requests whose response is not completely written yet
+        private int inFlightRequests = 0;
+        //Also read by the workers posting response chunks
+        private volatile boolean closed = false;
+        private long lastActivity = System.currentTimeMillis();
+        private final long acceptTime = lastActivity;
+
+        /**
+         * Constructor
+         *
+         * @param eventLoop the owning event loop
+         * @param channel the accepted channel
+         * @throws SSLException if the TLS engine can't be started
+         */
+        ClientConnection(EventLoop eventLoop, SocketChannel channel) throws SSLException {
+            this.eventLoop = eventLoop;
+            this.channel = channel;
+
+            this.engine = tlsConfiguration.createEngine();
+            this.engine.beginHandshake();
+
+            int packetBufferSize = engine.getSession().getPacketBufferSize();
+            this.netIn = ByteBuffer.allocate(packetBufferSize);
+            this.netOut = ByteBuffer.allocate(packetBufferSize);
+            this.appIn = ByteBuffer.allocate(engine.getSession().getApplicationBufferSize());
+        }
+
+        /**
+         * Moves the data as far as possible in both directions: channel reads, handshake steps, decryption,
+         * request decoding, encryption and channel writes
+         */
+        void pump() {
+            if (closed) {
+                return;
+            }
+
+            try {
+                boolean progress = true;
+                while (progress && !closed) {
+                    progress = false;
+
+                    if (!flushNetOut()) {
+                        //The channel is full, wait for it to be writable
+                        break;
+                    }
+
+                    if (appOut == null) {
+                        appOut = nextChunk();
+                    }
+                    if (appOut != null && !appOut.hasRemaining()) {
+                        //Chunk written
+                        chunkWritten();
+                        if (closed) {
+                            return;
+                        }
+                        progress = true;
+                        continue;
+                    }
+
+                    switch (engine.getHandshakeStatus()) {
+                        case NEED_TASK: {
+                            //Key exchange computations, kept on the event loop
+                            Runnable task;
+                            while ((task = engine.getDelegatedTask()) != null) {
+                                task.run();
+                            }
+                            progress = true;
+                            break;
+                        }
+                        case NEED_WRAP: {
+                            progress = wrap(EMPTY_BUFFER);
+                            break;
+                        }
+                        case NEED_UNWRAP: {
+                            progress = readChannel() | unwrap();
+                            break;
+                        }
+                        default: {
+                            if (appOut != null) {
+                                progress = wrap(appOut);
+                            }
+                            if (isAcceptingRequests()) {
+                                progress |= readChannel() | unwrap();
+                                if (appIn.position() > 0) {
+                                    progress |= decodeRequest();
+                                }
+                            }
+                            break;
+                        }
+                    }
+                }
+
+                if (closed) {
+                    return;
+                }
+
+                int interestOps = 0;
+                if (isAcceptingRequests() || engine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_UNWRAP) {
+                    interestOps |= SelectionKey.OP_READ;
+                }
+                if (netOut.position() > 0) {
+                    interestOps |= SelectionKey.OP_WRITE;
+                }
+                key.interestOps(interestOps);
+            } catch (IOException | RuntimeException e) {
+                close();
+            }
+        }
+
+        /**
+         * Returns true if the connection can read a new request
+         * The legacy protocol handles a single request, the framed protocol reads requests until the request limit of the
+         * connection or the pipelining limit is reached
+         *
+         * @return true if a new request can be read
+         */
+        private boolean isAcceptingRequests() {
+            if (protocol == PROTOCOL_LEGACY) {
+                return receivedRequests == 0;
+            }
+            return receivedRequests < NodeConfiguration.getCurrent().headOfficeMaxRequestsPerConnection
+                    && inFlightRequests < NodeConfiguration.getCurrent().headOfficeMaxPipelinedRequests;
+        }
+
+        /**
+         * Reads the available encrypted bytes from the channel
+         *
+         * @return true if bytes were read
+         * @throws IOException if the channel is closed by the client
+         */
+        private boolean readChannel() throws IOException {
+            if (!netIn.hasRemaining()) {
+                return false;
+            }
+
+            int read = channel.read(netIn);
+            if (read < 0) {
+                throw new IOException("Connection closed by the client");
+            }
+            if (read > 0) {
+                lastActivity = System.currentTimeMillis();
+            }
+            return read > 0;
+        }
+
+        /**
+         * Decrypts the available encrypted bytes
+         *
+         * @return true if the engine made progress
+         * @throws IOException if the TLS engine fails or the request is too large
+         */
+        private boolean unwrap() throws IOException {
+            if (netIn.position() == 0) {
+                return false;
+            }
+
+            netIn.flip();
+            SSLEngineResult result;
+            try {
+                result = engine.unwrap(netIn, appIn);
+            } finally {
+                netIn.compact();
+            }
+            checkHandshakeFinished(result);
+
+            switch (result.getStatus()) {
+                case BUFFER_OVERFLOW: {
+                    if (appIn.capacity() > 2 * HeadOfficeManager.MAX_REQUEST_SIZE) {
+                        throw new IOException("Request too large");
+                    }
+                    appIn = enlarge(appIn, engine.getSession().getApplicationBufferSize());
+                    return true;
+                }
+                case BUFFER_UNDERFLOW: {
+                    if (!netIn.hasRemaining()) {
+                        netIn = enlarge(netIn, engine.getSession().getPacketBufferSize());
+                    }
+                    return false;
+                }
+                case CLOSED: {
+                    throw new IOException("TLS session closed by the client");
+                }
+                default: {
+                    return result.bytesConsumed() > 0 || result.bytesProduced() > 0;
+                }
+            }
+        }
+
+        /**
+         * Encrypts the given bytes into the outgoing buffer
+         *
+         * @param source the bytes to encrypt, in read mode
+         * @return true if the engine made progress
+         * @throws IOException if the TLS engine fails
+         */
+        private boolean wrap(ByteBuffer source) throws IOException {
+            SSLEngineResult result = engine.wrap(source, netOut);
+            checkHandshakeFinished(result);
+
+            switch (result.getStatus()) {
+                case BUFFER_OVERFLOW: {
+                    if (netOut.position() == 0) {
+                        netOut = enlarge(netOut, engine.getSession().getPacketBufferSize());
+                        return true;
+                    }
+                    //Wait for the pending bytes to be written
+                    return false;
+                }
+                case CLOSED: {
+                    throw new IOException("TLS session closed");
+                }
+                default: {
+                    return result.bytesConsumed() > 0 || result.bytesProduced() > 0;
+                }
+            }
+        }
+
+        /**
+         * Counts the handshake of the connection once the engine reports it is finished
+         *
+         * @param result the result of the last engine operation
+         */
+        private void checkHandshakeFinished(SSLEngineResult result) {
+            if (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.FINISHED) {
+                tlsConfiguration.handshakeCompleted(engine.getSession(), acceptTime);
+            }
+        }
+
+        /**
+         * Writes the pending encrypted bytes to the channel
+         *
+         * @return true if every pending byte has been written
+         * @throws IOException if the channel fails
+         */
+        private boolean flushNetOut() throws IOException {
+            if (netOut.position() == 0) {
+                return true;
+            }
+
+            netOut.flip();
+            try {
+                channel.write(netOut);
+            } finally {
+                netOut.compact();
+            }
+
+            lastActivity = System.currentTimeMillis();
+            return netOut.position() == 0;
+        }
+
+        /**
+         * Decodes the next request once it has been completely received, and dispatches it to a worker
+         * The legacy requests end with their JSON document, the framed requests are preceded by their length
+         *
+         * @return true if a request has been decoded
+         */
+        private boolean decodeRequest() {
+            if (protocol == PROTOCOL_UNKNOWN) {
+                protocol = appIn.get(0) == HeadOfficeManager.FRAMED_PROTOCOL_MARKER ? PROTOCOL_FRAMED : PROTOCOL_LEGACY;
+            }
+
+            int offset;
+            int length;
+            if (protocol == PROTOCOL_FRAMED) {
+                if (appIn.position() < FRAME_HEADER_SIZE) {
+                    return false;
+                }
+                length = appIn.getInt(0);
+                if (length < 0 || length > HeadOfficeManager.MAX_REQUEST_SIZE) {
+                    throw new IllegalArgumentException("Invalid request frame length");
+                }
+                if (appIn.position() < FRAME_HEADER_SIZE + length) {
+                    return false;
+                }
+                offset = FRAME_HEADER_SIZE;
+            } else {
+                length = frameScanner.scan(appIn.array(), appIn.position());
+                if (length < 0) {
+                    return false;
+                }
+                offset = 0;
+                frameScanner.reset();
+            }
+
+            receivedRequests++;
+            inFlightRequests++;
+
+            final HeadOfficeRequestMessage request = gson.fromJson(
+                    new InputStreamReader(new ByteArrayInputStream(appIn.array(), offset, length), StandardCharsets.UTF_8),
+                    HeadOfficeRequestMessage.class);
+
+            //Keeps the bytes of the next requests, if the client already sent them
+            appIn.flip();
+            appIn.position(offset + length);
+            appIn.compact();
+
+            try {
+                workerPool.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        HeadOfficeResponseMessage response;
+                        try {
+                            response = manager.handleRequest(request);
+                        } catch (Exception e) {
+                            e.printStackTrace();
+                            if (protocol != PROTOCOL_FRAMED) {
+                                eventLoop.execute(new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        close();
+                                    }
+                                });
+                                return;
+                            }
+                            //The other requests of the connection may still be in flight, only this one fails
+                            response = HeadOfficeResponseMessage.GetServerErrorResponse();
+                            response.RequestId = request != null ? request.RequestId : null;
+                        }
+                        postResponse(response);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                //Every worker is busy and the queue is full
+                HeadOfficeResponseMessage response = manager.generateSystemUnavailableError();
+                response.RequestId = request != null ? request.RequestId : null;
+                postResponse(response);
+            }
+
+            return true;
+        }
+
+        /**
+         * Serializes a response and hands its chunks to the event loop for encryption and writing
+         * Called from a worker thread, a streamed list is fetched and written on the worker thread while the event loop
+         * writes the previous chunks, the response is queued behind the responses not written yet
+         *
+         * @param response the response message
+         */
+        private void postResponse(HeadOfficeResponseMessage response) {
+            final ResponseStream stream = new ResponseStream();
+            try {
+                HeadOfficeManager.writeResponse(response, new ResponseChunkOutputStream(NodeConfiguration.getCurrent().headOfficeResponseChunkSize, protocol == PROTOCOL_FRAMED) {
+                    @Override
+                    protected void writeChunk(byte[] chunk, int length, boolean last) throws IOException {
+                        stream.post(ByteBuffer.wrap(chunk, 0, length), last);
+                    }
+                });
+            } catch (IOException e) {
+                eventLoop.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        close();
+                    }
+                });
+            }
+        }
+
+        /**
+         * Called on the event loop once a worker has posted a chunk of its response
+         *
+         * @param stream the response
+         * @param chunk the chunk, in read mode
+         * @param last true for the last chunk of the response
+         */
+        private void chunkPosted(ResponseStream stream, ByteBuffer chunk, boolean last) {
+            if (closed) {
+                stream.credits.release();
+                return;
+            }
+
+            if (!stream.registered) {
+                //The response takes its place once its first chunk is ready
+                stream.registered = true;
+                responseStreams.add(stream);
+            }
+            stream.chunks.add(chunk);
+            stream.complete = last;
+            pump();
+        }
+
+        /**
+         * Returns the next chunk to write, chunks of the first response only
+         *
+         * @return the chunk, or null if the next chunk of the first response is not posted yet
+         */
+        private ByteBuffer nextChunk() {
+            ResponseStream stream = responseStreams.peek();
+
+            return stream != null ? stream.chunks.poll() : null;
+        }
+
+        /**
+         * Called once a chunk is completely written, the worker of the response can post another chunk
+         */
+        private void chunkWritten() {
+            appOut = null;
+
+            ResponseStream stream = responseStreams.peek();
+            stream.credits.release();
+            if (stream.complete && stream.chunks.isEmpty()) {
+                //Response written
+                responseStreams.poll();
+                completeResponse();
+            }
+        }
+
+        /**
+         * Called once a response is completely written
+         * The connection is closed once every request it can receive has been answered: a single request for the legacy
+         * protocol, the request limit of the connection for the framed protocol
+         */
+        private void completeResponse() {
+            appOut = null;
+            inFlightRequests--;
+            lastActivity = System.currentTimeMillis();
+
+            if (inFlightRequests == 0 && (protocol != PROTOCOL_FRAMED
+                    || receivedRequests >= NodeConfiguration.getCurrent().headOfficeMaxRequestsPerConnection)) {
+                close();
+            }
+        }
+
+        /**
+         * Closes the connection if no byte has been exchanged for longer than the idle timeout
+         * Connections waiting for their response are never considered idle
+         *
+         * @param now the current time
+         */
+        void closeIfIdle(long now) {
+            if (inFlightRequests == 0 && now - lastActivity > NodeConfiguration.getCurrent().headOfficeIdleTimeout) {
+                close();
+            }
+        }
+
+        /**
+         * Closes the connection, sending the TLS close notification if possible
+         */
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            inFlightRequests = 0;
+            appOut = null;
+
+            //Wakes the workers waiting to post a chunk, they fail once they see the connection closed
+            for (ResponseStream stream : responseStreams) {
+                stream.credits.release(MAX_QUEUED_RESPONSE_CHUNKS);
+            }
+            responseStreams.clear();
+
+            try {
+                engine.closeOutbound();
+                netOut.clear();
+                engine.wrap(EMPTY_BUFFER, netOut);
+                netOut.flip();
+                channel.write(netOut);
+            } catch (IOException | RuntimeException e) {
+                //Best effort, the client may already be gone
+            }
+
+            if (key != null) {
+                key.cancel();
+            }
+            closeQuietly(channel);
+        }
+
+        /**
+         * A response of the connection, handed to the event loop chunk by chunk by its worker
+         * The chunks and flags are only used on the event loop thread
+         */
+        private class ResponseStream {
+            //Chunks posted and not written yet, in read mode
+            private final Queue<ByteBuffer> chunks = new ArrayDeque<ByteBuffer>();
+            //Chunks the worker can still post before waiting for the event loop to write them
+            private final Semaphore credits = new Semaphore(MAX_QUEUED_RESPONSE_CHUNKS);
+            //The response is queued on the connection
+            private boolean registered = false;
+            //The last chunk is posted
+            private boolean complete = false;
+
+            /**
+             * Hands a chunk to the event loop, waits while too many chunks of the response are not written yet
+             * Called from the worker thread
+             *
+             * @param chunk the chunk, in read mode
+             * @param last true for the last chunk of the response
+             * @throws IOException if the connection is closed
+             */
+            void post(final ByteBuffer chunk, final boolean last) throws IOException {
+                try {
+                    //The connection is checked regularly, a loop stopping with the server doesn't run the posted tasks anymore
+                    while (!credits.tryAcquire(IDLE_CHECK_INTERVAL, TimeUnit.MILLISECONDS)) {
+                        if (closed) {
+                            throw new IOException("Connection closed");
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while sending the response", e);
+                }
+                if (closed) {
+                    throw new IOException("Connection closed");
+                }
+
+                eventLoop.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        chunkPosted(ResponseStream.this, chunk, last);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Returns a bigger copy of the given buffer, in write mode
+     *
+     * @param buffer the full buffer, in write mode
+     * @param increment the minimal size increment
+     * @return the new buffer
+     */
+    private static ByteBuffer enlarge(ByteBuffer buffer, int increment) {
+        ByteBuffer enlarged = ByteBuffer.allocate(buffer.capacity() + Math.max(increment, buffer.capacity()));
+        buffer.flip();
+        enlarged.put(buffer);
+        return enlarged;
+    }
+
+    /**
+     * Closes a channel, ignoring failures
+     *
+     * @param channel the channel
+     */
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            //Already closed
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * CarRental
+ *
+ * This file provides the output stream of a head office response sent in chunks of a bounded size
+ * Each chunk is handed over once full, so a response streamed from the branches is sent while it is fetched and never
+ * takes more than a chunk in the stream. With the framed protocol, each chunk is preceded by its length (4 bytes, big
+ * endian) with the high bit set on every chunk but the last one of the response
+ */
+
+package com.vehiclerental.presentationLayer.headOffice;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+abstract class ResponseChunkOutputStream extends OutputStream {
+    //Size of the length prefix of a chunk (framed protocol)
+    static final int CHUNK_HEADER_SIZE = 4;
+    //High bit of a chunk length, set when more chunks of the response follow
+    static final int MORE_CHUNKS_FLAG = 0x80000000;
+    //Initial size of the chunk buffer, most responses are small
+    private static final int INITIAL_BUFFER_SIZE = 512;
+
+    //Size of the length prefix, 0 without framing
+    private final int headerSize;
+    //Maximum number of response bytes in a chunk
+    private final int chunkSize;
+
+    //Current chunk, its length prefix is written when it is handed over
+    private byte[] buffer;
+    private int position;
+    //Number of chunks handed over
+    private int handedOverChunks = 0;
+    private boolean closed = false;
+
+    /**
+     * Constructor
+     *
+     * @param chunkSize the maximum number of response bytes in a chunk
+     * @param framed true to prefix the chunks with their length (framed protocol)
+     */
+    ResponseChunkOutputStream(int chunkSize, boolean framed) {
+        this.headerSize = framed ? CHUNK_HEADER_SIZE : 0;
+        this.chunkSize = chunkSize;
+        this.buffer = new byte[headerSize + Math.min(chunkSize, INITIAL_BUFFER_SIZE)];
+        this.position = headerSize;
+    }
+
+    /**
+     * Hands a chunk over to the connection
+     *
+     * @param chunk the chunk, with its length prefix (framed protocol), it is not reused by this stream
+     * @param length the number of bytes of the chunk
+     * @param last true for the last chunk of the response
+     * @throws IOException if the chunk can't be sent
+     */
+    protected abstract void writeChunk(byte[] chunk, int length, boolean last) throws IOException;
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureRoom();
+        buffer[position++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            ensureRoom();
+
+            int count = Math.min(length, buffer.length - position);
+            System.arraycopy(bytes, offset, buffer, position, count);
+            position += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Tells if a chunk has already been handed over, the response can't be replaced anymore
+     *
+     * @return true once the first chunk is handed over
+     */
+    boolean isStarted() {
+        return handedOverChunks > 0;
+    }
+
+    /**
+     * Drops the bytes of the current chunk, to write another response instead of a response which isn't started
+     */
+    void discard() {
+        position = headerSize;
+    }
+
+    /**
+     * Hands the last chunk of the response over
+     *
+     * @throws IOException if the chunk can't be sent
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            handOver(true);
+        }
+    }
+
+    /**
+     * Makes room for at least one byte: grows the buffer up to the chunk size, then hands the full chunk over
+     *
+     * @throws IOException if the full chunk can't be sent
+     */
+    private void ensureRoom() throws IOException {
+        if (closed) {
+            throw new IOException("Response already written");
+        }
+        if (position < buffer.length) {
+            return;
+        }
+
+        if (buffer.length < headerSize + chunkSize) {
+            buffer = Arrays.copyOf(buffer, headerSize + Math.min(chunkSize, 2 * (buffer.length - headerSize)));
+        } else {
+            handOver(false);
+        }
+    }
+
+    /**
+     * Writes the length prefix of the current chunk and hands it over, the next chunk gets a new buffer
+     *
+     * @param last true for the last chunk of the response
+     * @throws IOException if the chunk can't be sent
+     */
+    private void handOver(boolean last) throws IOException {
+        if (headerSize > 0) {
+            int length = (position - headerSize) | (last ? 0 : MORE_CHUNKS_FLAG);
+            buffer[0] = (byte) (length >>> 24);
+            buffer[1] = (byte) (length >>> 16);
+            buffer[2] = (byte) (length >>> 8);
+            buffer[3] = (byte) length;
+        }
+
+        byte[] chunk = buffer;
+        int length = position;
+        buffer = last ? null : new byte[buffer.length];
+        position = headerSize;
+
+        handedOverChunks++;
+        writeChunk(chunk, length, last);
+    }
+}
@@ -6,21 +6,19 @@
 
 package com.vehiclerental.presentationLayer.headOffice;
 
-import com.google.gson.reflect.TypeToken;
 import com.vehiclerental.NodeConfiguration;
-import com.vehiclerental.clusterCommunicator.ClusterCommunicationObject;
+import com.vehiclerental.OperationCodes;
 import com.vehiclerental.contracts.*;
 import com.vehiclerental.dataLayer.entities.Branch;
 import com.vehiclerental.dataLayer.entities.User;
 import com.vehiclerental.exceptions.*;
 import com.vehiclerental.logicLayer.ServiceFactory;
 import com.vehiclerental.logicLayer.interfaces.UserService;
-import com.vehiclerental.presentationLayer.branch.protocolContracts.BranchResponseMessage;
+import com.vehiclerental.presentationLayer.branch.protocolContracts.BranchMessageTypes;
 import com.vehiclerental.presentationLayer.headOffice.protocolContracts.HeadOfficeRequestMessage;
 import com.vehiclerental.presentationLayer.headOffice.protocolContracts.HeadOfficeResponseMessage;
 import com.vehiclerental.utils.SerializationUtils;
 
-import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -41,20 +39,10 @@ public class StaffHeadOfficeController extends BaseHeadOfficeController {
         }
 
         try {
-            User user = doAuthentication(request.getAuthEmail(), request.getAuthPassword(), true);
+            User user = doAuthentication(request, true);
 
-            ClusterCommunicationObject<String> rawMpiResponse = ForwardRequestToBranch(destBranch, request.OperationCode, null, null, user);
-
-            //Parse MPI response
-            Type jsonType = new TypeToken<BranchResponseMessage<List<BookingContract>>>() {}.getType();
-            BranchResponseMessage<List<BookingContract>> mpiResponse = SerializationUtils.deserialize(rawMpiResponse.object, jsonType);
-
-            if (mpiResponse.Status != 200) {
-                return generateError(request.OperationCode, mpiResponse.Status, mpiResponse.Error);
-            }
-
-            //Form socket response
-            return generateSuccessfulResponse(request.OperationCode, mpiResponse.Object);
+            //Stream from the branch, page by page, the list is never held as a whole by the head office
+            return StreamRequestToBranch(destBranch, request.OperationCode, null, user);
         } catch (ClusterCommunicatorException e) {
             return generateError(request.OperationCode, 500, "Server error");
         } catch (NotAuthorizedException e) {
@@ -70,22 +58,22 @@ public class StaffHeadOfficeController extends BaseHeadOfficeController {
      */
     public static HeadOfficeResponseMessage HandleShutdownSystem(HeadOfficeRequestMessage request) {
         try {
-            User user = doAuthentication(request.getAuthEmail(), request.getAuthPassword(), true);
+            User user = doAuthentication(request, true);
 
-            Collection<Branch> branches = NodeConfiguration.Current.branches.values();
+            Collection<Branch> branches = NodeConfiguration.getCurrent().branches.values();
 
             for (Branch branch : branches) {
                 //We do not handle errors because the single thread nature of the system makes it very unlikely to fail on shutdown
-                ForwardRequestToBranch(branch, request.OperationCode, null, null, user);
+                ForwardRequestToBranch(branch, request.OperationCode, null, user, BranchMessageTypes.getResponseType(OperationCodes.SHUTDOWN_SYSTEM));
             }
 
-            NodeConfiguration.Current.systemAvailable = false;
+            NodeConfiguration.getCurrent().systemAvailable = false;
             //Everything will go down after this request
             /*
                 It's actually not possible to finalize only the branches, MPI_Finalize requires all the processes to call
                 MPI_Finalize before finalizing the cluster
              */
-            NodeConfiguration.Current.headOfficeManager.stopAfterCurrentRequest();
+            NodeConfiguration.getCurrent().headOfficeManager.stopAfterCurrentRequest();
 
             //Form socket response
             return generateSuccessfulResponse(request.OperationCode, null);
@@ -110,7 +98,7 @@ public class StaffHeadOfficeController extends BaseHeadOfficeController {
         }
 
         try {
-            doAuthentication(request.getAuthEmail(), request.getAuthPassword(), true);
+            doAuthentication(request, true);
             /* Service calls */
             UserService userService = ServiceFactory.getUserService();
 
@@ -143,20 +131,10 @@ public class StaffHeadOfficeController extends BaseHeadOfficeController {
         }
 
         try {
-            User user = doAuthentication(request.getAuthEmail(), request.getAuthPassword(), true);
-
-            ClusterCommunicationObject<String> rawMpiResponse = ForwardRequestToBranch(destBranch, request.OperationCode, request.SerializedObject, SearchVehicleContract.class, user);
+            User user = doAuthentication(request, true);
 
-            //Parse MPI response
-            Type jsonType = new TypeToken<BranchResponseMessage<List<VehicleContract>>>() {}.getType();
-            BranchResponseMessage<List<VehicleContract>> mpiResponse = SerializationUtils.deserialize(rawMpiResponse.object, jsonType);
-
-            if (mpiResponse.Status != 200) {
-                return generateError(request.OperationCode, mpiResponse.Status, mpiResponse.Error);
-            }
-
-            //Form socket response
-            return generateSuccessfulResponse(request.OperationCode, mpiResponse.Object);
+            //Stream from the branch, page by page, the list is never held as a whole by the head office
+            return StreamRequestToBranch(destBranch, request.OperationCode, request.SerializedObject, user);
         } catch (ClusterCommunicatorException e) {
             return generateError(request.OperationCode, 500, "Server error");
         } catch (NotAuthorizedException e) {
@@ -178,20 +156,10 @@ public class StaffHeadOfficeController extends BaseHeadOfficeController {
         }
 
         try {
-            User user = doAuthentication(request.getAuthEmail(), request.getAuthPassword(), true);
-
-            ClusterCommunicationObject<String> rawMpiResponse = ForwardRequestToBranch(destBranch, request.OperationCode, request.SerializedObject, CreateUpdateVehicleContract.class, user);
+            User user = doAuthentication(request, true);
 
-            //Parse MPI response
-            Type jsonType = new TypeToken<BranchResponseMessage<VehicleContract>>() {}.getType();
-            BranchResponseMessage<VehicleContract> mpiResponse = SerializationUtils.deserialize(rawMpiResponse.object, jsonType);
-
-            if (mpiResponse.Status != 200) {
-                return generateError(request.OperationCode, mpiResponse.Status, mpiResponse.Error);
-            }
-
-            //Form socket response
-            return generateSuccessfulResponse(request.OperationCode, mpiResponse.Object);
+            //Relay to the branch, the request and response objects are not deserialized by the head office
+            return RelayRequestToBranch(destBranch, request.OperationCode, request.SerializedObject, user);
         } catch (ClusterCommunicatorException e) {
             return generateError(request.OperationCode, 500, "Server error");
         } catch (NotAuthorizedException e) {
@@ -213,17 +181,20 @@ public class StaffHeadOfficeController extends BaseHeadOfficeController {
         }
 
         try {
-            doAuthentication(request.getAuthEmail(), request.getAuthPassword(), true);
+            doAuthentication(request, true);
             /* Service calls */
             UserService userService = ServiceFactory.getUserService();
 
-            List<User> users = userService.searchUser(searchUserContract);
-
+            //This method answers every match, gathered page by page
             List<UserContract> userContracts = new ArrayList<UserContract>();
+            String continuationToken = null;
 
-            for (User user : users) {
-                userContracts.add(new UserContract(user));
-            }
+            do {
+                ResultPageContract<UserContract> page = userService.searchUser(searchUserContract, continuationToken, NodeConfiguration.getCurrent().headOfficeResultPageSize);
+
+                userContracts.addAll(page.items);
+                continuationToken = page.continuationToken;
+            } while (continuationToken != null);
 
             //Form socket response
             return generateSuccessfulResponse(request.OperationCode, userContracts);
@@ -250,20 +221,35 @@ public class StaffHeadOfficeController extends BaseHeadOfficeController {
         }
 
         try {
-            User user = doAuthentication(request.getAuthEmail(), request.getAuthPassword(), true);
+            User user = doAuthentication(request, true);
+
+            //Relay to the branch, the request and response objects are not deserialized by the head office
+            return RelayRequestToBranch(destBranch, request.OperationCode, request.SerializedObject, user);
+        } catch (ClusterCommunicatorException e) {
+            return generateError(request.OperationCode, 500, "Server error");
+        } catch (NotAuthorizedException e) {
+            return generateError(request.OperationCode, 401, "Unauthorized");
+        }
+    }
 
-            ClusterCommunicationObject<String> rawMpiResponse = ForwardRequestToBranch(destBranch, request.OperationCode, request.SerializedObject, ChangeBookingStatusContract.class, user);
+    /**
+     * Returns the vehicle moves for a specific branch according to the given criteria
+     *
+     * @param request the request parameters
+     * @return the result response
+     */
+    public static HeadOfficeResponseMessage HandleGetVehicleMoves(HeadOfficeRequestMessage request) {
+        Branch destBranch = getRequestBranch(request);
 
-            //Parse MPI response
-            Type jsonType = new TypeToken<BranchResponseMessage<BookingContract>>() {}.getType();
-            BranchResponseMessage<BookingContract> mpiResponse = SerializationUtils.deserialize(rawMpiResponse.object, jsonType);
+        if (destBranch == null) {
+            return generateError(request.OperationCode, 404, "Branch not found");
+        }
 
-            if (mpiResponse.Status != 200) {
-                return generateError(request.OperationCode, mpiResponse.Status, mpiResponse.Error);
-            }
+        try {
+            User user = doAuthentication(request, true);
 
-            //Form socket response
-            return generateSuccessfulResponse(request.OperationCode, mpiResponse.Object);
+            //Stream from the branch, page by page, the list is never held as a whole by the head office
+            return StreamRequestToBranch(destBranch, request.OperationCode, request.SerializedObject, user);
         } catch (ClusterCommunicatorException e) {
             return generateError(request.OperationCode, 500, "Server error");
         } catch (NotAuthorizedException e) {
@@ -272,12 +258,12 @@ public class StaffHeadOfficeController extends BaseHeadOfficeController {
     }
 
     /**
-     * Returns the vehicle moves for a specific branch according to the given criteria
+     * Get a page of the bookings for the specified branch
      *
      * @param request the request parameters
      * @return the result response
      */
-    public static HeadOfficeResponseMessage HandleGetVehicleMoves(HeadOfficeRequestMessage request) {
+    public static HeadOfficeResponseMessage HandleGetBranchBookingsPage(HeadOfficeRequestMessage request) {
         Branch destBranch = getRequestBranch(request);
 
         if (destBranch == null) {
@@ -285,24 +271,73 @@ public class StaffHeadOfficeController extends BaseHeadOfficeController {
         }
 
         try {
-            User user = doAuthentication(request.getAuthEmail(), request.getAuthPassword(), true);
+            User user = doAuthentication(request, true);
 
-            ClusterCommunicationObject<String> rawMpiResponse = ForwardRequestToBranch(destBranch, request.OperationCode, request.SerializedObject, GetBranchVehicleMovesContract.class, user);
+            //Relay to the branch, the request and response objects are not deserialized by the head office
+            return RelayPageRequestToBranch(destBranch, request.OperationCode, null, user, request.ContinuationToken, request.Limit);
+        } catch (ClusterCommunicatorException e) {
+            return generateError(request.OperationCode, 500, "Server error");
+        } catch (NotAuthorizedException e) {
+            return generateError(request.OperationCode, 401, "Unauthorized");
+        }
+    }
 
-            //Parse MPI response
-            Type jsonType = new TypeToken<BranchResponseMessage<List<BookingContract>>>() {}.getType();
-            BranchResponseMessage<List<BookingContract>> mpiResponse = SerializationUtils.deserialize(rawMpiResponse.object, jsonType);
+    /**
+     * Search a page of vehicles for a specific branch with a given criteria
+     *
+     * @param request the request parameters
+     * @return the result response
+     */
+    public static HeadOfficeResponseMessage HandleSearchVehiclesPage(HeadOfficeRequestMessage request) {
+        Branch destBranch = getRequestBranch(request);
 
-            if (mpiResponse.Status != 200) {
-                return generateError(request.OperationCode, mpiResponse.Status, mpiResponse.Error);
-            }
+        if (destBranch == null) {
+            return generateError(request.OperationCode, 404, "Branch not found");
+        }
 
-            //Form socket response
-            return generateSuccessfulResponse(request.OperationCode, mpiResponse.Object);
+        try {
+            User user = doAuthentication(request, true);
+
+            //Relay to the branch, the request and response objects are not deserialized by the head office
+            return RelayPageRequestToBranch(destBranch, request.OperationCode, request.SerializedObject, user, request.ContinuationToken, request.Limit);
         } catch (ClusterCommunicatorException e) {
             return generateError(request.OperationCode, 500, "Server error");
         } catch (NotAuthorizedException e) {
             return generateError(request.OperationCode, 401, "Unauthorized");
         }
     }
+
+    /**
+     * Search a page of user accounts matching the given criteria (the staff accounts won't be returned)
+     *
+     * @param request the request parameters
+     * @return the result response
+     */
+    public static HeadOfficeResponseMessage HandleSearchUserPage(HeadOfficeRequestMessage request) {
+        SearchUserContract searchUserContract = SerializationUtils.deserialize(request.SerializedObject, SearchUserContract.class);
+
+        if (searchUserContract == null) {
+            return generateError(request.OperationCode, 400, "Bad request");
+        }
+
+        try {
+            doAuthentication(request, true);
+            /* Service calls */
+            UserService userService = ServiceFactory.getUserService();
+
+            int maximum = NodeConfiguration.getCurrent().headOfficeResultPageSize;
+            int limit = request.Limit <= 0 || request.Limit > maximum ? maximum : request.Limit;
+
+            ResultPageContract<UserContract> page = userService.searchUser(searchUserContract, request.ContinuationToken, limit);
+
+            //Form socket response
+            return generateSuccessfulResponse(request.OperationCode, page);
+        } catch (InvalidPropertyException e) {
+            return generateError(request.OperationCode, 400, e.getMessage());
+        } catch (DatabaseAccessFailedException e) {
+            return generateError(request.OperationCode, 500, "Server error");
+        } catch (NotAuthorizedException e) {
+            return generateError(request.OperationCode, 401, "Unauthorized");
+        }
+    }
 }
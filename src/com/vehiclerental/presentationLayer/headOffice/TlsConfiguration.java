@@ -0,0 +1,210 @@
+/**
+ * CarRental
+ *
+ * This file provides the TLS configuration of the head office socket server, shared by both front ends
+ * It builds the SSL context once from the configured keystore, tunes the server session cache so the reconnecting
+ * clients resume their session instead of doing a full handshake, and restricts the cipher suites to a preference list
+ * (the TLS 1.3 suites, then the forward secret ECDHE key exchange with AES-GCM first) applied in the server order
+ *
+ * It also counts the full and the resumed handshakes, to check the session cache is effective
+ */
+
+package com.vehiclerental.presentationLayer.headOffice;
+
+import com.vehiclerental.NodeConfiguration;
+
+import javax.net.ssl.*;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TlsConfiguration {
+    //Cipher suites accepted by the server, by order of preference, the ones not supported by the JVM are ignored
+    //The TLS 1.3 suites must be listed, TLS 1.3 is disabled without them. The CBC suites are kept at the end for the
+    //older android devices
+    private static final String[] PREFERRED_CIPHER_SUITES = new String[] {
+            "TLS_AES_128_GCM_SHA256",
+            "TLS_AES_256_GCM_SHA384",
+            "TLS_CHACHA20_POLY1305_SHA256",
+            "TLS_ECDHE_ECDSA_WITH_AES_128_GCM_SHA256",
+            "TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256",
+            "TLS_ECDHE_ECDSA_WITH_AES_256_GCM_SHA384",
+            "TLS_ECDHE_RSA_WITH_AES_256_GCM_SHA384",
+            "TLS_ECDHE_ECDSA_WITH_AES_128_CBC_SHA256",
+            "TLS_ECDHE_RSA_WITH_AES_128_CBC_SHA256",
+            "TLS_ECDHE_ECDSA_WITH_AES_128_CBC_SHA",
+            "TLS_ECDHE_RSA_WITH_AES_128_CBC_SHA",
+            "TLS_RSA_WITH_AES_128_CBC_SHA"
+    };
+
+    private SSLContext sslContext;
+    private String[] enabledCipherSuites;
+
+    //Handshake counters
+    private final AtomicLong fullHandshakes = new AtomicLong();
+    private final AtomicLong resumedHandshakes = new AtomicLong();
+
+    /**
+     * Loads the keystore and initiates the SSL context and its session cache
+     *
+     * The keystore was generated with this tool: http://www.keystore-explorer.org/downloads.php
+     *
+     * @throws GeneralSecurityException if the keystore or the SSL context can't be initialized
+     * @throws IOException if the keystore can't be read
+     */
+    public void initialize() throws GeneralSecurityException, IOException {
+        //Stateless resumption for the JVMs supporting it, the session cache is used otherwise
+        if (System.getProperty("jdk.tls.server.enableSessionTicketExtension") == null) {
+            System.setProperty("jdk.tls.server.enableSessionTicketExtension", "true");
+        }
+
+        char[] password = NodeConfiguration.getCurrent().tlsKeystorePassword.toCharArray();
+
+        KeyStore keyStore = KeyStore.getInstance(NodeConfiguration.getCurrent().tlsKeystoreType);
+        InputStream keyStoreStream = new FileInputStream(new File(NodeConfiguration.getCurrent().tlsKeystorePath).getAbsolutePath());
+        try {
+            keyStore.load(keyStoreStream, password);
+        } finally {
+            keyStoreStream.close();
+        }
+
+        TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        trustManagerFactory.init(keyStore);
+
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, password);
+
+        // Create a SSLContext with the certificate
+        sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(keyManagerFactory.getKeyManagers(), trustManagerFactory.getTrustManagers(), new SecureRandom());
+
+        SSLSessionContext sessionContext = sslContext.getServerSessionContext();
+        sessionContext.setSessionCacheSize(NodeConfiguration.getCurrent().tlsSessionCacheSize);
+        sessionContext.setSessionTimeout(NodeConfiguration.getCurrent().tlsSessionTimeout);
+
+        enabledCipherSuites = selectCipherSuites(sslContext.getServerSocketFactory().getSupportedCipherSuites());
+    }
+
+    /**
+     * Returns the SSL context
+     *
+     * @return the initialized SSL context
+     */
+    public SSLContext getSslContext() {
+        return sslContext;
+    }
+
+    /**
+     * Creates the secure server socket of the blocking front end
+     *
+     * @param port the listening port
+     * @return the configured server socket
+     * @throws IOException if the port can't be opened
+     */
+    public SSLServerSocket createServerSocket(int port) throws IOException {
+        SSLServerSocket serverSocket = (SSLServerSocket) sslContext.getServerSocketFactory().createServerSocket(port);
+        serverSocket.setSSLParameters(createParameters(serverSocket.getSSLParameters()));
+        return serverSocket;
+    }
+
+    /**
+     * Creates the TLS engine of a connection of the non-blocking front end
+     *
+     * @return the configured engine, in server mode
+     */
+    public SSLEngine createEngine() {
+        SSLEngine engine = sslContext.createSSLEngine();
+        engine.setUseClientMode(false);
+        engine.setSSLParameters(createParameters(engine.getSSLParameters()));
+        return engine;
+    }
+
+    /**
+     * Runs the handshake of an accepted connection of the blocking front end and counts it
+     *
+     * @param clientSocket the accepted connection
+     * @param acceptTime the time the connection has been accepted
+     * @throws IOException if the handshake fails
+     */
+    public void startHandshake(SSLSocket clientSocket, long acceptTime) throws IOException {
+        clientSocket.startHandshake();
+        handshakeCompleted(clientSocket.getSession(), acceptTime);
+    }
+
+    /**
+     * Counts a completed handshake
+     * A resumed session has been created by a previous connection, before this connection has been accepted. This holds
+     * for the TLS 1.3 resumptions too: the session restored from a ticket keeps the creation time of the session which
+     * issued the ticket
+     *
+     * @param session the negotiated session
+     * @param acceptTime the time the connection has been accepted
+     */
+    public void handshakeCompleted(SSLSession session, long acceptTime) {
+        if (session.getCreationTime() < acceptTime) {
+            resumedHandshakes.incrementAndGet();
+        } else {
+            fullHandshakes.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the number of full handshakes
+     *
+     * @return the number of full handshakes
+     */
+    public long getFullHandshakes() {
+        return fullHandshakes.get();
+    }
+
+    /**
+     * Returns the number of resumed handshakes
+     *
+     * @return the number of resumed handshakes
+     */
+    public long getResumedHandshakes() {
+        return resumedHandshakes.get();
+    }
+
+    /**
+     * Applies the cipher suite preference list to the default parameters of a socket or an engine
+     *
+     * @param parameters the default parameters
+     * @return the configured parameters
+     */
+    private SSLParameters createParameters(SSLParameters parameters) {
+        if (enabledCipherSuites.length > 0) {
+            parameters.setCipherSuites(enabledCipherSuites);
+        }
+        parameters.setUseCipherSuitesOrder(true);
+        return parameters;
+    }
+
+    /**
+     * Keeps the preferred cipher suites supported by the JVM, in the preference order
+     * The configured list replaces the default preference list
+     *
+     * @param supportedCipherSuites the cipher suites supported by the JVM
+     * @return the enabled cipher suites, or an empty array to keep the JVM defaults
+     */
+    private static String[] selectCipherSuites(String[] supportedCipherSuites) {
+        String configured = NodeConfiguration.getCurrent().tlsCipherSuites;
+        String[] preferred = configured != null ? configured.split(",") : PREFERRED_CIPHER_SUITES;
+        List<String> supported = Arrays.asList(supportedCipherSuites);
+
+        List<String> enabled = new ArrayList<String>();
+        for (String cipherSuite : preferred) {
+            if (supported.contains(cipherSuite.trim())) {
+                enabled.add(cipherSuite.trim());
+            }
+        }
+
+        return enabled.toArray(new String[enabled.size()]);
+    }
+}
@@ -6,23 +6,44 @@
 
 package com.vehiclerental.presentationLayer.headOffice;
 
-import com.google.gson.reflect.TypeToken;
-import com.vehiclerental.clusterCommunicator.ClusterCommunicationObject;
+import com.vehiclerental.NodeConfiguration;
 import com.vehiclerental.contracts.*;
 import com.vehiclerental.dataLayer.entities.Branch;
 import com.vehiclerental.dataLayer.entities.User;
 import com.vehiclerental.exceptions.ClusterCommunicatorException;
+import com.vehiclerental.exceptions.DatabaseAccessFailedException;
 import com.vehiclerental.exceptions.NotAuthorizedException;
-import com.vehiclerental.presentationLayer.branch.protocolContracts.BranchResponseMessage;
+import com.vehiclerental.logicLayer.ServiceFactory;
 import com.vehiclerental.presentationLayer.headOffice.protocolContracts.HeadOfficeRequestMessage;
 import com.vehiclerental.presentationLayer.headOffice.protocolContracts.HeadOfficeResponseMessage;
 import com.vehiclerental.utils.SerializationUtils;
-
-import java.lang.reflect.Type;
-import java.util.List;
+import com.vehiclerental.utils.SessionTokenUtils;
 
 public class UserHeadOfficeController extends BaseHeadOfficeController {
 
+    /**
+     * Authenticates the user with its basic auth credentials and issues a session token
+     * The token can be sent with the next requests instead of the credentials, until it expires
+     *
+     * @param request the request parameters
+     * @return the result response
+     */
+    public static HeadOfficeResponseMessage HandleLogin(HeadOfficeRequestMessage request) {
+        User user;
+
+        try {
+            user = doAuthentication(request.getAuthEmail(), request.getAuthPassword(), false);
+
+            long expiresAt = System.currentTimeMillis() + NodeConfiguration.getCurrent().authTokenLifetime * 1000L;
+            String token = SessionTokenUtils.issueToken(user.getId(), user.getIsStaff(), expiresAt);
+
+            //Form socket response
+            return generateSuccessfulResponse(request.OperationCode, new SessionTokenContract(token, expiresAt, user));
+        } catch (NotAuthorizedException e) {
+            return generateError(request.OperationCode, 401, "Unauthorized");
+        }
+    }
+
     /**
      * Get the account details for the authenticated user
      *
@@ -33,12 +54,25 @@ public class UserHeadOfficeController extends BaseHeadOfficeController {
         User user;
 
         try {
-            user = doAuthentication(request.getAuthEmail(), request.getAuthPassword(), false);
+            if (request.SessionToken != null) {
+                //The token only identifies the user, the details are loaded from the database
+                user = doAuthentication(request, false);
+                user = ServiceFactory.getUserService().getUser(user.getId());
+
+                if (user == null) {
+                    throw new NotAuthorizedException();
+                }
+            } else {
+                //The complete user is required, the authentication cache is not used
+                user = doAuthentication(request.getAuthEmail(), request.getAuthPassword(), false);
+            }
 
             //Form socket response
             return generateSuccessfulResponse(request.OperationCode, new UserContract(user));
         } catch (NotAuthorizedException e) {
             return generateError(request.OperationCode, 401, "Unauthorized");
+        } catch (DatabaseAccessFailedException e) {
+            return generateError(request.OperationCode, 500, "Server error");
         }
     }
 
@@ -56,20 +90,10 @@ public class UserHeadOfficeController extends BaseHeadOfficeController {
         }
 
         try {
-            User user = doAuthentication(request.getAuthEmail(), request.getAuthPassword(), false);
-
-            ClusterCommunicationObject<String> rawClusterResponse = ForwardRequestToBranch(destBranch, request.OperationCode, null, null, user);
+            User user = doAuthentication(request, false);
 
-            //Parse cluster response
-            Type jsonType = new TypeToken<BranchResponseMessage<List<BookingContract>>>() {}.getType();
-            BranchResponseMessage<List<BookingContract>> clusterResponse = SerializationUtils.deserialize(rawClusterResponse.object, jsonType);
-
-            if (clusterResponse.Status != 200) {
-                return generateError(request.OperationCode, clusterResponse.Status, clusterResponse.Error);
-            }
-
-            //Form socket response
-            return generateSuccessfulResponse(request.OperationCode, clusterResponse.Object);
+            //Relay to the branch, the request and response objects are not deserialized by the head office
+            return RelayRequestToBranch(destBranch, request.OperationCode, null, user);
         } catch (ClusterCommunicatorException e) {
             return generateError(request.OperationCode, 500, "Server error");
         } catch (NotAuthorizedException e) {
@@ -97,24 +121,14 @@ public class UserHeadOfficeController extends BaseHeadOfficeController {
 
             if (createBookingContract.bookingOwnerUserId != null) {
                 //In this case, the booking is made for someone, so we require staff credentials
-                user = doAuthentication(request.getAuthEmail(), request.getAuthPassword(), true);
+                user = doAuthentication(request, true);
             } else {
                 //User credentials are required otherwise
-                user = doAuthentication(request.getAuthEmail(), request.getAuthPassword(), false);
-            }
-
-            ClusterCommunicationObject<String> rawClusterResponse = ForwardRequestToBranch(destBranch, request.OperationCode, createBookingContract, user);
-
-            //Parse cluster response
-            Type jsonType = new TypeToken<BranchResponseMessage<BookingContract>>() {}.getType();
-            BranchResponseMessage<BookingContract> clusteResponse = SerializationUtils.deserialize(rawClusterResponse.object, jsonType);
-
-            if (clusteResponse.Status != 200) {
-                return generateError(request.OperationCode, clusteResponse.Status, clusteResponse.Error);
+                user = doAuthentication(request, false);
             }
 
-            //Form socket response
-            return generateSuccessfulResponse(request.OperationCode, clusteResponse.Object);
+            //Relay to the branch, the request and response objects are not deserialized by the head office
+            return RelayRequestToBranch(destBranch, request.OperationCode, createBookingContract, user);
         } catch (ClusterCommunicatorException e) {
             //e.printStackTrace();
             return generateError(request.OperationCode, 500, "Server error");
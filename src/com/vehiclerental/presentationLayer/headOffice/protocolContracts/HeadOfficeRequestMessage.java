@@ -3,6 +3,9 @@
  *
  * This file provides the simple communication request object used between the android application and the head office socket server
  * It contains an operation code, a basic auth string (base64(email:password)), a current branch ID and an optional serialized object
+ * The optional request ID is sent back in the response, it allows a client to pipeline requests on a framed connection
+ * A session token (issued by the login method) can be sent instead of the basic auth string
+ * The paged methods also take a page size and the continuation token of the previous page
  */
 
 package com.vehiclerental.presentationLayer.headOffice.protocolContracts;
@@ -18,11 +21,19 @@ public class HeadOfficeRequestMessage {
     public int OperationCode;
     @SerializedName("auth")
     public String BasicAuth;
+    @SerializedName("token")
+    public String SessionToken;
     @SerializedName("branch")
     public int BranchId;
     @SerializedName("serialized_object")
     @Expose(serialize = false)
     public String SerializedObject;
+    @SerializedName("request_id")
+    public Long RequestId;
+    @SerializedName("continuation_token")
+    public String ContinuationToken;
+    @SerializedName("limit")
+    public int Limit;
 
     /* Those two variables holds the extracted basic auth values */
     private String authEmail;
@@ -3,12 +3,20 @@
  *
  * This file provides the simple communication response object used between the android application and the head office socket server
  * It contains an operation code, a status code, an optional error message and an optional serialized object
+ * The request ID is copied from the request, the responses of pipelined requests can be received in any order
+ * The responding branches are only set by the searches across the branches
+ * The serialized object of a large list can be streamed instead: it is written while the response is sent (see
+ * HeadOfficeResponseWriter), without being built as a string first
  */
 
 package com.vehiclerental.presentationLayer.headOffice.protocolContracts;
 
 import com.google.gson.annotations.Expose;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.List;
 
 public class HeadOfficeResponseMessage {
     @SerializedName("op_code")
@@ -20,6 +28,12 @@ public class HeadOfficeResponseMessage {
     @SerializedName("serialized_object")
     @Expose(serialize = false)
     public String SerializedObject;
+    @SerializedName("request_id")
+    public Long RequestId;
+    @SerializedName("responding_branches")
+    public List<Integer> RespondingBranchIds;
+    //Writer of the serialized object, replaces SerializedObject when set
+    public transient ObjectWriter StreamedObject;
 
     /**
      * Generates a default invalid request error response
@@ -33,4 +47,30 @@ public class HeadOfficeResponseMessage {
 
         return invalidRequest;
     }
+
+    /**
+     * Generates a default server error response
+     *
+     * @return the generated error response
+     */
+    public static HeadOfficeResponseMessage GetServerErrorResponse() {
+        HeadOfficeResponseMessage serverError = new HeadOfficeResponseMessage();
+        serverError.Status = 500;
+        serverError.Error = "Server error";
+
+        return serverError;
+    }
+
+    /**
+     * Writer of a streamed serialized object
+     */
+    public interface ObjectWriter {
+        /**
+         * Writes the object
+         *
+         * @param writer the writer of the serialized object
+         * @throws IOException if the object can't be fetched or written
+         */
+        void writeTo(JsonWriter writer) throws IOException;
+    }
 }
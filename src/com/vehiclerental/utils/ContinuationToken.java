@@ -0,0 +1,92 @@
+/**
+ * CarRental
+ *
+ * This file provides the continuation token of a result page: the sort key and the ID of the last result of the page
+ * The next page starts right after this position (keyset pagination), so its query seeks the sort index instead of
+ * skipping the previous results. The token is opaque for the clients: both values encoded in base64url
+ */
+
+package com.vehiclerental.utils;
+
+import com.vehiclerental.exceptions.InvalidPropertyException;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+public class ContinuationToken {
+    //Size of a decoded token: the sort key and the ID
+    private static final int TOKEN_SIZE = 12;
+
+    //Sort key of the last result of the page (0 when the results are sorted by ID only)
+    private final long sortKey;
+    //ID of the last result of the page
+    private final int id;
+
+    /**
+     * Constructor
+     *
+     * @param sortKey the sort key of the last result of the page
+     * @param id the ID of the last result of the page
+     */
+    public ContinuationToken(long sortKey, int id) {
+        this.sortKey = sortKey;
+        this.id = id;
+    }
+
+    /**
+     * Returns the sort key of the last result of the page
+     *
+     * @return the sort key
+     */
+    public long getSortKey() {
+        return sortKey;
+    }
+
+    /**
+     * Returns the ID of the last result of the page
+     *
+     * @return the ID
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Encodes the token
+     *
+     * @return the opaque token
+     */
+    public String encode() {
+        byte[] token = ByteBuffer.allocate(TOKEN_SIZE).putLong(sortKey).putInt(id).array();
+
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token);
+    }
+
+    /**
+     * Decodes a token
+     *
+     * @param token the opaque token, null for the first page
+     * @return the decoded token, null for the first page
+     * @throws InvalidPropertyException if the token is invalid
+     */
+    public static ContinuationToken decode(String token) throws InvalidPropertyException {
+        if (token == null) {
+            return null;
+        }
+
+        byte[] decoded;
+        try {
+            decoded = Base64.getUrlDecoder().decode(token);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidPropertyException("Invalid continuation token");
+        }
+
+        if (decoded.length != TOKEN_SIZE) {
+            throw new InvalidPropertyException("Invalid continuation token");
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(decoded);
+
+        return new ContinuationToken(buffer.getLong(), buffer.getInt());
+    }
+}
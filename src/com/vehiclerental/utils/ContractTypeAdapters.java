@@ -0,0 +1,1111 @@
+/**
+ * CarRental
+ *
+ * This file provides the hand written streaming gson adapters of the contracts and of the protocol messages, registered
+ * on the shared gson object of SerializationUtils. They replace the reflective adapters of gson: no field is looked up
+ * or set by reflection when a request is parsed or a response is written
+ *
+ * The adapters produce exactly the json of the reflective adapters: same field names (SerializedName for the messages),
+ * same order, null fields omitted. When reading, the unknown fields are skipped and a null primitive field is left to
+ * its default value, as gson does
+ */
+
+package com.vehiclerental.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.vehiclerental.contracts.*;
+import com.vehiclerental.presentationLayer.branch.protocolContracts.BranchRequestMessage;
+import com.vehiclerental.presentationLayer.branch.protocolContracts.BranchResponseMessage;
+import com.vehiclerental.presentationLayer.headOffice.protocolContracts.HeadOfficeRequestMessage;
+import com.vehiclerental.presentationLayer.headOffice.protocolContracts.HeadOfficeResponseMessage;
+
+import java.io.IOException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ContractTypeAdapters {
+
+    /**
+     * Registers the adapters of every contract and protocol message
+     *
+     * @param builder the gson builder
+     * @return the builder
+     */
+    public static GsonBuilder register(GsonBuilder builder) {
+        return builder
+                .registerTypeAdapter(BranchContract.class, BRANCH)
+                .registerTypeAdapter(VehicleContract.class, VEHICLE)
+                .registerTypeAdapter(VehicleMoveContract.class, VEHICLE_MOVE)
+                .registerTypeAdapter(BookingContract.class, BOOKING)
+                .registerTypeAdapter(BookingSearchResultContract.class, BOOKING_SEARCH_RESULT)
+                .registerTypeAdapter(AvailableVehiclesSearchResultContract.class, AVAILABLE_VEHICLES_SEARCH_RESULT)
+                .registerTypeAdapter(SearchAvailableVehiclesRequestContract.class, SEARCH_AVAILABLE_VEHICLES_REQUEST)
+                .registerTypeAdapter(CreateBookingContract.class, CREATE_BOOKING)
+                .registerTypeAdapter(CreateUpdateVehicleContract.class, CREATE_UPDATE_VEHICLE)
+                .registerTypeAdapter(SearchVehicleContract.class, SEARCH_VEHICLE)
+                .registerTypeAdapter(ChangeBookingStatusContract.class, CHANGE_BOOKING_STATUS)
+                .registerTypeAdapter(GetBranchVehicleMovesContract.class, GET_BRANCH_VEHICLE_MOVES)
+                .registerTypeAdapter(CreateAccountRequestContract.class, CREATE_ACCOUNT_REQUEST)
+                .registerTypeAdapter(SearchUserContract.class, SEARCH_USER)
+                .registerTypeAdapter(UserContract.class, USER)
+                .registerTypeAdapter(SessionTokenContract.class, SESSION_TOKEN)
+                .registerTypeAdapter(HeadOfficeRequestMessage.class, HEAD_OFFICE_REQUEST_MESSAGE)
+                .registerTypeAdapter(HeadOfficeResponseMessage.class, HEAD_OFFICE_RESPONSE_MESSAGE)
+                .registerTypeAdapterFactory(BRANCH_MESSAGE_FACTORY);
+    }
+
+    /**
+     * Base of the adapters of the json objects, handles null, the object delimiters and the unknown fields
+     *
+     * @param <T> the adapted class
+     */
+    private abstract static class ObjectAdapter<T> extends TypeAdapter<T> {
+
+        /**
+         * Creates an empty object, filled by readField
+         *
+         * @return the object
+         */
+        abstract T create();
+
+        /**
+         * Writes the fields of an object, between the object delimiters
+         *
+         * @param out the writer
+         * @param value the object
+         * @throws IOException if the writer fails
+         */
+        abstract void writeFields(JsonWriter out, T value) throws IOException;
+
+        /**
+         * Reads a field of an object
+         *
+         * @param in the reader, before the field value
+         * @param name the field name
+         * @param value the object being read
+         * @return false if the field is unknown, it is then skipped
+         * @throws IOException if the reader fails
+         */
+        abstract boolean readField(JsonReader in, String name, T value) throws IOException;
+
+        @Override
+        public void write(JsonWriter out, T value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            writeFields(out, value);
+            out.endObject();
+        }
+
+        @Override
+        public T read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            T value = create();
+
+            try {
+                in.beginObject();
+                while (in.hasNext()) {
+                    if (!readField(in, in.nextName(), value)) {
+                        in.skipValue();
+                    }
+                }
+                in.endObject();
+            } catch (NumberFormatException e) {
+                throw new JsonSyntaxException(e);
+            } catch (IllegalStateException e) {
+                throw new JsonSyntaxException(e);
+            }
+
+            return value;
+        }
+    }
+
+    /**
+     * Reads an int field, a null value keeps the current one
+     *
+     * @param in the reader
+     * @param current the current value
+     * @return the read value
+     * @throws IOException if the reader fails
+     */
+    private static int readInt(JsonReader in, int current) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return current;
+        }
+
+        return in.nextInt();
+    }
+
+    /**
+     * Reads a nullable int field
+     *
+     * @param in the reader
+     * @return the read value, or null
+     * @throws IOException if the reader fails
+     */
+    private static Integer readInteger(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        return in.nextInt();
+    }
+
+    /**
+     * Reads a long field, a null value keeps the current one
+     *
+     * @param in the reader
+     * @param current the current value
+     * @return the read value
+     * @throws IOException if the reader fails
+     */
+    private static long readLong(JsonReader in, long current) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return current;
+        }
+
+        return in.nextLong();
+    }
+
+    /**
+     * Reads a nullable long field
+     *
+     * @param in the reader
+     * @return the read value, or null
+     * @throws IOException if the reader fails
+     */
+    private static Long readNullableLong(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        return in.nextLong();
+    }
+
+    /**
+     * Reads a double field, a null value keeps the current one
+     *
+     * @param in the reader
+     * @param current the current value
+     * @return the read value
+     * @throws IOException if the reader fails
+     */
+    private static double readDouble(JsonReader in, double current) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return current;
+        }
+
+        return in.nextDouble();
+    }
+
+    /**
+     * Reads a boolean field, a null value keeps the current one, a string is parsed as gson does
+     *
+     * @param in the reader
+     * @param current the current value
+     * @return the read value
+     * @throws IOException if the reader fails
+     */
+    private static boolean readBoolean(JsonReader in, boolean current) throws IOException {
+        JsonToken token = in.peek();
+
+        if (token == JsonToken.NULL) {
+            in.nextNull();
+            return current;
+        } else if (token == JsonToken.STRING) {
+            return Boolean.parseBoolean(in.nextString());
+        }
+
+        return in.nextBoolean();
+    }
+
+    /**
+     * Reads a string field, a number or a boolean is read as its text as gson does
+     *
+     * @param in the reader
+     * @return the read value, or null
+     * @throws IOException if the reader fails
+     */
+    private static String readString(JsonReader in) throws IOException {
+        JsonToken token = in.peek();
+
+        if (token == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        } else if (token == JsonToken.BOOLEAN) {
+            return Boolean.toString(in.nextBoolean());
+        }
+
+        return in.nextString();
+    }
+
+    /**
+     * Writes a list of objects
+     *
+     * @param out the writer
+     * @param adapter the adapter of the elements
+     * @param values the list, or null
+     * @param <T> the element class
+     * @throws IOException if the writer fails
+     */
+    private static <T> void writeList(JsonWriter out, TypeAdapter<T> adapter, List<T> values) throws IOException {
+        if (values == null) {
+            out.nullValue();
+            return;
+        }
+
+        out.beginArray();
+        for (T value : values) {
+            adapter.write(out, value);
+        }
+        out.endArray();
+    }
+
+    /**
+     * Reads a list of objects
+     *
+     * @param in the reader
+     * @param adapter the adapter of the elements
+     * @param <T> the element class
+     * @return the list, or null
+     * @throws IOException if the reader fails
+     */
+    private static <T> List<T> readList(JsonReader in, TypeAdapter<T> adapter) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        List<T> values = new ArrayList<T>();
+        in.beginArray();
+        while (in.hasNext()) {
+            values.add(adapter.read(in));
+        }
+        in.endArray();
+
+        return values;
+    }
+
+    //Adapter of the list elements of respondingBranchIds
+    private static final TypeAdapter<Integer> INTEGER = new TypeAdapter<Integer>() {
+        @Override
+        public void write(JsonWriter out, Integer value) throws IOException {
+            out.value(value);
+        }
+
+        @Override
+        public Integer read(JsonReader in) throws IOException {
+            return readInteger(in);
+        }
+    };
+
+    private static final ObjectAdapter<BranchContract> BRANCH = new ObjectAdapter<BranchContract>() {
+        @Override
+        BranchContract create() {
+            return new BranchContract();
+        }
+
+        @Override
+        void writeFields(JsonWriter out, BranchContract value) throws IOException {
+            out.name("id").value(value.id);
+            out.name("name").value(value.name);
+            out.name("latitude").value(value.latitude);
+            out.name("longitude").value(value.longitude);
+        }
+
+        @Override
+        boolean readField(JsonReader in, String name, BranchContract value) throws IOException {
+            if ("id".equals(name)) {
+                value.id = readInt(in, value.id);
+            } else if ("name".equals(name)) {
+                value.name = readString(in);
+            } else if ("latitude".equals(name)) {
+                value.latitude = readDouble(in, value.latitude);
+            } else if ("longitude".equals(name)) {
+                value.longitude = readDouble(in, value.longitude);
+            } else {
+                return false;
+            }
+            return true;
+        }
+    };
+
+    private static final ObjectAdapter<VehicleContract> VEHICLE = new ObjectAdapter<VehicleContract>() {
+        @Override
+        VehicleContract create() {
+            return new VehicleContract();
+        }
+
+        @Override
+        void writeFields(JsonWriter out, VehicleContract value) throws IOException {
+            out.name("id").value(value.id);
+            out.name("branch");
+            BRANCH.write(out, value.branch);
+            out.name("type").value(value.type);
+            out.name("status").value(value.status);
+            out.name("registrationNumber").value(value.registrationNumber);
+            out.name("doors").value(value.doors);
+            out.name("seats").value(value.seats);
+            out.name("automaticTransmission").value(value.automaticTransmission);
+            out.name("poundsPerDay").value(value.poundsPerDay);
+            out.name("name").value(value.name);
+        }
+
+        @Override
+        boolean readField(JsonReader in, String name, VehicleContract value) throws IOException {
+            if ("id".equals(name)) {
+                value.id = readInt(in, value.id);
+            } else if ("branch".equals(name)) {
+                value.branch = BRANCH.read(in);
+            } else if ("type".equals(name)) {
+                value.type = readInt(in, value.type);
+            } else if ("status".equals(name)) {
+                value.status = readInt(in, value.status);
+            } else if ("registrationNumber".equals(name)) {
+                value.registrationNumber = readString(in);
+            } else if ("doors".equals(name)) {
+                value.doors = readInt(in, value.doors);
+            } else if ("seats".equals(name)) {
+                value.seats = readInt(in, value.seats);
+            } else if ("automaticTransmission".equals(name)) {
+                value.automaticTransmission = readBoolean(in, value.automaticTransmission);
+            } else if ("poundsPerDay".equals(name)) {
+                value.poundsPerDay = readDouble(in, value.poundsPerDay);
+            } else if ("name".equals(name)) {
+                value.name = readString(in);
+            } else {
+                return false;
+            }
+            return true;
+        }
+    };
+
+    private static final ObjectAdapter<VehicleMoveContract> VEHICLE_MOVE = new ObjectAdapter<VehicleMoveContract>() {
+        @Override
+        VehicleMoveContract create() {
+            return new VehicleMoveContract();
+        }
+
+        @Override
+        void writeFields(JsonWriter out, VehicleMoveContract value) throws IOException {
+            out.name("id").value(value.id);
+            out.name("vehicleMoveDate").value(value.vehicleMoveDate);
+            out.name("vehicleReturnDate").value(value.vehicleReturnDate);
+        }
+
+        @Override
+        boolean readField(JsonReader in, String name, VehicleMoveContract value) throws IOException {
+            if ("id".equals(name)) {
+                value.id = readInt(in, value.id);
+            } else if ("vehicleMoveDate".equals(name)) {
+                value.vehicleMoveDate = readString(in);
+            } else if ("vehicleReturnDate".equals(name)) {
+                value.vehicleReturnDate = readString(in);
+            } else {
+                return false;
+            }
+            return true;
+        }
+    };
+
+    private static final ObjectAdapter<BookingContract> BOOKING = new ObjectAdapter<BookingContract>() {
+        @Override
+        BookingContract create() {
+            return new BookingContract();
+        }
+
+        @Override
+        void writeFields(JsonWriter out, BookingContract value) throws IOException {
+            out.name("id").value(value.id);
+            out.name("branch").value(value.branch);
+            out.name("vehicle");
+            VEHICLE.write(out, value.vehicle);
+            out.name("vehicleMove");
+            VEHICLE_MOVE.write(out, value.vehicleMove);
+            out.name("pickupDate").value(value.pickupDate);
+            out.name("returnDate").value(value.returnDate);
+            out.name("daysCount").value(value.daysCount);
+            out.name("price").value(value.price);
+            out.name("bookingValidated").value(value.bookingValidated);
+            out.name("requireVehicleMove").value(value.requireVehicleMove);
+        }
+
+        @Override
+        boolean readField(JsonReader in, String name, BookingContract value) throws IOException {
+            if ("id".equals(name)) {
+                value.id = readInt(in, value.id);
+            } else if ("branch".equals(name)) {
+                value.branch = readString(in);
+            } else if ("vehicle".equals(name)) {
+                value.vehicle = VEHICLE.read(in);
+            } else if ("vehicleMove".equals(name)) {
+                value.vehicleMove = VEHICLE_MOVE.read(in);
+            } else if ("pickupDate".equals(name)) {
+                value.pickupDate = readString(in);
+            } else if ("returnDate".equals(name)) {
+                value.returnDate = readString(in);
+            } else if ("daysCount".equals(name)) {
+                value.daysCount = readLong(in, value.daysCount);
+            } else if ("price".equals(name)) {
+                value.price = readDouble(in, value.price);
+            } else if ("bookingValidated".equals(name)) {
+                value.bookingValidated = readBoolean(in, value.bookingValidated);
+            } else if ("requireVehicleMove".equals(name)) {
+                value.requireVehicleMove = readBoolean(in, value.requireVehicleMove);
+            } else {
+                return false;
+            }
+            return true;
+        }
+    };
+
+    private static final ObjectAdapter<BookingSearchResultContract> BOOKING_SEARCH_RESULT = new ObjectAdapter<BookingSearchResultContract>() {
+        @Override
+        BookingSearchResultContract create() {
+            return new BookingSearchResultContract();
+        }
+
+        @Override
+        void writeFields(JsonWriter out, BookingSearchResultContract value) throws IOException {
+            out.name("requireVehicleMove").value(value.requireVehicleMove);
+            out.name("vehicle");
+            VEHICLE.write(out, value.vehicle);
+            out.name("pickupDate").value(value.pickupDate);
+            out.name("returnDate").value(value.returnDate);
+            out.name("daysCount").value(value.daysCount);
+            out.name("price").value(value.price);
+        }
+
+        @Override
+        boolean readField(JsonReader in, String name, BookingSearchResultContract value) throws IOException {
+            if ("requireVehicleMove".equals(name)) {
+                value.requireVehicleMove = readBoolean(in, value.requireVehicleMove);
+            } else if ("vehicle".equals(name)) {
+                value.vehicle = VEHICLE.read(in);
+            } else if ("pickupDate".equals(name)) {
+                value.pickupDate = readString(in);
+            } else if ("returnDate".equals(name)) {
+                value.returnDate = readString(in);
+            } else if ("daysCount".equals(name)) {
+                value.daysCount = readLong(in, value.daysCount);
+            } else if ("price".equals(name)) {
+                value.price = readDouble(in, value.price);
+            } else {
+                return false;
+            }
+            return true;
+        }
+    };
+
+    private static final ObjectAdapter<AvailableVehiclesSearchResultContract> AVAILABLE_VEHICLES_SEARCH_RESULT = new ObjectAdapter<AvailableVehiclesSearchResultContract>() {
+        @Override
+        AvailableVehiclesSearchResultContract create() {
+            return new AvailableVehiclesSearchResultContract();
+        }
+
+        @Override
+        void writeFields(JsonWriter out, AvailableVehiclesSearchResultContract value) throws IOException {
+            out.name("vehicles");
+            writeList(out, BOOKING_SEARCH_RESULT, value.vehicles);
+            out.name("respondingBranchIds");
+            writeList(out, INTEGER, value.respondingBranchIds);
+        }
+
+        @Override
+        boolean readField(JsonReader in, String name, AvailableVehiclesSearchResultContract value) throws IOException {
+            if ("vehicles".equals(name)) {
+                value.vehicles = readList(in, BOOKING_SEARCH_RESULT);
+            } else if ("respondingBranchIds".equals(name)) {
+                value.respondingBranchIds = readList(in, INTEGER);
+            } else {
+                return false;
+            }
+            return true;
+        }
+    };
+
+    private static final ObjectAdapter<SearchAvailableVehiclesRequestContract> SEARCH_AVAILABLE_VEHICLES_REQUEST = new ObjectAdapter<SearchAvailableVehiclesRequestContract>() {
+        @Override
+        SearchAvailableVehiclesRequestContract create() {
+            return new SearchAvailableVehiclesRequestContract();
+        }
+
+        @Override
+        void writeFields(JsonWriter out, SearchAvailableVehiclesRequestContract value) throws IOException {
+            out.name("vehicleType").value(value.vehicleType);
+            out.name("pickupDate").value(value.pickupDate);
+            out.name("returnDate").value(value.returnDate);
+        }
+
+        @Override
+        boolean readField(JsonReader in, String name, SearchAvailableVehiclesRequestContract value) throws IOException {
+            if ("vehicleType".equals(name)) {
+                value.vehicleType = readInt(in, value.vehicleType);
+            } else if ("pickupDate".equals(name)) {
+                value.pickupDate = readString(in);
+            } else if ("returnDate".equals(name)) {
+                value.returnDate = readString(in);
+            } else {
+                return false;
+            }
+            return true;
+        }
+    };
+
+    private static final ObjectAdapter<CreateBookingContract> CREATE_BOOKING = new ObjectAdapter<CreateBookingContract>() {
+        @Override
+        CreateBookingContract create() {
+            return new CreateBookingContract();
+        }
+
+        @Override
+        void writeFields(JsonWriter out, CreateBookingContract value) throws IOException {
+            out.name("vehicleId").value(value.vehicleId);
+            out.name("vehicleBranchId").value(value.vehicleBranchId);
+            out.name("bookingBranchId").value(value.bookingBranchId);
+            out.name("pickupDate").value(value.pickupDate);
+            out.name("returnDate").value(value.returnDate);
+            out.name("creditCardNumber").value(value.creditCardNumber);
+            out.name("creditCardExpirationMonth").value(value.creditCardExpirationMonth);
+            out.name("creditCardExpirationYear").value(value.creditCardExpirationYear);
+            out.name("creditCardCvcCode").value(value.creditCardCvcCode);
+            out.name("bookingOwnerUserId").value(value.bookingOwnerUserId);
+        }
+
+        @Override
+        boolean readField(JsonReader in, String name, CreateBookingContract value) throws IOException {
+            if ("vehicleId".equals(name)) {
+                value.vehicleId = readInt(in, value.vehicleId);
+            } else if ("vehicleBranchId".equals(name)) {
+                value.vehicleBranchId = readInt(in, value.vehicleBranchId);
+            } else if ("bookingBranchId".equals(name)) {
+                value.bookingBranchId = readInt(in, value.bookingBranchId);
+            } else if ("pickupDate".equals(name)) {
+                value.pickupDate = readString(in);
+            } else if ("returnDate".equals(name)) {
+                value.returnDate = readString(in);
+            } else if ("creditCardNumber".equals(name)) {
+                value.creditCardNumber = readString(in);
+            } else if ("creditCardExpirationMonth".equals(name)) {
+                value.creditCardExpirationMonth = readString(in);
+            } else if ("creditCardExpirationYear".equals(name)) {
+                value.creditCardExpirationYear = readString(in);
+            } else if ("creditCardCvcCode".equals(name)) {
+                value.creditCardCvcCode = readString(in);
+            } else if ("bookingOwnerUserId".equals(name)) {
+                value.bookingOwnerUserId = readInteger(in);
+            } else {
+                return false;
+            }
+            return true;
+        }
+    };
+
+    private static final ObjectAdapter<CreateUpdateVehicleContract> CREATE_UPDATE_VEHICLE = new ObjectAdapter<CreateUpdateVehicleContract>() {
+        @Override
+        CreateUpdateVehicleContract create() {
+            return new CreateUpdateVehicleContract();
+        }
+
+        @Override
+        void writeFields(JsonWriter out, CreateUpdateVehicleContract value) throws IOException {
+            out.name("type").value(value.type);
+            out.name("registrationNumber").value(value.registrationNumber);
+            out.name("doors").value(value.doors);
+            out.name("seats").value(value.seats);
+            out.name("automaticTransmission").value(value.automaticTransmission);
+            out.name("poundsPerDay").value(value.poundsPerDay);
+            out.name("name").value(value.name);
+            out.name("isUpdateOperation").value(value.isUpdateOperation);
+            out.name("id").value(value.id);
+            out.name("newStatusId").value(value.newStatusId);
+        }
+
+        @Override
+        boolean readField(JsonReader in, String name, CreateUpdateVehicleContract value) throws IOException {
+            if ("type".equals(name)) {
+                value.type = readInt(in, value.type);
+            } else if ("registrationNumber".equals(name)) {
+                value.registrationNumber = readString(in);
+            } else if ("doors".equals(name)) {
+                value.doors = readInt(in, value.doors);
+            } else if ("seats".equals(name)) {
+                value.seats = readInt(in, value.seats);
+            } else if ("automaticTransmission".equals(name)) {
+                value.automaticTransmission = readBoolean(in, value.automaticTransmission);
+            } else if ("poundsPerDay".equals(name)) {
+                value.poundsPerDay = readDouble(in, value.poundsPerDay);
+            } else if ("name".equals(name)) {
+                value.name = readString(in);
+            } else if ("isUpdateOperation".equals(name)) {
+                value.isUpdateOperation = readBoolean(in, value.isUpdateOperation);
+            } else if ("id".equals(name)) {
+                value.id = readInt(in, value.id);
+            } else if ("newStatusId".equals(name)) {
+                value.newStatusId = readInt(in, value.newStatusId);
+            } else {
+                return false;
+            }
+            return true;
+        }
+    };
+
+    private static final ObjectAdapter<SearchVehicleContract> SEARCH_VEHICLE = new ObjectAdapter<SearchVehicleContract>() {
+        @Override
+        SearchVehicleContract create() {
+            return new SearchVehicleContract();
+        }
+
+        @Override
+        void writeFields(JsonWriter out, SearchVehicleContract value) throws IOException {
+            out.name("registrationNumber").value(value.registrationNumber);
+            out.name("vehicleTypeId").value(value.vehicleTypeId);
+        }
+
+        @Override
+        boolean readField(JsonReader in, String name, SearchVehicleContract value) throws IOException {
+            if ("registrationNumber".equals(name)) {
+                value.registrationNumber = readString(in);
+            } else if ("vehicleTypeId".equals(name)) {
+                value.vehicleTypeId = readInt(in, value.vehicleTypeId);
+            } else {
+                return false;
+            }
+            return true;
+        }
+    };
+
+    private static final ObjectAdapter<ChangeBookingStatusContract> CHANGE_BOOKING_STATUS = new ObjectAdapter<ChangeBookingStatusContract>() {
+        @Override
+        ChangeBookingStatusContract create() {
+            return new ChangeBookingStatusContract();
+        }
+
+        @Override
+        void writeFields(JsonWriter out, ChangeBookingStatusContract value) throws IOException {
+            out.name("bookingId").value(value.bookingId);
+            out.name("bookingValidated").value(value.bookingValidated);
+        }
+
+        @Override
+        boolean readField(JsonReader in, String name, ChangeBookingStatusContract value) throws IOException {
+            if ("bookingId".equals(name)) {
+                value.bookingId = readInt(in, value.bookingId);
+            } else if ("bookingValidated".equals(name)) {
+                value.bookingValidated = readBoolean(in, value.bookingValidated);
+            } else {
+                return false;
+            }
+            return true;
+        }
+    };
+
+    private static final ObjectAdapter<GetBranchVehicleMovesContract> GET_BRANCH_VEHICLE_MOVES = new ObjectAdapter<GetBranchVehicleMovesContract>() {
+        @Override
+        GetBranchVehicleMovesContract create() {
+            return new GetBranchVehicleMovesContract();
+        }
+
+        @Override
+        void writeFields(JsonWriter out, GetBranchVehicleMovesContract value) throws IOException {
+            out.name("outgoing").value(value.outgoing);
+        }
+
+        @Override
+        boolean readField(JsonReader in, String name, GetBranchVehicleMovesContract value) throws IOException {
+            if ("outgoing".equals(name)) {
+                value.outgoing = readBoolean(in, value.outgoing);
+            } else {
+                return false;
+            }
+            return true;
+        }
+    };
+
+    private static final ObjectAdapter<CreateAccountRequestContract> CREATE_ACCOUNT_REQUEST = new ObjectAdapter<CreateAccountRequestContract>() {
+        @Override
+        CreateAccountRequestContract create() {
+            return new CreateAccountRequestContract();
+        }
+
+        @Override
+        void writeFields(JsonWriter out, CreateAccountRequestContract value) throws IOException {
+            out.name("fullName").value(value.fullName);
+            out.name("emailAddress").value(value.emailAddress);
+            out.name("phoneNumber").value(value.phoneNumber);
+            out.name("password").value(value.password);
+            out.name("address_street").value(value.address_street);
+            out.name("address_city").value(value.address_city);
+            out.name("address_postalCode").value(value.address_postalCode);
+            out.name("address_country").value(value.address_country);
+        }
+
+        @Override
+        boolean readField(JsonReader in, String name, CreateAccountRequestContract value) throws IOException {
+            if ("fullName".equals(name)) {
+                value.fullName = readString(in);
+            } else if ("emailAddress".equals(name)) {
+                value.emailAddress = readString(in);
+            } else if ("phoneNumber".equals(name)) {
+                value.phoneNumber = readString(in);
+            } else if ("password".equals(name)) {
+                value.password = readString(in);
+            } else if ("address_street".equals(name)) {
+                value.address_street = readString(in);
+            } else if ("address_city".equals(name)) {
+                value.address_city = readString(in);
+            } else if ("address_postalCode".equals(name)) {
+                value.address_postalCode = readString(in);
+            } else if ("address_country".equals(name)) {
+                value.address_country = readString(in);
+            } else {
+                return false;
+            }
+            return true;
+        }
+    };
+
+    private static final ObjectAdapter<SearchUserContract> SEARCH_USER = new ObjectAdapter<SearchUserContract>() {
+        @Override
+        SearchUserContract create() {
+            return new SearchUserContract();
+        }
+
+        @Override
+        void writeFields(JsonWriter out, SearchUserContract value) throws IOException {
+            out.name("searchTerm").value(value.searchTerm);
+        }
+
+        @Override
+        boolean readField(JsonReader in, String name, SearchUserContract value) throws IOException {
+            if ("searchTerm".equals(name)) {
+                value.searchTerm = readString(in);
+            } else {
+                return false;
+            }
+            return true;
+        }
+    };
+
+    private static final ObjectAdapter<UserContract> USER = new ObjectAdapter<UserContract>() {
+        @Override
+        UserContract create() {
+            return new UserContract();
+        }
+
+        @Override
+        void writeFields(JsonWriter out, UserContract value) throws IOException {
+            out.name("id").value(value.id);
+            out.name("isStaff").value(value.isStaff);
+            out.name("fullName").value(value.fullName);
+            out.name("emailAddress").value(value.emailAddress);
+            out.name("phoneNumber").value(value.phoneNumber);
+        }
+
+        @Override
+        boolean readField(JsonReader in, String name, UserContract value) throws IOException {
+            if ("id".equals(name)) {
+                value.id = readInt(in, value.id);
+            } else if ("isStaff".equals(name)) {
+                value.isStaff = readBoolean(in, value.isStaff);
+            } else if ("fullName".equals(name)) {
+                value.fullName = readString(in);
+            } else if ("emailAddress".equals(name)) {
+                value.emailAddress = readString(in);
+            } else if ("phoneNumber".equals(name)) {
+                value.phoneNumber = readString(in);
+            } else {
+                return false;
+            }
+            return true;
+        }
+    };
+
+    private static final ObjectAdapter<SessionTokenContract> SESSION_TOKEN = new ObjectAdapter<SessionTokenContract>() {
+        @Override
+        SessionTokenContract create() {
+            return new SessionTokenContract();
+        }
+
+        @Override
+        void writeFields(JsonWriter out, SessionTokenContract value) throws IOException {
+            out.name("token").value(value.token);
+            out.name("expiresAt").value(value.expiresAt);
+            out.name("user");
+            USER.write(out, value.user);
+        }
+
+        @Override
+        boolean readField(JsonReader in, String name, SessionTokenContract value) throws IOException {
+            if ("token".equals(name)) {
+                value.token = readString(in);
+            } else if ("expiresAt".equals(name)) {
+                value.expiresAt = readLong(in, value.expiresAt);
+            } else if ("user".equals(name)) {
+                value.user = USER.read(in);
+            } else {
+                return false;
+            }
+            return true;
+        }
+    };
+
+    private static final ObjectAdapter<HeadOfficeRequestMessage> HEAD_OFFICE_REQUEST_MESSAGE = new ObjectAdapter<HeadOfficeRequestMessage>() {
+        @Override
+        HeadOfficeRequestMessage create() {
+            return new HeadOfficeRequestMessage();
+        }
+
+        @Override
+        void writeFields(JsonWriter out, HeadOfficeRequestMessage value) throws IOException {
+            out.name("op_code").value(value.OperationCode);
+            out.name("auth").value(value.BasicAuth);
+            out.name("token").value(value.SessionToken);
+            out.name("branch").value(value.BranchId);
+            out.name("serialized_object").value(value.SerializedObject);
+            out.name("request_id").value(value.RequestId);
+            out.name("continuation_token").value(value.ContinuationToken);
+            out.name("limit").value(value.Limit);
+        }
+
+        @Override
+        boolean readField(JsonReader in, String name, HeadOfficeRequestMessage value) throws IOException {
+            if ("op_code".equals(name)) {
+                value.OperationCode = readInt(in, value.OperationCode);
+            } else if ("auth".equals(name)) {
+                value.BasicAuth = readString(in);
+            } else if ("token".equals(name)) {
+                value.SessionToken = readString(in);
+            } else if ("branch".equals(name)) {
+                value.BranchId = readInt(in, value.BranchId);
+            } else if ("serialized_object".equals(name)) {
+                value.SerializedObject = readString(in);
+            } else if ("request_id".equals(name)) {
+                value.RequestId = readNullableLong(in);
+            } else if ("continuation_token".equals(name)) {
+                value.ContinuationToken = readString(in);
+            } else if ("limit".equals(name)) {
+                value.Limit = readInt(in, value.Limit);
+            } else {
+                return false;
+            }
+            return true;
+        }
+    };
+
+    private static final ObjectAdapter<HeadOfficeResponseMessage> HEAD_OFFICE_RESPONSE_MESSAGE = new ObjectAdapter<HeadOfficeResponseMessage>() {
+        @Override
+        HeadOfficeResponseMessage create() {
+            return new HeadOfficeResponseMessage();
+        }
+
+        @Override
+        void writeFields(JsonWriter out, HeadOfficeResponseMessage value) throws IOException {
+            out.name("op_code").value(value.OperationCode);
+            out.name("status").value(value.Status);
+            out.name("error").value(value.Error);
+            out.name("serialized_object").value(value.SerializedObject);
+            out.name("request_id").value(value.RequestId);
+            out.name("responding_branches");
+            writeList(out, INTEGER, value.RespondingBranchIds);
+        }
+
+        @Override
+        boolean readField(JsonReader in, String name, HeadOfficeResponseMessage value) throws IOException {
+            if ("op_code".equals(name)) {
+                value.OperationCode = readInt(in, value.OperationCode);
+            } else if ("status".equals(name)) {
+                value.Status = readInt(in, value.Status);
+            } else if ("error".equals(name)) {
+                value.Error = readString(in);
+            } else if ("serialized_object".equals(name)) {
+                value.SerializedObject = readString(in);
+            } else if ("request_id".equals(name)) {
+                value.RequestId = readNullableLong(in);
+            } else if ("responding_branches".equals(name)) {
+                value.RespondingBranchIds = readList(in, INTEGER);
+            } else {
+                return false;
+            }
+            return true;
+        }
+    };
+
+    //Adapters of the generic branch messages and result pages, built once per object type by gson and kept in its adapter cache
+    private static final TypeAdapterFactory BRANCH_MESSAGE_FACTORY = new TypeAdapterFactory() {
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+            Class<? super T> rawType = type.getRawType();
+
+            if (rawType != BranchRequestMessage.class && rawType != BranchResponseMessage.class && rawType != ResultPageContract.class) {
+                return null;
+            }
+
+            //The adapter of a raw message (or of a type variable) writes the object by its runtime type
+            Type objectType = type.getType() instanceof ParameterizedType ? ((ParameterizedType) type.getType()).getActualTypeArguments()[0] : Object.class;
+            if (!(objectType instanceof Class) && !(objectType instanceof ParameterizedType)) {
+                objectType = Object.class;
+            }
+            TypeAdapter<Object> objectAdapter = (TypeAdapter<Object>) gson.getAdapter(TypeToken.get(objectType));
+
+            if (rawType == BranchRequestMessage.class) {
+                return (TypeAdapter<T>) new BranchRequestMessageAdapter(objectAdapter);
+            }
+
+            if (rawType == ResultPageContract.class) {
+                return (TypeAdapter<T>) new ResultPageAdapter(objectAdapter);
+            }
+
+            return (TypeAdapter<T>) new BranchResponseMessageAdapter(objectAdapter);
+        }
+    };
+
+    /**
+     * Adapter of the branch request messages of an object type
+     */
+    private static class BranchRequestMessageAdapter extends ObjectAdapter<BranchRequestMessage<Object>> {
+        //Adapter of the request object
+        private final TypeAdapter<Object> objectAdapter;
+
+        BranchRequestMessageAdapter(TypeAdapter<Object> objectAdapter) {
+            this.objectAdapter = objectAdapter;
+        }
+
+        @Override
+        BranchRequestMessage<Object> create() {
+            return new BranchRequestMessage<Object>();
+        }
+
+        @Override
+        void writeFields(JsonWriter out, BranchRequestMessage<Object> value) throws IOException {
+            out.name("op_code").value(value.operationCode);
+            out.name("user_id").value(value.userId);
+            out.name("serialized_object");
+            objectAdapter.write(out, value.object);
+            out.name("continuation_token").value(value.continuationToken);
+            out.name("limit").value(value.limit);
+            out.name("relayed_response").value(value.relayedResponse);
+        }
+
+        @Override
+        boolean readField(JsonReader in, String name, BranchRequestMessage<Object> value) throws IOException {
+            if ("op_code".equals(name)) {
+                value.operationCode = readInt(in, value.operationCode);
+            } else if ("user_id".equals(name)) {
+                value.userId = readInt(in, value.userId);
+            } else if ("serialized_object".equals(name)) {
+                value.object = objectAdapter.read(in);
+            } else if ("continuation_token".equals(name)) {
+                value.continuationToken = readString(in);
+            } else if ("limit".equals(name)) {
+                value.limit = readInt(in, value.limit);
+            } else if ("relayed_response".equals(name)) {
+                value.relayedResponse = readBoolean(in, value.relayedResponse);
+            } else {
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Adapter of the branch response messages of an object type
+     */
+    private static class BranchResponseMessageAdapter extends ObjectAdapter<BranchResponseMessage<Object>> {
+        //Adapter of the response object
+        private final TypeAdapter<Object> objectAdapter;
+
+        BranchResponseMessageAdapter(TypeAdapter<Object> objectAdapter) {
+            this.objectAdapter = objectAdapter;
+        }
+
+        @Override
+        BranchResponseMessage<Object> create() {
+            return new BranchResponseMessage<Object>();
+        }
+
+        @Override
+        void writeFields(JsonWriter out, BranchResponseMessage<Object> value) throws IOException {
+            out.name("op_code").value(value.OperationCode);
+            out.name("status").value(value.Status);
+            out.name("error").value(value.Error);
+            out.name("serialized_object");
+            objectAdapter.write(out, value.Object);
+        }
+
+        @Override
+        boolean readField(JsonReader in, String name, BranchResponseMessage<Object> value) throws IOException {
+            if ("op_code".equals(name)) {
+                value.OperationCode = readInt(in, value.OperationCode);
+            } else if ("status".equals(name)) {
+                value.Status = readInt(in, value.Status);
+            } else if ("error".equals(name)) {
+                value.Error = readString(in);
+            } else if ("serialized_object".equals(name)) {
+                value.Object = objectAdapter.read(in);
+            } else {
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Adapter of the result pages of an item type
+     */
+    private static class ResultPageAdapter extends ObjectAdapter<ResultPageContract<Object>> {
+        //Adapter of the page items
+        private final TypeAdapter<Object> itemAdapter;
+
+        ResultPageAdapter(TypeAdapter<Object> itemAdapter) {
+            this.itemAdapter = itemAdapter;
+        }
+
+        @Override
+        ResultPageContract<Object> create() {
+            return new ResultPageContract<Object>();
+        }
+
+        @Override
+        void writeFields(JsonWriter out, ResultPageContract<Object> value) throws IOException {
+            out.name("items");
+            writeList(out, itemAdapter, value.items);
+            out.name("continuationToken").value(value.continuationToken);
+        }
+
+        @Override
+        boolean readField(JsonReader in, String name, ResultPageContract<Object> value) throws IOException {
+            if ("items".equals(name)) {
+                value.items = readList(in, itemAdapter);
+            } else if ("continuationToken".equals(name)) {
+                value.continuationToken = readString(in);
+            } else {
+                return false;
+            }
+            return true;
+        }
+    }
+}
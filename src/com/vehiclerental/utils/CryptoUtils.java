@@ -2,6 +2,10 @@
  * CarRental
  *
  * This file provides multiple hashing/cryptography abstraction methods
+ *
+ * The PBE key is derived once per process, and each thread keeps its own initialized encrypt and decrypt ciphers
+ * (a Cipher is not thread safe). A cipher is reset to its initial state by doFinal, so each encryption or decryption
+ * of a value is a single doFinal call
  */
 
 package com.vehiclerental.utils;
@@ -31,6 +35,10 @@ public class CryptoUtils {
     private static final byte[] ENCRYPTION_SALT = "8gc8JNYG1kDKo8XMP7LG823Lt93e35h8".getBytes();
     private static final int ENCRYPTION_ITERATION_COUNT = 20;
 
+    //Initialized ciphers of the current thread
+    private static final ThreadLocal<Cipher> encryptCiphers = new ThreadLocal<Cipher>();
+    private static final ThreadLocal<Cipher> decryptCiphers = new ThreadLocal<Cipher>();
+
     /**
      * Compares a plain text value and its supposedly corresponding SHA256 hash
      *
@@ -87,9 +95,9 @@ public class CryptoUtils {
      * @throws Exception if the encryption system fails
      */
     public static String decrypt(String hexString) throws Exception {
-        Cipher encryptCipher = buildCipher(Cipher.DECRYPT_MODE);
+        byte[] encryptedBytes = hexStringToByteArray(hexString);
 
-        return new String(encryptCipher.doFinal(hexStringToByteArray(hexString)), "UTF-8");
+        return new String(doFinal(decryptCiphers, Cipher.DECRYPT_MODE, encryptedBytes), "UTF-8");
     }
 
     /**
@@ -99,9 +107,52 @@ public class CryptoUtils {
      * @throws Exception if the encryption system fails
      */
     public static String encrypt(String data) throws Exception {
-        Cipher encryptCipher = buildCipher(Cipher.ENCRYPT_MODE);
+        return byteArrayToHexString(doFinal(encryptCiphers, Cipher.ENCRYPT_MODE, data.getBytes("UTF-8")));
+    }
+
+    /**
+     * Decrypts encrypted (using AES256) bytes
+     * @param encryptedBytes AES256 encrypted bytes
+     * @return plain bytes
+     * @throws Exception if the encryption system fails
+     */
+    public static byte[] decryptBytes(byte[] encryptedBytes) throws Exception {
+        return doFinal(decryptCiphers, Cipher.DECRYPT_MODE, encryptedBytes);
+    }
+
+    /**
+     * Encrypts bytes with AES256, without any encoding of the result
+     * @param data plain bytes
+     * @return AES256 encrypted bytes
+     * @throws Exception if the encryption system fails
+     */
+    public static byte[] encryptBytes(byte[] data) throws Exception {
+        return doFinal(encryptCiphers, Cipher.ENCRYPT_MODE, data);
+    }
 
-        return byteArrayToHexString(encryptCipher.doFinal(data.getBytes("UTF-8")));
+    /**
+     * Encrypts or decrypts the given bytes with the cipher of the current thread
+     * The cipher is dropped if the operation fails, so the next operation starts with a newly initialized one
+     *
+     * @param ciphers the thread ciphers (encrypt or decrypt)
+     * @param encryptMode Cipher.DECRYPT_MODE or Cipher.ENCRYPT_MODE
+     * @param input the bytes to encrypt or decrypt
+     * @return the result bytes
+     * @throws Exception if the encryption system fails
+     */
+    private static byte[] doFinal(ThreadLocal<Cipher> ciphers, int encryptMode, byte[] input) throws Exception {
+        Cipher cipher = ciphers.get();
+        if (cipher == null) {
+            cipher = buildCipher(encryptMode);
+            ciphers.set(cipher);
+        }
+
+        try {
+            return cipher.doFinal(input);
+        } catch (Exception e) {
+            ciphers.remove();
+            throw e;
+        }
     }
 
     /**
@@ -109,25 +160,40 @@ public class CryptoUtils {
      *
      * @param encryptMode Cipher.DECRYPT_MODE or Cipher.ENCRYPT_MODE
      * @return the AES256 encrypt or decrypt cipher
-     * @throws InvalidKeySpecException if the key specification is invalid
      * @throws InvalidAlgorithmParameterException if the algorithm is not supported
      * @throws InvalidKeyException if the key is invalid
      * @throws NoSuchAlgorithmException if the encryption system fails
      * @throws NoSuchPaddingException if the algorithm padding parameter is not supported
      */
-    private static Cipher buildCipher(int encryptMode) throws InvalidKeySpecException, InvalidAlgorithmParameterException, InvalidKeyException, NoSuchAlgorithmException, NoSuchPaddingException {
-        //Create the key specification
-        PBEParameterSpec pbeParamSpec = new PBEParameterSpec(ENCRYPTION_SALT, ENCRYPTION_ITERATION_COUNT);
-        PBEKeySpec pbeKeySpec = new PBEKeySpec(ENCRYPTION_PASSPHRASE);
-
-        //Configure the key
-        SecretKeyFactory secretKeyFactory = SecretKeyFactory.getInstance(ENCRYPTION_ALGORITHM);
-        SecretKey secretKey = secretKeyFactory.generateSecret(pbeKeySpec);
-
+    private static Cipher buildCipher(int encryptMode) throws InvalidAlgorithmParameterException, InvalidKeyException, NoSuchAlgorithmException, NoSuchPaddingException {
         //Initialise the cipher
         Cipher cipher = Cipher.getInstance(ENCRYPTION_ALGORITHM);
-        cipher.init(encryptMode, secretKey, pbeParamSpec);
+        cipher.init(encryptMode, EncryptionKey.SECRET_KEY, EncryptionKey.PARAMETER_SPEC);
 
         return cipher;
     }
+
+    /**
+     * Holder of the derived key, initialized on the first encryption or decryption
+     */
+    private static class EncryptionKey {
+        //Key specification
+        private static final PBEParameterSpec PARAMETER_SPEC = new PBEParameterSpec(ENCRYPTION_SALT, ENCRYPTION_ITERATION_COUNT);
+        //Derived key
+        private static final SecretKey SECRET_KEY = deriveKey();
+
+        /**
+         * Derives the key from the passphrase
+         *
+         * @return the derived key
+         */
+        private static SecretKey deriveKey() {
+            try {
+                SecretKeyFactory secretKeyFactory = SecretKeyFactory.getInstance(ENCRYPTION_ALGORITHM);
+                return secretKeyFactory.generateSecret(new PBEKeySpec(ENCRYPTION_PASSPHRASE));
+            } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
+                throw new IllegalStateException("Encryption key cannot be derived", e);
+            }
+        }
+    }
 }
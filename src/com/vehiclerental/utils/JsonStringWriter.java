@@ -0,0 +1,163 @@
+/**
+ * CarRental
+ *
+ * This file provides a writer escaping the text written through it as the content of a JSON string, with the escapes of
+ * the html safe gson writers. It allows a JSON document to be embedded as a string value of another one while it is
+ * being serialized, without building the embedded document as a string first
+ *
+ * The opening and closing quotes of the string value are not written by this writer
+ */
+
+package com.vehiclerental.utils;
+
+import java.io.IOException;
+import java.io.Writer;
+
+public class JsonStringWriter extends Writer {
+    //Escapes of the ASCII characters, null for the characters written as is
+    private static final String[] REPLACEMENT_CHARS = new String[128];
+
+    static {
+        for (int i = 0; i < 0x20; i++) {
+            REPLACEMENT_CHARS[i] = String.format("\\u%04x", i);
+        }
+        REPLACEMENT_CHARS['"'] = "\\\"";
+        REPLACEMENT_CHARS['\\'] = "\\\\";
+        REPLACEMENT_CHARS['\t'] = "\\t";
+        REPLACEMENT_CHARS['\b'] = "\\b";
+        REPLACEMENT_CHARS['\n'] = "\\n";
+        REPLACEMENT_CHARS['\r'] = "\\r";
+        REPLACEMENT_CHARS['\f'] = "\\f";
+        REPLACEMENT_CHARS['<'] = "\\u003c";
+        REPLACEMENT_CHARS['>'] = "\\u003e";
+        REPLACEMENT_CHARS['&'] = "\\u0026";
+        REPLACEMENT_CHARS['='] = "\\u003d";
+        REPLACEMENT_CHARS['\''] = "\\u0027";
+    }
+
+    //Writer of the enclosing document
+    private final Writer out;
+
+    /**
+     * Constructor
+     *
+     * @param out the writer of the enclosing document, after the opening quote of the string value
+     */
+    public JsonStringWriter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes characters, the runs of characters without escape are written in one call
+     *
+     * @param buffer the characters
+     * @param offset the offset of the first character
+     * @param length the number of characters
+     * @throws IOException if the enclosing writer fails
+     */
+    @Override
+    public void write(char[] buffer, int offset, int length) throws IOException {
+        int last = offset;
+        int end = offset + length;
+
+        for (int i = offset; i < end; i++) {
+            String replacement = getReplacement(buffer[i]);
+            if (replacement == null) {
+                continue;
+            }
+
+            if (last < i) {
+                out.write(buffer, last, i - last);
+            }
+            out.write(replacement);
+            last = i + 1;
+        }
+
+        if (last < end) {
+            out.write(buffer, last, end - last);
+        }
+    }
+
+    /**
+     * Writes a string, the runs of characters without escape are written in one call
+     *
+     * @param value the string
+     * @param offset the offset of the first character
+     * @param length the number of characters
+     * @throws IOException if the enclosing writer fails
+     */
+    @Override
+    public void write(String value, int offset, int length) throws IOException {
+        int last = offset;
+        int end = offset + length;
+
+        for (int i = offset; i < end; i++) {
+            String replacement = getReplacement(value.charAt(i));
+            if (replacement == null) {
+                continue;
+            }
+
+            if (last < i) {
+                out.write(value, last, i - last);
+            }
+            out.write(replacement);
+            last = i + 1;
+        }
+
+        if (last < end) {
+            out.write(value, last, end - last);
+        }
+    }
+
+    /**
+     * Writes a character
+     *
+     * @param c the character
+     * @throws IOException if the enclosing writer fails
+     */
+    @Override
+    public void write(int c) throws IOException {
+        String replacement = getReplacement((char) c);
+
+        if (replacement == null) {
+            out.write(c);
+        } else {
+            out.write(replacement);
+        }
+    }
+
+    /**
+     * Returns the escape of a character
+     *
+     * @param c the character
+     * @return the escape, or null if the character is written as is
+     */
+    private static String getReplacement(char c) {
+        if (c < 128) {
+            return REPLACEMENT_CHARS[c];
+        } else if (c == '\u2028') {
+            return "\\u2028";
+        } else if (c == '\u2029') {
+            return "\\u2029";
+        }
+
+        return null;
+    }
+
+    /**
+     * Flushes the enclosing writer
+     *
+     * @throws IOException if the enclosing writer fails
+     */
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Does nothing, the enclosing document is still being written
+     */
+    @Override
+    public void close() {
+    }
+}
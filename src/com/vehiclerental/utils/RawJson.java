@@ -0,0 +1,82 @@
+/**
+ * CarRental
+ *
+ * This file provides a holder of an already serialized JSON value, written as is by gson into the document being
+ * serialized. It allows the head office to relay the serialized object of a client request to a branch without
+ * deserializing it into its contract and serializing it again
+ */
+
+package com.vehiclerental.utils;
+
+import com.google.gson.JsonParser;
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+@JsonAdapter(RawJson.Adapter.class)
+public class RawJson {
+    //The serialized JSON value
+    private final String json;
+
+    /**
+     * Constructor
+     *
+     * @param json the serialized JSON value, see isValid
+     */
+    public RawJson(String json) {
+        this.json = json;
+    }
+
+    /**
+     * Returns the serialized JSON value
+     *
+     * @return the serialized JSON value
+     */
+    public String getJson() {
+        return json;
+    }
+
+    /**
+     * Checks that a string holds exactly one JSON value, without building any object
+     * The rules are the strict ones: the value is spliced as is into the document read (leniently) by the branch, a
+     * comment or anything else after the value would change that document
+     *
+     * @param json the string to check
+     * @return true if the string can be relayed as a JSON value
+     */
+    public static boolean isValid(String json) {
+        JsonReader reader = new JsonReader(new StringReader(json));
+        reader.setLenient(false);
+
+        try {
+            reader.skipValue();
+            return reader.peek() == JsonToken.END_DOCUMENT;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Gson adapter writing the serialized value as is
+     */
+    public static class Adapter extends TypeAdapter<RawJson> {
+        @Override
+        public void write(JsonWriter out, RawJson value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+            } else {
+                out.jsonValue(value.json);
+            }
+        }
+
+        @Override
+        public RawJson read(JsonReader in) throws IOException {
+            return new RawJson(new JsonParser().parse(in).toString());
+        }
+    }
+}
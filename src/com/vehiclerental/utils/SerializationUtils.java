@@ -4,18 +4,32 @@
  * This file provides multiple serialization abstraction methods
  *
  * I am using the gson library to serialize everything to JSON
+ * The gson object is shared by the whole application: the contracts and protocol messages are written and read by the
+ * streaming adapters of ContractTypeAdapters, and gson caches the adapters of every other type it meets
  */
 
 package com.vehiclerental.utils;
 
 import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
 
+import java.io.*;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 
 public class SerializationUtils {
 
-    //Static gson object
-    private static Gson gsonObject = new Gson();
+    //Static gson object, configured as the default one (same json output) with the contract adapters
+    private static final Gson gsonObject = ContractTypeAdapters.register(new GsonBuilder()).create();
+
+    /**
+     * Returns the shared gson object, gson objects are thread-safe
+     *
+     * @return the gson object
+     */
+    public static Gson getGson() {
+        return gsonObject;
+    }
 
     /**
      * Serialize the provided object to a json string
@@ -39,4 +53,38 @@ public class SerializationUtils {
     public static <T> T deserialize(String serialized, Type type) {
         return gsonObject.fromJson(serialized, type);
     }
+
+    /**
+     * Serialize the provided object to UTF-8 encoded json bytes, without building an intermediate string
+     *
+     * @param object the object to serialize
+     * @param <T> the generic object type
+     * @return the serialized json bytes
+     */
+    public static <T> byte[] serializeToBytes(T object) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        Writer writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
+
+        try {
+            gsonObject.toJson(object, writer);
+            writer.flush();
+        } catch (IOException e) {
+            //Can't happen with an in-memory stream
+            throw new IllegalStateException(e);
+        }
+
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Deserialize the provided UTF-8 encoded json bytes into the given type, without building an intermediate string
+     *
+     * @param serialized the serialized json bytes
+     * @param type the expected object type
+     * @param <T> the generic object type
+     * @return the deserialized object
+     */
+    public static <T> T deserialize(byte[] serialized, Type type) {
+        return gsonObject.fromJson(new InputStreamReader(new ByteArrayInputStream(serialized), StandardCharsets.UTF_8), type);
+    }
 }
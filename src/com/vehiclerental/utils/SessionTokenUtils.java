@@ -0,0 +1,153 @@
+/**
+ * CarRental
+ *
+ * This file provides the session token issuing and validation methods
+ * A token is "userId:staffFlag:expiry.signature", the signature is an HMAC-SHA256 (encoded in hexadecimal) of the first part
+ * Validating a token is only a signature computation, no database access nor decryption is required
+ *
+ * The signing key is generated when the head office starts unless it is configured, the tokens are then invalidated by a restart
+ */
+
+package com.vehiclerental.utils;
+
+import com.vehiclerental.NodeConfiguration;
+import org.bouncycastle.util.encoders.Hex;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+public class SessionTokenUtils {
+    //Signature algorithm
+    private static final String SIGNATURE_ALGORITHM = "HmacSHA256";
+    //Size of the generated signing key
+    private static final int SIGNING_KEY_SIZE = 32;
+
+    //Signing key, shared by every head office worker
+    private static final SecretKeySpec signingKey = createSigningKey();
+
+    //Mac instances are not thread safe, each worker keeps its own initialized instance
+    private static final ThreadLocal<Mac> macs = new ThreadLocal<Mac>() {
+        @Override
+        protected Mac initialValue() {
+            try {
+                Mac mac = Mac.getInstance(SIGNATURE_ALGORITHM);
+                mac.init(signingKey);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Session token signature unavailable", e);
+            }
+        }
+    };
+
+    /**
+     * Identity carried by a valid session token
+     */
+    public static class SessionPrincipal {
+        public final int userId;
+        public final boolean isStaff;
+        public final long expiry;
+
+        /**
+         * Constructor
+         *
+         * @param userId the user ID
+         * @param isStaff true if staff user
+         * @param expiry expiry timestamp (milliseconds)
+         */
+        SessionPrincipal(int userId, boolean isStaff, long expiry) {
+            this.userId = userId;
+            this.isStaff = isStaff;
+            this.expiry = expiry;
+        }
+    }
+
+    /**
+     * Issues a signed token for an authenticated user
+     *
+     * @param userId the user ID
+     * @param isStaff true if staff user
+     * @param expiry expiry timestamp (milliseconds)
+     * @return the signed token
+     */
+    public static String issueToken(int userId, boolean isStaff, long expiry) {
+        String payload = Integer.toString(userId) + ":" + (isStaff ? "1" : "0") + ":" + Long.toString(expiry);
+
+        return payload + "." + Hex.toHexString(sign(payload));
+    }
+
+    /**
+     * Validates a token and returns the identity it carries
+     *
+     * @param token the token sent by the client
+     * @return the identity, or null if the token is malformed, forged or expired
+     */
+    public static SessionPrincipal validateToken(String token) {
+        int separator = token.lastIndexOf('.');
+        if (separator <= 0) {
+            return null;
+        }
+
+        String payload = token.substring(0, separator);
+        byte[] signature;
+        try {
+            signature = Hex.decode(token.substring(separator + 1));
+        } catch (RuntimeException e) {
+            return null;
+        }
+
+        //Constant time comparison, the signature can't be guessed byte by byte
+        if (!MessageDigest.isEqual(sign(payload), signature)) {
+            return null;
+        }
+
+        String[] values = payload.split(":");
+        if (values.length != 3) {
+            return null;
+        }
+
+        try {
+            SessionPrincipal principal = new SessionPrincipal(Integer.parseInt(values[0]), values[1].equals("1"), Long.parseLong(values[2]));
+
+            if (principal.expiry < System.currentTimeMillis()) {
+                return null;
+            }
+
+            return principal;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Computes the signature of a token payload
+     *
+     * @param payload the token payload
+     * @return the signature
+     */
+    private static byte[] sign(String payload) {
+        return macs.get().doFinal(payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Builds the signing key from the configured secret, or generates a random one
+     *
+     * @return the signing key
+     */
+    private static SecretKeySpec createSigningKey() {
+        String secret = NodeConfiguration.getCurrent().authTokenSecret;
+
+        byte[] key;
+        if (secret != null) {
+            key = secret.getBytes(StandardCharsets.UTF_8);
+        } else {
+            key = new byte[SIGNING_KEY_SIZE];
+            new SecureRandom().nextBytes(key);
+        }
+
+        return new SecretKeySpec(key, SIGNATURE_ALGORITHM);
+    }
+}